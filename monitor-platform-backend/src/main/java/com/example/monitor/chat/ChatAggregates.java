@@ -0,0 +1,431 @@
+package com.example.monitor.chat;
+
+import com.example.monitor.model.AnomalyEvent;
+import com.example.monitor.model.MetricSample;
+import com.example.monitor.model.ServerInfo;
+import com.example.monitor.model.ServerResource;
+import com.example.monitor.model.ServiceInfo;
+import com.example.monitor.query.SeriesSnapshot;
+import com.example.monitor.storage.AnomalyEventFileRepository;
+import com.example.monitor.storage.MetricSampleFileRepository;
+import com.example.monitor.storage.ServerInfoFileRepository;
+import com.example.monitor.storage.ServerResourceFileRepository;
+import com.example.monitor.storage.ServiceInfoFileRepository;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.DoubleSummaryStatistics;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 智能问答使用的预聚合数据
+ * 异常统计和响应时间统计注册为对应仓储的写入监听，每次写入只按新增的数据增量更新；
+ * 服务、服务器和最新资源按仓储版本号缓存，版本变化后的第一次读取重新计算。
+ * 问答请求直接读取这些结果，不再每次扫描全部数据。
+ */
+@Component
+@RequiredArgsConstructor
+public class ChatAggregates {
+
+    /**
+     * 每个服务参与响应时间统计的最近样本数
+     */
+    static final int RESPONSE_TIME_SAMPLES = 50;
+
+    private static final String RESPONSE_TIME_METRIC = "responseTime";
+    private static final int RECENT_ANOMALIES = 5;
+
+    private final ServiceInfoFileRepository serviceInfoRepository;
+    private final ServerInfoFileRepository serverInfoRepository;
+    private final AnomalyEventFileRepository anomalyEventRepository;
+    private final ServerResourceFileRepository serverResourceRepository;
+    private final MetricSampleFileRepository metricSampleRepository;
+
+    private final Cached<ServiceStats> services = new Cached<>();
+    private final Cached<ServerStats> servers = new Cached<>();
+    private final Cached<Map<Long, ServerResource>> latestResources = new Cached<>();
+    private final AnomalyStats anomalies = new AnomalyStats();
+    private final ResponseTimes responseTimes = new ResponseTimes();
+
+    @PostConstruct
+    public void init() {
+        anomalyEventRepository.addListener(anomalies);
+        metricSampleRepository.addListener(responseTimes);
+    }
+
+    public ServiceStats services() {
+        return services.get(serviceInfoRepository.getVersion(), () -> new ServiceStats(serviceInfoRepository.findAll()));
+    }
+
+    public ServerStats servers() {
+        return servers.get(serverInfoRepository.getVersion(), () -> new ServerStats(serverInfoRepository.findAll()));
+    }
+
+    /**
+     * 异常统计，随异常事件的写入实时更新
+     */
+    public AnomalyStats anomalies() {
+        return anomalies;
+    }
+
+    /**
+     * 每台服务器最新的一条资源记录
+     */
+    public Map<Long, ServerResource> latestResources() {
+        return latestResources.get(serverResourceRepository.getVersion(),
+                () -> Collections.unmodifiableMap(serverResourceRepository.findLatestByServer()));
+    }
+
+    /**
+     * 各服务最近 50 个 responseTime 样本的统计，按服务名排列
+     */
+    public Map<String, DoubleSummaryStatistics> responseTimes() {
+        // 服务名在锁外取得，写入监听持有指标仓储的锁时不会等待服务仓储
+        long serviceVersion = serviceInfoRepository.getVersion();
+        return responseTimes.get(services().all, serviceVersion);
+    }
+
+    /**
+     * 按版本号缓存的一份计算结果；用于服务、服务器这类条目少、写入也少的数据，整体重算的开销可以忽略
+     */
+    private static final class Cached<T> {
+        private long version = -1;
+        private T value;
+
+        synchronized T get(long currentVersion, Supplier<T> loader) {
+            if (value == null || version != currentVersion) {
+                value = loader.get();
+                version = currentVersion;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * 每个 responseTime 序列最近 50 个样本，随写入增量更新；汇总结果在有新样本或服务变化后的第一次读取时
+     * 由这些样本重新合并，不解码数据块
+     */
+    private static final class ResponseTimes implements MetricSampleFileRepository.Listener {
+        /**
+         * serviceId -> 原始指标名（含标签）-> 最近的样本
+         */
+        private final Map<Long, Map<String, Tail>> tails = new HashMap<>();
+        private Map<String, DoubleSummaryStatistics> result;
+        private long resultServiceVersion = -1;
+
+        @Override
+        public synchronized void reset(List<MetricSampleFileRepository.SeriesData> series) {
+            tails.clear();
+            for (MetricSampleFileRepository.SeriesData data : series) {
+                if (isResponseTime(data.getMetricName())) {
+                    Tail tail = tail(data.getServiceId(), data.getMetricName());
+                    data.recent(RESPONSE_TIME_SAMPLES).forEach(tail::add);
+                }
+            }
+            result = null;
+        }
+
+        @Override
+        public synchronized void appended(List<MetricSample> samples) {
+            for (MetricSample sample : samples) {
+                if (isResponseTime(sample.getMetricName())) {
+                    tail(sample.getServiceId(), sample.getMetricName()).add(sample);
+                    result = null;
+                }
+            }
+        }
+
+        synchronized Map<String, DoubleSummaryStatistics> get(List<ServiceInfo> services, long serviceVersion) {
+            if (result != null && resultServiceVersion == serviceVersion) {
+                return result;
+            }
+            Map<Long, ServiceInfo> serviceById = new HashMap<>();
+            services.forEach(service -> serviceById.put(service.getId(), service));
+            Map<String, DoubleSummaryStatistics> stats = new TreeMap<>();
+            tails.forEach((serviceId, metrics) -> metrics.forEach((metricName, tail) -> {
+                Map<String, String> labels = SeriesSnapshot.labels(metricName, serviceId, serviceById.get(serviceId));
+                String name = labels.getOrDefault("service", labels.get("serviceId"));
+                stats.computeIfAbsent(name, k -> new DoubleSummaryStatistics()).combine(tail.statistics());
+            }));
+            result = Collections.unmodifiableMap(stats);
+            resultServiceVersion = serviceVersion;
+            return result;
+        }
+
+        private Tail tail(Long serviceId, String metricName) {
+            return tails.computeIfAbsent(serviceId, k -> new HashMap<>()).computeIfAbsent(metricName, k -> new Tail());
+        }
+
+        private static boolean isResponseTime(String metricName) {
+            return metricName != null && metricName.startsWith(RESPONSE_TIME_METRIC)
+                    && (metricName.length() == RESPONSE_TIME_METRIC.length()
+                    || metricName.charAt(RESPONSE_TIME_METRIC.length()) == '{');
+        }
+    }
+
+    /**
+     * 一个序列时间最新的若干个样本，按时间升序
+     */
+    private static final class Tail {
+        private final long[] times = new long[RESPONSE_TIME_SAMPLES];
+        private final double[] values = new double[RESPONSE_TIME_SAMPLES];
+        private int size;
+
+        void add(MetricSample sample) {
+            long time = sample.getTimestamp().getTime();
+            if (size == times.length) {
+                if (time < times[0]) {
+                    return;
+                }
+                System.arraycopy(times, 1, times, 0, size - 1);
+                System.arraycopy(values, 1, values, 0, size - 1);
+                size--;
+            }
+            // 样本基本按时间先后写入，从末尾往前找插入位置
+            int i = size;
+            while (i > 0 && times[i - 1] > time) {
+                i--;
+            }
+            System.arraycopy(times, i, times, i + 1, size - i);
+            System.arraycopy(values, i, values, i + 1, size - i);
+            times[i] = time;
+            values[i] = sample.getValue();
+            size++;
+        }
+
+        DoubleSummaryStatistics statistics() {
+            DoubleSummaryStatistics stats = new DoubleSummaryStatistics();
+            for (int i = 0; i < size; i++) {
+                stats.accept(values[i]);
+            }
+            return stats;
+        }
+    }
+
+    @Getter
+    public static final class ServiceStats {
+        private final List<ServiceInfo> all;
+        /**
+         * 环境 -> 服务数，未设置环境的服务不计入
+         */
+        private final Map<String, Long> byEnv;
+
+        ServiceStats(List<ServiceInfo> services) {
+            this.all = Collections.unmodifiableList(services);
+            this.byEnv = Collections.unmodifiableMap(services.stream()
+                    .filter(s -> s.getEnv() != null)
+                    .collect(Collectors.groupingBy(ServiceInfo::getEnv, LinkedHashMap::new, Collectors.counting())));
+        }
+
+        public long countByEnv(String env) {
+            return byEnv.entrySet().stream()
+                    .filter(e -> e.getKey().equalsIgnoreCase(env))
+                    .mapToLong(Map.Entry::getValue)
+                    .sum();
+        }
+    }
+
+    @Getter
+    public static final class ServerStats {
+        private final List<ServerInfo> all;
+        private final Map<Long, ServerInfo> byId;
+        private final long online;
+        private final Map<String, Long> byType;
+
+        ServerStats(List<ServerInfo> servers) {
+            servers.sort(Comparator.comparing(ServerInfo::getId));
+            this.all = Collections.unmodifiableList(servers);
+            Map<Long, ServerInfo> ids = new HashMap<>();
+            servers.forEach(s -> ids.put(s.getId(), s));
+            this.byId = Collections.unmodifiableMap(ids);
+            this.online = servers.stream().filter(s -> "online".equals(s.getStatus())).count();
+            this.byType = Collections.unmodifiableMap(servers.stream()
+                    .filter(s -> s.getType() != null)
+                    .collect(Collectors.groupingBy(ServerInfo::getType, LinkedHashMap::new, Collectors.counting())));
+        }
+    }
+
+    /**
+     * 异常统计，随异常事件的保存增量更新：计数直接加减，最近的异常和发生时间保持有序，
+     * 保存一条按时间最新的异常只需常数时间
+     */
+    public static final class AnomalyStats implements AnomalyEventFileRepository.Listener {
+        private static final Comparator<AnomalyEvent> NEWEST_FIRST = Comparator
+                .comparing(AnomalyEvent::getCreatedAt, Comparator.reverseOrder())
+                .thenComparing(AnomalyEvent::getId, Comparator.nullsLast(Comparator.reverseOrder()));
+
+        private int total;
+        private long high;
+        private final TreeSet<AnomalyEvent> ordered = new TreeSet<>(NEWEST_FIRST);
+        private final TreeSet<AnomalyEvent> orderedHigh = new TreeSet<>(NEWEST_FIRST);
+        /**
+         * 全部 / 高严重级别异常的发生时间，升序，用于按时间窗口计数
+         */
+        private final SortedTimes times = new SortedTimes();
+        private final SortedTimes highTimes = new SortedTimes();
+
+        AnomalyStats() {
+        }
+
+        @Override
+        public synchronized void reset(List<AnomalyEvent> events) {
+            total = 0;
+            high = 0;
+            ordered.clear();
+            orderedHigh.clear();
+            times.clear();
+            highTimes.clear();
+            events.forEach(this::add);
+        }
+
+        @Override
+        public synchronized void saved(AnomalyEvent previous, AnomalyEvent event) {
+            if (previous != null) {
+                remove(previous);
+            }
+            add(event);
+        }
+
+        private void add(AnomalyEvent event) {
+            total++;
+            boolean isHigh = isHigh(event);
+            if (isHigh) {
+                high++;
+            }
+            if (event.getCreatedAt() == null) {
+                return;
+            }
+            ordered.add(event);
+            times.add(event.getCreatedAt().getTime());
+            if (isHigh) {
+                orderedHigh.add(event);
+                highTimes.add(event.getCreatedAt().getTime());
+            }
+        }
+
+        private void remove(AnomalyEvent event) {
+            total--;
+            boolean isHigh = isHigh(event);
+            if (isHigh) {
+                high--;
+            }
+            if (event.getCreatedAt() == null) {
+                return;
+            }
+            ordered.remove(event);
+            times.remove(event.getCreatedAt().getTime());
+            if (isHigh) {
+                orderedHigh.remove(event);
+                highTimes.remove(event.getCreatedAt().getTime());
+            }
+        }
+
+        public synchronized int getTotal() {
+            return total;
+        }
+
+        public synchronized long getHigh() {
+            return high;
+        }
+
+        public synchronized List<AnomalyEvent> getRecent() {
+            return first(ordered);
+        }
+
+        public synchronized List<AnomalyEvent> getRecentHigh() {
+            return first(orderedHigh);
+        }
+
+        public synchronized int countSince(long time) {
+            return times.countAfter(time);
+        }
+
+        public synchronized int countHighSince(long time) {
+            return highTimes.countAfter(time);
+        }
+
+        private static List<AnomalyEvent> first(TreeSet<AnomalyEvent> events) {
+            List<AnomalyEvent> result = new ArrayList<>(RECENT_ANOMALIES);
+            Iterator<AnomalyEvent> it = events.iterator();
+            while (it.hasNext() && result.size() < RECENT_ANOMALIES) {
+                result.add(it.next());
+            }
+            return Collections.unmodifiableList(result);
+        }
+
+        private static boolean isHigh(AnomalyEvent event) {
+            return "high".equalsIgnoreCase(event.getSeverity());
+        }
+    }
+
+    /**
+     * 升序的时间戳数组，按时间先后追加时为常数时间
+     */
+    private static final class SortedTimes {
+        private long[] values = new long[16];
+        private int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(long time) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int i = upperBound(time);
+            System.arraycopy(values, i, values, i + 1, size - i);
+            values[i] = time;
+            size++;
+        }
+
+        void remove(long time) {
+            int i = upperBound(time) - 1;
+            if (i >= 0 && values[i] == time) {
+                System.arraycopy(values, i + 1, values, i, size - i - 1);
+                size--;
+            }
+        }
+
+        /**
+         * 大于 time 的元素个数
+         */
+        int countAfter(long time) {
+            return size - upperBound(time);
+        }
+
+        /**
+         * 第一个大于 time 的下标
+         */
+        private int upperBound(long time) {
+            if (size == 0 || values[size - 1] <= time) {
+                return size;
+            }
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (values[mid] <= time) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
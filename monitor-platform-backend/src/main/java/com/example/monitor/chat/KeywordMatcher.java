@@ -0,0 +1,127 @@
+package com.example.monitor.chat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * 多关键词匹配器（Aho-Corasick 自动机）
+ * 构造时把所有关键词编译成一个自动机，匹配时对问题文本只扫描一遍，耗时与关键词数量无关。
+ * 一个关键词被另一个更长的命中完整包含时不计入，例如“服务器”不会同时命中“服务”，“latest”不会命中“test”。
+ */
+public final class KeywordMatcher<K extends Enum<K>> {
+
+    private final Class<K> type;
+    private final List<Node<K>> nodes = new ArrayList<>();
+
+    /**
+     * @param keywords 每个关键词对应的词（小写），同一个词可以属于多个关键词
+     */
+    public KeywordMatcher(Class<K> type, Map<K, List<String>> keywords) {
+        this.type = type;
+        nodes.add(new Node<>());
+        keywords.forEach((key, words) -> words.forEach(word -> insert(word, key)));
+        link();
+    }
+
+    /**
+     * 文本中出现的关键词（文本需事先转为小写）
+     */
+    public EnumSet<K> match(String text) {
+        List<int[]> hits = new ArrayList<>();
+        List<Set<K>> hitKeys = new ArrayList<>();
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            while (state != 0 && !nodes.get(state).next.containsKey(c)) {
+                state = nodes.get(state).fail;
+            }
+            Integer next = nodes.get(state).next.get(c);
+            state = next != null ? next : 0;
+            // 沿输出链收集以当前位置结尾的所有关键词，链上第一个就是最长的
+            for (int s = state; s != 0; s = nodes.get(s).output) {
+                Node<K> node = nodes.get(s);
+                if (node.keys != null) {
+                    hits.add(new int[]{i + 1 - node.depth, i + 1});
+                    hitKeys.add(node.keys);
+                }
+            }
+        }
+
+        EnumSet<K> result = EnumSet.noneOf(type);
+        for (int i = 0; i < hits.size(); i++) {
+            int[] hit = hits.get(i);
+            boolean covered = false;
+            for (int j = 0; j < hits.size() && !covered; j++) {
+                int[] other = hits.get(j);
+                covered = j != i && other[1] - other[0] > hit[1] - hit[0]
+                        && other[0] <= hit[0] && hit[1] <= other[1];
+            }
+            if (!covered) {
+                result.addAll(hitKeys.get(i));
+            }
+        }
+        return result;
+    }
+
+    private void insert(String keyword, K key) {
+        int state = 0;
+        for (int i = 0; i < keyword.length(); i++) {
+            char c = keyword.charAt(i);
+            Integer next = nodes.get(state).next.get(c);
+            if (next == null) {
+                Node<K> node = new Node<>();
+                node.depth = nodes.get(state).depth + 1;
+                nodes.add(node);
+                next = nodes.size() - 1;
+                nodes.get(state).next.put(c, next);
+            }
+            state = next;
+        }
+        Node<K> node = nodes.get(state);
+        if (node.keys == null) {
+            node.keys = EnumSet.noneOf(type);
+        }
+        node.keys.add(key);
+    }
+
+    /**
+     * 按层次遍历建立失败指针和输出链
+     */
+    private void link() {
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : nodes.get(0).next.values()) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            Node<K> node = nodes.get(current);
+            node.output = nodes.get(node.fail).keys != null ? node.fail : nodes.get(node.fail).output;
+            for (Map.Entry<Character, Integer> edge : node.next.entrySet()) {
+                int fail = node.fail;
+                while (fail != 0 && !nodes.get(fail).next.containsKey(edge.getKey())) {
+                    fail = nodes.get(fail).fail;
+                }
+                Integer target = nodes.get(fail).next.get(edge.getKey());
+                nodes.get(edge.getValue()).fail = target != null && target != (int) edge.getValue() ? target : 0;
+                queue.add(edge.getValue());
+            }
+        }
+    }
+
+    private static final class Node<K extends Enum<K>> {
+        final Map<Character, Integer> next = new HashMap<>();
+        int fail;
+        /**
+         * 沿失败链最近的一个关键词结尾节点
+         */
+        int output;
+        int depth;
+        EnumSet<K> keys;
+    }
+}
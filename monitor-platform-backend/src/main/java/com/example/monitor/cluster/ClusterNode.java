@@ -0,0 +1,28 @@
+package com.example.monitor.cluster;
+
+import lombok.Data;
+
+/**
+ * 集群节点：节点 ID 与访问地址，如 node-1=http://10.0.0.1:8080
+ */
+@Data
+public class ClusterNode {
+
+    private final String id;
+    private final String url;
+
+    /**
+     * 解析 monitor.cluster.nodes 中的一项
+     */
+    static ClusterNode parse(String spec) {
+        int eq = spec.indexOf('=');
+        if (eq <= 0 || eq == spec.length() - 1) {
+            throw new IllegalArgumentException("集群节点格式应为 id=http://host:port：" + spec);
+        }
+        String url = spec.substring(eq + 1).trim();
+        while (url.endsWith("/")) {
+            url = url.substring(0, url.length() - 1);
+        }
+        return new ClusterNode(spec.substring(0, eq).trim(), url);
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.monitor.cluster;
+
+import com.example.monitor.model.MetricQueryResult;
+import com.example.monitor.model.MetricQuerySeries;
+import com.example.monitor.query.DistributedQuery;
+import com.example.monitor.query.QueryExpr;
+import com.example.monitor.service.MetricQueryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 集群查询：子查询并行分发到所有节点（本节点直接在本地求值），各节点返回部分聚合结果，在本节点合并后求出最终结果
+ * 未开启集群或请求来自其他节点时直接在本地求值。瞬时查询的时间在分发前确定，各节点在同一时刻求值。
+ */
+@Service
+@RequiredArgsConstructor
+public class ClusterQueryService {
+
+    private final ClusterService clusterService;
+    private final MetricQueryService metricQueryService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 瞬时查询；localOnly 为 true 时只查询本节点的数据
+     */
+    public MetricQueryResult query(String query, Long timeMs, boolean localOnly) {
+        if (!clusterService.isEnabled() || localOnly) {
+            return metricQueryService.query(query, timeMs);
+        }
+        long start = System.nanoTime();
+        long time = timeMs != null ? timeMs : System.currentTimeMillis();
+        DistributedQuery plan = DistributedQuery.plan(query);
+        List<MetricQueryResult> partials = scatter(plan,
+                sub -> metricQueryService.query(sub, time),
+                sub -> "/api/metrics/query?query=" + encode(sub) + "&time=" + time);
+        QueryExpr merged = plan.merge(collect(plan, partials));
+        return result(query, "vector", MetricQueryService.evaluateInstant(merged, null, time), plan, partials, start);
+    }
+
+    /**
+     * 区间查询；localOnly 为 true 时只查询本节点的数据
+     */
+    public MetricQueryResult queryRange(String query, long startMs, long endMs, long stepMs, boolean localOnly) {
+        if (!clusterService.isEnabled() || localOnly) {
+            return metricQueryService.queryRange(query, startMs, endMs, stepMs);
+        }
+        MetricQueryService.checkRange(startMs, endMs, stepMs);
+        long start = System.nanoTime();
+        DistributedQuery plan = DistributedQuery.plan(query);
+        List<MetricQueryResult> partials = scatter(plan,
+                sub -> metricQueryService.queryRange(sub, startMs, endMs, stepMs),
+                sub -> "/api/metrics/query_range?query=" + encode(sub)
+                        + "&start=" + startMs + "&end=" + endMs + "&step=" + stepMs);
+        QueryExpr merged = plan.merge(collect(plan, partials));
+        return result(query, "matrix", MetricQueryService.evaluateRange(merged, null, startMs, endMs, stepMs),
+                plan, partials, start);
+    }
+
+    /**
+     * 每个节点、每个子查询一个请求，结果按节点在前、子查询在后的顺序排列；任一节点失败则整个查询失败
+     */
+    private List<MetricQueryResult> scatter(DistributedQuery plan, Function<String, MetricQueryResult> local,
+                                            Function<String, String> remotePath) {
+        List<CompletableFuture<MetricQueryResult>> futures = new ArrayList<>();
+        for (ClusterNode node : clusterService.getNodes()) {
+            for (String sub : plan.getSubqueries()) {
+                futures.add(CompletableFuture.supplyAsync(() -> clusterService.isLocal(node)
+                        ? local.apply(sub)
+                        : fetch(node, remotePath.apply(sub)), clusterService.getExecutor()));
+            }
+        }
+        List<MetricQueryResult> results = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<MetricQueryResult> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(f -> f.cancel(true));
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) cause;
+            }
+            throw new IllegalStateException(cause.getMessage(), cause);
+        }
+        return results;
+    }
+
+    private MetricQueryResult fetch(ClusterNode node, String pathAndQuery) {
+        try {
+            ClusterService.NodeResponse response = clusterService.exchange(node, "GET", pathAndQuery, null, null);
+            if (response.getStatus() != HttpURLConnection.HTTP_OK) {
+                throw new IllegalStateException("节点 " + node.getId() + " 查询失败：HTTP " + response.getStatus()
+                        + " " + new String(response.getBody(), StandardCharsets.UTF_8));
+            }
+            return objectMapper.readValue(response.getBody(), MetricQueryResult.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 按子查询汇总所有节点的结果序列
+     */
+    private static List<List<MetricQuerySeries>> collect(DistributedQuery plan, List<MetricQueryResult> partials) {
+        int subqueries = plan.getSubqueries().size();
+        List<List<MetricQuerySeries>> bySubquery = new ArrayList<>(subqueries);
+        for (int i = 0; i < subqueries; i++) {
+            bySubquery.add(new ArrayList<>());
+        }
+        for (int i = 0; i < partials.size(); i++) {
+            bySubquery.get(i % subqueries).addAll(partials.get(i).getResult());
+        }
+        return bySubquery;
+    }
+
+    private static MetricQueryResult result(String query, String type, List<MetricQuerySeries> series,
+                                            DistributedQuery plan, List<MetricQueryResult> partials, long startNanos) {
+        MetricQueryResult result = new MetricQueryResult();
+        result.setQuery(query);
+        result.setResultType(type);
+        result.setResult(series);
+        int seriesTotal = 0;
+        for (int i = 0; i < partials.size(); i += plan.getSubqueries().size()) {
+            seriesTotal += partials.get(i).getSeriesTotal();
+        }
+        result.setSeriesTotal(seriesTotal);
+        result.setDurationMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        return result;
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
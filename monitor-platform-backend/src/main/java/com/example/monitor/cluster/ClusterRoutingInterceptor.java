@@ -0,0 +1,131 @@
+package com.example.monitor.cluster;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 集群模式下的请求路由
+ * 按服务 / 服务器 / 进程 ID 读写序列的接口转发到该 ID 所属的节点，表达式查询、抓取状态和集群状态在本节点处理，
+ * 其余元数据接口转发到元数据节点。转发的请求带 {@link ClusterService#FORWARDED_HEADER}，对方只在本地处理。
+ * 未开启集群时不注册。
+ */
+@Component
+@RequiredArgsConstructor
+public class ClusterRoutingInterceptor implements HandlerInterceptor, WebMvcConfigurer {
+
+    /**
+     * 按 ID 分片的接口：映射路径 → 分片键类型，ID 取路径变量 id 或 serviceId，或同名的请求参数
+     */
+    private static final Map<String, ConsistentHashRing.KeyType> SHARDED_PATTERNS = new HashMap<>();
+    /**
+     * 在接收请求的节点处理的接口
+     */
+    private static final Set<String> LOCAL_PATTERNS = new HashSet<>(Arrays.asList(
+            "/api/metrics/query", "/api/metrics/query_range", "/api/metrics/collect",
+            "/api/metrics/scrape", "/api/metrics/scrape/targets"));
+
+    static {
+        SHARDED_PATTERNS.put("/api/metrics/{serviceId}", ConsistentHashRing.KeyType.SERVICE);
+        SHARDED_PATTERNS.put("/api/metrics/ingest/prometheus", ConsistentHashRing.KeyType.SERVICE);
+        SHARDED_PATTERNS.put("/api/servers/{id}/resources", ConsistentHashRing.KeyType.SERVER);
+        SHARDED_PATTERNS.put("/api/servers/{id}/resources/latest", ConsistentHashRing.KeyType.SERVER);
+        SHARDED_PATTERNS.put("/api/servers/{id}/resources/collect", ConsistentHashRing.KeyType.SERVER);
+        SHARDED_PATTERNS.put("/api/processes/{id}/resources", ConsistentHashRing.KeyType.PROCESS);
+        SHARDED_PATTERNS.put("/api/processes/{id}/resources/latest", ConsistentHashRing.KeyType.PROCESS);
+        SHARDED_PATTERNS.put("/api/processes/{id}/resources/collect", ConsistentHashRing.KeyType.PROCESS);
+    }
+
+    private final ClusterService clusterService;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (clusterService.isEnabled()) {
+            registry.addInterceptor(this).addPathPatterns("/api/**").excludePathPatterns("/api/cluster/**", "/api/self-metrics/**");
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if (request.getHeader(ClusterService.FORWARDED_HEADER) != null) {
+            return true;
+        }
+        ClusterNode target = route(request);
+        if (target == null || clusterService.isLocal(target)) {
+            return true;
+        }
+        forward(target, request, response);
+        return false;
+    }
+
+    /**
+     * 请求应由哪个节点处理，null 表示本节点
+     */
+    ClusterNode route(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (pattern == null || LOCAL_PATTERNS.contains(pattern.toString())) {
+            return null;
+        }
+        ConsistentHashRing.KeyType type = SHARDED_PATTERNS.get(pattern.toString());
+        if (type == null) {
+            return clusterService.getMetadataNode();
+        }
+        Long id = shardId(request);
+        // 缺少或无法解析的 ID 留给本节点的控制器按参数错误处理
+        return id != null ? clusterService.ownerOf(type, id) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Long shardId(HttpServletRequest request) {
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String value = null;
+        if (variables != null) {
+            value = variables.containsKey("id") ? variables.get("id") : variables.get("serviceId");
+        }
+        if (value == null) {
+            value = request.getParameter("serviceId");
+        }
+        try {
+            return value != null ? Long.valueOf(value) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void forward(ClusterNode target, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String pathAndQuery = request.getRequestURI() + (request.getQueryString() != null ? "?" + request.getQueryString() : "");
+        byte[] body = null;
+        if (!"GET".equals(request.getMethod()) && !"DELETE".equals(request.getMethod())) {
+            body = StreamUtils.copyToByteArray(request.getInputStream());
+        }
+        ClusterService.NodeResponse result;
+        try {
+            result = clusterService.exchange(target, request.getMethod(), pathAndQuery, request.getContentType(), body);
+        } catch (IOException e) {
+            response.sendError(HttpServletResponse.SC_BAD_GATEWAY, e.getMessage());
+            return;
+        }
+        response.setStatus(result.getStatus());
+        if (result.getContentType() != null) {
+            response.setContentType(result.getContentType());
+        }
+        if (result.getRetryAfter() != null) {
+            response.setHeader("Retry-After", result.getRetryAfter());
+        }
+        response.setContentLength(result.getBody().length);
+        response.getOutputStream().write(result.getBody());
+    }
+}
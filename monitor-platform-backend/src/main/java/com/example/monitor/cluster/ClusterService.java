@@ -0,0 +1,293 @@
+package com.example.monitor.cluster;
+
+import com.example.monitor.model.ProcessInfo;
+import com.example.monitor.model.ServerInfo;
+import com.example.monitor.model.ServiceInfo;
+import com.example.monitor.service.MetricScrapeService;
+import com.example.monitor.storage.ProcessInfoFileRepository;
+import com.example.monitor.storage.ServerInfoFileRepository;
+import com.example.monitor.storage.ServiceInfoFileRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Metrics;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 集群模式
+ * 指标和资源序列按服务 / 服务器 / 进程 ID 在一致性哈希环上分配到各节点，各节点只保存自己负责的序列，
+ * 写入和按 ID 的读取由 {@link ClusterRoutingInterceptor} 转发到所属节点，表达式查询由 {@link ClusterQueryService} 分发到所有节点后合并。
+ * 服务、服务器、进程等元数据只保存在第一个节点（元数据节点），
+ * 其余节点定期拉取服务、服务器和进程列表，用于序列标签、抓取目标和按 ID 的资源接口。
+ * 默认关闭，通过 monitor.cluster.enabled=true 开启，各节点的 nodes 配置必须一致。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ClusterService {
+
+    /**
+     * 节点之间转发的请求带上来源节点 ID，收到后只在本地处理，不再转发或分发
+     */
+    public static final String FORWARDED_HEADER = "X-Monitor-Forwarded";
+
+    private final ServiceInfoFileRepository serviceInfoRepository;
+    private final ServerInfoFileRepository serverInfoRepository;
+    private final ProcessInfoFileRepository processInfoRepository;
+    private final MetricScrapeService metricScrapeService;
+
+    @Value("${monitor.cluster.enabled:false}")
+    private boolean enabled;
+
+    @Value("${monitor.cluster.node-id:}")
+    private String nodeId;
+
+    /**
+     * 逗号分隔的 id=url 列表，第一个节点为元数据节点
+     */
+    @Value("${monitor.cluster.nodes:}")
+    private String nodesSpec;
+
+    @Value("${monitor.cluster.virtual-nodes:128}")
+    private int virtualNodes;
+
+    @Value("${monitor.cluster.timeout-ms:5000}")
+    private int timeoutMs;
+
+    @Value("${monitor.cluster.metadata-sync-seconds:10}")
+    private long metadataSyncSeconds;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder forwardFailures = new LongAdder();
+    private final LongAdder metadataSyncs = new LongAdder();
+
+    @Getter
+    private ConsistentHashRing ring;
+    @Getter
+    private ClusterNode self;
+    private ExecutorService executor;
+    private ScheduledExecutorService syncScheduler;
+
+    /**
+     * 节点间的响应：状态码、内容类型和完整的响应体
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class NodeResponse {
+        private final int status;
+        private final String contentType;
+        private final String retryAfter;
+        private final byte[] body;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        Set<String> ids = new LinkedHashSet<>();
+        List<ClusterNode> nodes = new ArrayList<>();
+        for (String spec : nodesSpec.split(",")) {
+            if (spec.trim().isEmpty()) {
+                continue;
+            }
+            ClusterNode node = ClusterNode.parse(spec.trim());
+            if (!ids.add(node.getId())) {
+                throw new IllegalStateException("集群节点 ID 重复：" + node.getId());
+            }
+            nodes.add(node);
+        }
+        ring = new ConsistentHashRing(nodes, virtualNodes);
+        self = nodes.stream().filter(n -> n.getId().equals(nodeId)).findFirst()
+                .orElseThrow(() -> new IllegalStateException("monitor.cluster.node-id 不在 monitor.cluster.nodes 中：" + nodeId));
+
+        FunctionCounter.builder("monitor.cluster.forward", forwarded, LongAdder::doubleValue)
+                .tag("result", "ok").description("转发到其他节点的请求数").register(Metrics.globalRegistry);
+        FunctionCounter.builder("monitor.cluster.forward", forwardFailures, LongAdder::doubleValue)
+                .tag("result", "failed").description("转发到其他节点的请求数").register(Metrics.globalRegistry);
+
+        // 每个服务只由所属节点抓取，抓取结果直接写入本地
+        metricScrapeService.setTargetFilter(serviceId -> isLocal(ownerOf(ConsistentHashRing.KeyType.SERVICE, serviceId)));
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(2, nodes.size() * 2), runnable -> {
+            Thread thread = new Thread(runnable, "cluster-io-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!isMetadataNode()) {
+            syncScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "cluster-metadata-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncScheduler.scheduleWithFixedDelay(this::syncMetadataQuietly, 0, metadataSyncSeconds, TimeUnit.SECONDS);
+        }
+        log.info("Cluster mode enabled: node {} of {}, metadata node {}", self.getId(), nodes.size(), getMetadataNode().getId());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (syncScheduler != null) {
+            syncScheduler.shutdownNow();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public List<ClusterNode> getNodes() {
+        return ring.getNodes();
+    }
+
+    public ClusterNode getMetadataNode() {
+        return ring.getNodes().get(0);
+    }
+
+    public boolean isMetadataNode() {
+        return getMetadataNode() == self;
+    }
+
+    public boolean isLocal(ClusterNode node) {
+        return node == self;
+    }
+
+    public ClusterNode ownerOf(ConsistentHashRing.KeyType type, long id) {
+        return ring.ownerOf(type, id);
+    }
+
+    /**
+     * 分发查询等节点间并行请求使用的线程池
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 向指定节点发送请求，pathAndQuery 为 /api/... 开头的路径和查询串，body 为空时不发送请求体
+     */
+    public NodeResponse exchange(ClusterNode node, String method, String pathAndQuery,
+                                 String contentType, byte[] body) throws IOException {
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL(node.getUrl() + pathAndQuery).openConnection();
+            conn.setConnectTimeout(timeoutMs);
+            conn.setReadTimeout(timeoutMs);
+            conn.setRequestMethod(method);
+            conn.setRequestProperty(FORWARDED_HEADER, self.getId());
+            if (body != null) {
+                conn.setDoOutput(true);
+                conn.setFixedLengthStreamingMode(body.length);
+                if (contentType != null) {
+                    conn.setRequestProperty("Content-Type", contentType);
+                }
+                try (OutputStream out = conn.getOutputStream()) {
+                    out.write(body);
+                }
+            }
+            int status = conn.getResponseCode();
+            InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            byte[] responseBody = in == null ? new byte[0] : readFully(in);
+            forwarded.increment();
+            return new NodeResponse(status, conn.getContentType(), conn.getHeaderField("Retry-After"), responseBody);
+        } catch (IOException e) {
+            forwardFailures.increment();
+            throw new IOException("节点 " + node.getId() + " 请求失败：" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 从元数据节点拉取服务、服务器和进程列表，有变化时替换本地副本
+     *
+     * @return 是否有变化
+     */
+    public boolean syncMetadata() throws IOException {
+        if (!enabled || isMetadataNode()) {
+            return false;
+        }
+        boolean changed = serviceInfoRepository.replaceAll(fetchList("/api/services", new TypeReference<List<ServiceInfo>>() {
+        }));
+        changed |= serverInfoRepository.replaceAll(fetchList("/api/servers", new TypeReference<List<ServerInfo>>() {
+        }));
+        changed |= processInfoRepository.replaceAll(fetchList("/api/processes", new TypeReference<List<ProcessInfo>>() {
+        }));
+        metadataSyncs.increment();
+        if (changed) {
+            log.info("Synced metadata from node {}", getMetadataNode().getId());
+        }
+        return changed;
+    }
+
+    private <T> List<T> fetchList(String path, TypeReference<List<T>> type) throws IOException {
+        NodeResponse response = exchange(getMetadataNode(), "GET", path, null, null);
+        if (response.getStatus() != HttpURLConnection.HTTP_OK) {
+            throw new IOException("元数据节点 " + path + " 返回 HTTP " + response.getStatus());
+        }
+        return objectMapper.readValue(response.getBody(), type);
+    }
+
+    private void syncMetadataQuietly() {
+        try {
+            syncMetadata();
+        } catch (Exception e) {
+            log.warn("Failed to sync metadata from node {}: {}", getMetadataNode().getId(), e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        if (!enabled) {
+            return status;
+        }
+        status.put("self", self);
+        status.put("metadataNode", getMetadataNode().getId());
+        status.put("nodes", ring.getNodes());
+        status.put("virtualNodes", virtualNodes);
+        status.put("forwarded", forwarded.sum());
+        status.put("forwardFailures", forwardFailures.sum());
+        status.put("metadataSyncs", metadataSyncs.sum());
+        return status;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = input.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
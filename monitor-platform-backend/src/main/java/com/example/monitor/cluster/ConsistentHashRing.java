@@ -0,0 +1,110 @@
+package com.example.monitor.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 一致性哈希环
+ * 每个节点在环上放置 virtualNodes 个虚拟节点，键落在顺时针方向的第一个虚拟节点所属的节点上。
+ * 增减一个节点只会移动约 1/N 的键，其余键的归属不变。环构建后不可变，查找是一次二分查找，无锁。
+ */
+public final class ConsistentHashRing {
+
+    /**
+     * 分片键的类型，同一个 ID 在不同类型下落在不同位置，避免各类序列集中在同一批节点
+     */
+    public enum KeyType {
+        SERVICE(0x5e41c3a7L), SERVER(0x2b7d9f15L), PROCESS(0x71a2e04dL);
+
+        final long salt;
+
+        KeyType(long salt) {
+            this.salt = salt;
+        }
+    }
+
+    private final List<ClusterNode> nodes;
+    private final long[] points;
+    private final ClusterNode[] owners;
+
+    public ConsistentHashRing(List<ClusterNode> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("集群至少需要一个节点");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtual-nodes 至少为 1");
+        }
+        this.nodes = new ArrayList<>(nodes);
+        int size = nodes.size() * virtualNodes;
+        long[] unsortedPoints = new long[size];
+        int[] order = new int[size];
+        int i = 0;
+        for (int n = 0; n < nodes.size(); n++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                unsortedPoints[i] = point(nodes.get(n).getId() + "#" + v);
+                order[i] = n;
+                i++;
+            }
+        }
+        // 按位置排序，位置与所属节点同步重排
+        Integer[] index = new Integer[size];
+        for (int k = 0; k < size; k++) {
+            index[k] = k;
+        }
+        Arrays.sort(index, (a, b) -> Long.compare(unsortedPoints[a], unsortedPoints[b]));
+        this.points = new long[size];
+        this.owners = new ClusterNode[size];
+        for (int k = 0; k < size; k++) {
+            points[k] = unsortedPoints[index[k]];
+            owners[k] = nodes.get(order[index[k]]);
+        }
+    }
+
+    /**
+     * 键的所属节点
+     */
+    public ClusterNode ownerOf(KeyType type, long id) {
+        long hash = mix(id ^ type.salt);
+        int pos = Arrays.binarySearch(points, hash);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        return owners[pos == points.length ? 0 : pos];
+    }
+
+    public List<ClusterNode> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * 虚拟节点位置：取 MD5 的前 8 字节，节点 ID 相近时也能均匀分布
+     */
+    private static long point(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (digest[i] & 0xff);
+            }
+            return value;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 键的位置：连续的 ID 经过 64 位混淆后在环上打散（MurmurHash3 的 fmix64）
+     */
+    static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
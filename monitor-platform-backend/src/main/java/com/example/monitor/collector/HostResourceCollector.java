@@ -0,0 +1,359 @@
+package com.example.monitor.collector;
+
+import com.example.monitor.model.ServerInfo;
+import com.example.monitor.model.ServerResource;
+import com.example.monitor.replication.ReplicationService;
+import com.example.monitor.service.ServerInfoService;
+import com.example.monitor.storage.ServerResourceFileRepository;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 主机资源采集（Linux）
+ * 读取 /proc/stat、/proc/meminfo、/proc/loadavg、/proc/net/dev 以及磁盘的 statvfs 信息，
+ * 按两次采样的差值计算 CPU 使用率和网络速率，写入本机对应服务器的资源记录。
+ * 采样间隔可以很短（如 1 秒），多次采样取平均后按 write-interval-seconds 写入一条记录，避免频繁重写数据文件。
+ * 默认关闭，通过 monitor.host-collector.enabled=true 开启。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HostResourceCollector {
+
+    private static final byte[] CPU = "cpu ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MEM_TOTAL = "MemTotal:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MEM_AVAILABLE = "MemAvailable:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LOOPBACK = "lo:".getBytes(StandardCharsets.US_ASCII);
+    private static final double KB_PER_GB = 1024.0 * 1024.0;
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+    private static final double BYTES_PER_GB = BYTES_PER_MB * 1024.0;
+
+    private final ServerInfoService serverInfoService;
+    private final ServerResourceFileRepository serverResourceRepository;
+    private final ReplicationService replicationService;
+
+    @Value("${monitor.host-collector.enabled:false}")
+    private boolean enabled;
+
+    @Value("${monitor.host-collector.interval-seconds:10}")
+    private long intervalSeconds;
+
+    @Value("${monitor.host-collector.write-interval-seconds:60}")
+    private long writeIntervalSeconds;
+
+    /**
+     * 写入哪台服务器，0 表示按主机名自动匹配或登记
+     */
+    @Value("${monitor.host-collector.server-id:0}")
+    private long serverId;
+
+    @Value("${monitor.host-collector.proc-root:/proc}")
+    private String procRoot;
+
+    @Value("${monitor.host-collector.disk-path:/}")
+    private String diskPath;
+
+    private final Timer sampleTimer = Timer.builder("monitor.collector")
+            .tag("collector", "host")
+            .description("一次主机资源采样的耗时")
+            .register(Metrics.globalRegistry);
+
+    private ProcFileReader stat;
+    private ProcFileReader meminfo;
+    private ProcFileReader loadavg;
+    private ProcFileReader netdev;
+    private FileStore diskStore;
+    private ScheduledExecutorService scheduler;
+
+    private final Sample previous = new Sample();
+    private final Sample current = new Sample();
+    private final Accumulator accumulator = new Accumulator();
+    private long lastWriteAt;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (intervalSeconds < 1) {
+            throw new IllegalStateException("monitor.host-collector.interval-seconds 至少为 1：" + intervalSeconds);
+        }
+        if (!new File(procRoot, "stat").canRead()) {
+            log.warn("Host collector disabled: {}/stat is not readable (not a Linux host?)", procRoot);
+            return;
+        }
+        open();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "host-collector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::collectQuietly, 0, intervalSeconds, TimeUnit.SECONDS);
+        log.info("Host collector started: sample every {}s, write every {}s", intervalSeconds, writeIntervalSeconds);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        for (ProcFileReader reader : new ProcFileReader[]{stat, meminfo, loadavg, netdev}) {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                    // 关闭 /proc 文件失败无需处理
+                }
+            }
+        }
+    }
+
+    private void collectQuietly() {
+        if (replicationService.isReadOnly()) {
+            // 从节点的资源数据由主节点复制过来
+            return;
+        }
+        try {
+            collect();
+        } catch (Exception e) {
+            log.warn("Host resource collection failed", e);
+        }
+    }
+
+    private void open() {
+        stat = new ProcFileReader(procRoot + "/stat");
+        meminfo = new ProcFileReader(procRoot + "/meminfo");
+        loadavg = new ProcFileReader(procRoot + "/loadavg");
+        netdev = new ProcFileReader(procRoot + "/net/dev");
+        try {
+            diskStore = Files.getFileStore(Paths.get(diskPath));
+        } catch (IOException e) {
+            log.warn("Disk usage will not be collected for {}", diskPath, e);
+        }
+    }
+
+    /**
+     * 采样一轮，距上次写入超过写入间隔时写入期间的平均值；只能在同一个线程中调用。
+     * 文件缺失时本轮抛出异常、不写入，文件恢复后下一轮继续
+     */
+    public void collect() throws IOException {
+        if (stat == null) {
+            open();
+        }
+        long start = System.nanoTime();
+        read(current);
+        if (previous.timeNanos != 0) {
+            accumulate(previous, current);
+        }
+        previous.copyFrom(current);
+        sampleTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        long now = System.currentTimeMillis();
+        if (accumulator.count > 0 && now - lastWriteAt >= TimeUnit.SECONDS.toMillis(writeIntervalSeconds)) {
+            serverResourceRepository.save(accumulator.toResource(resolveServerId(), new Date(now)));
+            accumulator.reset();
+            lastWriteAt = now;
+        }
+    }
+
+    private void read(Sample sample) throws IOException {
+        sample.timeNanos = System.nanoTime();
+
+        // cpu  user nice system idle iowait irq softirq steal guest guest_nice
+        stat.reload();
+        if (stat.findLine(CPU)) {
+            long total = 0;
+            long idle = 0;
+            for (int i = 0; i < 8; i++) {
+                long v = stat.nextLong();
+                if (v < 0) {
+                    break;
+                }
+                total += v;
+                if (i == 3 || i == 4) {
+                    idle += v;
+                }
+            }
+            sample.cpuTotal = total;
+            sample.cpuIdle = idle;
+        }
+
+        meminfo.reload();
+        sample.memTotalKb = meminfo.findLine(MEM_TOTAL) ? meminfo.nextLong() : -1;
+        sample.memAvailableKb = meminfo.findLine(MEM_AVAILABLE) ? meminfo.nextLong() : -1;
+
+        loadavg.reload();
+        sample.load1 = loadavg.nextDecimal();
+
+        // 前两行是表头；每行 "iface: rx_bytes rx_packets ... (8 列) tx_bytes ..."，忽略回环网卡
+        netdev.reload();
+        long rx = 0;
+        long tx = 0;
+        if (netdev.nextLine()) {
+            while (netdev.nextLine()) {
+                if (netdev.skipIfStartsWith(LOOPBACK) || !netdev.skipPast((byte) ':')) {
+                    continue;
+                }
+                rx += Math.max(0, netdev.nextLong());
+                for (int i = 0; i < 7; i++) {
+                    netdev.nextLong();
+                }
+                tx += Math.max(0, netdev.nextLong());
+            }
+        }
+        sample.netRxBytes = rx;
+        sample.netTxBytes = tx;
+
+        if (diskStore != null) {
+            sample.diskTotalBytes = diskStore.getTotalSpace();
+            sample.diskFreeBytes = diskStore.getUnallocatedSpace();
+            sample.diskAvailableBytes = diskStore.getUsableSpace();
+        }
+    }
+
+    private void accumulate(Sample before, Sample after) {
+        double seconds = (after.timeNanos - before.timeNanos) / 1e9;
+        if (seconds <= 0) {
+            return;
+        }
+        long totalDelta = after.cpuTotal - before.cpuTotal;
+        long idleDelta = after.cpuIdle - before.cpuIdle;
+        // 计数器回绕时差值可能为负或空闲差值超过总差值，限制在 0 到 100 之间
+        double cpu = totalDelta > 0 ? Math.min(100, Math.max(0, 100.0 * (totalDelta - idleDelta) / totalDelta)) : 0;
+
+        double memoryUsage = 0;
+        double memoryUsedGb = 0;
+        if (after.memTotalKb > 0 && after.memAvailableKb >= 0) {
+            long usedKb = after.memTotalKb - after.memAvailableKb;
+            memoryUsage = 100.0 * usedKb / after.memTotalKb;
+            memoryUsedGb = usedKb / KB_PER_GB;
+        }
+
+        // 与 df 一致：已用 = 总量 - 空闲，使用率 = 已用 / (已用 + 普通用户可用)
+        double diskUsage = 0;
+        double diskUsedGb = 0;
+        if (after.diskTotalBytes > 0) {
+            long used = after.diskTotalBytes - after.diskFreeBytes;
+            long denominator = used + after.diskAvailableBytes;
+            diskUsage = denominator > 0 ? 100.0 * used / denominator : 0;
+            diskUsedGb = used / BYTES_PER_GB;
+        }
+
+        // 网卡计数器回绕或网卡变化时差值为负，按 0 处理
+        double netIn = Math.max(0, after.netRxBytes - before.netRxBytes) / seconds / BYTES_PER_MB;
+        double netOut = Math.max(0, after.netTxBytes - before.netTxBytes) / seconds / BYTES_PER_MB;
+
+        accumulator.add(cpu, memoryUsage, memoryUsedGb, diskUsage, diskUsedGb, netIn, netOut, Math.max(0, after.load1));
+    }
+
+    private Long resolveServerId() {
+        if (serverId <= 0) {
+            ServerInfo server = serverInfoService.findOrRegisterLocalHost();
+            serverId = server.getId();
+        }
+        return serverId;
+    }
+
+    /**
+     * 一次采样的原始计数
+     */
+    private static class Sample {
+        long timeNanos;
+        long cpuTotal;
+        long cpuIdle;
+        long memTotalKb;
+        long memAvailableKb;
+        double load1;
+        long netRxBytes;
+        long netTxBytes;
+        long diskTotalBytes;
+        long diskFreeBytes;
+        long diskAvailableBytes;
+
+        void copyFrom(Sample other) {
+            timeNanos = other.timeNanos;
+            cpuTotal = other.cpuTotal;
+            cpuIdle = other.cpuIdle;
+            memTotalKb = other.memTotalKb;
+            memAvailableKb = other.memAvailableKb;
+            load1 = other.load1;
+            netRxBytes = other.netRxBytes;
+            netTxBytes = other.netTxBytes;
+            diskTotalBytes = other.diskTotalBytes;
+            diskFreeBytes = other.diskFreeBytes;
+            diskAvailableBytes = other.diskAvailableBytes;
+        }
+    }
+
+    /**
+     * 写入间隔内各采样值的累加
+     */
+    private static class Accumulator {
+        int count;
+        double cpu;
+        double memoryUsage;
+        double memoryUsed;
+        double diskUsage;
+        double diskUsed;
+        double networkIn;
+        double networkOut;
+        double load;
+
+        void add(double cpu, double memoryUsage, double memoryUsed, double diskUsage, double diskUsed,
+                 double networkIn, double networkOut, double load) {
+            this.count++;
+            this.cpu += cpu;
+            this.memoryUsage += memoryUsage;
+            this.memoryUsed += memoryUsed;
+            this.diskUsage += diskUsage;
+            this.diskUsed += diskUsed;
+            this.networkIn += networkIn;
+            this.networkOut += networkOut;
+            this.load += load;
+        }
+
+        ServerResource toResource(Long serverId, Date timestamp) {
+            ServerResource resource = new ServerResource();
+            resource.setServerId(serverId);
+            resource.setCpuUsage(cpu / count);
+            resource.setMemoryUsage(memoryUsage / count);
+            resource.setMemoryUsed(memoryUsed / count);
+            resource.setDiskUsage(diskUsage / count);
+            resource.setDiskUsed(diskUsed / count);
+            resource.setNetworkIn(networkIn / count);
+            resource.setNetworkOut(networkOut / count);
+            resource.setLoadAverage(load / count);
+            resource.setTimestamp(timestamp);
+            return resource;
+        }
+
+        void reset() {
+            count = 0;
+            cpu = 0;
+            memoryUsage = 0;
+            memoryUsed = 0;
+            diskUsage = 0;
+            diskUsed = 0;
+            networkIn = 0;
+            networkOut = 0;
+            load = 0;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.monitor.collector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * /proc 文件读取器
+ * 文件句柄保持打开，每次 {@link #reload()} 回到开头重新读入同一个字节缓冲区；
+ * 需要轮流读取大量文件（如每个 /proc/&lt;pid&gt;）时使用 {@link #load(String)}，读完即关闭，只复用缓冲区。
+ * 解析通过游标在字节上进行，不创建 String，也不使用正则。实例不是线程安全的。
+ */
+public final class ProcFileReader implements Closeable {
+
+    private final String path;
+    private RandomAccessFile file;
+    private byte[] buffer = new byte[4096];
+    private int length;
+    private int pos;
+
+    public ProcFileReader(String path) {
+        this.path = path;
+    }
+
+    /**
+     * 不绑定文件，只通过 {@link #load(String)} 使用
+     */
+    public ProcFileReader() {
+        this(null);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * 重新读取整个文件，游标回到开头
+     */
+    public void reload() throws IOException {
+        if (file == null) {
+            file = new RandomAccessFile(path, "r");
+        }
+        file.seek(0);
+        readFully(file);
+    }
+
+    /**
+     * 打开指定文件读入缓冲区后立即关闭，游标回到开头；文件不存在时抛出 FileNotFoundException
+     */
+    public void load(String otherPath) throws IOException {
+        try (RandomAccessFile other = new RandomAccessFile(otherPath, "r")) {
+            readFully(other);
+        }
+    }
+
+    private void readFully(RandomAccessFile in) throws IOException {
+        length = 0;
+        int n;
+        while ((n = in.read(buffer, length, buffer.length - length)) > 0) {
+            length += n;
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        pos = 0;
+    }
+
+    public boolean hasMore() {
+        return pos < length;
+    }
+
+    /**
+     * 游标移到下一行行首
+     */
+    public boolean nextLine() {
+        while (pos < length && buffer[pos] != '\n') {
+            pos++;
+        }
+        if (pos < length) {
+            pos++;
+        }
+        return pos < length;
+    }
+
+    /**
+     * 从游标所在行开始查找以 prefix 开头的行，找到后游标停在 prefix 之后
+     */
+    public boolean findLine(byte[] prefix) {
+        while (pos < length) {
+            if (startsWith(prefix)) {
+                pos += prefix.length;
+                return true;
+            }
+            if (!nextLine()) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 当前行（从游标开始、跳过前导空格）是否以 prefix 开头，匹配时游标移到 prefix 之后
+     */
+    public boolean skipIfStartsWith(byte[] prefix) {
+        skipSpaces();
+        if (startsWith(prefix)) {
+            pos += prefix.length;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 游标移到当前行中 c 之后；本行没有 c 时返回 false 且游标停在行尾
+     */
+    public boolean skipPast(byte c) {
+        while (pos < length && buffer[pos] != '\n') {
+            if (buffer[pos++] == c) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 游标移到当前行中最后一个 c 之后（如 /proc/&lt;pid&gt;/stat 中可能含括号的进程名）；本行没有 c 时游标不动并返回 false
+     */
+    public boolean skipPastLast(byte c) {
+        int found = -1;
+        for (int i = pos; i < length && buffer[i] != '\n'; i++) {
+            if (buffer[i] == c) {
+                found = i;
+            }
+        }
+        if (found < 0) {
+            return false;
+        }
+        pos = found + 1;
+        return true;
+    }
+
+    /**
+     * 计算游标到本行最后一个 c 之间字节的哈希，游标移到 c 之后；本行没有 c 时返回 0 且游标不动
+     */
+    public int hashUntilLast(byte c) {
+        int end = -1;
+        for (int i = pos; i < length && buffer[i] != '\n'; i++) {
+            if (buffer[i] == c) {
+                end = i;
+            }
+        }
+        if (end < 0) {
+            return 0;
+        }
+        int hash = 1;
+        for (int i = pos; i < end; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        pos = end + 1;
+        return hash;
+    }
+
+    /**
+     * 游标之后的全部内容转为字符串，'\0' 和换行替换为空格（如 /proc/&lt;pid&gt;/cmdline），超过 maxBytes 的部分截断
+     */
+    public String text(int maxBytes) {
+        int end = Math.min(length, pos + maxBytes);
+        byte[] bytes = Arrays.copyOfRange(buffer, pos, end);
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == 0 || bytes[i] == '\n') {
+                bytes[i] = ' ';
+            }
+        }
+        pos = end;
+        return new String(bytes, StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * 读取当前行的下一个非负整数，本行没有更多数字时返回 -1
+     */
+    public long nextLong() {
+        while (pos < length && buffer[pos] != '\n' && (buffer[pos] < '0' || buffer[pos] > '9')) {
+            pos++;
+        }
+        if (pos >= length || buffer[pos] == '\n') {
+            return -1;
+        }
+        long value = 0;
+        while (pos < length && buffer[pos] >= '0' && buffer[pos] <= '9') {
+            value = value * 10 + (buffer[pos++] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * 读取当前行的下一个非负小数（如 loadavg 中的 0.52），本行没有更多数字时返回 -1
+     */
+    public double nextDecimal() {
+        long integer = nextLong();
+        if (integer < 0) {
+            return -1;
+        }
+        if (pos >= length || buffer[pos] != '.') {
+            return integer;
+        }
+        pos++;
+        long fraction = 0;
+        long scale = 1;
+        while (pos < length && buffer[pos] >= '0' && buffer[pos] <= '9') {
+            if (scale < 1_000_000_000L) {
+                fraction = fraction * 10 + (buffer[pos] - '0');
+                scale *= 10;
+            }
+            pos++;
+        }
+        return integer + (double) fraction / scale;
+    }
+
+    public void skipSpaces() {
+        while (pos < length && (buffer[pos] == ' ' || buffer[pos] == '\t')) {
+            pos++;
+        }
+    }
+
+    private boolean startsWith(byte[] prefix) {
+        if (pos + prefix.length > length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[pos + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package com.example.monitor.collector;
+
+import com.example.monitor.model.ProcessInfo;
+import com.example.monitor.replication.ReplicationService;
+import com.example.monitor.service.ServerInfoService;
+import com.example.monitor.storage.ProcessInfoFileRepository;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本机进程自动发现（Linux）
+ * 周期扫描 /proc，按命令行识别常见服务进程（Java 应用、MySQL、Nginx、Redis 等）并同步到进程列表：
+ * 新出现的进程登记或恢复为 running，消失的进程置为 stopped。与上一轮扫描结果做差，已知进程只读取 stat
+ * 校验启动时间和进程名（识别进程号复用和 exec），只有新出现的进程才读取 cmdline；只有出生和消亡才产生写入，
+ * 且每轮最多落盘一次，进程没有变化时不重写进程文件。
+ * 同一服务的子进程（如 nginx worker、postgres 后台进程）只登记最上层的一个。
+ * 默认关闭，通过 monitor.process-discovery.enabled=true 开启。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProcessDiscovery {
+
+    private static final int MAX_CMDLINE_BYTES = 64 * 1024;
+    private static final int MAX_COMMAND_LENGTH = 1024;
+
+    /**
+     * 识别规则：按可执行文件名（argv[0] 去掉路径）顺序匹配
+     */
+    private static final Rule[] RULES = {
+        new Rule("java", "Java应用服务", "app"),
+        new Rule("mysqld", "MySQL", "database"),
+        new Rule("mariadbd", "MySQL", "database"),
+        new Rule("postgres", "PostgreSQL", "database"),
+        new Rule("mongod", "MongoDB", "database"),
+        new Rule("redis-server", "Redis", "cache"),
+        new Rule("memcached", "Memcached", "cache"),
+        new Rule("nginx", "Nginx", "app"),
+        new Rule("httpd", "Apache", "app"),
+        new Rule("apache2", "Apache", "app"),
+        new Rule("node", "Node.js应用", "app"),
+        new Rule("python", "Python应用", "app"),
+        new Rule("dockerd", "Docker", "system"),
+        new Rule("sshd", "SSH", "system"),
+    };
+
+    private final ServerInfoService serverInfoService;
+    private final ProcessInfoFileRepository processInfoRepository;
+    private final ReplicationService replicationService;
+
+    @Value("${monitor.process-discovery.enabled:false}")
+    private boolean enabled;
+
+    @Value("${monitor.process-discovery.interval-seconds:30}")
+    private long intervalSeconds;
+
+    /**
+     * 本机对应的服务器 ID，0 表示按主机名自动匹配或登记
+     */
+    @Value("${monitor.process-discovery.server-id:0}")
+    private long serverId;
+
+    @Value("${monitor.process-discovery.proc-root:/proc}")
+    private String procRoot;
+
+    private final Timer scanTimer = Timer.builder("monitor.collector")
+            .tag("collector", "process-discovery")
+            .description("一轮进程发现扫描的耗时")
+            .register(Metrics.globalRegistry);
+
+    private final ProcFileReader reader = new ProcFileReader();
+    private Map<Integer, Entry> previous = new HashMap<>();
+    private boolean reconciled;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (!new File(procRoot, "self/stat").canRead()) {
+            log.warn("Process discovery disabled: {}/self/stat is not readable (not a Linux host?)", procRoot);
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "process-discovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::scanQuietly, 0, intervalSeconds, TimeUnit.SECONDS);
+        log.info("Process discovery started: scan every {}s", intervalSeconds);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void scanQuietly() {
+        if (replicationService.isReadOnly()) {
+            // 从节点的进程列表由主节点复制过来
+            return;
+        }
+        try {
+            scan();
+        } catch (Exception e) {
+            log.warn("Process discovery failed", e);
+        }
+    }
+
+    /**
+     * 扫描一轮并同步进程列表
+     *
+     * @return 本轮新增或变更的进程数
+     */
+    public synchronized int scan() {
+        long start = System.nanoTime();
+        String[] names = new File(procRoot).list();
+        if (names == null) {
+            return 0;
+        }
+
+        // 1. 读取所有进程的 stat，未变化的沿用上一轮的识别结果
+        Map<Integer, Entry> current = new HashMap<>(names.length * 2);
+        List<Entry> born = new ArrayList<>();
+        for (String name : names) {
+            int pid = parsePid(name);
+            if (pid <= 0) {
+                continue;
+            }
+            Entry entry = readStat(pid);
+            if (entry == null) {
+                continue;
+            }
+            Entry known = previous.get(pid);
+            if (known != null && known.startTicks == entry.startTicks && known.commHash == entry.commHash) {
+                current.put(pid, known);
+                continue;
+            }
+            classify(entry);
+            current.put(pid, entry);
+            if (entry.rule != null) {
+                born.add(entry);
+            }
+        }
+
+        // 2. 同一服务的子进程不单独登记
+        List<Entry> births = new ArrayList<>();
+        for (Entry entry : born) {
+            Entry parent = current.get(entry.ppid);
+            if (parent == null || parent.rule != entry.rule) {
+                births.add(entry);
+            }
+        }
+
+        // 3. 上一轮登记过、本轮已不存在（或进程号被复用）的进程
+        List<Entry> deaths = new ArrayList<>();
+        for (Entry known : previous.values()) {
+            if (known.processId != null && current.get(known.pid) != known) {
+                deaths.add(known);
+            }
+        }
+
+        int changed = 0;
+        if (!births.isEmpty() || !deaths.isEmpty() || !reconciled) {
+            changed = sync(current, births, deaths);
+            reconciled = true;
+        }
+        previous = current;
+        scanTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return changed;
+    }
+
+    private int sync(Map<Integer, Entry> current, List<Entry> births, List<Entry> deaths) {
+        Long localServerId = resolveServerId();
+        List<ProcessInfo> local = processInfoRepository.findByServerId(localServerId);
+        Map<String, ProcessInfo> runningByPid = new HashMap<>();
+        for (ProcessInfo process : local) {
+            if ("running".equals(process.getStatus()) && process.getPid() != null) {
+                runningByPid.put(process.getPid(), process);
+            }
+        }
+
+        Set<ProcessInfo> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Entry entry : deaths) {
+            ProcessInfo process = processInfoRepository.findById(entry.processId);
+            if (process != null && String.valueOf(entry.pid).equals(process.getPid())) {
+                runningByPid.remove(process.getPid());
+                markStopped(process);
+                changed.add(process);
+            }
+        }
+
+        // 平台重启后的第一轮：本机登记为 running、但进程已不存在的一并置为 stopped
+        if (!reconciled) {
+            for (ProcessInfo process : new ArrayList<>(runningByPid.values())) {
+                int pid = parsePid(process.getPid());
+                if (pid > 0 && !current.containsKey(pid)) {
+                    runningByPid.remove(process.getPid());
+                    markStopped(process);
+                    changed.add(process);
+                }
+            }
+        }
+
+        for (Entry entry : births) {
+            String pid = String.valueOf(entry.pid);
+            ProcessInfo process = runningByPid.get(pid);
+            if (process == null) {
+                process = findStopped(local, entry);
+            }
+            if (process == null) {
+                process = new ProcessInfo();
+                process.setServerId(localServerId);
+                process.setName(entry.name);
+                process.setType(entry.rule.type);
+                process.setDescription("自动发现");
+                process.setAutoStart(false);
+            } else if (pid.equals(process.getPid()) && "running".equals(process.getStatus())) {
+                // 已登记且状态正确（如平台重启前登记的），只接管不写入
+                entry.processId = process.getId();
+                continue;
+            }
+            process.setPid(pid);
+            process.setCommand(entry.command);
+            process.setUser(owner(entry.pid));
+            process.setStatus("running");
+            changed.add(process);
+            runningByPid.put(pid, process);
+            entry.process = process;
+        }
+
+        if (!changed.isEmpty()) {
+            processInfoRepository.saveAll(new ArrayList<>(changed));
+        }
+        for (Entry entry : births) {
+            if (entry.process != null) {
+                entry.processId = entry.process.getId();
+                entry.process = null;
+            }
+        }
+        if (!changed.isEmpty()) {
+            log.info("Process discovery: {} births, {} deaths, {} process records updated",
+                    births.size(), deaths.size(), changed.size());
+        }
+        return changed.size();
+    }
+
+    /**
+     * 同名同命令、已停止（或通过启动脚本启动、尚无进程号）的进程记录视为同一个服务
+     */
+    private static ProcessInfo findStopped(List<ProcessInfo> local, Entry entry) {
+        for (ProcessInfo process : local) {
+            if ((!"running".equals(process.getStatus()) || process.getPid() == null)
+                    && entry.name.equals(process.getName())
+                    && entry.command.equals(process.getCommand())) {
+                return process;
+            }
+        }
+        return null;
+    }
+
+    private static void markStopped(ProcessInfo process) {
+        process.setStatus("stopped");
+        process.setPid(null);
+    }
+
+    /**
+     * stat: pid (comm) state ppid ... 第 22 列为启动时间；进程已退出时返回 null
+     */
+    private Entry readStat(int pid) {
+        try {
+            reader.load(procRoot + "/" + pid + "/stat");
+        } catch (IOException e) {
+            return null;
+        }
+        if (!reader.skipPast((byte) '(')) {
+            return null;
+        }
+        Entry entry = new Entry(pid);
+        entry.commHash = reader.hashUntilLast((byte) ')');
+        entry.ppid = (int) reader.nextLong();
+        long value = 0;
+        for (int column = 5; column <= 22; column++) {
+            value = reader.nextLong();
+        }
+        entry.startTicks = value;
+        return entry;
+    }
+
+    private void classify(Entry entry) {
+        String command;
+        try {
+            reader.load(procRoot + "/" + entry.pid + "/cmdline");
+            command = reader.text(MAX_CMDLINE_BYTES);
+        } catch (IOException e) {
+            return;
+        }
+        // 内核线程没有命令行
+        if (command.isEmpty()) {
+            return;
+        }
+        String executable = command;
+        int space = executable.indexOf(' ');
+        if (space > 0) {
+            executable = executable.substring(0, space);
+        }
+        executable = executable.substring(executable.lastIndexOf('/') + 1);
+        for (Rule rule : RULES) {
+            if (rule.matches(executable)) {
+                entry.rule = rule;
+                entry.command = command.length() > MAX_COMMAND_LENGTH ? command.substring(0, MAX_COMMAND_LENGTH) : command;
+                entry.name = rule == RULES[0] ? javaName(command) : rule.name;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Java 进程按 -jar 包名或主类区分，例如 "Java应用服务 (app.jar)"
+     */
+    private static String javaName(String command) {
+        String[] args = command.split(" ");
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-jar") && i + 1 < args.length) {
+                String jar = args[i + 1];
+                return RULES[0].name + " (" + jar.substring(jar.lastIndexOf('/') + 1) + ")";
+            }
+            if (arg.equals("-cp") || arg.equals("-classpath") || arg.equals("--class-path")) {
+                i++;
+            } else if (!arg.isEmpty() && !arg.startsWith("-")) {
+                return RULES[0].name + " (" + arg.substring(arg.lastIndexOf('.') + 1) + ")";
+            }
+        }
+        return RULES[0].name;
+    }
+
+    private String owner(int pid) {
+        try {
+            return Files.getOwner(Paths.get(procRoot, String.valueOf(pid))).getName();
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private Long resolveServerId() {
+        if (serverId <= 0) {
+            serverId = serverInfoService.findOrRegisterLocalHost().getId();
+        }
+        return serverId;
+    }
+
+    private static int parsePid(String pid) {
+        if (pid == null || pid.isEmpty() || pid.length() > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < pid.length(); i++) {
+            char c = pid.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static class Rule {
+        final String executable;
+        final String name;
+        final String type;
+
+        Rule(String executable, String name, String type) {
+            this.executable = executable;
+            this.name = name;
+            this.type = type;
+        }
+
+        /**
+         * 允许带版本号或进程标题后缀（python3.11、nginx:），但不匹配 node_exporter 这类其他程序
+         */
+        boolean matches(String file) {
+            if (!file.startsWith(executable)) {
+                return false;
+            }
+            if (file.length() == executable.length()) {
+                return true;
+            }
+            char next = file.charAt(executable.length());
+            return !Character.isLetter(next) && next != '_' && next != '-';
+        }
+    }
+
+    /**
+     * 一次扫描中看到的进程；未命中规则的进程也保留，以便下一轮跳过 cmdline 读取
+     */
+    private static class Entry {
+        final int pid;
+        int ppid;
+        long startTicks;
+        int commHash;
+        Rule rule;
+        String name;
+        String command;
+        /**
+         * 对应的进程记录 ID，未登记（子进程或未识别）时为空
+         */
+        Long processId;
+        ProcessInfo process;
+
+        Entry(int pid) {
+            this.pid = pid;
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package com.example.monitor.collector;
+
+import com.example.monitor.model.ProcessInfo;
+import com.example.monitor.model.ProcessResource;
+import com.example.monitor.replication.ReplicationService;
+import com.example.monitor.service.ServerInfoService;
+import com.example.monitor.storage.ProcessInfoFileRepository;
+import com.example.monitor.storage.ProcessResourceFileRepository;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程资源采集（Linux）
+ * 对本机所有 running 状态、带有效 pid 的进程，读取 /proc/&lt;pid&gt;/stat、status、io 和 fd 目录，
+ * 按两次采样的差值计算 CPU 使用率和磁盘读写速率，连同常驻内存、线程数、文件描述符数写入进程资源记录。
+ * 所有进程由同一个采集线程轮流读取，共用一个读取缓冲区，每个文件读完即关闭，不随进程数增加线程或常驻句柄；
+ * 各进程的采样在 write-interval-seconds 内取平均，每轮写入只落盘一次。
+ * /proc/&lt;pid&gt;/net/dev 是整个网络命名空间的统计，不能归属到单个进程，因此网络速率不采集。
+ * 默认关闭，通过 monitor.process-collector.enabled=true 开启。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProcessResourceCollector {
+
+    private static final byte[] VM_RSS = "VmRSS:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MEM_TOTAL = "MemTotal:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] READ_BYTES = "read_bytes:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WRITE_BYTES = "write_bytes:".getBytes(StandardCharsets.US_ASCII);
+
+    private final ServerInfoService serverInfoService;
+    private final ProcessInfoFileRepository processInfoRepository;
+    private final ProcessResourceFileRepository processResourceRepository;
+    private final ReplicationService replicationService;
+
+    @Value("${monitor.process-collector.enabled:false}")
+    private boolean enabled;
+
+    @Value("${monitor.process-collector.interval-seconds:10}")
+    private long intervalSeconds;
+
+    @Value("${monitor.process-collector.write-interval-seconds:60}")
+    private long writeIntervalSeconds;
+
+    /**
+     * 本机对应的服务器 ID，0 表示按主机名自动匹配或登记；只采集 serverId 为空或等于本机的进程
+     */
+    @Value("${monitor.process-collector.server-id:0}")
+    private long serverId;
+
+    @Value("${monitor.process-collector.proc-root:/proc}")
+    private String procRoot;
+
+    /**
+     * 内核时钟频率（USER_HZ），/proc/&lt;pid&gt;/stat 中的 CPU 时间以此为单位，主流发行版均为 100
+     */
+    @Value("${monitor.process-collector.clock-ticks:100}")
+    private int clockTicks;
+
+    private final Timer passTimer = Timer.builder("monitor.collector")
+            .tag("collector", "process")
+            .description("一轮进程资源采样的耗时")
+            .register(Metrics.globalRegistry);
+
+    private final ProcFileReader reader = new ProcFileReader();
+    private final long[] statFields = new long[22 - 4 + 1];
+    private final Map<Long, ProcessState> states = new HashMap<>();
+    private ScheduledExecutorService scheduler;
+    private long lastWriteAt;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (intervalSeconds < 1) {
+            throw new IllegalStateException("monitor.process-collector.interval-seconds 至少为 1：" + intervalSeconds);
+        }
+        if (!new File(procRoot, "self/stat").canRead()) {
+            log.warn("Process collector disabled: {}/self/stat is not readable (not a Linux host?)", procRoot);
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "process-collector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::collectQuietly, 0, intervalSeconds, TimeUnit.SECONDS);
+        log.info("Process collector started: sample every {}s, write every {}s", intervalSeconds, writeIntervalSeconds);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void collectQuietly() {
+        if (replicationService.isReadOnly()) {
+            // 从节点的资源数据由主节点复制过来
+            return;
+        }
+        try {
+            collect();
+        } catch (Exception e) {
+            log.warn("Process resource collection failed", e);
+        }
+    }
+
+    /**
+     * 采样一轮；只能在同一个线程中调用
+     */
+    public void collect() {
+        long start = System.nanoTime();
+        long localServerId = resolveServerId();
+        long memTotalKb = readMemTotalKb();
+        double systemUptime = readUptimeSeconds();
+
+        List<ProcessInfo> running = processInfoRepository.findByStatus("running");
+        Map<Long, ProcessState> seen = new HashMap<>(running.size() * 2);
+        for (ProcessInfo process : running) {
+            int pid = parsePid(process.getPid());
+            if (pid <= 0 || (process.getServerId() != null && process.getServerId() != localServerId)) {
+                continue;
+            }
+            ProcessState state = states.get(process.getId());
+            if (state == null || state.pid != pid) {
+                state = new ProcessState(procRoot, pid);
+            }
+            if (sample(state, memTotalKb, systemUptime)) {
+                seen.put(process.getId(), state);
+            }
+        }
+        // 已停止、已删除或 pid 已不存在的进程丢弃其状态
+        states.keySet().retainAll(seen.keySet());
+        states.putAll(seen);
+        passTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        long now = System.currentTimeMillis();
+        if (now - lastWriteAt >= TimeUnit.SECONDS.toMillis(writeIntervalSeconds)) {
+            List<ProcessResource> resources = new ArrayList<>();
+            Date timestamp = new Date(now);
+            for (Map.Entry<Long, ProcessState> entry : states.entrySet()) {
+                if (entry.getValue().count > 0) {
+                    resources.add(entry.getValue().toResource(entry.getKey(), timestamp));
+                    entry.getValue().reset();
+                }
+            }
+            if (!resources.isEmpty()) {
+                processResourceRepository.saveAll(resources);
+            }
+            lastWriteAt = now;
+        }
+    }
+
+    /**
+     * 读取一个进程的计数器；进程已退出时返回 false
+     */
+    private boolean sample(ProcessState state, long memTotalKb, double systemUptime) {
+        long now = System.nanoTime();
+        // stat: pid (comm) state ppid pgrp session tty_nr tpgid flags minflt cminflt majflt cmajflt
+        //       utime stime cutime cstime priority nice num_threads itrealvalue starttime ...
+        try {
+            reader.load(state.statPath);
+        } catch (IOException e) {
+            return false;
+        }
+        if (!reader.skipPastLast((byte) ')')) {
+            return false;
+        }
+        long[] fields = statFields;
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = reader.nextLong();
+        }
+        // fields 下标从 ppid（第 4 列）开始
+        long cpuTicks = fields[14 - 4] + fields[15 - 4];
+        int threads = (int) fields[20 - 4];
+        long startTicks = fields[22 - 4];
+
+        long rssKb = -1;
+        try {
+            reader.load(state.statusPath);
+            if (reader.findLine(VM_RSS)) {
+                rssKb = reader.nextLong();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+
+        // io 只对同一用户或有 CAP_SYS_PTRACE 的进程可读，读不到时不再重试
+        long readBytes = -1;
+        long writeBytes = -1;
+        if (state.ioReadable) {
+            try {
+                reader.load(state.ioPath);
+                readBytes = reader.findLine(READ_BYTES) ? reader.nextLong() : -1;
+                writeBytes = reader.findLine(WRITE_BYTES) ? reader.nextLong() : -1;
+            } catch (IOException e) {
+                // 无权限时抛出的同样是 FileNotFoundException
+                state.ioReadable = false;
+            }
+        }
+
+        String[] fds = state.fdDir.list();
+        int fdCount = fds != null ? fds.length : -1;
+
+        // 进程号被复用时（启动时间不同）重新建立基线
+        if (state.sampledAt != 0 && state.startTicks == startTicks) {
+            double seconds = (now - state.sampledAt) / 1e9;
+            if (seconds > 0) {
+                double cpu = Math.max(0, cpuTicks - state.cpuTicks) * 100.0 / clockTicks / seconds;
+                double readRate = readBytes >= 0 && state.readBytes >= 0
+                        ? Math.max(0, readBytes - state.readBytes) / 1024.0 / seconds : -1;
+                double writeRate = writeBytes >= 0 && state.writeBytes >= 0
+                        ? Math.max(0, writeBytes - state.writeBytes) / 1024.0 / seconds : -1;
+                double memoryMb = rssKb >= 0 ? rssKb / 1024.0 : -1;
+                double memoryPercent = rssKb >= 0 && memTotalKb > 0 ? 100.0 * rssKb / memTotalKb : -1;
+                long uptime = systemUptime > 0 ? (long) (systemUptime - (double) startTicks / clockTicks) : -1;
+                state.add(cpu, memoryMb, memoryPercent, threads, fdCount, readRate, writeRate, uptime);
+            }
+        }
+        state.sampledAt = now;
+        state.startTicks = startTicks;
+        state.cpuTicks = cpuTicks;
+        state.readBytes = readBytes;
+        state.writeBytes = writeBytes;
+        return true;
+    }
+
+    private long readMemTotalKb() {
+        try {
+            reader.load(procRoot + "/meminfo");
+            return reader.findLine(MEM_TOTAL) ? reader.nextLong() : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private double readUptimeSeconds() {
+        try {
+            reader.load(procRoot + "/uptime");
+            return reader.nextDecimal();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private long resolveServerId() {
+        if (serverId <= 0) {
+            serverId = serverInfoService.findOrRegisterLocalHost().getId();
+        }
+        return serverId;
+    }
+
+    private static int parsePid(String pid) {
+        if (pid == null || pid.isEmpty() || pid.length() > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < pid.length(); i++) {
+            char c = pid.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * 单个进程上一次采样的计数和写入间隔内的累加值
+     */
+    private static class ProcessState {
+        final int pid;
+        final String statPath;
+        final String statusPath;
+        final String ioPath;
+        final File fdDir;
+        boolean ioReadable = true;
+
+        long sampledAt;
+        long startTicks;
+        long cpuTicks;
+        long readBytes = -1;
+        long writeBytes = -1;
+
+        int count;
+        double cpu;
+        double memory;
+        double memoryPercent;
+        long threads;
+        long fds;
+        double readRate;
+        double writeRate;
+        long uptime = -1;
+        /**
+         * 内存、句柄和 IO 在部分采样中可能读不到，各自按有值的采样数求平均
+         */
+        int memoryCount;
+        int fdCount;
+        int ioCount;
+
+        ProcessState(String procRoot, int pid) {
+            this.pid = pid;
+            String dir = procRoot + "/" + pid;
+            this.statPath = dir + "/stat";
+            this.statusPath = dir + "/status";
+            this.ioPath = dir + "/io";
+            this.fdDir = new File(dir, "fd");
+        }
+
+        void add(double cpu, double memory, double memoryPercent, int threads, int fds,
+                 double readRate, double writeRate, long uptime) {
+            this.count++;
+            this.cpu += cpu;
+            this.threads += threads;
+            this.uptime = uptime;
+            if (memory >= 0) {
+                this.memoryCount++;
+                this.memory += memory;
+                this.memoryPercent += Math.max(0, memoryPercent);
+            }
+            if (fds >= 0) {
+                this.fdCount++;
+                this.fds += fds;
+            }
+            if (readRate >= 0 && writeRate >= 0) {
+                this.ioCount++;
+                this.readRate += readRate;
+                this.writeRate += writeRate;
+            }
+        }
+
+        ProcessResource toResource(Long processId, Date timestamp) {
+            ProcessResource resource = new ProcessResource();
+            resource.setProcessId(processId);
+            resource.setCpuUsage(cpu / count);
+            if (memoryCount > 0) {
+                resource.setMemoryUsage(memory / memoryCount);
+                resource.setMemoryPercent(memoryPercent / memoryCount);
+            }
+            resource.setThreadCount((int) (threads / count));
+            if (fdCount > 0) {
+                resource.setHandleCount((int) (fds / fdCount));
+            }
+            if (ioCount > 0) {
+                resource.setDiskReadRate(readRate / ioCount);
+                resource.setDiskWriteRate(writeRate / ioCount);
+            }
+            if (uptime >= 0) {
+                resource.setUptime(uptime);
+            }
+            resource.setStatus("running");
+            resource.setTimestamp(timestamp);
+            return resource;
+        }
+
+        void reset() {
+            count = 0;
+            cpu = 0;
+            memory = 0;
+            memoryPercent = 0;
+            threads = 0;
+            fds = 0;
+            readRate = 0;
+            writeRate = 0;
+            memoryCount = 0;
+            fdCount = 0;
+            ioCount = 0;
+        }
+    }
+}
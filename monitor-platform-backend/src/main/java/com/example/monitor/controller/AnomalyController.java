@@ -1,6 +1,8 @@
 package com.example.monitor.controller;
 
+import com.example.monitor.model.AnomalyCorrelationGroup;
 import com.example.monitor.model.AnomalyEvent;
+import com.example.monitor.service.AnomalyCorrelationService;
 import com.example.monitor.service.AnomalyDetectionService;
 import com.example.monitor.storage.AnomalyEventFileRepository;
 import lombok.Data;
@@ -17,6 +19,7 @@ public class AnomalyController {
 
     private final AnomalyEventFileRepository anomalyEventRepository;
     private final AnomalyDetectionService anomalyDetectionService;
+    private final AnomalyCorrelationService anomalyCorrelationService;
 
     @GetMapping
     public List<AnomalyEvent> listAnomalies(@RequestParam(name = "serviceId", required = false) Long serviceId,
@@ -36,6 +39,14 @@ public class AnomalyController {
         return anomalyDetectionService.detectForAllServices();
     }
 
+    /**
+     * 异常关联分组及根因候选，活跃分组在前
+     */
+    @GetMapping("/correlations")
+    public List<AnomalyCorrelationGroup> listCorrelations(@RequestParam(name = "limit", defaultValue = "20") int limit) {
+        return anomalyCorrelationService.getRecentGroups(limit);
+    }
+
     @Data
     public static class DetectRequest {
         private Long serviceId;
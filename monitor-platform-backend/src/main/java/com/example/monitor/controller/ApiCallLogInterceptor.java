@@ -0,0 +1,74 @@
+package com.example.monitor.controller;
+
+import com.example.monitor.model.ApiCallLogModel;
+import com.example.monitor.replication.ReplicationService;
+import com.example.monitor.service.ApiAuthService;
+import com.example.monitor.service.ApiManagementService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 把平台自身 /api/** 接口的每次调用写入 API 调用日志
+ * 只在请求结束时构造一条记录放入日志队列，不做任何 I/O；请求带 X-Api-Key 时记录校验通过的密钥 ID。
+ * 默认关闭，通过 monitor.api-log.record-requests=true 开启；复制模式下的从节点不记录，调用日志由主节点复制过来。
+ */
+@Component
+@RequiredArgsConstructor
+public class ApiCallLogInterceptor implements HandlerInterceptor, WebMvcConfigurer {
+
+    private static final String START_ATTRIBUTE = ApiCallLogInterceptor.class.getName() + ".start";
+
+    private final ApiManagementService apiManagementService;
+    private final ApiAuthService apiAuthService;
+    private final ReplicationService replicationService;
+
+    @Value("${monitor.api-log.record-requests:false}")
+    private boolean enabled;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (enabled) {
+            registry.addInterceptor(this).addPathPatterns("/api/**");
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        if (!(start instanceof Long) || replicationService.isReadOnly()) {
+            return;
+        }
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        ApiCallLogModel call = new ApiCallLogModel();
+        call.setMethod(request.getMethod());
+        call.setPath(pattern != null ? pattern.toString() : request.getRequestURI());
+        call.setStatusCode(ex != null && response.getStatus() < 400 ? 500 : response.getStatus());
+        call.setDurationMs((System.nanoTime() - (Long) start) / 1_000_000.0);
+        call.setClientIp(request.getRemoteAddr());
+        String key = request.getHeader("X-Api-Key");
+        if (key != null) {
+            ApiAuthService.AuthResult auth = apiAuthService.verify(key, null);
+            if (auth.isValid()) {
+                call.setAuthKeyId(auth.getKeyId());
+            }
+        }
+        if (ex != null) {
+            call.setErrorMessage(ex.getMessage());
+        }
+        apiManagementService.recordCall(call);
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.monitor.controller;
+
+import com.example.monitor.model.ApiAuthKeyModel;
+import com.example.monitor.model.ApiCallLogModel;
+import com.example.monitor.service.ApiAuthService;
+import com.example.monitor.service.ApiLatencyService;
+import com.example.monitor.service.ApiManagementService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/api-management")
+@RequiredArgsConstructor
+@CrossOrigin
+public class ApiController {
+
+    private final ApiManagementService apiManagementService;
+    private final ApiLatencyService apiLatencyService;
+    private final ApiAuthService apiAuthService;
+
+    /**
+     * 批量上报调用记录（网关或 SDK 调用），返回接收与因队列已满被丢弃的条数
+     */
+    @PostMapping("/calls")
+    public Map<String, Object> recordCalls(@RequestBody List<ApiCallLogModel> calls) {
+        int accepted = 0;
+        for (ApiCallLogModel call : calls) {
+            if (apiManagementService.recordCall(call)) {
+                accepted++;
+            }
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("accepted", accepted);
+        result.put("dropped", calls.size() - accepted);
+        return result;
+    }
+
+    @GetMapping("/calls")
+    public ResponseEntity<Object> findCalls(@RequestParam(required = false) Long start,
+                                            @RequestParam(required = false) Long end,
+                                            @RequestParam(required = false) Long serviceId,
+                                            @RequestParam(required = false) Long endpointId,
+                                            @RequestParam(required = false) String path,
+                                            @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.ok(apiManagementService.findCalls(start, end, serviceId, endpointId, path, limit));
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        }
+    }
+
+    @GetMapping("/calls/stats")
+    public Map<String, Object> callLogStats() {
+        return apiManagementService.getCallLogStats();
+    }
+
+    /**
+     * 接口延迟统计序列（p50/p95/p99、错误率、QPS），endpoint 为空时统计全部接口
+     * GET /api/api-management/stats/latency?endpoint=&start=&end=&step=
+     */
+    @GetMapping("/stats/latency")
+    public ResponseEntity<Object> latencySeries(@RequestParam(required = false) String endpoint,
+                                                @RequestParam(required = false) Long start,
+                                                @RequestParam(required = false) Long end,
+                                                @RequestParam(required = false) Long step) {
+        try {
+            return ResponseEntity.ok(apiLatencyService.series(endpoint, start, end, step));
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        }
+    }
+
+    /**
+     * 时间范围内各接口的汇总统计，按调用次数降序
+     */
+    @GetMapping("/stats/endpoints")
+    public ResponseEntity<Object> endpointStats(@RequestParam(required = false) Long start,
+                                                @RequestParam(required = false) Long end) {
+        try {
+            return ResponseEntity.ok(apiLatencyService.endpoints(start, end));
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        }
+    }
+
+    @GetMapping("/keys")
+    public List<ApiAuthKeyModel> listKeys() {
+        return apiAuthService.listKeys();
+    }
+
+    /**
+     * 新建密钥，响应中的 secret 为原始密钥，只返回这一次
+     */
+    @PostMapping("/keys")
+    public ResponseEntity<Object> createKey(@RequestBody ApiAuthKeyModel request) {
+        try {
+            return ResponseEntity.ok(apiAuthService.createKey(request));
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        }
+    }
+
+    @PutMapping("/keys/{id}/status")
+    public ResponseEntity<Object> updateKeyStatus(@PathVariable Long id, @RequestParam String status) {
+        try {
+            return ResponseEntity.ok(apiAuthService.updateStatus(id, status));
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        }
+    }
+
+    @DeleteMapping("/keys/{id}")
+    public Map<String, Object> deleteKey(@PathVariable Long id) {
+        apiAuthService.deleteKey(id);
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        return result;
+    }
+
+    /**
+     * 校验密钥（网关调用），密钥放在 X-Api-Key 请求头中
+     * POST /api/api-management/keys/verify?serviceId=
+     */
+    @PostMapping("/keys/verify")
+    public ApiAuthService.AuthResult verifyKey(@RequestHeader(value = "X-Api-Key", required = false) String key,
+                                               @RequestParam(required = false) Long serviceId) {
+        return apiAuthService.verify(key, serviceId);
+    }
+
+    /**
+     * 修改密钥的限流配置（每个接口每秒请求数与突发数），参数为空表示使用默认值
+     */
+    @PutMapping("/keys/{id}/rate-limit")
+    public ResponseEntity<Object> updateKeyRateLimit(@PathVariable Long id,
+                                                     @RequestParam(required = false) Double rate,
+                                                     @RequestParam(required = false) Integer burst) {
+        try {
+            return ResponseEntity.ok(apiAuthService.updateRateLimit(id, rate, burst));
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        }
+    }
+
+    /**
+     * 网关转发调用前的准入检查：校验 X-Api-Key 并按（密钥，接口）限流
+     * 放行返回 200，密钥无效返回 401 / 403，被限流返回 429 并带 Retry-After
+     * POST /api/api-management/access?serviceId=&endpointId=&method=&path=
+     */
+    @PostMapping("/access")
+    public ResponseEntity<ApiManagementService.AccessDecision> access(
+            @RequestHeader(value = "X-Api-Key", required = false) String key,
+            @RequestParam(required = false) Long serviceId,
+            @RequestParam(required = false) Long endpointId,
+            @RequestParam(required = false) String method,
+            @RequestParam(required = false) String path,
+            @RequestParam(required = false) String clientIp) {
+        ApiCallLogModel call = new ApiCallLogModel();
+        call.setServiceId(serviceId);
+        call.setEndpointId(endpointId);
+        call.setMethod(method);
+        call.setPath(path);
+        call.setClientIp(clientIp);
+        ApiManagementService.AccessDecision decision = apiManagementService.authorize(key, call);
+        if (decision.isAllowed()) {
+            return ResponseEntity.ok(decision);
+        }
+        if ("RATE_LIMITED".equals(decision.getStatus())) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf((decision.getRetryAfterMs() + 999) / 1000))
+                    .body(decision);
+        }
+        HttpStatus status = "FORBIDDEN".equals(decision.getStatus()) ? HttpStatus.FORBIDDEN : HttpStatus.UNAUTHORIZED;
+        return ResponseEntity.status(status).body(decision);
+    }
+
+    @GetMapping("/rate-limits/stats")
+    public Map<String, Object> rateLimitStats() {
+        return apiManagementService.getRateLimitStats();
+    }
+
+    @GetMapping("/keys/stats")
+    public Map<String, Object> keyStats() {
+        return apiAuthService.getStats();
+    }
+
+    private static ResponseEntity<Object> badRequest(IllegalArgumentException e) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", false);
+        result.put("message", e.getMessage());
+        return ResponseEntity.badRequest().body(result);
+    }
+}
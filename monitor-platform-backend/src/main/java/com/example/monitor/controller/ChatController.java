@@ -3,14 +3,26 @@ package com.example.monitor.controller;
 import com.example.monitor.service.McpChatService;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+@Slf4j
 @RestController
 @RequestMapping("/api/chat")
 @RequiredArgsConstructor
 @CrossOrigin
 public class ChatController {
 
+    private static final long STREAM_TIMEOUT_MS = 60_000L;
+
     private final McpChatService mcpChatService;
 
     @PostMapping("/query")
@@ -19,6 +31,53 @@ public class ChatController {
         return new ChatResponse(response);
     }
 
+    /**
+     * 流式回答（Server-Sent Events）：回答的每一段算出后立即以 chunk 事件发送，
+     * 数据为 {"text": "..."}，按顺序拼接即为完整回答；结束时发送 done 事件，出错时发送 failed 事件。
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam String query) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        try {
+            mcpChatService.streamQuery(query, text -> send(emitter, "chunk", text))
+                .whenComplete((ignored, error) -> {
+                    if (error == null) {
+                        trySend(emitter, "done", "");
+                    } else if (!(unwrap(error) instanceof UncheckedIOException)) {
+                        log.warn("Chat stream failed for query: {}", query, unwrap(error));
+                        trySend(emitter, "failed", "查询失败：" + unwrap(error).getMessage());
+                    }
+                    emitter.complete();
+                });
+        } catch (RejectedExecutionException e) {
+            trySend(emitter, "failed", "当前查询过多，请稍后重试。");
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    private static void send(SseEmitter emitter, String event, String text) {
+        try {
+            emitter.send(SseEmitter.event().name(event)
+                .data(Collections.singletonMap("text", text), MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            // 客户端已断开，抛出异常以中止后续计算
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void trySend(SseEmitter emitter, String event, String text) {
+        try {
+            send(emitter, event, text);
+        } catch (UncheckedIOException | IllegalStateException ignored) {
+            // 连接已关闭
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
     @Data
     public static class ChatRequest {
         private String query;
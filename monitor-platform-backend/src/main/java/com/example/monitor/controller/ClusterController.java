@@ -0,0 +1,53 @@
+package com.example.monitor.controller;
+
+import com.example.monitor.cluster.ClusterService;
+import com.example.monitor.cluster.ConsistentHashRing;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/cluster")
+@RequiredArgsConstructor
+@CrossOrigin
+public class ClusterController {
+
+    private final ClusterService clusterService;
+
+    /**
+     * 本节点视角的集群状态：节点列表、元数据节点和转发计数
+     */
+    @GetMapping("/status")
+    public Map<String, Object> status() {
+        return clusterService.getStatus();
+    }
+
+    /**
+     * 查询序列所属节点，type 为 service / server / process
+     */
+    @GetMapping("/owner")
+    public ResponseEntity<?> owner(@RequestParam String type, @RequestParam long id) {
+        Map<String, Object> result = new HashMap<>();
+        if (!clusterService.isEnabled()) {
+            result.put("success", false);
+            result.put("message", "未开启集群模式");
+            return ResponseEntity.badRequest().body(result);
+        }
+        ConsistentHashRing.KeyType keyType;
+        try {
+            keyType = ConsistentHashRing.KeyType.valueOf(type.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("message", "type 应为 service、server 或 process");
+            return ResponseEntity.badRequest().body(result);
+        }
+        result.put("type", keyType.name().toLowerCase(Locale.ROOT));
+        result.put("id", id);
+        result.put("node", clusterService.ownerOf(keyType, id));
+        return ResponseEntity.ok(result);
+    }
+}
@@ -1,13 +1,30 @@
 package com.example.monitor.controller;
 
+import com.example.monitor.cluster.ClusterNode;
+import com.example.monitor.cluster.ClusterQueryService;
+import com.example.monitor.cluster.ClusterService;
+import com.example.monitor.cluster.ConsistentHashRing;
+import com.example.monitor.model.IngestResult;
 import com.example.monitor.model.MetricSample;
+import com.example.monitor.model.ScrapeTarget;
+import com.example.monitor.service.MetricIngestService;
+import com.example.monitor.service.MetricScrapeService;
 import com.example.monitor.service.MetricService;
+import com.example.monitor.storage.ServiceInfoFileRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/metrics")
@@ -16,6 +33,48 @@ import java.util.List;
 public class MetricController {
 
     private final MetricService metricService;
+    private final MetricScrapeService metricScrapeService;
+    private final MetricIngestService metricIngestService;
+    private final ClusterQueryService clusterQueryService;
+    private final ClusterService clusterService;
+    private final ServiceInfoFileRepository serviceInfoRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 瞬时查询，例如 sum by (env) (rate(http_requests_total[5m]))；time 为毫秒时间戳，默认当前时间。
+     * 集群模式下查询所有节点，其他节点转发来的请求只查本节点
+     */
+    @GetMapping("/query")
+    public ResponseEntity<?> query(@RequestParam String query,
+                                   @RequestParam(required = false) Long time,
+                                   @RequestHeader(value = ClusterService.FORWARDED_HEADER, required = false) String forwardedFrom) {
+        try {
+            return ResponseEntity.ok(clusterQueryService.query(query, time, forwardedFrom != null));
+        } catch (IllegalArgumentException e) {
+            return queryError(HttpStatus.BAD_REQUEST, e);
+        } catch (IllegalStateException | UncheckedIOException e) {
+            return queryError(HttpStatus.BAD_GATEWAY, e);
+        }
+    }
+
+    /**
+     * 区间查询：start / end 为毫秒时间戳，step 为毫秒步长
+     */
+    @GetMapping("/query_range")
+    public ResponseEntity<?> queryRange(@RequestParam String query,
+                                        @RequestParam long start,
+                                        @RequestParam long end,
+                                        @RequestParam(defaultValue = "60000") long step,
+                                        @RequestHeader(value = ClusterService.FORWARDED_HEADER, required = false) String forwardedFrom) {
+        try {
+            return ResponseEntity.ok(clusterQueryService.queryRange(query, start, end, step, forwardedFrom != null));
+        } catch (IllegalArgumentException e) {
+            return queryError(HttpStatus.BAD_REQUEST, e);
+        } catch (IllegalStateException | UncheckedIOException e) {
+            return queryError(HttpStatus.BAD_GATEWAY, e);
+        }
+    }
 
     @GetMapping("/{serviceId}")
     public List<MetricSample> getRecentMetrics(@PathVariable Long serviceId,
@@ -24,11 +83,69 @@ public class MetricController {
     }
 
     @PostMapping("/collect")
-    public ResponseEntity<Void> collectMetrics(@RequestBody CollectRequest request) {
+    public ResponseEntity<Void> collectMetrics(@RequestBody CollectRequest request,
+                                               @RequestHeader(value = ClusterService.FORWARDED_HEADER, required = false) String forwardedFrom)
+            throws IOException {
+        // 服务 ID 在请求体中，路由拦截器看不到，在这里转发到所属节点
+        if (clusterService.isEnabled() && forwardedFrom == null && request.getServiceId() != null) {
+            ClusterNode owner = clusterService.ownerOf(ConsistentHashRing.KeyType.SERVICE, request.getServiceId());
+            if (!clusterService.isLocal(owner)) {
+                ClusterService.NodeResponse response = clusterService.exchange(owner, "POST", "/api/metrics/collect",
+                        MediaType.APPLICATION_JSON_VALUE, objectMapper.writeValueAsBytes(request));
+                return ResponseEntity.status(response.getStatus()).build();
+            }
+        }
         metricService.collectMockMetricsForService(request.getServiceId(), request.getCount());
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * 导入 Prometheus / OpenMetrics 文本格式的指标，请求体直接流式解析
+     */
+    @PostMapping("/ingest/prometheus")
+    public ResponseEntity<IngestResult> ingestPrometheus(@RequestParam Long serviceId,
+                                                         HttpServletRequest request) throws IOException {
+        if (!serviceExists(serviceId)) {
+            return ResponseEntity.notFound().build();
+        }
+        String contentType = request.getContentType();
+        boolean openMetrics = contentType != null && contentType.startsWith("application/openmetrics-text");
+        return ResponseEntity.ok(metricIngestService.ingestPrometheus(serviceId, request.getInputStream(), openMetrics));
+    }
+
+    /**
+     * 抓取目标状态
+     */
+    @GetMapping("/scrape/targets")
+    public List<ScrapeTarget> getScrapeTargets() {
+        return metricScrapeService.getTargets();
+    }
+
+    /**
+     * 立即抓取一轮所有目标
+     */
+    @PostMapping("/scrape")
+    public List<ScrapeTarget> scrapeNow() throws InterruptedException {
+        return metricScrapeService.scrapeAllNow();
+    }
+
+    /**
+     * 集群模式下服务列表定期从元数据节点同步，刚创建的服务可能还没有同步过来，找不到时立即同步一次
+     */
+    private boolean serviceExists(Long serviceId) throws IOException {
+        if (serviceInfoRepository.findById(serviceId).isPresent()) {
+            return true;
+        }
+        return clusterService.syncMetadata() && serviceInfoRepository.findById(serviceId).isPresent();
+    }
+
+    private ResponseEntity<Map<String, Object>> queryError(HttpStatus status, RuntimeException e) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("success", false);
+        body.put("message", e.getMessage());
+        return ResponseEntity.status(status).body(body);
+    }
+
     @Data
     public static class CollectRequest {
         private Long serviceId;
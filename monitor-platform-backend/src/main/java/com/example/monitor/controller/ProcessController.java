@@ -1,10 +1,12 @@
 package com.example.monitor.controller;
 
 import com.example.monitor.model.ProcessInfo;
+import com.example.monitor.model.ProcessJob;
 import com.example.monitor.model.ProcessResource;
 import com.example.monitor.model.ThreadInfo;
 import com.example.monitor.model.ThreadStack;
 import com.example.monitor.service.ProcessInfoService;
+import com.example.monitor.service.ProcessLifecycleService;
 import com.example.monitor.service.ThreadInfoService;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -23,6 +25,7 @@ public class ProcessController {
 
     private final ProcessInfoService processInfoService;
     private final ThreadInfoService threadInfoService;
+    private final ProcessLifecycleService processLifecycleService;
 
     @GetMapping
     public List<ProcessInfo> listProcesses(@RequestParam(name = "serverId", required = false) Long serverId,
@@ -69,29 +72,56 @@ public class ProcessController {
 
     @PostMapping("/{id}/start")
     public ResponseEntity<Map<String, Object>> startProcess(@PathVariable Long id) {
-        boolean success = processInfoService.startProcess(id);
-        Map<String, Object> result = new HashMap<>();
-        result.put("success", success);
-        result.put("message", success ? "进程启动成功" : "进程启动失败");
-        return ResponseEntity.ok(result);
+        return ResponseEntity.ok(lifecycleResult(processInfoService.startProcess(id), "启动"));
     }
 
     @PostMapping("/{id}/stop")
     public ResponseEntity<Map<String, Object>> stopProcess(@PathVariable Long id) {
-        boolean success = processInfoService.stopProcess(id);
-        Map<String, Object> result = new HashMap<>();
-        result.put("success", success);
-        result.put("message", success ? "进程停止成功" : "进程停止失败");
-        return ResponseEntity.ok(result);
+        return ResponseEntity.ok(lifecycleResult(processInfoService.stopProcess(id), "停止"));
     }
 
     @PostMapping("/{id}/restart")
     public ResponseEntity<Map<String, Object>> restartProcess(@PathVariable Long id) {
-        boolean success = processInfoService.restartProcess(id);
+        return ResponseEntity.ok(lifecycleResult(processInfoService.restartProcess(id), "重启"));
+    }
+
+    /**
+     * 批量启停：action 为 start / stop / restart，mode 为 parallel（默认）或 rolling
+     * POST /api/processes/jobs
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<Object> submitJob(@RequestBody JobRequest request) {
+        try {
+            return ResponseEntity.ok(processLifecycleService.submit(
+                request.getAction(), request.getProcessIds(), request.getMode(), request.getBatchSize()));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+        }
+    }
+
+    @GetMapping("/jobs")
+    public List<ProcessJob> listJobs(@RequestParam(name = "limit", defaultValue = "20") int limit) {
+        return processLifecycleService.getRecentJobs(limit);
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<ProcessJob> getJob(@PathVariable Long jobId) {
+        ProcessJob job = processLifecycleService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    private static Map<String, Object> lifecycleResult(ProcessJob job, String label) {
         Map<String, Object> result = new HashMap<>();
-        result.put("success", success);
-        result.put("message", success ? "进程重启成功" : "进程重启失败");
-        return ResponseEntity.ok(result);
+        result.put("success", job != null);
+        result.put("message", job != null ? "进程" + label + "任务已提交" : "进程不存在");
+        result.put("jobId", job != null ? job.getId() : null);
+        return result;
     }
 
     @GetMapping("/{id}/resources")
@@ -134,6 +164,14 @@ public class ProcessController {
         return ResponseEntity.ok(summary);
     }
 
+    @Data
+    public static class JobRequest {
+        private String action;
+        private List<Long> processIds;
+        private String mode;
+        private Integer batchSize;
+    }
+
     @Data
     public static class CollectRequest {
         private int count = 30;
@@ -0,0 +1,41 @@
+package com.example.monitor.controller;
+
+import com.example.monitor.replication.ReplicationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/replication")
+@RequiredArgsConstructor
+@CrossOrigin
+public class ReplicationController {
+
+    private final ReplicationService replicationService;
+
+    /**
+     * 本节点的复制角色；主节点列出已连接的从节点，从节点给出复制延迟
+     */
+    @GetMapping("/status")
+    public Map<String, Object> status() {
+        return replicationService.getStatus();
+    }
+
+    /**
+     * 把从节点提升为主节点，原主节点不可用时使用
+     */
+    @PostMapping("/promote")
+    public ResponseEntity<?> promote() {
+        try {
+            return ResponseEntity.ok(replicationService.promote());
+        } catch (IllegalStateException e) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+        }
+    }
+}
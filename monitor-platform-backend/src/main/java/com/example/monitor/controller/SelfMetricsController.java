@@ -0,0 +1,22 @@
+package com.example.monitor.controller;
+
+import com.example.monitor.model.SelfMetric;
+import com.example.monitor.service.SelfMetricsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/self-metrics")
+@RequiredArgsConstructor
+@CrossOrigin
+public class SelfMetricsController {
+
+    private final SelfMetricsService selfMetricsService;
+
+    @GetMapping
+    public List<SelfMetric> getSelfMetrics() {
+        return selfMetricsService.getSelfMetrics();
+    }
+}
@@ -0,0 +1,333 @@
+package com.example.monitor.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Prometheus / OpenMetrics 文本格式的流式解析器
+ * 直接在字节缓冲区上按行扫描，不经过 String/正则；序列名（指标名 + 原样保留的标签）通过一个有界缓存复用，
+ * 同一序列反复出现时不再分配新字符串。counter / gauge / untyped 直接输出，histogram / summary 的
+ * _bucket / _sum / _count / 分位数行各自作为独立序列输出。NaN 与 ±Inf 无法存储，计入跳过数。
+ * 实例不是线程安全的，可在同一线程内复用。
+ */
+public class PrometheusTextParser {
+
+    private static final int INITIAL_BUFFER = 64 * 1024;
+    private static final int MAX_LINE_BYTES = 1024 * 1024;
+    private static final int SERIES_CACHE_SIZE = 1 << 14;
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private static final double[] POW10 = new double[23];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private byte[] buffer = new byte[INITIAL_BUFFER];
+    private final String[] seriesCache = new String[SERIES_CACHE_SIZE];
+    private final byte[][] seriesKeys = new byte[SERIES_CACHE_SIZE][];
+
+    /**
+     * 解析结果回调
+     */
+    public interface SampleHandler {
+        /**
+         * @param series      序列名，例如 http_requests_total{method="get"}
+         * @param value       样本值
+         * @param timestampMs 毫秒时间戳，未提供时为 {@link Long#MIN_VALUE}
+         */
+        void onSample(String series, double value, long timestampMs);
+    }
+
+    /**
+     * 解析统计
+     */
+    public static class Result {
+        private long samples;
+        private long skipped;
+
+        public long getSamples() {
+            return samples;
+        }
+
+        public long getSkipped() {
+            return skipped;
+        }
+    }
+
+    public static boolean hasTimestamp(long timestampMs) {
+        return timestampMs != NO_TIMESTAMP;
+    }
+
+    /**
+     * @param openMetrics true 时按 OpenMetrics 规范把时间戳当作秒（可带小数），否则按 Prometheus 文本格式当作毫秒
+     */
+    public Result parse(InputStream in, boolean openMetrics, SampleHandler handler) throws IOException {
+        Result result = new Result();
+        int start = 0;
+        int end = 0;
+        boolean eof = false;
+        while (true) {
+            int lineEnd = indexOf(buffer, start, end, (byte) '\n');
+            if (lineEnd < 0) {
+                if (eof) {
+                    if (start < end) {
+                        parseLine(start, end, openMetrics, handler, result);
+                    }
+                    return result;
+                }
+                // 把半行移到缓冲区开头再继续读，单行过长时扩容
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                } else if (end == buffer.length) {
+                    if (buffer.length >= MAX_LINE_BYTES) {
+                        throw new IOException("Line exceeds " + MAX_LINE_BYTES + " bytes");
+                    }
+                    buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, MAX_LINE_BYTES));
+                }
+                int n = in.read(buffer, end, buffer.length - end);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    end += n;
+                }
+                continue;
+            }
+            parseLine(start, lineEnd, openMetrics, handler, result);
+            start = lineEnd + 1;
+        }
+    }
+
+    private void parseLine(int from, int to, boolean openMetrics, SampleHandler handler, Result result) {
+        byte[] b = buffer;
+        int pos = skipSpaces(b, from, to);
+        if (to > pos && b[to - 1] == '\r') {
+            to--;
+        }
+        if (pos >= to || b[pos] == '#') {
+            return;
+        }
+
+        // 指标名
+        int nameEnd = pos;
+        while (nameEnd < to && isNameChar(b[nameEnd])) {
+            nameEnd++;
+        }
+        if (nameEnd == pos) {
+            result.skipped++;
+            return;
+        }
+        int seriesEnd = nameEnd;
+        if (seriesEnd < to && b[seriesEnd] == '{') {
+            seriesEnd = skipLabels(b, seriesEnd + 1, to);
+            if (seriesEnd < 0) {
+                result.skipped++;
+                return;
+            }
+        }
+
+        // 样本值
+        int valueStart = skipSpaces(b, seriesEnd, to);
+        if (valueStart == seriesEnd || valueStart >= to) {
+            result.skipped++;
+            return;
+        }
+        int valueEnd = tokenEnd(b, valueStart, to);
+        double value = parseDouble(b, valueStart, valueEnd);
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            result.skipped++;
+            return;
+        }
+
+        // 可选时间戳；OpenMetrics 的 exemplar 以 # 开头，忽略
+        long timestamp = NO_TIMESTAMP;
+        int tsStart = skipSpaces(b, valueEnd, to);
+        if (tsStart < to && b[tsStart] != '#') {
+            int tsEnd = tokenEnd(b, tsStart, to);
+            double ts = parseDouble(b, tsStart, tsEnd);
+            if (!Double.isNaN(ts) && !Double.isInfinite(ts)) {
+                timestamp = openMetrics ? (long) (ts * 1000) : (long) ts;
+            }
+        }
+
+        handler.onSample(series(b, pos, seriesEnd), value, timestamp);
+        result.samples++;
+    }
+
+    /**
+     * 跳过标签块，返回 '}' 之后的位置；标签值中的转义字符原样保留
+     */
+    private static int skipLabels(byte[] b, int pos, int to) {
+        boolean inQuotes = false;
+        while (pos < to) {
+            byte c = b[pos];
+            if (inQuotes) {
+                if (c == '\\') {
+                    pos++;
+                } else if (c == '"') {
+                    inQuotes = false;
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == '}') {
+                return pos + 1;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private String series(byte[] b, int from, int to) {
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + b[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (SERIES_CACHE_SIZE - 1);
+        byte[] key = seriesKeys[slot];
+        if (key != null && key.length == to - from && rangeEquals(key, b, from)) {
+            return seriesCache[slot];
+        }
+        String series = new String(b, from, to - from, StandardCharsets.UTF_8);
+        seriesKeys[slot] = Arrays.copyOfRange(b, from, to);
+        seriesCache[slot] = series;
+        return series;
+    }
+
+    private static boolean rangeEquals(byte[] key, byte[] b, int from) {
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != b[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 常见的十进制写法直接在字节上解析，其余写法（如十六进制、超长尾数）交给 Double.parseDouble
+     */
+    static double parseDouble(byte[] b, int from, int to) {
+        int pos = from;
+        boolean negative = false;
+        if (pos < to && (b[pos] == '-' || b[pos] == '+')) {
+            negative = b[pos] == '-';
+            pos++;
+        }
+        if (pos < to && (b[pos] == 'N' || b[pos] == 'I' || b[pos] == 'i' || b[pos] == 'n')) {
+            String word = new String(b, pos, to - pos, StandardCharsets.US_ASCII);
+            if (word.equalsIgnoreCase("nan")) {
+                return Double.NaN;
+            }
+            if (word.equalsIgnoreCase("inf") || word.equalsIgnoreCase("infinity")) {
+                return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            }
+            return Double.NaN;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDigit = false;
+        while (pos < to && b[pos] >= '0' && b[pos] <= '9') {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (b[pos] - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                scale++;
+            }
+            seenDigit = true;
+            pos++;
+        }
+        if (pos < to && b[pos] == '.') {
+            pos++;
+            while (pos < to && b[pos] >= '0' && b[pos] <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b[pos] - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    scale--;
+                }
+                seenDigit = true;
+                pos++;
+            }
+        }
+        if (!seenDigit) {
+            return Double.NaN;
+        }
+        if (pos < to && (b[pos] == 'e' || b[pos] == 'E')) {
+            pos++;
+            boolean expNegative = false;
+            if (pos < to && (b[pos] == '-' || b[pos] == '+')) {
+                expNegative = b[pos] == '-';
+                pos++;
+            }
+            int exp = 0;
+            boolean seenExp = false;
+            while (pos < to && b[pos] >= '0' && b[pos] <= '9') {
+                exp = Math.min(exp * 10 + (b[pos] - '0'), 10_000);
+                seenExp = true;
+                pos++;
+            }
+            if (!seenExp) {
+                return Double.NaN;
+            }
+            scale += expNegative ? -exp : exp;
+        }
+        if (pos != to) {
+            return slowParse(b, from, to);
+        }
+        // 尾数不超过 2^53 且 10 的幂可精确表示时，一次乘除即可得到正确舍入的结果
+        double result;
+        if (mantissa < (1L << 53) && scale >= -22 && scale <= 22) {
+            result = scale >= 0 ? mantissa * POW10[scale] : mantissa / POW10[-scale];
+        } else if (mantissa == 0) {
+            result = 0;
+        } else {
+            return slowParse(b, from, to);
+        }
+        return negative ? -result : result;
+    }
+
+    private static double slowParse(byte[] b, int from, int to) {
+        try {
+            return Double.parseDouble(new String(b, from, to - from, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static boolean isNameChar(byte c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == ':';
+    }
+
+    private static int skipSpaces(byte[] b, int pos, int to) {
+        while (pos < to && (b[pos] == ' ' || b[pos] == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int tokenEnd(byte[] b, int pos, int to) {
+        while (pos < to && b[pos] != ' ' && b[pos] != '\t' && b[pos] != '\r') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int indexOf(byte[] b, int from, int to, byte target) {
+        for (int i = from; i < to; i++) {
+            if (b[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
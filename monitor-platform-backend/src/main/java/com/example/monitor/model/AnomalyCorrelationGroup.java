@@ -0,0 +1,59 @@
+package com.example.monitor.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Data;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 异常关联分组：同一时间窗口内、同一拓扑（服务器 → 进程 → 服务）下的异常事件
+ */
+@Data
+public class AnomalyCorrelationGroup {
+
+    private Long id;
+
+    /**
+     * 关联的服务器ID，未绑定服务器的服务为空
+     */
+    private Long serverId;
+
+    private String serverName;
+
+    /**
+     * active - 窗口仍在接收事件 / closed - 窗口已结束
+     */
+    private String status;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private Date windowStart;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private Date windowEnd;
+
+    /**
+     * 窗口内事件数
+     */
+    private Integer eventCount;
+
+    /**
+     * 受影响的服务ID
+     */
+    private List<Long> serviceIds;
+
+    /**
+     * 分组内最高的严重级别：low / medium / high
+     */
+    private String severity;
+
+    /**
+     * 排名第一的根因候选
+     */
+    private RootCauseCandidate rootCause;
+
+    /**
+     * 按评分降序排列的根因候选
+     */
+    private List<RootCauseCandidate> candidates;
+}
@@ -0,0 +1,62 @@
+package com.example.monitor.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * API 认证密钥
+ * 只保存密钥的 SHA-256 摘要，原始密钥仅在创建时返回一次
+ */
+@Data
+public class ApiAuthKeyModel {
+
+    private Long id;
+
+    private String name;
+
+    /**
+     * 原始密钥的前几位，便于在列表中辨认
+     */
+    private String keyPrefix;
+
+    /**
+     * 原始密钥的 SHA-256 摘要（十六进制）
+     */
+    private String keyHash;
+
+    /**
+     * 限定可调用的 API 服务，为空表示不限
+     */
+    private Long serviceId;
+
+    /**
+     * 每个接口每秒允许的请求数，为空时使用 monitor.api-rate-limit.default-rate
+     */
+    private Double rateLimit;
+
+    /**
+     * 允许的突发请求数，为空时使用默认值
+     */
+    private Integer burst;
+
+    /**
+     * active / disabled
+     */
+    private String status;
+
+    /**
+     * 过期时间，为空表示长期有效
+     */
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private Date expiresAt;
+
+    private String description;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private Date createdAt;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private Date updatedAt;
+}
@@ -0,0 +1,56 @@
+package com.example.monitor.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/**
+ * API 调用记录：一次对受管 API 的调用
+ * 以 JSON Lines 追加写入按小时分段的日志文件，空字段不输出
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ApiCallLogModel {
+
+    /**
+     * 调用时间（毫秒时间戳），为空时按记录时间填充
+     */
+    private Long timestamp;
+
+    /**
+     * 所属 API 服务 ID
+     */
+    private Long serviceId;
+
+    /**
+     * API 接口 ID
+     */
+    private Long endpointId;
+
+    private String method;
+
+    /**
+     * 请求路径（模板形式，如 /api/servers/{id}）
+     */
+    private String path;
+
+    private Integer statusCode;
+
+    /**
+     * 耗时（毫秒）
+     */
+    private Double durationMs;
+
+    private String clientIp;
+
+    /**
+     * 调用方使用的认证密钥 ID
+     */
+    private Long authKeyId;
+
+    /**
+     * 被限流拒绝的调用为 true（状态码 429）
+     */
+    private Boolean rateLimited;
+
+    private String errorMessage;
+}
@@ -0,0 +1,45 @@
+package com.example.monitor.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/**
+ * 一个时间窗口内某个接口（或全部接口）的调用统计，由预聚合的延迟直方图合并得到
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ApiLatencyStats {
+
+    /**
+     * 接口标识：有 endpointId 时为其数值，否则为“方法 路径”
+     */
+    private String endpoint;
+
+    /**
+     * 窗口起始时间（毫秒时间戳），接口汇总列表中为空
+     */
+    private Long timestamp;
+
+    private long count;
+
+    private long errors;
+
+    /**
+     * 被限流拒绝的调用数，不计入 count 与延迟
+     */
+    private long rejected;
+
+    private Double errorRate;
+
+    private Double qps;
+
+    private Double avgMs;
+
+    private Double maxMs;
+
+    private Double p50Ms;
+
+    private Double p95Ms;
+
+    private Double p99Ms;
+}
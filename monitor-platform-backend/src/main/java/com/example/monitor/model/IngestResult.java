@@ -0,0 +1,24 @@
+package com.example.monitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 指标导入结果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestResult {
+
+    /**
+     * 写入的样本数
+     */
+    private long accepted;
+
+    /**
+     * 无法解析或无法存储（NaN/Inf）而跳过的行数
+     */
+    private long skipped;
+}
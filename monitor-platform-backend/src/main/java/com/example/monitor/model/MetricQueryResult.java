@@ -0,0 +1,28 @@
+package com.example.monitor.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 指标查询结果
+ */
+@Data
+public class MetricQueryResult {
+
+    private String query;
+
+    /**
+     * vector（瞬时查询）/ matrix（区间查询）
+     */
+    private String resultType;
+
+    private List<MetricQuerySeries> result;
+
+    /**
+     * 快照中的序列总数
+     */
+    private int seriesTotal;
+
+    private long durationMs;
+}
@@ -0,0 +1,25 @@
+package com.example.monitor.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * 指标查询结果中的一个序列
+ * 瞬时查询填充 timestamp / value，区间查询填充 timestamps / values（两个数组下标一一对应）
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MetricQuerySeries {
+
+    private Map<String, String> labels;
+
+    private Long timestamp;
+
+    private Double value;
+
+    private long[] timestamps;
+
+    private double[] values;
+}
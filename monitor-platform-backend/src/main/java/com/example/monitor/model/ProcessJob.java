@@ -0,0 +1,42 @@
+package com.example.monitor.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 进程启停任务：一次提交的启动 / 停止 / 重启操作，可包含多个进程
+ */
+@Data
+public class ProcessJob {
+
+    private Long id;
+
+    /**
+     * start / stop / restart
+     */
+    private String action;
+
+    /**
+     * parallel：全部同时执行；rolling：按 batchSize 分批依次执行，某批失败后其余进程不再执行
+     */
+    private String mode;
+
+    private Integer batchSize;
+
+    /**
+     * pending / running / success / failed
+     */
+    private String status;
+
+    private List<ProcessJobTask> tasks = new ArrayList<>();
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private Date createdAt;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private Date finishedAt;
+}
@@ -0,0 +1,40 @@
+package com.example.monitor.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 进程启停任务中单个进程的执行情况
+ */
+@Data
+public class ProcessJobTask {
+
+    private Long processId;
+
+    private String processName;
+
+    /**
+     * pending / running / success / failed / timeout / skipped
+     */
+    private String status;
+
+    /**
+     * 最后执行的命令的退出码，命令仍在运行（如以前台方式启动的服务）时为空
+     */
+    private Integer exitCode;
+
+    private String message;
+
+    /**
+     * 命令输出（stdout 与 stderr 合并）的末尾部分，执行过程中查询可看到实时输出
+     */
+    private String output;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private Date startedAt;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private Date finishedAt;
+}
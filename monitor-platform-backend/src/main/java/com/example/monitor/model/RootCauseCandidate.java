@@ -0,0 +1,39 @@
+package com.example.monitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 根因候选项
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RootCauseCandidate {
+
+    /**
+     * 候选类型：server / process / service
+     */
+    private String type;
+
+    /**
+     * 候选对象ID（服务器ID/进程ID/服务ID）
+     */
+    private Long targetId;
+
+    /**
+     * 候选对象名称
+     */
+    private String targetName;
+
+    /**
+     * 根因评分（0-1，越高越可能是根因）
+     */
+    private double score;
+
+    /**
+     * 判定依据
+     */
+    private String reason;
+}
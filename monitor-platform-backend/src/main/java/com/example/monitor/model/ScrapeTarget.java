@@ -0,0 +1,35 @@
+package com.example.monitor.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 指标抓取目标的当前状态
+ */
+@Data
+public class ScrapeTarget {
+
+    private Long serviceId;
+
+    private String serviceName;
+
+    private String endpoint;
+
+    /**
+     * up / down / unknown（尚未抓取）
+     */
+    private String health;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private Date lastScrapeTime;
+
+    private Long lastDurationMs;
+
+    private Integer lastSampleCount;
+
+    private String lastError;
+
+    private Integer consecutiveFailures;
+}
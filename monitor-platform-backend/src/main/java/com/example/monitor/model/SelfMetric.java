@@ -0,0 +1,40 @@
+package com.example.monitor.model;
+
+import lombok.Data;
+
+/**
+ * 平台自身指标（耗时单位毫秒，累计自启动以来）
+ */
+@Data
+public class SelfMetric {
+
+    private String name;
+
+    /**
+     * 标签拼接，例如 repository=metrics,operation=write
+     */
+    private String tags;
+
+    /**
+     * timer / summary / gauge / counter
+     */
+    private String type;
+
+    private Long count;
+
+    private Double mean;
+
+    private Double max;
+
+    /**
+     * 由直方图桶估算的 P99
+     */
+    private Double p99;
+
+    /**
+     * gauge / counter 的当前值，summary 的累计值
+     */
+    private Double value;
+
+    private String baseUnit;
+}
@@ -20,10 +20,20 @@ public class ServiceInfo {
     private String description;
 
     /**
-     * 预留：实际环境中可存放 metrics 端点或 Prometheus 查询信息
+     * Prometheus 文本格式的指标地址（http/https），配置后由抓取任务定期拉取
      */
     private String metricEndpoint;
 
+    /**
+     * 服务部署所在的服务器ID（可选，用于异常关联）
+     */
+    private Long serverId;
+
+    /**
+     * 服务对应的进程ID（可选，用于异常关联）
+     */
+    private Long processId;
+
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private Date createdAt;
 
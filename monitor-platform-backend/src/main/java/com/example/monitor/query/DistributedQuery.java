@@ -0,0 +1,196 @@
+package com.example.monitor.query;
+
+import com.example.monitor.model.MetricQuerySeries;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分布式查询计划：把查询拆成在各节点本地求值的子查询，再把各节点的部分结果合并后求出最终结果
+ * 最内层的聚合下推到各节点：sum / min / max / count / topk 各节点先算部分结果，合并时按同样的分组再做一次
+ * （count 的部分结果按 sum 合并）；avg 拆成 sum 和 count 两个子查询，合并后相除。
+ * 没有聚合的查询（选择器、rate 等逐序列计算）每个序列只在一个节点上，合并即并集。
+ * 外层的聚合和 topk 在合并结果上照常求值。
+ */
+public final class DistributedQuery {
+
+    private final QueryExpr expr;
+    /**
+     * 从根节点到下推节点之间的外层节点，根节点在前
+     */
+    private final List<QueryExpr> outer;
+    private final QueryExpr pushed;
+    private final List<String> subqueries;
+
+    private DistributedQuery(QueryExpr expr, List<QueryExpr> outer, QueryExpr pushed, List<String> subqueries) {
+        this.expr = expr;
+        this.outer = outer;
+        this.pushed = pushed;
+        this.subqueries = subqueries;
+    }
+
+    /**
+     * 解析查询并生成计划，语法错误抛出 IllegalArgumentException
+     */
+    public static DistributedQuery plan(String query) {
+        QueryExpr expr = MetricQueryParser.parse(query);
+        List<QueryExpr> chain = new ArrayList<>();
+        QueryExpr node = expr;
+        while (node instanceof QueryExpr.Aggregation || node instanceof QueryExpr.TopK) {
+            chain.add(node);
+            node = inner(node);
+        }
+        if (chain.isEmpty()) {
+            return new DistributedQuery(expr, Collections.emptyList(), expr, Collections.singletonList(expr.toString()));
+        }
+        QueryExpr pushed = chain.remove(chain.size() - 1);
+        List<String> subqueries;
+        if (pushed instanceof QueryExpr.Aggregation && ((QueryExpr.Aggregation) pushed).op.equals("avg")) {
+            QueryExpr.Aggregation avg = (QueryExpr.Aggregation) pushed;
+            subqueries = Arrays.asList(
+                    new QueryExpr.Aggregation("sum", avg.grouping, avg.without, avg.inner).toString(),
+                    new QueryExpr.Aggregation("count", avg.grouping, avg.without, avg.inner).toString());
+        } else {
+            subqueries = Collections.singletonList(pushed.toString());
+        }
+        return new DistributedQuery(expr, chain, pushed, subqueries);
+    }
+
+    /**
+     * 需要在每个节点上求值的子查询
+     */
+    public List<String> getSubqueries() {
+        return subqueries;
+    }
+
+    /**
+     * 合并后的表达式：partials 与 {@link #getSubqueries()} 一一对应，每项为所有节点该子查询的结果序列（瞬时或区间均可）。
+     * 返回的表达式在部分结果包含的时间点上求值，快照参数不使用
+     */
+    public QueryExpr merge(List<List<MetricQuerySeries>> partials) {
+        if (partials.size() != subqueries.size()) {
+            throw new IllegalArgumentException("部分结果数与子查询数不一致");
+        }
+        QueryExpr merged;
+        if (pushed instanceof QueryExpr.TopK) {
+            QueryExpr.TopK topk = (QueryExpr.TopK) pushed;
+            merged = new QueryExpr.TopK(topk.k, topk.bottom, new Partial(partials.get(0)));
+        } else if (pushed instanceof QueryExpr.Aggregation) {
+            QueryExpr.Aggregation aggregation = (QueryExpr.Aggregation) pushed;
+            if (aggregation.op.equals("avg")) {
+                merged = new Ratio(reaggregate(aggregation, "sum", partials.get(0)),
+                        reaggregate(aggregation, "sum", partials.get(1)));
+            } else {
+                merged = reaggregate(aggregation, aggregation.op.equals("count") ? "sum" : aggregation.op, partials.get(0));
+            }
+        } else {
+            merged = new Partial(partials.get(0));
+        }
+        for (int i = outer.size() - 1; i >= 0; i--) {
+            merged = withInner(outer.get(i), merged);
+        }
+        return merged;
+    }
+
+    @Override
+    public String toString() {
+        return expr.toString();
+    }
+
+    private static QueryExpr.Aggregation reaggregate(QueryExpr.Aggregation aggregation, String op,
+                                                     List<MetricQuerySeries> partial) {
+        return new QueryExpr.Aggregation(op, aggregation.grouping, aggregation.without, new Partial(partial));
+    }
+
+    private static QueryExpr inner(QueryExpr node) {
+        return node instanceof QueryExpr.Aggregation ? ((QueryExpr.Aggregation) node).inner : ((QueryExpr.TopK) node).inner;
+    }
+
+    private static QueryExpr withInner(QueryExpr node, QueryExpr inner) {
+        if (node instanceof QueryExpr.Aggregation) {
+            QueryExpr.Aggregation aggregation = (QueryExpr.Aggregation) node;
+            return new QueryExpr.Aggregation(aggregation.op, aggregation.grouping, aggregation.without, inner);
+        }
+        QueryExpr.TopK topk = (QueryExpr.TopK) node;
+        return new QueryExpr.TopK(topk.k, topk.bottom, inner);
+    }
+
+    /**
+     * 各节点的部分结果：在 time 时刻取各序列该时间点上的值
+     */
+    static final class Partial extends QueryExpr {
+        private final List<MetricQuerySeries> series;
+
+        Partial(List<MetricQuerySeries> series) {
+            this.series = series;
+        }
+
+        @Override
+        Vector eval(SeriesSnapshot snapshot, long time) {
+            List<Map<String, String>> labels = new ArrayList<>();
+            double[] values = new double[series.size()];
+            int count = 0;
+            for (MetricQuerySeries s : series) {
+                if (s.getTimestamps() != null) {
+                    int i = Arrays.binarySearch(s.getTimestamps(), time);
+                    if (i >= 0) {
+                        labels.add(s.getLabels());
+                        values[count++] = s.getValues()[i];
+                    }
+                } else if (s.getTimestamp() != null && s.getTimestamp() == time) {
+                    labels.add(s.getLabels());
+                    values[count++] = s.getValue();
+                }
+            }
+            return new Vector(labels, Arrays.copyOf(values, count));
+        }
+
+        @Override
+        public String toString() {
+            return "partial(" + series.size() + ")";
+        }
+    }
+
+    /**
+     * avg 的合并：标签相同的 sum 与 count 相除
+     */
+    static final class Ratio extends QueryExpr {
+        private final QueryExpr numerator;
+        private final QueryExpr denominator;
+
+        Ratio(QueryExpr numerator, QueryExpr denominator) {
+            this.numerator = numerator;
+            this.denominator = denominator;
+        }
+
+        @Override
+        Vector eval(SeriesSnapshot snapshot, long time) {
+            Vector sums = numerator.eval(snapshot, time);
+            Vector counts = denominator.eval(snapshot, time);
+            Map<Map<String, String>, Double> countByLabels = new HashMap<>();
+            for (int i = 0; i < counts.size(); i++) {
+                countByLabels.put(counts.labels.get(i), counts.values[i]);
+            }
+            List<Map<String, String>> labels = new ArrayList<>(sums.size());
+            double[] values = new double[sums.size()];
+            int size = 0;
+            for (int i = 0; i < sums.size(); i++) {
+                Double count = countByLabels.get(sums.labels.get(i));
+                if (count != null && count > 0) {
+                    labels.add(sums.labels.get(i));
+                    values[size++] = sums.values[i] / count;
+                }
+            }
+            return new Vector(labels, Arrays.copyOf(values, size));
+        }
+
+        @Override
+        public String toString() {
+            return numerator + " / " + denominator;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.monitor.query;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.util.Arrays;
+
+/**
+ * 可合并的对数线性延迟直方图
+ * 延迟按微秒取整后分桶：小于 64 µs 每 1 µs 一个桶，之后每个 2 的幂区间再均分为 32 个桶，
+ * 相对误差不超过 1/32（约 3%），桶号只取决于数值本身，因此任意两个直方图可以直接按桶相加。
+ * 只保存非空的桶（按桶号升序的两个数组），一分钟内同一接口的延迟通常只落在几十个桶里，占用很小。
+ * 同时记录总数、错误数、耗时总和与最大值；被限流拒绝的调用只计数，不计入延迟。非线程安全，由调用方加锁。
+ */
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE)
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private int[] buckets = new int[4];
+    private long[] counts = new long[4];
+    private int size;
+    private long total;
+    private long errors;
+    private long rejected;
+    private double sumMs;
+    private double maxMs;
+
+    public void record(double durationMs, boolean error) {
+        double ms = Double.isNaN(durationMs) || durationMs < 0 ? 0 : durationMs;
+        add(bucketOf(Math.round(ms * 1000)), 1);
+        total++;
+        if (error) {
+            errors++;
+        }
+        sumMs += ms;
+        maxMs = Math.max(maxMs, ms);
+    }
+
+    public void recordRejected() {
+        rejected++;
+    }
+
+    /**
+     * 把另一个直方图的计数加到当前直方图
+     */
+    public void merge(LatencyHistogram other) {
+        rejected += other.rejected;
+        if (other.size == 0) {
+            return;
+        }
+        int[] mergedBuckets = new int[size + other.size];
+        long[] mergedCounts = new long[size + other.size];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < size || j < other.size) {
+            if (j >= other.size || (i < size && buckets[i] < other.buckets[j])) {
+                mergedBuckets[n] = buckets[i];
+                mergedCounts[n++] = counts[i++];
+            } else if (i >= size || other.buckets[j] < buckets[i]) {
+                mergedBuckets[n] = other.buckets[j];
+                mergedCounts[n++] = other.counts[j++];
+            } else {
+                mergedBuckets[n] = buckets[i];
+                mergedCounts[n++] = counts[i++] + other.counts[j++];
+            }
+        }
+        buckets = mergedBuckets;
+        counts = mergedCounts;
+        size = n;
+        total += other.total;
+        errors += other.errors;
+        sumMs += other.sumMs;
+        maxMs = Math.max(maxMs, other.maxMs);
+    }
+
+    /**
+     * 分位数（毫秒），取所在桶的中点；没有数据时返回 NaN
+     */
+    public double percentile(double quantile) {
+        if (total == 0) {
+            return Double.NaN;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < size; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long lower = lowerBound(buckets[i]);
+                double middle = lower + (width(buckets[i]) - 1) / 2.0;
+                return Math.min(middle / 1000.0, maxMs);
+            }
+        }
+        return maxMs;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public double getSumMs() {
+        return sumMs;
+    }
+
+    public double getMaxMs() {
+        return maxMs;
+    }
+
+    /**
+     * 去掉数组末尾的空余容量，用于长期保存或持久化前
+     */
+    public void compact() {
+        if (buckets.length != size) {
+            buckets = Arrays.copyOf(buckets, size);
+            counts = Arrays.copyOf(counts, size);
+        }
+    }
+
+    private void add(int bucket, long count) {
+        int position = Arrays.binarySearch(buckets, 0, size, bucket);
+        if (position >= 0) {
+            counts[position] += count;
+            return;
+        }
+        position = -position - 1;
+        if (size == buckets.length) {
+            buckets = Arrays.copyOf(buckets, Math.max(4, size * 2));
+            counts = Arrays.copyOf(counts, buckets.length);
+        }
+        System.arraycopy(buckets, position, buckets, position + 1, size - position);
+        System.arraycopy(counts, position, counts, position + 1, size - position);
+        buckets[position] = bucket;
+        counts[position] = count;
+        size++;
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < 2 * SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (micros >>> shift);
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = (bucket & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+        return subBucket << shift;
+    }
+
+    static long width(int bucket) {
+        return bucket < 2 * SUB_BUCKETS ? 1 : 1L << ((bucket >>> SUB_BUCKET_BITS) - 1);
+    }
+}
@@ -0,0 +1,323 @@
+package com.example.monitor.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 指标查询语言解析器（PromQL 子集）
+ * <pre>
+ * expr      := aggregate | topk | call | selector
+ * aggregate := (sum|avg|min|max|count) [(by|without) (label, ...)] ( expr ) [(by|without) (label, ...)]
+ * topk      := (topk|bottomk) ( k , expr )
+ * call      := rate|increase|delta|*_over_time ( selector[range] )  |  quantile_over_time ( q , selector[range] )
+ * selector  := [metric] [{ label op "value", ... }] [[range]]        op: = != =~ !~
+ * range     := 30s | 5m | 1h | 1d | 1w，可组合如 1h30m
+ * </pre>
+ * 解析失败抛出 IllegalArgumentException，消息中带出错位置。
+ */
+public final class MetricQueryParser {
+
+    private static final List<String> AGGREGATIONS = Arrays.asList("sum", "avg", "min", "max", "count");
+
+    private final String input;
+    private int pos;
+
+    private MetricQueryParser(String input) {
+        this.input = input;
+    }
+
+    public static QueryExpr parse(String query) {
+        if (query == null || query.trim().isEmpty()) {
+            throw new IllegalArgumentException("查询语句不能为空");
+        }
+        MetricQueryParser parser = new MetricQueryParser(query);
+        QueryExpr expr = parser.expr();
+        parser.skipSpaces();
+        if (parser.pos < query.length()) {
+            throw parser.error("无法识别的内容");
+        }
+        if (expr instanceof QueryExpr.Selector && ((QueryExpr.Selector) expr).rangeMs > 0) {
+            throw new IllegalArgumentException("范围选择器只能作为 rate、avg_over_time 等函数的参数");
+        }
+        return expr;
+    }
+
+    private QueryExpr expr() {
+        skipSpaces();
+        int start = pos;
+        String ident = peekIdentifier();
+        if (ident != null) {
+            pos += ident.length();
+            skipSpaces();
+            if (AGGREGATIONS.contains(ident) && (peek('(') || peekKeyword("by") || peekKeyword("without"))) {
+                return aggregation(ident);
+            }
+            if ((ident.equals("topk") || ident.equals("bottomk")) && peek('(')) {
+                return topk(ident.equals("bottomk"));
+            }
+            QueryExpr.RangeFunction function = QueryExpr.RangeFunction.of(ident);
+            if (function != null && peek('(')) {
+                return call(function);
+            }
+            pos = start;
+        }
+        QueryExpr.Selector selector = selector();
+        return selector;
+    }
+
+    private QueryExpr aggregation(String op) {
+        List<String> grouping = Collections.emptyList();
+        boolean without = false;
+        if (peekKeyword("by") || peekKeyword("without")) {
+            without = peekKeyword("without");
+            pos += without ? 7 : 2;
+            grouping = labelList();
+        }
+        expect('(');
+        QueryExpr inner = expr();
+        expect(')');
+        skipSpaces();
+        if (grouping.isEmpty() && (peekKeyword("by") || peekKeyword("without"))) {
+            without = peekKeyword("without");
+            pos += without ? 7 : 2;
+            grouping = labelList();
+        }
+        if (inner instanceof QueryExpr.Selector && ((QueryExpr.Selector) inner).rangeMs > 0) {
+            throw error("聚合的参数不能是范围选择器");
+        }
+        return new QueryExpr.Aggregation(op, grouping, without, inner);
+    }
+
+    private QueryExpr topk(boolean bottom) {
+        expect('(');
+        double k = number();
+        if (k < 1 || k != Math.floor(k)) {
+            throw error("k 必须是正整数");
+        }
+        expect(',');
+        QueryExpr inner = expr();
+        expect(')');
+        if (inner instanceof QueryExpr.Selector && ((QueryExpr.Selector) inner).rangeMs > 0) {
+            throw error("topk 的参数不能是范围选择器");
+        }
+        return new QueryExpr.TopK((int) k, bottom, inner);
+    }
+
+    private QueryExpr call(QueryExpr.RangeFunction function) {
+        expect('(');
+        double param = Double.NaN;
+        if (function == QueryExpr.RangeFunction.QUANTILE_OVER_TIME) {
+            param = number();
+            if (param < 0 || param > 1) {
+                throw error("分位数必须在 0 到 1 之间");
+            }
+            expect(',');
+        }
+        skipSpaces();
+        QueryExpr.Selector selector = selector();
+        if (selector.rangeMs <= 0) {
+            throw error(function.functionName + " 的参数必须带范围，例如 [5m]");
+        }
+        expect(')');
+        return new QueryExpr.Call(function, param, selector);
+    }
+
+    private QueryExpr.Selector selector() {
+        skipSpaces();
+        String name = peekIdentifier();
+        if (name != null) {
+            pos += name.length();
+        }
+        List<QueryExpr.Matcher> matchers = new ArrayList<>();
+        skipSpaces();
+        if (peek('{')) {
+            pos++;
+            skipSpaces();
+            while (!peek('}')) {
+                String label = peekIdentifier();
+                if (label == null) {
+                    throw error("缺少标签名");
+                }
+                pos += label.length();
+                skipSpaces();
+                String op;
+                if (input.startsWith("=~", pos) || input.startsWith("!~", pos) || input.startsWith("!=", pos)) {
+                    op = input.substring(pos, pos + 2);
+                } else if (peek('=')) {
+                    op = "=";
+                } else {
+                    throw error("缺少匹配运算符");
+                }
+                pos += op.length();
+                skipSpaces();
+                try {
+                    matchers.add(new QueryExpr.Matcher(label, op, string()));
+                } catch (java.util.regex.PatternSyntaxException e) {
+                    throw error("正则表达式不合法：" + e.getDescription());
+                }
+                skipSpaces();
+                if (peek(',')) {
+                    pos++;
+                    skipSpaces();
+                } else if (!peek('}')) {
+                    throw error("缺少 '}'");
+                }
+            }
+            pos++;
+        } else if (name == null) {
+            throw error("缺少指标名或标签选择器");
+        }
+        skipSpaces();
+        long rangeMs = 0;
+        if (peek('[')) {
+            pos++;
+            skipSpaces();
+            rangeMs = duration();
+            expect(']');
+        }
+        return new QueryExpr.Selector(name, matchers, rangeMs);
+    }
+
+    private List<String> labelList() {
+        expect('(');
+        List<String> labels = new ArrayList<>();
+        skipSpaces();
+        while (!peek(')')) {
+            String label = peekIdentifier();
+            if (label == null) {
+                throw error("缺少标签名");
+            }
+            labels.add(label);
+            pos += label.length();
+            skipSpaces();
+            if (peek(',')) {
+                pos++;
+                skipSpaces();
+            } else if (!peek(')')) {
+                throw error("缺少 ')'");
+            }
+        }
+        pos++;
+        skipSpaces();
+        return labels;
+    }
+
+    private long duration() {
+        long total = 0;
+        int start = pos;
+        while (pos < input.length() && Character.isDigit(input.charAt(pos))) {
+            long value = 0;
+            while (pos < input.length() && Character.isDigit(input.charAt(pos))) {
+                value = value * 10 + (input.charAt(pos++) - '0');
+            }
+            long unit;
+            if (input.startsWith("ms", pos)) {
+                unit = 1;
+                pos += 2;
+            } else if (pos < input.length() && "smhdw".indexOf(input.charAt(pos)) >= 0) {
+                char c = input.charAt(pos++);
+                unit = c == 's' ? 1000L : c == 'm' ? 60_000L : c == 'h' ? 3_600_000L : c == 'd' ? 86_400_000L : 604_800_000L;
+            } else {
+                throw error("时间范围缺少单位（s/m/h/d/w）");
+            }
+            total += value * unit;
+        }
+        if (pos == start || total <= 0) {
+            throw error("时间范围不合法");
+        }
+        return total;
+    }
+
+    static String formatDuration(long ms) {
+        long[] units = {604_800_000L, 86_400_000L, 3_600_000L, 60_000L, 1000L, 1L};
+        String[] names = {"w", "d", "h", "m", "s", "ms"};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < units.length && ms > 0; i++) {
+            if (ms >= units[i]) {
+                sb.append(ms / units[i]).append(names[i]);
+                ms %= units[i];
+            }
+        }
+        return sb.toString();
+    }
+
+    private double number() {
+        skipSpaces();
+        int start = pos;
+        while (pos < input.length() && (Character.isDigit(input.charAt(pos)) || input.charAt(pos) == '.')) {
+            pos++;
+        }
+        try {
+            return Double.parseDouble(input.substring(start, pos));
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw error("需要一个数字");
+        }
+    }
+
+    private String string() {
+        if (!peek('"') && !peek('\'')) {
+            throw error("标签值需要用引号括起来");
+        }
+        char quote = input.charAt(pos++);
+        StringBuilder sb = new StringBuilder();
+        while (pos < input.length() && input.charAt(pos) != quote) {
+            char c = input.charAt(pos++);
+            if (c == '\\' && pos < input.length()) {
+                c = input.charAt(pos++);
+            }
+            sb.append(c);
+        }
+        if (pos >= input.length()) {
+            throw error("字符串缺少结束引号");
+        }
+        pos++;
+        return sb.toString();
+    }
+
+    private String peekIdentifier() {
+        int end = pos;
+        while (end < input.length()) {
+            char c = input.charAt(end);
+            boolean valid = Character.isLetter(c) || c == '_' || c == ':' || (end > pos && Character.isDigit(c));
+            if (!valid) {
+                break;
+            }
+            end++;
+        }
+        return end > pos ? input.substring(pos, end) : null;
+    }
+
+    private boolean peekKeyword(String keyword) {
+        if (!input.startsWith(keyword, pos)) {
+            return false;
+        }
+        int end = pos + keyword.length();
+        return end >= input.length() || !(Character.isLetterOrDigit(input.charAt(end)) || input.charAt(end) == '_');
+    }
+
+    private boolean peek(char c) {
+        return pos < input.length() && input.charAt(pos) == c;
+    }
+
+    private void expect(char c) {
+        skipSpaces();
+        if (!peek(c)) {
+            throw error("缺少 '" + c + "'");
+        }
+        pos++;
+        skipSpaces();
+    }
+
+    private void skipSpaces() {
+        while (pos < input.length() && Character.isWhitespace(input.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("查询语法错误（位置 " + (pos + 1) + "）：" + message);
+    }
+}
@@ -0,0 +1,454 @@
+package com.example.monitor.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * 查询表达式语法树，每个节点在给定时间点求值为一个瞬时向量
+ * 逐序列的窗口计算（rate、avg_over_time 等）只依赖单个序列的数组，序列较多时并行执行；
+ * 跨序列的聚合（sum by、topk）在其结果上顺序进行。
+ */
+public abstract class QueryExpr {
+
+    /**
+     * 瞬时选择器向前查找最近样本的范围，与 Prometheus 默认一致
+     */
+    static final long LOOKBACK_MS = 5 * 60 * 1000L;
+
+    private static final int PARALLEL_THRESHOLD = 256;
+
+    abstract Vector eval(SeriesSnapshot snapshot, long time);
+
+    /**
+     * 在 time 时刻求值，逐个回调结果元素的标签和值
+     */
+    public void evaluate(SeriesSnapshot snapshot, long time, BiConsumer<Map<String, String>, Double> consumer) {
+        Vector vector = eval(snapshot, time);
+        for (int i = 0; i < vector.size(); i++) {
+            consumer.accept(vector.labels.get(i), vector.values[i]);
+        }
+    }
+
+    /**
+     * 一个时间点上的求值结果：每个元素一组标签和一个值
+     */
+    static final class Vector {
+        final List<Map<String, String>> labels;
+        final double[] values;
+
+        Vector(List<Map<String, String>> labels, double[] values) {
+            this.labels = labels;
+            this.values = values;
+        }
+
+        int size() {
+            return values.length;
+        }
+    }
+
+    /**
+     * 标签匹配条件：= != =~ !~
+     */
+    static final class Matcher {
+        final String label;
+        final String op;
+        final String value;
+        private final Pattern pattern;
+
+        Matcher(String label, String op, String value) {
+            this.label = label;
+            this.op = op;
+            this.value = value;
+            this.pattern = op.endsWith("~") ? Pattern.compile(value) : null;
+        }
+
+        boolean matches(Map<String, String> labels) {
+            String actual = labels.get(label);
+            if (actual == null) {
+                actual = "";
+            }
+            switch (op) {
+                case "=":
+                    return actual.equals(value);
+                case "!=":
+                    return !actual.equals(value);
+                case "=~":
+                    return pattern.matcher(actual).matches();
+                default:
+                    return !pattern.matcher(actual).matches();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return label + op + '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+        }
+    }
+
+    /**
+     * 序列选择器：metric{label="value"}，可带范围 [5m]
+     */
+    static final class Selector extends QueryExpr {
+        final String name;
+        final List<Matcher> matchers;
+        final long rangeMs;
+
+        private SeriesSnapshot resolvedFor;
+        private int[] resolved;
+
+        Selector(String name, List<Matcher> matchers, long rangeMs) {
+            this.name = name;
+            this.matchers = matchers;
+            this.rangeMs = rangeMs;
+        }
+
+        /**
+         * 匹配的序列下标；同一查询在区间求值的各个时间点之间复用
+         */
+        int[] resolve(SeriesSnapshot snapshot) {
+            if (resolvedFor != snapshot) {
+                int[] candidates = snapshot.candidates(name);
+                int count = 0;
+                int[] matched = new int[candidates.length];
+                for (int index : candidates) {
+                    Map<String, String> labels = snapshot.get(index).labels;
+                    boolean ok = true;
+                    for (Matcher matcher : matchers) {
+                        if (!matcher.matches(labels)) {
+                            ok = false;
+                            break;
+                        }
+                    }
+                    if (ok) {
+                        matched[count++] = index;
+                    }
+                }
+                resolved = Arrays.copyOf(matched, count);
+                resolvedFor = snapshot;
+            }
+            return resolved;
+        }
+
+        @Override
+        Vector eval(SeriesSnapshot snapshot, long time) {
+            int[] indexes = resolve(snapshot);
+            List<Map<String, String>> labels = new ArrayList<>(indexes.length);
+            double[] values = new double[indexes.length];
+            int count = 0;
+            for (int index : indexes) {
+                SeriesSnapshot.Series series = snapshot.get(index);
+                int last = series.upperBound(time) - 1;
+                if (last >= 0 && series.timestamps()[last] > time - LOOKBACK_MS) {
+                    labels.add(series.labels);
+                    values[count++] = series.values()[last];
+                }
+            }
+            return new Vector(labels, Arrays.copyOf(values, count));
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(name != null ? name : "");
+            if (!matchers.isEmpty() || name == null) {
+                sb.append('{');
+                for (int i = 0; i < matchers.size(); i++) {
+                    sb.append(i > 0 ? "," : "").append(matchers.get(i));
+                }
+                sb.append('}');
+            }
+            if (rangeMs > 0) {
+                sb.append('[').append(MetricQueryParser.formatDuration(rangeMs)).append(']');
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * 作用于范围向量的函数
+     */
+    enum RangeFunction {
+        RATE("rate"), INCREASE("increase"), DELTA("delta"),
+        AVG_OVER_TIME("avg_over_time"), MIN_OVER_TIME("min_over_time"), MAX_OVER_TIME("max_over_time"),
+        SUM_OVER_TIME("sum_over_time"), COUNT_OVER_TIME("count_over_time"), LAST_OVER_TIME("last_over_time"),
+        STDDEV_OVER_TIME("stddev_over_time"), QUANTILE_OVER_TIME("quantile_over_time");
+
+        final String functionName;
+
+        RangeFunction(String functionName) {
+            this.functionName = functionName;
+        }
+
+        static RangeFunction of(String name) {
+            for (RangeFunction function : values()) {
+                if (function.functionName.equals(name)) {
+                    return function;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 对 [lo, hi) 区间计算，没有足够样本时返回 NaN
+         */
+        double apply(long[] ts, double[] vs, int lo, int hi, double param) {
+            int n = hi - lo;
+            if (n <= 0) {
+                return Double.NaN;
+            }
+            switch (this) {
+                case RATE:
+                case INCREASE: {
+                    if (n < 2) {
+                        return Double.NaN;
+                    }
+                    // 计数器重置（值变小）时把重置后的值整体计入增量
+                    double increase = 0;
+                    for (int i = lo + 1; i < hi; i++) {
+                        double d = vs[i] - vs[i - 1];
+                        increase += d >= 0 ? d : vs[i];
+                    }
+                    if (this == INCREASE) {
+                        return increase;
+                    }
+                    double seconds = (ts[hi - 1] - ts[lo]) / 1000.0;
+                    return seconds > 0 ? increase / seconds : Double.NaN;
+                }
+                case DELTA:
+                    return n < 2 ? Double.NaN : vs[hi - 1] - vs[lo];
+                case AVG_OVER_TIME:
+                case SUM_OVER_TIME: {
+                    double sum = 0;
+                    for (int i = lo; i < hi; i++) {
+                        sum += vs[i];
+                    }
+                    return this == SUM_OVER_TIME ? sum : sum / n;
+                }
+                case MIN_OVER_TIME: {
+                    double min = Double.POSITIVE_INFINITY;
+                    for (int i = lo; i < hi; i++) {
+                        min = Math.min(min, vs[i]);
+                    }
+                    return min;
+                }
+                case MAX_OVER_TIME: {
+                    double max = Double.NEGATIVE_INFINITY;
+                    for (int i = lo; i < hi; i++) {
+                        max = Math.max(max, vs[i]);
+                    }
+                    return max;
+                }
+                case COUNT_OVER_TIME:
+                    return n;
+                case LAST_OVER_TIME:
+                    return vs[hi - 1];
+                case STDDEV_OVER_TIME: {
+                    double mean = 0;
+                    double m2 = 0;
+                    for (int i = lo; i < hi; i++) {
+                        int k = i - lo + 1;
+                        double d = vs[i] - mean;
+                        mean += d / k;
+                        m2 += d * (vs[i] - mean);
+                    }
+                    return Math.sqrt(m2 / n);
+                }
+                default: {
+                    if (Double.isNaN(param) || param < 0 || param > 1) {
+                        return Double.NaN;
+                    }
+                    double[] window = Arrays.copyOfRange(vs, lo, hi);
+                    Arrays.sort(window);
+                    double rank = param * (n - 1);
+                    int lower = (int) Math.floor(rank);
+                    int upper = Math.min(n - 1, lower + 1);
+                    return window[lower] + (window[upper] - window[lower]) * (rank - lower);
+                }
+            }
+        }
+    }
+
+    /**
+     * 范围函数调用，如 rate(x[5m])、quantile_over_time(0.99, x[1h])
+     */
+    static final class Call extends QueryExpr {
+        final RangeFunction function;
+        final double param;
+        final Selector selector;
+
+        Call(RangeFunction function, double param, Selector selector) {
+            this.function = function;
+            this.param = param;
+            this.selector = selector;
+        }
+
+        @Override
+        Vector eval(SeriesSnapshot snapshot, long time) {
+            int[] indexes = selector.resolve(snapshot);
+            double[] out = new double[indexes.length];
+            long from = time - selector.rangeMs;
+            IntStream range = IntStream.range(0, indexes.length);
+            if (indexes.length >= PARALLEL_THRESHOLD) {
+                range = range.parallel();
+            }
+            range.forEach(i -> {
+                SeriesSnapshot.Series series = snapshot.get(indexes[i]);
+                int hi = series.upperBound(time);
+                int lo = series.upperBound(from);
+                out[i] = function.apply(series.timestamps(), series.values(), lo, hi, param);
+            });
+
+            // 与 Prometheus 一致，函数结果去掉指标名
+            List<Map<String, String>> labels = new ArrayList<>();
+            double[] values = new double[out.length];
+            int count = 0;
+            for (int i = 0; i < out.length; i++) {
+                if (!Double.isNaN(out[i])) {
+                    labels.add(snapshot.get(indexes[i]).labelsWithoutName);
+                    values[count++] = out[i];
+                }
+            }
+            return new Vector(labels, Arrays.copyOf(values, count));
+        }
+
+        @Override
+        public String toString() {
+            return function.functionName + "(" + (function == RangeFunction.QUANTILE_OVER_TIME ? param + ", " : "")
+                    + selector + ")";
+        }
+    }
+
+    /**
+     * 跨序列聚合：sum / avg / min / max / count，可按 by (...) 或 without (...) 分组
+     */
+    static final class Aggregation extends QueryExpr {
+        final String op;
+        final List<String> grouping;
+        final boolean without;
+        final QueryExpr inner;
+
+        Aggregation(String op, List<String> grouping, boolean without, QueryExpr inner) {
+            this.op = op;
+            this.grouping = grouping;
+            this.without = without;
+            this.inner = inner;
+        }
+
+        @Override
+        Vector eval(SeriesSnapshot snapshot, long time) {
+            Vector input = inner.eval(snapshot, time);
+            Map<Map<String, String>, Integer> groups = new LinkedHashMap<>();
+            int[] groupOf = new int[input.size()];
+            for (int i = 0; i < input.size(); i++) {
+                Map<String, String> key = groupLabels(input.labels.get(i));
+                Integer group = groups.get(key);
+                if (group == null) {
+                    group = groups.size();
+                    groups.put(key, group);
+                }
+                groupOf[i] = group;
+            }
+            int groupCount = groups.size();
+            double[] acc = new double[groupCount];
+            int[] counts = new int[groupCount];
+            if (op.equals("min")) {
+                Arrays.fill(acc, Double.POSITIVE_INFINITY);
+            } else if (op.equals("max")) {
+                Arrays.fill(acc, Double.NEGATIVE_INFINITY);
+            }
+            for (int i = 0; i < input.size(); i++) {
+                int g = groupOf[i];
+                double v = input.values[i];
+                counts[g]++;
+                switch (op) {
+                    case "min":
+                        acc[g] = Math.min(acc[g], v);
+                        break;
+                    case "max":
+                        acc[g] = Math.max(acc[g], v);
+                        break;
+                    default:
+                        acc[g] += v;
+                }
+            }
+            for (int g = 0; g < groupCount; g++) {
+                if (op.equals("avg")) {
+                    acc[g] /= counts[g];
+                } else if (op.equals("count")) {
+                    acc[g] = counts[g];
+                }
+            }
+            return new Vector(new ArrayList<>(groups.keySet()), acc);
+        }
+
+        private Map<String, String> groupLabels(Map<String, String> labels) {
+            Map<String, String> key = new TreeMap<>();
+            if (without) {
+                key.putAll(labels);
+                key.remove(SeriesSnapshot.NAME_LABEL);
+                grouping.forEach(key::remove);
+            } else {
+                for (String label : grouping) {
+                    String value = labels.get(label);
+                    if (value != null) {
+                        key.put(label, value);
+                    }
+                }
+            }
+            return Collections.unmodifiableMap(key);
+        }
+
+        @Override
+        public String toString() {
+            String group = grouping.isEmpty() && !without ? "" : (without ? " without (" : " by (") + String.join(", ", grouping) + ")";
+            return op + group + " (" + inner + ")";
+        }
+    }
+
+    /**
+     * topk / bottomk：保留值最大（最小）的 k 个元素及其标签
+     */
+    static final class TopK extends QueryExpr {
+        final int k;
+        final boolean bottom;
+        final QueryExpr inner;
+
+        TopK(int k, boolean bottom, QueryExpr inner) {
+            this.k = k;
+            this.bottom = bottom;
+            this.inner = inner;
+        }
+
+        @Override
+        Vector eval(SeriesSnapshot snapshot, long time) {
+            Vector input = inner.eval(snapshot, time);
+            Integer[] order = new Integer[input.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> bottom
+                    ? Double.compare(input.values[a], input.values[b])
+                    : Double.compare(input.values[b], input.values[a]));
+            int size = Math.min(k, order.length);
+            List<Map<String, String>> labels = new ArrayList<>(size);
+            double[] values = new double[size];
+            for (int i = 0; i < size; i++) {
+                labels.add(input.labels.get(order[i]));
+                values[i] = input.values[order[i]];
+            }
+            return new Vector(labels, values);
+        }
+
+        @Override
+        public String toString() {
+            return (bottom ? "bottomk(" : "topk(") + k + ", " + inner + ")";
+        }
+    }
+}
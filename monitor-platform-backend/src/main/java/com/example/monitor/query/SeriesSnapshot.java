@@ -0,0 +1,308 @@
+package com.example.monitor.query;
+
+import com.example.monitor.model.ServiceInfo;
+import com.example.monitor.storage.MetricSampleFileRepository;
+import com.example.monitor.storage.TimeSeriesChunk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.DoubleSummaryStatistics;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 按序列整理的只读指标快照
+ * 同一服务的同一指标名（含标签）为一个序列，引用仓储中压缩数据块的只读视图；查询第一次用到某个序列时才解码成
+ * 按时间排序的 long[] / double[]，窗口计算直接在这两个数组上二分定位和循环，不再经过 MetricSample 对象。
+ * 序列标签包括 __name__、指标名中自带的标签，以及 service（服务名）、serviceId 和 env。
+ */
+public final class SeriesSnapshot {
+
+    public static final String NAME_LABEL = "__name__";
+
+    private final List<Series> series;
+    private final Map<String, int[]> byName;
+    /**
+     * serviceId -> 原始指标名（含标签）-> 序列
+     */
+    private final Map<Long, Map<String, Series>> byService;
+
+    private SeriesSnapshot(List<Series> series, Map<Long, Map<String, Series>> byService) {
+        this.series = series;
+        this.byService = byService;
+        Map<String, List<Integer>> names = new HashMap<>();
+        for (int i = 0; i < series.size(); i++) {
+            names.computeIfAbsent(series.get(i).labels.get(NAME_LABEL), k -> new ArrayList<>()).add(i);
+        }
+        this.byName = new HashMap<>();
+        names.forEach((name, indexes) -> byName.put(name, indexes.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    public static SeriesSnapshot build(List<MetricSampleFileRepository.SeriesData> data, List<ServiceInfo> services) {
+        Map<Long, ServiceInfo> serviceById = new HashMap<>();
+        for (ServiceInfo service : services) {
+            serviceById.put(service.getId(), service);
+        }
+        List<Series> result = new ArrayList<>(data.size());
+        Map<Long, Map<String, Series>> byService = new HashMap<>();
+        for (MetricSampleFileRepository.SeriesData item : data) {
+            if (item.getServiceId() == null || item.getMetricName() == null || item.size() == 0) {
+                continue;
+            }
+            Series built = new Series(labels(item.getMetricName(), item.getServiceId(), serviceById.get(item.getServiceId())),
+                    item.getChunks());
+            result.add(built);
+            byService.computeIfAbsent(item.getServiceId(), k -> new HashMap<>()).put(item.getMetricName(), built);
+        }
+        return new SeriesSnapshot(result, byService);
+    }
+
+    public int size() {
+        return series.size();
+    }
+
+    public Series get(int index) {
+        return series.get(index);
+    }
+
+    /**
+     * 某个服务的某个指标（按写入时的原始指标名精确匹配），不存在时返回 null
+     */
+    public Series find(Long serviceId, String metricName) {
+        Map<String, Series> metrics = byService.get(serviceId);
+        return metrics != null ? metrics.get(metricName) : null;
+    }
+
+    /**
+     * 指定指标名的全部序列
+     */
+    public List<Series> findByName(String name) {
+        int[] indexes = candidates(name);
+        List<Series> result = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            result.add(series.get(index));
+        }
+        return result;
+    }
+
+    /**
+     * 指标名对应的序列下标，name 为空时返回全部
+     */
+    int[] candidates(String name) {
+        if (name == null) {
+            int[] all = new int[series.size()];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        int[] indexes = byName.get(name);
+        return indexes != null ? indexes : new int[0];
+    }
+
+    /**
+     * 一个序列的标签：指标名自带的标签，加上 serviceId 以及服务的名称和环境
+     */
+    public static Map<String, String> labels(String metricName, Long serviceId, ServiceInfo service) {
+        Map<String, String> labels = new TreeMap<>();
+        int brace = metricName.indexOf('{');
+        if (brace < 0) {
+            labels.put(NAME_LABEL, metricName);
+        } else {
+            labels.put(NAME_LABEL, metricName.substring(0, brace));
+            parseLabels(metricName, brace + 1, labels);
+        }
+        labels.put("serviceId", String.valueOf(serviceId));
+        if (service != null) {
+            if (service.getName() != null) {
+                labels.put("service", service.getName());
+            }
+            if (service.getEnv() != null) {
+                labels.put("env", service.getEnv());
+            }
+        }
+        return Collections.unmodifiableMap(labels);
+    }
+
+    /**
+     * 解析 http_requests_total{method="get",code="200"} 中的标签，格式不完整时忽略剩余部分
+     */
+    private static void parseLabels(String text, int pos, Map<String, String> labels) {
+        int length = text.length();
+        while (pos < length) {
+            while (pos < length && (text.charAt(pos) == ',' || text.charAt(pos) == ' ')) {
+                pos++;
+            }
+            int eq = text.indexOf('=', pos);
+            if (eq < 0 || eq + 1 >= length || text.charAt(eq + 1) != '"') {
+                return;
+            }
+            String name = text.substring(pos, eq).trim();
+            StringBuilder value = new StringBuilder();
+            int i = eq + 2;
+            while (i < length && text.charAt(i) != '"') {
+                char c = text.charAt(i);
+                if (c == '\\' && i + 1 < length) {
+                    char next = text.charAt(++i);
+                    value.append(next == 'n' ? '\n' : next);
+                } else {
+                    value.append(c);
+                }
+                i++;
+            }
+            if (i >= length) {
+                return;
+            }
+            labels.put(name, value.toString());
+            pos = i + 1;
+        }
+    }
+
+    /**
+     * 一个序列：标签与按时间排序的样本
+     */
+    public static final class Series {
+        final Map<String, String> labels;
+        /**
+         * 去掉 __name__ 的标签，函数结果使用
+         */
+        final Map<String, String> labelsWithoutName;
+        private final List<TimeSeriesChunk> chunks;
+        private final int size;
+        private volatile long[] timestamps;
+        private volatile double[] values;
+
+        Series(Map<String, String> labels, List<TimeSeriesChunk> chunks) {
+            this.labels = labels;
+            Map<String, String> copy = new TreeMap<>(labels);
+            copy.remove(NAME_LABEL);
+            this.labelsWithoutName = Collections.unmodifiableMap(copy);
+            this.chunks = chunks;
+            this.size = chunks.stream().mapToInt(TimeSeriesChunk::rows).sum();
+        }
+
+        long[] timestamps() {
+            decode();
+            return timestamps;
+        }
+
+        double[] values() {
+            decode();
+            return values;
+        }
+
+        private void decode() {
+            if (values != null) {
+                return;
+            }
+            synchronized (this) {
+                if (values != null) {
+                    return;
+                }
+                Builder builder = new Builder(size);
+                for (TimeSeriesChunk chunk : chunks) {
+                    TimeSeriesChunk.Cursor cursor = chunk.cursor();
+                    while (cursor.next()) {
+                        builder.add(cursor.getTimestamp(), cursor.getDouble(0));
+                    }
+                }
+                builder.build(this);
+            }
+        }
+
+        public Map<String, String> getLabels() {
+            return labels;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * 最近 n 个样本的统计（个数、均值、最小、最大）
+         */
+        public DoubleSummaryStatistics tailStatistics(int n) {
+            DoubleSummaryStatistics stats = new DoubleSummaryStatistics();
+            double[] values = values();
+            for (int i = Math.max(0, values.length - n); i < values.length; i++) {
+                stats.accept(values[i]);
+            }
+            return stats;
+        }
+
+        public long timestampAt(int index) {
+            return timestamps()[index];
+        }
+
+        public double valueAt(int index) {
+            return values()[index];
+        }
+
+        /**
+         * 第一个时间戳大于 time 的下标
+         */
+        public int upperBound(long time) {
+            long[] timestamps = timestamps();
+            int lo = 0;
+            int hi = timestamps.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (timestamps[mid] <= time) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    private static final class Builder {
+        long[] timestamps;
+        double[] values;
+        int size;
+        boolean sorted = true;
+
+        Builder(int capacity) {
+            timestamps = new long[Math.max(1, capacity)];
+            values = new double[Math.max(1, capacity)];
+        }
+
+        void add(long timestamp, double value) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            if (size > 0 && timestamp < timestamps[size - 1]) {
+                sorted = false;
+            }
+            timestamps[size] = timestamp;
+            values[size] = value;
+            size++;
+        }
+
+        /**
+         * 排序后的数组写入序列，values 最后赋值，作为解码完成的标志
+         */
+        void build(Series target) {
+            long[] ts = Arrays.copyOf(timestamps, size);
+            double[] vs = Arrays.copyOf(values, size);
+            if (!sorted) {
+                Integer[] order = new Integer[size];
+                for (int i = 0; i < size; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> Long.compare(timestamps[a], timestamps[b]));
+                for (int i = 0; i < size; i++) {
+                    ts[i] = timestamps[order[i]];
+                    vs[i] = values[order[i]];
+                }
+            }
+            target.timestamps = ts;
+            target.values = vs;
+        }
+    }
+}
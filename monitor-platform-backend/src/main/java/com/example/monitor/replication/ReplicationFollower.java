@@ -0,0 +1,267 @@
+package com.example.monitor.replication;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 从节点：连接主节点，把收到的文件写入本地数据目录，每个文件应用后回调对应仓储重新加载；只追加了末尾的文件回调 onAppended，仓储可以只读入新增部分
+ * 连接断开后按配置的主节点列表依次重连，每次重连都重新接收全量快照，快照结束后删除主节点上已不存在的文件。
+ * 复制延迟按最近一帧携带的主节点时间计算，主节点空闲时也会定期发送心跳。
+ */
+@Slf4j
+final class ReplicationFollower {
+
+    private final Path root;
+    private final List<InetSocketAddress> leaders;
+    private final String followerId;
+    private final Predicate<String> replicated;
+    private final Consumer<String> onApplied;
+    private final Consumer<String> onAppended;
+    private final int timeoutMs;
+    private final long retryMs;
+
+    private volatile boolean running;
+    private volatile Thread thread;
+    private volatile Socket socket;
+    private volatile InetSocketAddress connectedLeader;
+    private volatile boolean synced;
+    private volatile long lastLeaderTimeMs;
+    private volatile long appliedSeq;
+    private volatile long framesApplied;
+    private volatile long resyncs;
+
+    ReplicationFollower(Path root, List<InetSocketAddress> leaders, String followerId, Predicate<String> replicated,
+                        Consumer<String> onApplied, Consumer<String> onAppended, int timeoutMs, long retryMs) {
+        this.root = root.toAbsolutePath().normalize();
+        this.leaders = leaders;
+        this.followerId = followerId;
+        this.replicated = replicated;
+        this.onApplied = onApplied;
+        this.onAppended = onAppended;
+        this.timeoutMs = timeoutMs;
+        this.retryMs = retryMs;
+    }
+
+    void start() {
+        running = true;
+        thread = new Thread(this::run, "replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        closeSocket();
+        Thread t = thread;
+        if (t != null) {
+            t.interrupt();
+            try {
+                // 等待正在应用的帧写完，提升为主节点时不会与复制线程同时写文件
+                t.join(timeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synced = false;
+    }
+
+    /**
+     * 已完成全量同步时返回与主节点的延迟（毫秒），否则返回 -1
+     */
+    long lagMs() {
+        return synced ? Math.max(0, System.currentTimeMillis() - lastLeaderTimeMs) : -1;
+    }
+
+    Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("leader", connectedLeader != null ? connectedLeader.getHostString() + ":" + connectedLeader.getPort() : null);
+        status.put("synced", synced);
+        status.put("lagMs", lagMs());
+        status.put("appliedSeq", appliedSeq);
+        status.put("framesApplied", framesApplied);
+        status.put("resyncs", resyncs);
+        return status;
+    }
+
+    private void run() {
+        int index = 0;
+        while (running) {
+            InetSocketAddress leader = leaders.get(index % leaders.size());
+            try {
+                session(leader);
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Replication from {} interrupted: {}", leader, e.toString());
+                }
+            } finally {
+                synced = false;
+                connectedLeader = null;
+                closeSocket();
+            }
+            // 当前主节点不可用时轮换到下一个候选
+            index++;
+            try {
+                Thread.sleep(retryMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void session(InetSocketAddress leader) throws IOException {
+        Socket s = new Socket();
+        socket = s;
+        // 每次连接重新解析地址，主节点切换后域名指向新的地址也能连上
+        s.connect(new InetSocketAddress(leader.getHostString(), leader.getPort()), timeoutMs);
+        s.setSoTimeout(timeoutMs);
+        s.setTcpNoDelay(true);
+        DataOutputStream out = new DataOutputStream(s.getOutputStream());
+        out.writeInt(ReplicationFrame.MAGIC);
+        out.writeUTF(followerId);
+        out.flush();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 64 * 1024));
+        connectedLeader = leader;
+        resyncs++;
+        log.info("Replicating from {}", leader);
+
+        Set<String> snapshot = new HashSet<>();
+        while (running) {
+            ReplicationFrame frame = ReplicationFrame.readFrom(in);
+            switch (frame.type) {
+                case ReplicationFrame.FILE:
+                    writeFile(resolve(frame.path), frame.data);
+                    if (!synced) {
+                        snapshot.add(frame.path);
+                    }
+                    onApplied.accept(frame.path);
+                    break;
+                case ReplicationFrame.APPEND:
+                    append(resolve(frame.path), frame.offset, frame.data);
+                    onAppended.accept(frame.path);
+                    break;
+                case ReplicationFrame.DELETE:
+                    Files.deleteIfExists(resolve(frame.path));
+                    onApplied.accept(frame.path);
+                    break;
+                case ReplicationFrame.SNAPSHOT_END:
+                    removeStale(snapshot);
+                    log.info("Replica synced with {}: {} files", leader, snapshot.size());
+                    snapshot.clear();
+                    synced = true;
+                    break;
+                default:
+                    break;
+            }
+            appliedSeq = frame.seq;
+            lastLeaderTimeMs = frame.leaderTimeMs;
+            if (frame.type != ReplicationFrame.HEARTBEAT) {
+                framesApplied++;
+            }
+        }
+    }
+
+    /**
+     * 先写临时文件再原子替换，读取方不会看到写了一半的文件
+     */
+    private static void writeFile(Path file, byte[] data) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".repl.tmp");
+        Files.write(temp, data);
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 从 offset 处追加；本地已有的部分（快照中已包含）逐字节核对后跳过。
+     * 本地比 offset 短说明漏了数据，已有部分与主节点不一致说明副本被本地写入改动过，都断开后重新全量同步。
+     */
+    static void append(Path file, long offset, byte[] data) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long local = channel.size();
+            if (local < offset) {
+                throw new IOException("Replica of " + file.getFileName() + " has " + local + " bytes, append starts at " + offset);
+            }
+            long skip = local - offset;
+            int overlap = (int) Math.min(skip, data.length);
+            ByteBuffer existing = ByteBuffer.allocate(overlap);
+            while (existing.hasRemaining() && channel.read(existing, offset + existing.position()) > 0) {
+                // 读出本地已有的重叠部分
+            }
+            existing.flip();
+            if (!existing.equals(ByteBuffer.wrap(data, 0, overlap))) {
+                throw new IOException("Replica of " + file.getFileName() + " diverged from leader at offset " + offset);
+            }
+            if (skip >= data.length) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(data, (int) skip, data.length - (int) skip);
+            long position = local;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    private void removeStale(Set<String> snapshot) throws IOException {
+        List<String> stale;
+        try (Stream<Path> files = Files.walk(root)) {
+            stale = files.filter(Files::isRegularFile)
+                    .map(p -> root.relativize(p).toString().replace('\\', '/'))
+                    .filter(replicated)
+                    .filter(path -> !snapshot.contains(path))
+                    .collect(Collectors.toList());
+        }
+        for (String path : stale) {
+            Files.deleteIfExists(root.resolve(path));
+            onApplied.accept(path);
+        }
+    }
+
+    /**
+     * 主节点发来的路径只能落在本地数据目录内
+     */
+    private Path resolve(String path) throws IOException {
+        Path file = root.resolve(path).normalize();
+        if (!file.startsWith(root) || file.equals(root)) {
+            throw new IOException("Replication path outside storage dir: " + path);
+        }
+        return file;
+    }
+
+    private void closeSocket() {
+        Socket s = socket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException ignored) {
+                // 连接已经断开
+            }
+        }
+    }
+}
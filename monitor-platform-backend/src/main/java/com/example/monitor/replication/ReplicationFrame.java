@@ -0,0 +1,93 @@
+package com.example.monitor.replication;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * 主从复制协议中的一帧
+ * <pre>
+ * 帧 := type(1) seq(8) leaderTimeMs(8) [path(UTF)] [offset(8)] [length(4) data]
+ * FILE          path length data       文件完整内容，从节点整体替换
+ * APPEND        path offset length data 追加写入的数据，offset 为写入前的文件长度
+ * DELETE        path                   文件已删除
+ * SNAPSHOT_END                          建立连接后的全量快照已发送完
+ * HEARTBEAT                             空闲时定期发送，用于计算复制延迟
+ * </pre>
+ * 连接建立后从节点先发送 {@link #MAGIC} 和自身 ID。FILE 与 DELETE 可以重复应用，APPEND 按偏移跳过已有的部分。
+ */
+final class ReplicationFrame {
+
+    static final int MAGIC = 0x4d4f4e52;
+
+    static final byte FILE = 1;
+    static final byte APPEND = 2;
+    static final byte DELETE = 3;
+    static final byte SNAPSHOT_END = 4;
+    static final byte HEARTBEAT = 5;
+
+    /**
+     * 单帧数据的上限，超过的文件不复制
+     */
+    static final int MAX_DATA_BYTES = 256 * 1024 * 1024;
+
+    final byte type;
+    final long seq;
+    final long leaderTimeMs;
+    final String path;
+    final long offset;
+    final byte[] data;
+
+    ReplicationFrame(byte type, long seq, long leaderTimeMs, String path, long offset, byte[] data) {
+        this.type = type;
+        this.seq = seq;
+        this.leaderTimeMs = leaderTimeMs;
+        this.path = path;
+        this.offset = offset;
+        this.data = data;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(type);
+        out.writeLong(seq);
+        out.writeLong(leaderTimeMs);
+        if (type == FILE || type == APPEND || type == DELETE) {
+            out.writeUTF(path);
+        }
+        if (type == APPEND) {
+            out.writeLong(offset);
+        }
+        if (type == FILE || type == APPEND) {
+            out.writeInt(data.length);
+            out.write(data);
+        }
+    }
+
+    static ReplicationFrame readFrom(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        if (type < FILE || type > HEARTBEAT) {
+            throw new IOException("Unknown replication frame type " + type);
+        }
+        long seq = in.readLong();
+        long leaderTimeMs = in.readLong();
+        String path = type == FILE || type == APPEND || type == DELETE ? in.readUTF() : null;
+        long offset = type == APPEND ? in.readLong() : 0;
+        byte[] data = null;
+        if (type == FILE || type == APPEND) {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_DATA_BYTES) {
+                throw new IOException("Invalid replication frame length " + length);
+            }
+            data = new byte[length];
+            in.readFully(data);
+        }
+        return new ReplicationFrame(type, seq, leaderTimeMs, path, offset, data);
+    }
+
+    /**
+     * 帧在发送队列中占用的大致字节数
+     */
+    int size() {
+        return 32 + (path != null ? path.length() : 0) + (data != null ? data.length : 0);
+    }
+}
@@ -0,0 +1,395 @@
+package com.example.monitor.replication;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * 主节点：监听数据目录的文件变化，把写入流发送给所有已连接的从节点
+ * 整体重写的 JSON 文件每次发送完整内容；只追加的 .jsonl 分段和 .tsdb 时序文件只发送新增的字节，被重新创建时整体重发。
+ * 从节点连接后先收到所有文件的全量快照，之后按变化顺序收到增量；注册发生在读取快照之前，期间的变化不会遗漏，
+ * 重复收到的内容由从节点按偏移跳过。每个从节点有独立的发送队列，积压超过上限时断开，由从节点重连后重新全量同步，
+ * 慢的从节点不会拖慢主节点或其他从节点。
+ */
+@Slf4j
+final class ReplicationLeader {
+
+    private final Path root;
+    private final Predicate<String> replicated;
+    private final String bindAddress;
+    private final int port;
+    private final long heartbeatMs;
+    private final long batchDelayMs;
+    private final long maxQueueBytes;
+
+    private final AtomicLong seq = new AtomicLong();
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final Object broadcastLock = new Object();
+    private final LongAdder framesShipped = new LongAdder();
+    private final LongAdder bytesShipped = new LongAdder();
+    private final LongAdder followersDropped = new LongAdder();
+    /**
+     * 追加文件已发送到的长度，只由监听线程访问
+     */
+    private final Map<String, Long> shippedLengths = new HashMap<>();
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+
+    private ServerSocket serverSocket;
+    private WatchService watchService;
+    private volatile boolean running;
+
+    ReplicationLeader(Path root, Predicate<String> replicated, String bindAddress, int port,
+                      long heartbeatMs, long batchDelayMs, long maxQueueBytes) {
+        this.root = root.toAbsolutePath().normalize();
+        this.replicated = replicated;
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.heartbeatMs = heartbeatMs;
+        this.batchDelayMs = batchDelayMs;
+        this.maxQueueBytes = maxQueueBytes;
+    }
+
+    void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        registerTree(root);
+        for (String path : listFiles()) {
+            if (isAppendOnly(path)) {
+                shippedLengths.put(path, Files.size(root.resolve(path)));
+            }
+        }
+        serverSocket = new ServerSocket(port, 16, InetAddress.getByName(bindAddress));
+        running = true;
+        startDaemon("replication-watcher", this::watchLoop);
+        startDaemon("replication-accept", this::acceptLoop);
+        log.info("Replication leader listening on {}:{}", bindAddress, serverSocket.getLocalPort());
+    }
+
+    void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to close replication leader", e);
+        }
+        sessions.forEach(Session::close);
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("port", getPort());
+        status.put("seq", seq.get());
+        status.put("framesShipped", framesShipped.sum());
+        status.put("bytesShipped", bytesShipped.sum());
+        status.put("followersDropped", followersDropped.sum());
+        status.put("followers", sessions.stream().map(Session::getStatus).collect(Collectors.toList()));
+        return status;
+    }
+
+    private void watchLoop() {
+        while (running) {
+            try {
+                WatchKey key = watchService.poll(heartbeatMs, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    continue;
+                }
+                // 等文件安静 batchDelayMs 再读取，不会读到写了一半的文件；持续写入时最多等 10 倍
+                Set<String> changed = new LinkedHashSet<>();
+                long deadline = System.currentTimeMillis() + batchDelayMs * 10;
+                do {
+                    collect(key, changed);
+                } while (System.currentTimeMillis() < deadline
+                        && (key = watchService.poll(batchDelayMs, TimeUnit.MILLISECONDS)) != null);
+                for (String path : changed) {
+                    ship(path);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (Exception e) {
+                log.warn("Replication watcher failed", e);
+            }
+        }
+    }
+
+    private void collect(WatchKey key, Set<String> changed) throws IOException {
+        Path dir = watchedDirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || dir == null) {
+                // 事件丢失时按全部文件都有变化处理
+                changed.addAll(listFiles());
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                registerTree(path);
+                try (Stream<Path> files = Files.walk(path)) {
+                    files.filter(Files::isRegularFile).map(this::relative).filter(replicated).forEach(changed::add);
+                }
+                continue;
+            }
+            String relative = relative(path);
+            if (replicated.test(relative)) {
+                if (event.kind() == ENTRY_CREATE) {
+                    // 重新创建的文件（如整理后改名替换）内容与已发送的部分无关，整体重发
+                    shippedLengths.remove(relative);
+                }
+                changed.add(relative);
+            }
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+    }
+
+    /**
+     * 把一个文件的当前状态发给所有从节点
+     */
+    private void ship(String path) throws IOException {
+        Path file = root.resolve(path);
+        ReplicationFrame frame;
+        try {
+            if (!Files.isRegularFile(file)) {
+                if (Files.exists(file)) {
+                    return;
+                }
+                shippedLengths.remove(path);
+                frame = new ReplicationFrame(ReplicationFrame.DELETE, seq.incrementAndGet(), System.currentTimeMillis(), path, 0, null);
+            } else if (isAppendOnly(path)) {
+                frame = appendFrame(path, file);
+                if (frame == null) {
+                    return;
+                }
+            } else {
+                byte[] data = Files.readAllBytes(file);
+                frame = new ReplicationFrame(ReplicationFrame.FILE, seq.incrementAndGet(), System.currentTimeMillis(), path, 0, data);
+            }
+        } catch (NoSuchFileException e) {
+            // 读取前又被删除，删除事件随后到达
+            return;
+        }
+        synchronized (broadcastLock) {
+            for (Session session : sessions) {
+                session.offer(frame);
+            }
+        }
+        framesShipped.increment();
+        bytesShipped.add(frame.size());
+    }
+
+    private ReplicationFrame appendFrame(String path, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long shipped = shippedLengths.getOrDefault(path, -1L);
+            if (size == shipped) {
+                return null;
+            }
+            long now = System.currentTimeMillis();
+            if (shipped < 0 || size < shipped || size - shipped > ReplicationFrame.MAX_DATA_BYTES) {
+                // 新文件、被截断或重写，改为发送完整内容
+                byte[] data = Files.readAllBytes(file);
+                shippedLengths.put(path, (long) data.length);
+                return new ReplicationFrame(ReplicationFrame.FILE, seq.incrementAndGet(), now, path, 0, data);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) (size - shipped));
+            while (buffer.hasRemaining() && channel.read(buffer, shipped + buffer.position()) > 0) {
+                // 读满本次新增的部分
+            }
+            byte[] data = buffer.position() == buffer.capacity() ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+            shippedLengths.put(path, shipped + data.length);
+            return new ReplicationFrame(ReplicationFrame.APPEND, seq.incrementAndGet(), now, path, shipped, data);
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Session session = new Session(socket);
+                startDaemon("replication-sender-" + socket.getPort(), session::run);
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Failed to accept replication follower", e);
+                }
+            }
+        }
+    }
+
+    private void registerTree(Path dir) throws IOException {
+        try (Stream<Path> dirs = Files.walk(dir)) {
+            for (Path d : dirs.filter(Files::isDirectory).collect(Collectors.toList())) {
+                watchedDirs.put(d.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), d);
+            }
+        }
+    }
+
+    private List<String> listFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile).map(this::relative).filter(replicated).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private String relative(Path path) {
+        return root.relativize(path.toAbsolutePath().normalize()).toString().replace('\\', '/');
+    }
+
+    static boolean isAppendOnly(String path) {
+        return path.endsWith(".jsonl") || path.endsWith(".tsdb");
+    }
+
+    private static void startDaemon(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 一个从节点的连接：先发全量快照，再按顺序发送队列中的增量，空闲时发送心跳
+     */
+    private final class Session {
+        private final Socket socket;
+        private final LinkedBlockingQueue<ReplicationFrame> queue = new LinkedBlockingQueue<>();
+        private final AtomicLong queuedBytes = new AtomicLong();
+        private final long connectedAt = System.currentTimeMillis();
+        private volatile String followerId;
+        private volatile long sentSeq;
+        private volatile boolean closed;
+
+        Session(Socket socket) {
+            this.socket = socket;
+        }
+
+        void offer(ReplicationFrame frame) {
+            if (closed) {
+                return;
+            }
+            if (queuedBytes.addAndGet(frame.size()) > maxQueueBytes) {
+                log.warn("Replication follower {} is too far behind, disconnecting", followerId);
+                followersDropped.increment();
+                close();
+                return;
+            }
+            queue.add(frame);
+        }
+
+        void run() {
+            try (Socket s = socket) {
+                s.setTcpNoDelay(true);
+                s.setSoTimeout((int) Math.max(heartbeatMs * 3, 1000));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                if (in.readInt() != ReplicationFrame.MAGIC) {
+                    log.warn("Rejected replication connection from {}: bad handshake", s.getRemoteSocketAddress());
+                    return;
+                }
+                followerId = in.readUTF();
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 64 * 1024));
+                synchronized (broadcastLock) {
+                    sessions.add(this);
+                }
+                log.info("Replication follower {} connected from {}", followerId, s.getRemoteSocketAddress());
+
+                for (String path : listFiles()) {
+                    byte[] data;
+                    try {
+                        data = Files.readAllBytes(root.resolve(path));
+                    } catch (NoSuchFileException e) {
+                        continue;
+                    }
+                    write(out, new ReplicationFrame(ReplicationFrame.FILE, seq.get(), System.currentTimeMillis(), path, 0, data));
+                }
+                write(out, new ReplicationFrame(ReplicationFrame.SNAPSHOT_END, seq.get(), System.currentTimeMillis(), null, 0, null));
+                out.flush();
+
+                while (!closed) {
+                    ReplicationFrame frame = queue.poll(heartbeatMs, TimeUnit.MILLISECONDS);
+                    if (frame == null) {
+                        frame = new ReplicationFrame(ReplicationFrame.HEARTBEAT, seq.get(), System.currentTimeMillis(), null, 0, null);
+                    } else {
+                        queuedBytes.addAndGet(-frame.size());
+                    }
+                    write(out, frame);
+                    if (queue.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                if (!closed) {
+                    log.info("Replication follower {} disconnected: {}", followerId, e.getMessage());
+                }
+            } finally {
+                closed = true;
+                sessions.remove(this);
+            }
+        }
+
+        private void write(DataOutputStream out, ReplicationFrame frame) throws IOException {
+            frame.writeTo(out);
+            sentSeq = frame.seq;
+        }
+
+        void close() {
+            closed = true;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // 连接已经断开
+            }
+        }
+
+        Map<String, Object> getStatus() {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("followerId", followerId);
+            status.put("address", String.valueOf(socket.getRemoteSocketAddress()));
+            status.put("connectedAt", connectedAt);
+            status.put("sentSeq", sentSeq);
+            status.put("queuedFrames", queue.size());
+            status.put("queuedBytes", queuedBytes.get());
+            return status;
+        }
+    }
+}
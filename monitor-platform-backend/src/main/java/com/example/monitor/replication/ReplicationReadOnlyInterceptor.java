@@ -0,0 +1,70 @@
+package com.example.monitor.replication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 从节点只提供查询：写请求返回 405，复制延迟超过上限时查询返回 503 并带 Retry-After，
+ * 正常的查询响应带 {@link #LAG_HEADER} 说明数据落后主节点多久。提升为主节点后不再拦截。
+ * 只在配置为从节点时注册。
+ */
+@Component
+@RequiredArgsConstructor
+public class ReplicationReadOnlyInterceptor implements HandlerInterceptor, WebMvcConfigurer {
+
+    public static final String LAG_HEADER = "X-Replica-Lag-Ms";
+
+    private final ReplicationService replicationService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (replicationService.isReadOnly()) {
+            registry.addInterceptor(this).addPathPatterns("/api/**")
+                    .excludePathPatterns("/api/replication/**", "/api/self-metrics/**");
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if (!replicationService.isReadOnly()) {
+            return true;
+        }
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method) && !"OPTIONS".equals(method)) {
+            response.setHeader(HttpHeaders.ALLOW, "GET, HEAD, OPTIONS");
+            reject(response, HttpStatus.METHOD_NOT_ALLOWED, "从节点只读，写请求请发往主节点");
+            return false;
+        }
+        if (replicationService.isStale()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, "从节点数据落后主节点过多或尚未完成同步");
+            return false;
+        }
+        response.setHeader(LAG_HEADER, String.valueOf(replicationService.getLagMs()));
+        return true;
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("success", false);
+        body.put("message", message);
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(objectMapper.writeValueAsString(body));
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.monitor.replication;
+
+import com.example.monitor.storage.AiAgentFileRepository;
+import com.example.monitor.storage.AnomalyEventFileRepository;
+import com.example.monitor.storage.ApiAuthKeyFileRepository;
+import com.example.monitor.storage.IdSequenceService;
+import com.example.monitor.storage.MetricSampleFileRepository;
+import com.example.monitor.storage.ProcessInfoFileRepository;
+import com.example.monitor.storage.ProcessResourceFileRepository;
+import com.example.monitor.storage.ServerInfoFileRepository;
+import com.example.monitor.storage.ServerResourceFileRepository;
+import com.example.monitor.storage.ServiceInfoFileRepository;
+import com.example.monitor.storage.ThreadInfoFileRepository;
+import com.example.monitor.storage.ThreadStackFileRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 主从复制
+ * 主节点（leader）监听数据目录，把每次写入后的文件内容通过 TCP 连接发给从节点（follower），
+ * 从节点写入本地数据目录后让对应仓储重新加载（只追加了末尾的时序数据文件只读入新增部分），以只读方式提供查询接口，用于分担看板和资源查询的读压力。
+ * 从节点的复制延迟超过 max-lag-ms 或尚未完成全量同步时，查询接口返回 503，不返回过旧的数据。
+ * 主节点故障时可以调用 POST /api/replication/promote 把从节点提升为主节点，其余从节点通过 leader 中配置的候选地址重连。
+ * 默认关闭（role=none），主节点 role=leader，从节点 role=follower 并配置 leader 地址。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ReplicationService {
+
+    public static final String ROLE_NONE = "none";
+    public static final String ROLE_LEADER = "leader";
+    public static final String ROLE_FOLLOWER = "follower";
+
+    private final ServiceInfoFileRepository serviceInfoRepository;
+    private final ServerInfoFileRepository serverInfoRepository;
+    private final ServerResourceFileRepository serverResourceRepository;
+    private final ProcessInfoFileRepository processInfoRepository;
+    private final ProcessResourceFileRepository processResourceRepository;
+    private final ThreadInfoFileRepository threadInfoRepository;
+    private final ThreadStackFileRepository threadStackRepository;
+    private final MetricSampleFileRepository metricSampleRepository;
+    private final AnomalyEventFileRepository anomalyEventRepository;
+    private final ApiAuthKeyFileRepository apiAuthKeyRepository;
+    private final AiAgentFileRepository aiAgentRepository;
+
+    @Value("${monitor.storage-dir:data}")
+    private String storageDir;
+
+    @Value("${monitor.replication.role:none}")
+    private String role;
+
+    @Value("${monitor.replication.node-id:}")
+    private String nodeId;
+
+    @Value("${monitor.replication.bind-address:127.0.0.1}")
+    private String bindAddress;
+
+    @Value("${monitor.replication.port:9190}")
+    private int port;
+
+    /**
+     * 逗号分隔的 host:port 列表，从节点按顺序尝试连接
+     */
+    @Value("${monitor.replication.leader:}")
+    private String leaderSpec;
+
+    @Value("${monitor.replication.heartbeat-ms:1000}")
+    private long heartbeatMs;
+
+    @Value("${monitor.replication.max-lag-ms:5000}")
+    private long maxLagMs;
+
+    @Value("${monitor.replication.timeout-ms:5000}")
+    private int timeoutMs;
+
+    @Value("${monitor.replication.retry-ms:1000}")
+    private long retryMs;
+
+    @Value("${monitor.replication.batch-delay-ms:20}")
+    private long batchDelayMs;
+
+    @Value("${monitor.replication.max-queue-mb:64}")
+    private long maxQueueMb;
+
+    /**
+     * 数据文件 → 重新加载对应仓储
+     */
+    private final Map<String, Runnable> reloaders = new HashMap<>();
+    /**
+     * 只追加写入的数据文件 → 让对应仓储只读入末尾新增的部分，没有的按 reloaders 整体重新加载
+     */
+    private final Map<String, Runnable> appenders = new HashMap<>();
+
+    @Getter
+    private volatile boolean readOnly;
+    private volatile ReplicationLeader leader;
+    private volatile ReplicationFollower follower;
+
+    @PostConstruct
+    public void init() {
+        reloaders.put("services.json", serviceInfoRepository::reload);
+        reloaders.put("servers.json", serverInfoRepository::reload);
+        reloaders.put("server-resources.tsdb", serverResourceRepository::reload);
+        reloaders.put("processes.json", processInfoRepository::reload);
+        reloaders.put("process-resources.tsdb", processResourceRepository::reload);
+        reloaders.put("threads.json", threadInfoRepository::reload);
+        reloaders.put("thread-stacks.json", threadStackRepository::reload);
+        reloaders.put("metrics.tsdb", metricSampleRepository::reload);
+        reloaders.put("anomalies.json", anomalyEventRepository::reload);
+        reloaders.put("api-auth-keys.json", apiAuthKeyRepository::reload);
+        reloaders.put("ai-agents.json", aiAgentRepository::reload);
+        reloaders.put("id-sequences.json", () -> IdSequenceService.forDirectory(storageDir).reload());
+        appenders.put("server-resources.tsdb", serverResourceRepository::loadAppended);
+        appenders.put("process-resources.tsdb", processResourceRepository::loadAppended);
+        appenders.put("metrics.tsdb", metricSampleRepository::loadAppended);
+
+        switch (role) {
+            case ROLE_NONE:
+                return;
+            case ROLE_LEADER:
+                startLeader();
+                break;
+            case ROLE_FOLLOWER:
+                startFollower();
+                break;
+            default:
+                throw new IllegalStateException("monitor.replication.role 只能是 none、leader 或 follower：" + role);
+        }
+        Gauge.builder("monitor.replication.lag", this, s -> s.follower != null ? s.follower.lagMs() : 0)
+                .baseUnit("milliseconds").description("从节点与主节点的复制延迟，未同步时为 -1").register(Metrics.globalRegistry);
+    }
+
+    /**
+     * 复制的文件：临时文件和各节点本地统计的接口耗时不复制
+     */
+    static boolean isReplicated(String path) {
+        return !path.endsWith(".tmp") && !path.equals("api-latency.json");
+    }
+
+    public String getRole() {
+        return leader != null ? ROLE_LEADER : follower != null ? ROLE_FOLLOWER : ROLE_NONE;
+    }
+
+    /**
+     * 从节点未完成全量同步或延迟超过上限，数据不宜用于查询
+     */
+    public boolean isStale() {
+        ReplicationFollower f = follower;
+        if (f == null) {
+            return false;
+        }
+        long lag = f.lagMs();
+        return lag < 0 || lag > maxLagMs;
+    }
+
+    public long getLagMs() {
+        ReplicationFollower f = follower;
+        return f != null ? f.lagMs() : 0;
+    }
+
+    /**
+     * 从节点提升为主节点：停止复制，重新加载全部数据和 ID 序列后开始接受写入，并在本节点开启复制端口
+     * 原主节点恢复后必须以从节点身份重启，否则两边各自写入的数据无法合并。
+     */
+    public synchronized Map<String, Object> promote() {
+        if (follower == null) {
+            throw new IllegalStateException("本节点不是从节点");
+        }
+        follower.stop();
+        follower = null;
+        reloaders.forEach((path, reloader) -> reloadQuietly(path));
+        readOnly = false;
+        startLeader();
+        log.info("Promoted to replication leader");
+        return getStatus();
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("role", getRole());
+        status.put("readOnly", readOnly);
+        ReplicationLeader l = leader;
+        if (l != null) {
+            status.putAll(l.getStatus());
+        }
+        ReplicationFollower f = follower;
+        if (f != null) {
+            status.putAll(f.getStatus());
+            status.put("maxLagMs", maxLagMs);
+            status.put("stale", isStale());
+        }
+        return status;
+    }
+
+    private void startLeader() {
+        ReplicationLeader l = new ReplicationLeader(Paths.get(storageDir), ReplicationService::isReplicated,
+                bindAddress, port, heartbeatMs, batchDelayMs, maxQueueMb * 1024 * 1024);
+        try {
+            l.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start replication leader on port " + port, e);
+        }
+        leader = l;
+    }
+
+    private void startFollower() {
+        List<InetSocketAddress> leaders = new ArrayList<>();
+        for (String spec : leaderSpec.split(",")) {
+            String address = spec.trim();
+            if (address.isEmpty()) {
+                continue;
+            }
+            int colon = address.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalStateException("monitor.replication.leader 格式应为 host:port：" + address);
+            }
+            leaders.add(InetSocketAddress.createUnresolved(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+        }
+        if (leaders.isEmpty()) {
+            throw new IllegalStateException("从节点必须配置 monitor.replication.leader");
+        }
+        String id = nodeId.isEmpty() ? ManagementFactory.getRuntimeMXBean().getName() : nodeId;
+        readOnly = true;
+        follower = new ReplicationFollower(Paths.get(storageDir), leaders, id, ReplicationService::isReplicated,
+                this::reloadQuietly, this::appendQuietly, timeoutMs, retryMs);
+        follower.start();
+    }
+
+    private void reloadQuietly(String path) {
+        runQuietly(path, reloaders.get(path));
+    }
+
+    private void appendQuietly(String path) {
+        runQuietly(path, appenders.getOrDefault(path, reloaders.get(path)));
+    }
+
+    private static void runQuietly(String path, Runnable loader) {
+        if (loader == null) {
+            return;
+        }
+        try {
+            loader.run();
+        } catch (RuntimeException e) {
+            log.warn("Failed to reload {} after replication", path, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (follower != null) {
+            follower.stop();
+        }
+        if (leader != null) {
+            leader.stop();
+        }
+    }
+}
@@ -0,0 +1,547 @@
+package com.example.monitor.service;
+
+import com.example.monitor.model.AiAgent;
+import com.example.monitor.model.ProcessResource;
+import com.example.monitor.model.ServerResource;
+import com.example.monitor.query.SeriesSnapshot;
+import com.example.monitor.replication.ReplicationService;
+import com.example.monitor.storage.AiAgentFileRepository;
+import com.example.monitor.storage.ProcessResourceFileRepository;
+import com.example.monitor.storage.ServerResourceFileRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * AI Agent 运行时
+ * 按各 Agent 的执行间隔，针对其监控目标（服务器、进程或服务）定期计算健康评分（healthScore）和指标摘要（metricsSummary）。
+ * 所有 active 状态的 Agent 放在一个按下次执行时间排序的延迟队列中，由一个调度线程取出到期的 Agent，
+ * 交给固定大小的工作线程池执行，Agent 数量再多也不会增加线程。
+ * 每个 Agent 记住已处理到的资源记录 ID 或指标时间戳，每次只读取之后新增的数据并更新指数加权平均等状态，不重复读取历史；
+ * 计算结果先记在内存，调度线程每 refresh-seconds 批量写回一次 Agent 文件，同时同步 Agent 的增删和配置变化。
+ * 默认关闭，通过 monitor.agent-runtime.enabled=true 开启。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AiAgentRuntime {
+
+    /**
+     * 指数加权平均的平滑系数，越大越偏向最新样本
+     */
+    private static final double ALPHA = 0.3;
+
+    /**
+     * 连续多少个执行间隔没有新数据视为数据中断
+     */
+    private static final int STALE_INTERVALS = 3;
+
+    private static final int STALE_PENALTY = 30;
+
+    /**
+     * 服务响应时间参与偏离判断前至少需要的样本数
+     */
+    private static final int MIN_BASELINE_SAMPLES = 10;
+
+    private final AiAgentFileRepository agentRepository;
+    private final ServerResourceFileRepository serverResourceRepository;
+    private final ProcessResourceFileRepository processResourceRepository;
+    private final MetricQueryService metricQueryService;
+    private final ReplicationService replicationService;
+
+    @Value("${monitor.agent-runtime.enabled:false}")
+    private boolean enabled;
+
+    @Value("${monitor.agent-runtime.workers:4}")
+    private int workers;
+
+    /**
+     * Agent 配置中没有 intervalSeconds 时的执行间隔
+     */
+    @Value("${monitor.agent-runtime.default-interval-seconds:60}")
+    private long defaultIntervalSeconds;
+
+    @Value("${monitor.agent-runtime.refresh-seconds:10}")
+    private long refreshSeconds;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Long, AgentState> states = new ConcurrentHashMap<>();
+    private final DelayQueue<AgentState> queue = new DelayQueue<>();
+    /**
+     * 已算出新结果、尚未写回文件的 Agent
+     */
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private final Timer runTimer = Timer.builder("monitor.job")
+            .tag("job", "ai-agent-run")
+            .description("定时任务耗时")
+            .register(Metrics.globalRegistry);
+
+    private ExecutorService workerPool;
+    private Semaphore permits;
+    private Thread scheduler;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        AtomicInteger counter = new AtomicInteger();
+        workerPool = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ai-agent-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // 调度线程先取得许可再提交，任务队列中最多只有 workers 个任务
+        permits = new Semaphore(workers);
+        running = true;
+        scheduler = new Thread(this::schedule, "ai-agent-scheduler");
+        scheduler.setDaemon(true);
+        scheduler.start();
+        log.info("AI agent runtime started: {} workers, default interval {}s", workers, defaultIntervalSeconds);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (scheduler != null) {
+            scheduler.interrupt();
+        }
+        if (workerPool != null) {
+            workerPool.shutdownNow();
+        }
+        flush();
+    }
+
+    private void schedule() {
+        long nextRefresh = 0;
+        while (running) {
+            try {
+                long now = System.currentTimeMillis();
+                boolean readOnly = replicationService.isReadOnly();
+                if (now >= nextRefresh) {
+                    if (!readOnly) {
+                        flush();
+                    }
+                    refresh();
+                    nextRefresh = now + TimeUnit.SECONDS.toMillis(refreshSeconds);
+                }
+                AgentState state = queue.poll(Math.max(1, nextRefresh - now), TimeUnit.MILLISECONDS);
+                if (state == null || state.removed) {
+                    continue;
+                }
+                if (readOnly) {
+                    // 从节点的 Agent 文件由主节点复制过来，只保持调度，不执行也不写回
+                    reschedule(state);
+                    continue;
+                }
+                permits.acquire();
+                try {
+                    workerPool.execute(() -> {
+                        try {
+                            runQuietly(state);
+                        } finally {
+                            permits.release();
+                            reschedule(state);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    permits.release();
+                    throw e;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("AI agent scheduling failed", e);
+            }
+        }
+    }
+
+    private void reschedule(AgentState state) {
+        if (running && !state.removed) {
+            state.nextRunAt = System.currentTimeMillis() + state.intervalMs;
+            queue.add(state);
+        }
+    }
+
+    /**
+     * 与 Agent 文件同步：新增的 active Agent 在一个执行间隔内随机错开首次执行，
+     * 不再 active 或已删除的 Agent 停止调度，目标或类型变化的 Agent 重新开始计算
+     */
+    public void refresh() {
+        Set<Long> seen = new HashSet<>();
+        for (AiAgent agent : agentRepository.findByStatus("active")) {
+            TargetKind kind = TargetKind.of(agent.getType());
+            if (kind == null || agent.getTargetId() == null) {
+                continue;
+            }
+            seen.add(agent.getId());
+            long intervalMs = TimeUnit.SECONDS.toMillis(intervalSeconds(agent.getConfig()));
+            AgentState state = states.get(agent.getId());
+            if (state != null && state.kind == kind && state.targetId.equals(agent.getTargetId())) {
+                state.intervalMs = intervalMs;
+                continue;
+            }
+            if (state != null) {
+                state.removed = true;
+            }
+            state = new AgentState(agent.getId(), kind, agent.getTargetId(), intervalMs);
+            state.nextRunAt = System.currentTimeMillis() + ThreadLocalRandom.current().nextLong(intervalMs);
+            states.put(agent.getId(), state);
+            if (running) {
+                queue.add(state);
+            }
+        }
+        states.values().removeIf(state -> {
+            if (!seen.contains(state.agentId)) {
+                state.removed = true;
+                dirty.remove(state.agentId);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * 立即在调用线程中执行一轮全部 Agent 并写回结果，用于手动触发
+     */
+    public void runNow() {
+        refresh();
+        for (AgentState state : new ArrayList<>(states.values())) {
+            runQuietly(state);
+        }
+        flush();
+    }
+
+    /**
+     * 把已算出的结果批量写回 Agent 文件，整批只落盘一次
+     */
+    public void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        Map<Long, Consumer<AiAgent>> updates = new HashMap<>();
+        for (Long agentId : new ArrayList<>(dirty)) {
+            dirty.remove(agentId);
+            AgentState state = states.get(agentId);
+            AgentResult result = state != null ? state.result : null;
+            if (result == null) {
+                continue;
+            }
+            updates.put(agentId, agent -> {
+                if (result.healthScore != null) {
+                    agent.setHealthScore(result.healthScore);
+                }
+                agent.setMetricsSummary(result.summary);
+                agent.setLastActiveTime(result.runAt);
+            });
+        }
+        if (!updates.isEmpty()) {
+            agentRepository.updateAll(updates);
+        }
+    }
+
+    private void runQuietly(AgentState state) {
+        long start = System.nanoTime();
+        try {
+            synchronized (state) {
+                state.result = run(state);
+            }
+            dirty.add(state.agentId);
+        } catch (Exception e) {
+            log.warn("AI agent {} run failed", state.agentId, e);
+        } finally {
+            runTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private AgentResult run(AgentState state) throws JsonProcessingException {
+        int fresh;
+        switch (state.kind) {
+            case SERVER:
+                fresh = consumeServer(state);
+                break;
+            case PROCESS:
+                fresh = consumeProcess(state);
+                break;
+            default:
+                fresh = consumeService(state);
+                break;
+        }
+        state.samples += fresh;
+
+        long now = System.currentTimeMillis();
+        boolean stale = state.lastSampleAt == 0 || now - state.lastSampleAt > STALE_INTERVALS * state.intervalMs;
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("target", state.kind.name().toLowerCase());
+        summary.put("samples", state.samples);
+        summary.put("newSamples", fresh);
+        state.kind.describe(state, summary);
+        summary.put("lastSampleAt", state.lastSampleAt > 0 ? state.lastSampleAt : null);
+        summary.put("stale", stale);
+
+        Integer score = null;
+        if (state.samples > 0) {
+            double penalty = state.kind.penalty(state) + (stale ? STALE_PENALTY : 0);
+            score = (int) Math.round(Math.max(0, Math.min(100, 100 - penalty)));
+        }
+        return new AgentResult(score, objectMapper.writeValueAsString(summary), new Date(now));
+    }
+
+    private int consumeServer(AgentState state) {
+        List<ServerResource> records = serverResourceRepository.findByServerIdAfter(state.targetId, state.cursor);
+        for (ServerResource record : records) {
+            state.cursor = record.getId();
+            state.ewma[0] = ewma(state.ewma[0], record.getCpuUsage());
+            state.ewma[1] = ewma(state.ewma[1], record.getMemoryUsage());
+            state.ewma[2] = ewma(state.ewma[2], record.getDiskUsage());
+            touch(state, record.getTimestamp());
+        }
+        return records.size();
+    }
+
+    private int consumeProcess(AgentState state) {
+        List<ProcessResource> records = processResourceRepository.findByProcessIdAfter(state.targetId, state.cursor);
+        for (ProcessResource record : records) {
+            state.cursor = record.getId();
+            state.ewma[0] = ewma(state.ewma[0], record.getCpuUsage());
+            state.ewma[1] = ewma(state.ewma[1], record.getMemoryPercent());
+            touch(state, record.getTimestamp());
+        }
+        return records.size();
+    }
+
+    /**
+     * 服务的 responseTime 序列：指标快照只在指标写入后重建，各 Agent 共用同一份快照，按时间戳游标二分定位新样本
+     */
+    private int consumeService(AgentState state) {
+        SeriesSnapshot.Series series = metricQueryService.currentSnapshot().find(state.targetId, "responseTime");
+        if (series == null) {
+            return 0;
+        }
+        int from = series.upperBound(state.cursor);
+        for (int i = from; i < series.size(); i++) {
+            double value = series.valueAt(i);
+            state.ewma[0] = ewma(state.ewma[0], value);
+            state.baselineCount++;
+            double delta = value - state.baselineMean;
+            state.baselineMean += delta / state.baselineCount;
+            state.baselineM2 += delta * (value - state.baselineMean);
+            state.cursor = series.timestampAt(i);
+            state.lastSampleAt = Math.max(state.lastSampleAt, state.cursor);
+        }
+        return series.size() - from;
+    }
+
+    private static void touch(AgentState state, Date timestamp) {
+        if (timestamp != null) {
+            state.lastSampleAt = Math.max(state.lastSampleAt, timestamp.getTime());
+        }
+    }
+
+    private static double ewma(double current, Double value) {
+        if (value == null || value.isNaN()) {
+            return current;
+        }
+        return Double.isNaN(current) ? value : current + ALPHA * (value - current);
+    }
+
+    /**
+     * 超过 warn 开始扣分，达到 critical 扣满 max
+     */
+    private static double penalty(double value, double warn, double critical, double max) {
+        if (Double.isNaN(value) || value <= warn) {
+            return 0;
+        }
+        return value >= critical ? max : max * (value - warn) / (critical - warn);
+    }
+
+    private static Double round(double value) {
+        return Double.isNaN(value) ? null : Math.round(value * 100) / 100.0;
+    }
+
+    private long intervalSeconds(String config) {
+        if (config != null && !config.isEmpty()) {
+            try {
+                JsonNode interval = objectMapper.readTree(config).get("intervalSeconds");
+                if (interval != null && interval.canConvertToLong() && interval.asLong() > 0) {
+                    return interval.asLong();
+                }
+            } catch (IOException e) {
+                log.debug("Invalid AI agent config: {}", config);
+            }
+        }
+        return Math.max(1, defaultIntervalSeconds);
+    }
+
+    /**
+     * Agent 监控目标的种类，决定读取哪类数据以及如何评分
+     */
+    private enum TargetKind {
+        SERVER {
+            @Override
+            double penalty(AgentState state) {
+                return AiAgentRuntime.penalty(state.ewma[0], 70, 95, 40)
+                        + AiAgentRuntime.penalty(state.ewma[1], 80, 95, 30)
+                        + AiAgentRuntime.penalty(state.ewma[2], 85, 98, 30);
+            }
+
+            @Override
+            void describe(AgentState state, Map<String, Object> summary) {
+                summary.put("cpuUsage", round(state.ewma[0]));
+                summary.put("memoryUsage", round(state.ewma[1]));
+                summary.put("diskUsage", round(state.ewma[2]));
+            }
+        },
+        PROCESS {
+            @Override
+            double penalty(AgentState state) {
+                return AiAgentRuntime.penalty(state.ewma[0], 70, 95, 50)
+                        + AiAgentRuntime.penalty(state.ewma[1], 70, 90, 40);
+            }
+
+            @Override
+            void describe(AgentState state, Map<String, Object> summary) {
+                summary.put("cpuUsage", round(state.ewma[0]));
+                summary.put("memoryPercent", round(state.ewma[1]));
+            }
+        },
+        SERVICE {
+            /**
+             * 响应时间的加权平均偏离历史均值超过 1 个标准差后开始扣分，每多 1 个标准差扣 20 分，最多 60 分
+             */
+            @Override
+            double penalty(AgentState state) {
+                if (state.baselineCount < MIN_BASELINE_SAMPLES) {
+                    return 0;
+                }
+                double stddev = state.baselineStddev();
+                if (stddev <= 0) {
+                    return 0;
+                }
+                double z = (state.ewma[0] - state.baselineMean) / stddev;
+                return Math.max(0, Math.min(60, (z - 1) * 20));
+            }
+
+            @Override
+            void describe(AgentState state, Map<String, Object> summary) {
+                summary.put("responseTime", round(state.ewma[0]));
+                summary.put("baselineMean", round(state.baselineCount > 0 ? state.baselineMean : Double.NaN));
+                summary.put("baselineStddev", round(state.baselineCount > 1 ? state.baselineStddev() : Double.NaN));
+            }
+        };
+
+        abstract double penalty(AgentState state);
+
+        abstract void describe(AgentState state, Map<String, Object> summary);
+
+        /**
+         * thread、hotspot 类型的 Agent 以进程为目标；无法识别的类型返回 null，不参与调度
+         */
+        static TargetKind of(String type) {
+            if (type == null) {
+                return null;
+            }
+            switch (type) {
+                case "server":
+                    return SERVER;
+                case "process":
+                case "thread":
+                case "hotspot":
+                    return PROCESS;
+                case "service":
+                    return SERVICE;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * 一个 Agent 的调度与增量计算状态；同一时刻只有一个线程执行它
+     */
+    private static final class AgentState implements Delayed {
+        final Long agentId;
+        final TargetKind kind;
+        final Long targetId;
+        volatile long intervalMs;
+        volatile long nextRunAt;
+        volatile boolean removed;
+        volatile AgentResult result;
+
+        /**
+         * 已处理到的资源记录 ID，或服务指标的时间戳
+         */
+        long cursor = Long.MIN_VALUE;
+        long samples;
+        long lastSampleAt;
+        final double[] ewma = {Double.NaN, Double.NaN, Double.NaN};
+        long baselineCount;
+        double baselineMean;
+        double baselineM2;
+
+        AgentState(Long agentId, TargetKind kind, Long targetId, long intervalMs) {
+            this.agentId = agentId;
+            this.kind = kind;
+            this.targetId = targetId;
+            this.intervalMs = intervalMs;
+        }
+
+        double baselineStddev() {
+            return Math.sqrt(baselineM2 / (baselineCount - 1));
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(nextRunAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(nextRunAt, ((AgentState) other).nextRunAt);
+        }
+    }
+
+    private static final class AgentResult {
+        final Integer healthScore;
+        final String summary;
+        final Date runAt;
+
+        AgentResult(Integer healthScore, String summary, Date runAt) {
+            this.healthScore = healthScore;
+            this.summary = summary;
+            this.runAt = runAt;
+        }
+    }
+}
@@ -0,0 +1,487 @@
+package com.example.monitor.service;
+
+import com.example.monitor.model.*;
+import com.example.monitor.storage.*;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异常关联服务
+ * 按 服务器 → 进程 → 服务 的拓扑把滑动时间窗口内的异常事件归为一组，并给出按评分排序的根因候选。
+ * 事件接入只做 O(1) 的窗口更新，根因评估延迟到读取或窗口关闭时进行，且结果会被缓存。
+ */
+@Service
+@RequiredArgsConstructor
+public class AnomalyCorrelationService {
+
+    private static final long TOPOLOGY_REFRESH_INTERVAL_MS = 60_000;
+    private static final long TOPOLOGY_MISS_REFRESH_MS = 5_000;
+
+    private final ServiceInfoFileRepository serviceInfoRepository;
+    private final ServerInfoFileRepository serverInfoRepository;
+    private final ProcessInfoFileRepository processInfoRepository;
+    private final ServerResourceFileRepository serverResourceRepository;
+    private final ProcessResourceFileRepository processResourceRepository;
+
+    @Value("${monitor.correlation.window-seconds:300}")
+    private long windowSeconds;
+
+    @Value("${monitor.correlation.max-events-per-group:500}")
+    private int maxEventsPerGroup;
+
+    @Value("${monitor.correlation.max-active-groups:1000}")
+    private int maxActiveGroups;
+
+    @Value("${monitor.correlation.max-closed-groups:200}")
+    private int maxClosedGroups;
+
+    /**
+     * 活跃窗口，按最近更新时间排序（最久未更新的在最前），由 this 保护
+     */
+    private final LinkedHashMap<String, CorrelationWindow> activeWindows = new LinkedHashMap<>();
+    private final ArrayDeque<AnomalyCorrelationGroup> closedGroups = new ArrayDeque<>();
+    private final AtomicLong groupIdGenerator = new AtomicLong(1);
+
+    private volatile Topology topology = new Topology(Collections.emptyMap(), Collections.emptyMap());
+    private volatile long topologyLoadedAt;
+    /**
+     * 有事件的服务不在拓扑缓存中，下一次定时检查时提前刷新
+     */
+    private volatile boolean topologyMissed;
+
+    private final Timer closeWindowsTimer = Timer.builder("monitor.job")
+            .tag("job", "correlation-close-windows")
+            .description("定时任务耗时")
+            .register(Metrics.globalRegistry);
+    private final Timer refreshTopologyTimer = Timer.builder("monitor.job")
+            .tag("job", "correlation-refresh-topology")
+            .description("定时任务耗时")
+            .register(Metrics.globalRegistry);
+
+    @PostConstruct
+    public void init() {
+        if (windowSeconds < 1 || maxEventsPerGroup < 1 || maxActiveGroups < 1) {
+            throw new IllegalStateException(
+                    "monitor.correlation.window-seconds、max-events-per-group 和 max-active-groups 至少为 1");
+        }
+    }
+
+    /**
+     * 接收一条新的异常事件；拓扑只读缓存，由定时任务刷新
+     */
+    public void onEvent(AnomalyEvent event) {
+        if (event == null || event.getServiceId() == null) {
+            return;
+        }
+        Long serverId = topology.serviceToServer.get(event.getServiceId());
+        if (serverId == null) {
+            topologyMissed = true;
+        }
+        String key = serverId != null ? "server:" + serverId : "service:" + event.getServiceId();
+        long eventTime = eventTime(event);
+        long now = System.currentTimeMillis();
+
+        List<WindowState> closing = new ArrayList<>(2);
+        synchronized (this) {
+            CorrelationWindow window = activeWindows.remove(key);
+            if (window != null && eventTime - window.lastEventTime > windowMillis()) {
+                closing.add(window.capture());
+                window = null;
+            }
+            if (window == null) {
+                if (activeWindows.size() >= maxActiveGroups) {
+                    Iterator<CorrelationWindow> it = activeWindows.values().iterator();
+                    closing.add(it.next().capture());
+                    it.remove();
+                }
+                window = new CorrelationWindow(groupIdGenerator.getAndIncrement(), serverId);
+            }
+            window.add(event, eventTime, now, windowMillis(), maxEventsPerGroup);
+            activeWindows.put(key, window);
+        }
+        closeWindows(closing);
+    }
+
+    /**
+     * 获取最近的关联分组（活跃分组在前），limit 为负数时返回空列表
+     */
+    public List<AnomalyCorrelationGroup> getRecentGroups(int limit) {
+        List<CorrelationWindow> pending = new ArrayList<>();
+        List<AnomalyCorrelationGroup> result = new ArrayList<>();
+        List<AnomalyCorrelationGroup> closed;
+        Map<CorrelationWindow, WindowState> states = new IdentityHashMap<>();
+        synchronized (this) {
+            for (CorrelationWindow window : activeWindows.values()) {
+                pending.add(window);
+                if (window.snapshot == null || window.snapshotVersion != window.version) {
+                    states.put(window, window.capture());
+                }
+            }
+            closed = new ArrayList<>(closedGroups);
+        }
+
+        // 根因评估需要读取资源仓储，放在锁外执行，避免阻塞事件接入
+        Map<CorrelationWindow, AnomalyCorrelationGroup> built = new IdentityHashMap<>();
+        states.forEach((window, state) -> built.put(window, materialize(state, "active")));
+
+        synchronized (this) {
+            for (CorrelationWindow window : pending) {
+                AnomalyCorrelationGroup group = built.get(window);
+                if (group == null) {
+                    group = window.snapshot;
+                } else if (states.get(window).version == window.version) {
+                    window.snapshot = group;
+                    window.snapshotVersion = window.version;
+                }
+                result.add(group);
+            }
+        }
+        result.sort(Comparator.comparing(AnomalyCorrelationGroup::getWindowEnd).reversed());
+        result.addAll(closed);
+        int size = Math.max(0, limit);
+        return result.size() > size ? new ArrayList<>(result.subList(0, size)) : result;
+    }
+
+    /**
+     * 定时关闭空闲窗口
+     */
+    @Scheduled(fixedDelay = 30_000)
+    public void closeIdleWindows() {
+        Timer.Sample sample = Timer.start();
+        long now = System.currentTimeMillis();
+        List<WindowState> closing = new ArrayList<>();
+        synchronized (this) {
+            Iterator<CorrelationWindow> it = activeWindows.values().iterator();
+            while (it.hasNext()) {
+                CorrelationWindow window = it.next();
+                if (now - window.lastArrivalTime <= windowMillis()) {
+                    break;
+                }
+                closing.add(window.capture());
+                it.remove();
+            }
+        }
+        closeWindows(closing);
+        sample.stop(closeWindowsTimer);
+    }
+
+    /**
+     * 定时检查拓扑缓存：超过刷新间隔，或有事件的服务不在缓存中时刷新
+     */
+    @Scheduled(fixedDelay = TOPOLOGY_MISS_REFRESH_MS)
+    public void scheduledRefreshTopology() {
+        if (topologyMissed || System.currentTimeMillis() - topologyLoadedAt > TOPOLOGY_REFRESH_INTERVAL_MS) {
+            refreshTopology();
+        }
+    }
+
+    /**
+     * 重新读取服务和进程列表，建立服务到服务器、进程的映射
+     */
+    public void refreshTopology() {
+        Timer.Sample sample = Timer.start();
+        topologyMissed = false;
+        Map<Long, Long> processToServer = new HashMap<>();
+        for (ProcessInfo process : processInfoRepository.findAll()) {
+            if (process.getServerId() != null) {
+                processToServer.put(process.getId(), process.getServerId());
+            }
+        }
+        Map<Long, Long> serviceToServer = new HashMap<>();
+        Map<Long, Long> serviceToProcess = new HashMap<>();
+        for (ServiceInfo service : serviceInfoRepository.findAll()) {
+            Long serverId = service.getServerId();
+            if (service.getProcessId() != null) {
+                serviceToProcess.put(service.getId(), service.getProcessId());
+                if (serverId == null) {
+                    serverId = processToServer.get(service.getProcessId());
+                }
+            }
+            if (serverId != null) {
+                serviceToServer.put(service.getId(), serverId);
+            }
+        }
+        topology = new Topology(serviceToServer, serviceToProcess);
+        topologyLoadedAt = System.currentTimeMillis();
+        sample.stop(refreshTopologyTimer);
+    }
+
+    /**
+     * 把已从活跃窗口中移除的窗口评估为关闭的分组；根因评估需要读取资源仓储，在锁外执行
+     */
+    private void closeWindows(List<WindowState> closing) {
+        if (closing.isEmpty()) {
+            return;
+        }
+        List<AnomalyCorrelationGroup> groups = new ArrayList<>(closing.size());
+        for (WindowState state : closing) {
+            groups.add(materialize(state, "closed"));
+        }
+        synchronized (this) {
+            for (AnomalyCorrelationGroup group : groups) {
+                closedGroups.addFirst(group);
+            }
+            while (closedGroups.size() > maxClosedGroups) {
+                closedGroups.removeLast();
+            }
+        }
+    }
+
+    private AnomalyCorrelationGroup materialize(WindowState state, String status) {
+        AnomalyCorrelationGroup group = new AnomalyCorrelationGroup();
+        group.setId(state.groupId);
+        group.setServerId(state.serverId);
+        group.setStatus(status);
+        group.setWindowStart(new Date(state.firstEventTime));
+        group.setWindowEnd(new Date(state.lastEventTime));
+        group.setEventCount(state.totalEvents);
+        group.setSeverity(state.maxSeverity);
+
+        Map<Long, Double> serviceMaxScore = new TreeMap<>();
+        for (AnomalyEvent event : state.events) {
+            serviceMaxScore.merge(event.getServiceId(), event.getScore(), Math::max);
+        }
+        group.setServiceIds(new ArrayList<>(serviceMaxScore.keySet()));
+
+        long from = state.windowFrom;
+        long to = state.lastEventTime + windowMillis();
+        List<RootCauseCandidate> candidates = new ArrayList<>();
+        Topology topo = topology;
+
+        if (state.serverId != null) {
+            ServerInfo server = serverInfoRepository.findById(state.serverId);
+            if (server != null) {
+                group.setServerName(server.getName());
+                RootCauseCandidate candidate = evaluateServer(server, from, to, serviceMaxScore.size());
+                if (candidate != null) {
+                    candidates.add(candidate);
+                }
+            }
+        }
+
+        Map<Long, ProcessInfo> processes = new LinkedHashMap<>();
+        if (state.serverId != null) {
+            processInfoRepository.findByServerId(state.serverId).forEach(p -> processes.put(p.getId(), p));
+        }
+        for (Long serviceId : serviceMaxScore.keySet()) {
+            Long processId = topo.serviceToProcess.get(serviceId);
+            if (processId != null && !processes.containsKey(processId)) {
+                ProcessInfo process = processInfoRepository.findById(processId);
+                if (process != null) {
+                    processes.put(processId, process);
+                }
+            }
+        }
+        for (ProcessInfo process : processes.values()) {
+            RootCauseCandidate candidate = evaluateProcess(process, from, to);
+            if (candidate != null) {
+                candidates.add(candidate);
+            }
+        }
+
+        serviceMaxScore.forEach((serviceId, maxScore) -> {
+            String name = serviceInfoRepository.findById(serviceId).map(ServiceInfo::getName).orElse(null);
+            double score = Math.min(1.0, Math.abs(maxScore) / 10.0) * 0.6;
+            candidates.add(new RootCauseCandidate("service", serviceId, name, score,
+                    String.format("窗口内最高异常评分 %.2f", maxScore)));
+        });
+
+        candidates.sort(Comparator.comparingDouble(RootCauseCandidate::getScore).reversed());
+        group.setCandidates(candidates);
+        group.setRootCause(candidates.isEmpty() ? null : candidates.get(0));
+        return group;
+    }
+
+    /**
+     * 服务器饱和度评估：CPU、内存使用率和单核负载中的最大值，影响的服务越多评分越高
+     */
+    private RootCauseCandidate evaluateServer(ServerInfo server, long from, long to, int affectedServices) {
+        List<ServerResource> recent = serverResourceRepository.findRecentByServerId(server.getId(), 20);
+        ServerResource peak = null;
+        double peakSaturation = 0;
+        for (ServerResource r : recent) {
+            long ts = r.getTimestamp() != null ? r.getTimestamp().getTime() : 0;
+            if (ts < from - windowMillis() || ts > to) {
+                continue;
+            }
+            double saturation = saturation(server, r);
+            if (peak == null || saturation > peakSaturation) {
+                peak = r;
+                peakSaturation = saturation;
+            }
+        }
+        if (peak == null) {
+            return null;
+        }
+        double score = Math.min(1.0, peakSaturation + 0.05 * Math.max(0, affectedServices - 1));
+        String reason = String.format("CPU %.1f%%，内存 %.1f%%，负载 %.2f，影响 %d 个服务",
+                value(peak.getCpuUsage()), value(peak.getMemoryUsage()), value(peak.getLoadAverage()), affectedServices);
+        return new RootCauseCandidate("server", server.getId(), server.getName(), score, reason);
+    }
+
+    private double saturation(ServerInfo server, ServerResource r) {
+        double saturation = Math.max(value(r.getCpuUsage()), value(r.getMemoryUsage())) / 100.0;
+        if (server.getCpuCores() != null && server.getCpuCores() > 0) {
+            saturation = Math.max(saturation, value(r.getLoadAverage()) / server.getCpuCores());
+        }
+        return Math.min(1.0, saturation);
+    }
+
+    /**
+     * 进程评估：窗口内线程数相对基线的增长倍数与CPU使用率
+     */
+    private RootCauseCandidate evaluateProcess(ProcessInfo process, long from, long to) {
+        List<ProcessResource> recent = processResourceRepository.findRecentByProcessId(process.getId(), 20);
+        ProcessResource latest = null;
+        int baselineThreads = Integer.MAX_VALUE;
+        for (ProcessResource r : recent) {
+            long ts = r.getTimestamp() != null ? r.getTimestamp().getTime() : 0;
+            if (ts < from - windowMillis() || ts > to) {
+                continue;
+            }
+            if (latest == null && ts >= from) {
+                latest = r;
+            }
+            if (r.getThreadCount() != null) {
+                baselineThreads = Math.min(baselineThreads, r.getThreadCount());
+            }
+        }
+        if (latest == null) {
+            return null;
+        }
+        int threads = latest.getThreadCount() != null ? latest.getThreadCount() : 0;
+        double growth = baselineThreads == Integer.MAX_VALUE ? 1.0 : (double) threads / Math.max(1, baselineThreads);
+        double threadScore = Math.min(1.0, Math.max(0, growth - 1.0) / 2.0);
+        double cpuScore = Math.min(1.0, value(latest.getCpuUsage()) / 100.0);
+        double score = Math.max(threadScore, cpuScore) * 0.9;
+        if (score <= 0) {
+            return null;
+        }
+        String reason = String.format("线程数 %d（基线的 %.1f 倍），CPU %.1f%%", threads, growth, value(latest.getCpuUsage()));
+        return new RootCauseCandidate("process", process.getId(), process.getName(), score, reason);
+    }
+
+    private long windowMillis() {
+        return windowSeconds * 1000L;
+    }
+
+    private static long eventTime(AnomalyEvent event) {
+        if (event.getStartTime() != null) {
+            return event.getStartTime().getTime();
+        }
+        if (event.getCreatedAt() != null) {
+            return event.getCreatedAt().getTime();
+        }
+        return System.currentTimeMillis();
+    }
+
+    private static double value(Number number) {
+        return number == null ? 0 : number.doubleValue();
+    }
+
+    private static int severityRank(String severity) {
+        if ("high".equalsIgnoreCase(severity)) return 3;
+        if ("medium".equalsIgnoreCase(severity)) return 2;
+        if ("low".equalsIgnoreCase(severity)) return 1;
+        return 0;
+    }
+
+    private static final class Topology {
+        final Map<Long, Long> serviceToServer;
+        final Map<Long, Long> serviceToProcess;
+
+        Topology(Map<Long, Long> serviceToServer, Map<Long, Long> serviceToProcess) {
+            this.serviceToServer = serviceToServer;
+            this.serviceToProcess = serviceToProcess;
+        }
+    }
+
+    /**
+     * 单个拓扑键的滑动窗口，只保留窗口内且不超过上限的事件
+     */
+    private static final class CorrelationWindow {
+        final long groupId;
+        final Long serverId;
+        final ArrayDeque<AnomalyEvent> events = new ArrayDeque<>();
+        final ArrayDeque<Long> eventTimes = new ArrayDeque<>();
+        long firstEventTime;
+        long lastEventTime;
+        long lastArrivalTime;
+        int totalEvents;
+        String maxSeverity;
+        int version;
+        AnomalyCorrelationGroup snapshot;
+        int snapshotVersion = -1;
+
+        CorrelationWindow(long groupId, Long serverId) {
+            this.groupId = groupId;
+            this.serverId = serverId;
+        }
+
+        void add(AnomalyEvent event, long eventTime, long arrivalTime, long windowMillis, int maxEvents) {
+            // 事件可能乱序到达，窗口起点取最早的事件时间
+            if (totalEvents == 0) {
+                firstEventTime = eventTime;
+                lastEventTime = eventTime;
+            } else {
+                firstEventTime = Math.min(firstEventTime, eventTime);
+                lastEventTime = Math.max(lastEventTime, eventTime);
+            }
+            totalEvents++;
+            lastArrivalTime = arrivalTime;
+            if (severityRank(event.getSeverity()) > severityRank(maxSeverity)) {
+                maxSeverity = event.getSeverity();
+            }
+            events.addLast(event);
+            eventTimes.addLast(eventTime);
+            while (events.size() > maxEvents
+                    || (!eventTimes.isEmpty() && eventTimes.peekFirst() < lastEventTime - windowMillis)) {
+                events.removeFirst();
+                eventTimes.removeFirst();
+            }
+            version++;
+        }
+
+        WindowState capture() {
+            return new WindowState(groupId, serverId, new ArrayList<>(events),
+                    eventTimes.isEmpty() ? firstEventTime : eventTimes.peekFirst(),
+                    firstEventTime, lastEventTime, totalEvents, maxSeverity, version);
+        }
+    }
+
+    /**
+     * 窗口状态快照，用于在锁外评估根因
+     */
+    private static final class WindowState {
+        final long groupId;
+        final Long serverId;
+        final List<AnomalyEvent> events;
+        final long windowFrom;
+        final long firstEventTime;
+        final long lastEventTime;
+        final int totalEvents;
+        final String maxSeverity;
+        final int version;
+
+        WindowState(long groupId, Long serverId, List<AnomalyEvent> events, long windowFrom,
+                    long firstEventTime, long lastEventTime, int totalEvents, String maxSeverity, int version) {
+            this.groupId = groupId;
+            this.serverId = serverId;
+            this.events = events;
+            this.windowFrom = windowFrom;
+            this.firstEventTime = firstEventTime;
+            this.lastEventTime = lastEventTime;
+            this.totalEvents = totalEvents;
+            this.maxSeverity = maxSeverity;
+            this.version = version;
+        }
+    }
+}
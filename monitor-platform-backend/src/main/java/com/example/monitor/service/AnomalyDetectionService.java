@@ -3,9 +3,12 @@ package com.example.monitor.service;
 import com.example.monitor.model.AnomalyEvent;
 import com.example.monitor.model.MetricSample;
 import com.example.monitor.model.ServiceInfo;
+import com.example.monitor.replication.ReplicationService;
 import com.example.monitor.storage.AnomalyEventFileRepository;
 import com.example.monitor.storage.MetricSampleFileRepository;
 import com.example.monitor.storage.ServiceInfoFileRepository;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
@@ -24,13 +27,32 @@ public class AnomalyDetectionService {
     private final ServiceInfoFileRepository serviceInfoRepository;
     private final MetricSampleFileRepository metricSampleRepository;
     private final AnomalyEventFileRepository anomalyEventRepository;
+    private final AnomalyCorrelationService anomalyCorrelationService;
+    private final ReplicationService replicationService;
+
+    private final Timer jobTimer = Timer.builder("monitor.job")
+            .tag("job", "anomaly-detection")
+            .description("定时任务耗时")
+            .register(Metrics.globalRegistry);
+    private final Timer detectTimer = Timer.builder("monitor.detection")
+            .description("单个服务一次异常检测的耗时")
+            .register(Metrics.globalRegistry);
 
     /**
      * 定时检测所有服务的异常情况
      */
     @Scheduled(fixedDelay = 60_000)
     public void scheduledDetect() {
-        detectForAllServices();
+        if (replicationService.isReadOnly()) {
+            // 从节点的异常事件由主节点复制过来
+            return;
+        }
+        Timer.Sample sample = Timer.start();
+        try {
+            detectForAllServices();
+        } finally {
+            sample.stop(jobTimer);
+        }
     }
 
     /**
@@ -49,6 +71,10 @@ public class AnomalyDetectionService {
      * 对指定服务执行一次异常检测
      */
     public List<AnomalyEvent> detectForService(Long serviceId) {
+        return detectTimer.record(() -> doDetectForService(serviceId));
+    }
+
+    private List<AnomalyEvent> doDetectForService(Long serviceId) {
         List<MetricSample> samples = metricSampleRepository
                 .findRecentByServiceAndMetric(serviceId, METRIC_NAME, SAMPLE_LIMIT);
         if (samples.size() < MIN_SAMPLE_COUNT) {
@@ -111,6 +137,8 @@ public class AnomalyDetectionService {
         event.setCreatedAt(new Date());
 
         anomalyEventRepository.save(event);
+        anomalyCorrelationService.onEvent(event);
+        Metrics.counter("monitor.detection.anomalies", "severity", severity).increment();
         return new ArrayList<>();
     }
 
@@ -0,0 +1,358 @@
+package com.example.monitor.service;
+
+import com.example.monitor.model.ApiAuthKeyModel;
+import com.example.monitor.storage.ApiAuthKeyFileRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Metrics;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * API 密钥认证
+ * 仓储只保存密钥的 SHA-256 摘要。服务在内存中维护摘要到密钥的只读查找表，仓储每次写入后整表重建并原子替换，
+ * 同时递增代号使已缓存的结果全部失效。校验时先查按原始密钥散列的定长缓存，命中且代号一致时只需一次
+ * 字符串比较；未命中才计算摘要并查表，结果（包括不存在的密钥）写回缓存。有效与无效结果分两个缓存存放，
+ * 大量随机的错误密钥不会挤掉有效密钥。过期时间在每次校验时比较，请求路径上没有文件读写和锁。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ApiAuthService {
+
+    public static final String STATUS_ACTIVE = "active";
+    public static final String STATUS_DISABLED = "disabled";
+
+    private static final String KEY_PREFIX = "mk_";
+    private static final int KEY_BYTES = 24;
+    private static final int DISPLAY_PREFIX_LENGTH = 10;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final ApiAuthKeyFileRepository keyRepository;
+
+    @Value("${monitor.api-auth.cache-size:4096}")
+    private int cacheSize;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<Status, LongAdder> results = new EnumMap<>(Status.class);
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    private volatile Map<String, KeyEntry> table = new HashMap<>();
+    private volatile int generation;
+    private AtomicReferenceArray<CacheEntry> positiveCache;
+    private AtomicReferenceArray<CacheEntry> negativeCache;
+    private int cacheMask;
+
+    public enum Status {
+        VALID, MISSING, UNKNOWN, DISABLED, EXPIRED, FORBIDDEN
+    }
+
+    /**
+     * 校验结果，每个密钥的各种结果预先创建，校验时不分配对象
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static final class AuthResult {
+        private final Status status;
+        private final Long keyId;
+        private final String keyName;
+        /**
+         * 密钥自身的限流配置，为空时使用默认值
+         */
+        private final Double rateLimit;
+        private final Integer burst;
+
+        public boolean isValid() {
+            return status == Status.VALID;
+        }
+    }
+
+    /**
+     * 新建密钥的结果，原始密钥只在此返回一次
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static final class IssuedKey {
+        private final ApiAuthKeyModel key;
+        private final String secret;
+    }
+
+    private static final AuthResult MISSING = new AuthResult(Status.MISSING, null, null, null, null);
+    private static final AuthResult UNKNOWN = new AuthResult(Status.UNKNOWN, null, null, null, null);
+
+    private static final class KeyEntry {
+        final Long serviceId;
+        final long expiresAtMs;
+        final boolean active;
+        final AuthResult valid;
+        final AuthResult disabled;
+        final AuthResult expired;
+        final AuthResult forbidden;
+
+        KeyEntry(ApiAuthKeyModel key) {
+            serviceId = key.getServiceId();
+            expiresAtMs = key.getExpiresAt() != null ? key.getExpiresAt().getTime() : Long.MAX_VALUE;
+            active = STATUS_ACTIVE.equals(key.getStatus());
+            valid = result(Status.VALID, key);
+            disabled = result(Status.DISABLED, key);
+            expired = result(Status.EXPIRED, key);
+            forbidden = result(Status.FORBIDDEN, key);
+        }
+
+        private static AuthResult result(Status status, ApiAuthKeyModel key) {
+            return new AuthResult(status, key.getId(), key.getName(), key.getRateLimit(), key.getBurst());
+        }
+
+        AuthResult check(Long requestServiceId, long now) {
+            if (!active) {
+                return disabled;
+            }
+            if (now >= expiresAtMs) {
+                return expired;
+            }
+            if (serviceId != null && requestServiceId != null && !serviceId.equals(requestServiceId)) {
+                return forbidden;
+            }
+            return valid;
+        }
+    }
+
+    private static final class CacheEntry {
+        final String rawKey;
+        final int generation;
+        final KeyEntry entry;
+
+        CacheEntry(String rawKey, int generation, KeyEntry entry) {
+            this.rawKey = rawKey;
+            this.generation = generation;
+            this.entry = entry;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        int capacity = Integer.highestOneBit(Math.max(16, cacheSize - 1) << 1);
+        positiveCache = new AtomicReferenceArray<>(capacity);
+        negativeCache = new AtomicReferenceArray<>(capacity);
+        cacheMask = capacity - 1;
+        for (Status status : Status.values()) {
+            LongAdder counter = new LongAdder();
+            results.put(status, counter);
+            FunctionCounter.builder("monitor.api.auth", counter, LongAdder::doubleValue)
+                    .tag("result", status.name().toLowerCase()).description("API 密钥校验次数").register(Metrics.globalRegistry);
+        }
+        keyRepository.addListener(this::rebuild);
+        rebuild();
+    }
+
+    /**
+     * 按仓储中的全部密钥重建查找表并原子替换，之后递增代号使缓存失效
+     */
+    private synchronized void rebuild() {
+        Map<String, KeyEntry> next = new HashMap<>();
+        for (ApiAuthKeyModel key : keyRepository.findAll()) {
+            if (key.getKeyHash() != null) {
+                next.put(key.getKeyHash(), new KeyEntry(key));
+            }
+        }
+        table = next;
+        generation++;
+        log.debug("Rebuilt API auth key table with {} keys", next.size());
+    }
+
+    /**
+     * 校验原始密钥；serviceId 为空时不检查密钥的服务范围
+     */
+    public AuthResult verify(String rawKey, Long serviceId) {
+        AuthResult result = rawKey == null || rawKey.isEmpty()
+                ? MISSING : check(lookup(rawKey), serviceId);
+        results.get(result.getStatus()).increment();
+        return result;
+    }
+
+    private static AuthResult check(KeyEntry entry, Long serviceId) {
+        return entry == null ? UNKNOWN : entry.check(serviceId, System.currentTimeMillis());
+    }
+
+    private KeyEntry lookup(String rawKey) {
+        int current = generation;
+        int slot = spread(rawKey.hashCode()) & cacheMask;
+        CacheEntry cached = probe(positiveCache, slot, rawKey, current);
+        if (cached == null) {
+            cached = probe(negativeCache, slot, rawKey, current);
+        }
+        if (cached != null) {
+            cacheHits.increment();
+            return cached.entry;
+        }
+        cacheMisses.increment();
+        KeyEntry entry = table.get(hash(rawKey));
+        // 读取代号在查表之前，若期间表被替换，写回的条目代号已过期，下次会重新查表
+        store(entry != null ? positiveCache : negativeCache, slot, new CacheEntry(rawKey, current, entry));
+        return entry;
+    }
+
+    /**
+     * 缓存按两路组相联组织：每个密钥可以放在 slot 或相邻的 slot ^ 1，减少两个常用密钥互相挤占
+     */
+    private static CacheEntry probe(AtomicReferenceArray<CacheEntry> cache, int slot, String rawKey, int current) {
+        CacheEntry cached = cache.get(slot);
+        if (cached == null || cached.generation != current || !cached.rawKey.equals(rawKey)) {
+            cached = cache.get(slot ^ 1);
+            if (cached == null || cached.generation != current || !cached.rawKey.equals(rawKey)) {
+                return null;
+            }
+        }
+        return cached;
+    }
+
+    private static void store(AtomicReferenceArray<CacheEntry> cache, int slot, CacheEntry entry) {
+        CacheEntry first = cache.get(slot);
+        if (first != null && first.generation == entry.generation) {
+            // 第一路有效时把它移到第二路，新条目放第一路，第二路原有的条目被淘汰
+            cache.set(slot ^ 1, first);
+        }
+        cache.set(slot, entry);
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 原始密钥的 SHA-256 摘要（十六进制）
+     */
+    public static String hash(String rawKey) {
+        byte[] digest = SHA256.get().digest(rawKey.getBytes(StandardCharsets.UTF_8));
+        char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            chars[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    public IssuedKey createKey(ApiAuthKeyModel request) {
+        if (request.getName() == null || request.getName().trim().isEmpty()) {
+            throw new IllegalArgumentException("name 不能为空");
+        }
+        checkRateLimit(request.getRateLimit(), request.getBurst());
+        byte[] bytes = new byte[KEY_BYTES];
+        random.nextBytes(bytes);
+        String secret = KEY_PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        ApiAuthKeyModel key = new ApiAuthKeyModel();
+        key.setName(request.getName().trim());
+        key.setServiceId(request.getServiceId());
+        key.setExpiresAt(request.getExpiresAt());
+        key.setDescription(request.getDescription());
+        key.setRateLimit(request.getRateLimit());
+        key.setBurst(request.getBurst());
+        key.setStatus(STATUS_ACTIVE);
+        key.setKeyPrefix(secret.substring(0, DISPLAY_PREFIX_LENGTH));
+        key.setKeyHash(hash(secret));
+        return new IssuedKey(view(keyRepository.save(key)), secret);
+    }
+
+    /**
+     * 全部密钥，不含摘要
+     */
+    public List<ApiAuthKeyModel> listKeys() {
+        List<ApiAuthKeyModel> list = new ArrayList<>();
+        for (ApiAuthKeyModel key : keyRepository.findAll()) {
+            list.add(view(key));
+        }
+        list.sort(Comparator.comparing(ApiAuthKeyModel::getId));
+        return list;
+    }
+
+    public ApiAuthKeyModel updateStatus(Long id, String status) {
+        if (!STATUS_ACTIVE.equals(status) && !STATUS_DISABLED.equals(status)) {
+            throw new IllegalArgumentException("status 只能是 active 或 disabled");
+        }
+        ApiAuthKeyModel key = keyRepository.findById(id);
+        if (key == null) {
+            throw new IllegalArgumentException("密钥不存在: " + id);
+        }
+        key.setStatus(status);
+        return view(keyRepository.save(key));
+    }
+
+    /**
+     * 修改密钥的限流配置，参数为空表示改回默认值
+     */
+    public ApiAuthKeyModel updateRateLimit(Long id, Double rateLimit, Integer burst) {
+        checkRateLimit(rateLimit, burst);
+        ApiAuthKeyModel key = keyRepository.findById(id);
+        if (key == null) {
+            throw new IllegalArgumentException("密钥不存在: " + id);
+        }
+        key.setRateLimit(rateLimit);
+        key.setBurst(burst);
+        return view(keyRepository.save(key));
+    }
+
+    private static void checkRateLimit(Double rateLimit, Integer burst) {
+        if ((rateLimit != null && rateLimit < 0) || (burst != null && burst < 1)) {
+            throw new IllegalArgumentException("rateLimit 不能为负数，burst 至少为 1");
+        }
+    }
+
+    public void deleteKey(Long id) {
+        keyRepository.deleteById(id);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("keys", table.size());
+        stats.put("cacheHits", cacheHits.sum());
+        stats.put("cacheMisses", cacheMisses.sum());
+        Map<String, Long> counts = new LinkedHashMap<>();
+        results.forEach((status, counter) -> counts.put(status.name().toLowerCase(), counter.sum()));
+        stats.put("results", counts);
+        return stats;
+    }
+
+    private static ApiAuthKeyModel view(ApiAuthKeyModel key) {
+        ApiAuthKeyModel view = new ApiAuthKeyModel();
+        view.setId(key.getId());
+        view.setName(key.getName());
+        view.setKeyPrefix(key.getKeyPrefix());
+        view.setServiceId(key.getServiceId());
+        view.setStatus(key.getStatus());
+        view.setExpiresAt(key.getExpiresAt());
+        view.setRateLimit(key.getRateLimit());
+        view.setBurst(key.getBurst());
+        view.setDescription(key.getDescription());
+        view.setCreatedAt(key.getCreatedAt());
+        view.setUpdatedAt(key.getUpdatedAt());
+        return view;
+    }
+}
@@ -0,0 +1,403 @@
+package com.example.monitor.service;
+
+import com.example.monitor.model.ApiCallLogModel;
+import com.example.monitor.model.ApiLatencyStats;
+import com.example.monitor.query.LatencyHistogram;
+import com.example.monitor.storage.ApiCallLogFileRepository;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * API 接口延迟统计
+ * 调用日志写入线程每写完一批就回调 ingest，把每次调用计入所属接口在该分钟、小时、天的延迟直方图，
+ * 小时和天的直方图即分钟直方图的累加，迟到的记录也会计入正确的时间桶。
+ * 查询时按时间范围合并对应粒度的直方图得到 p50/p95/p99、错误率和 QPS，不读取原始调用日志。
+ * 分钟、小时、天三种粒度分别保留 minute-retention-hours、hour-retention-days、day-retention-days，
+ * 统计结果定期写入 api-latency.json，重启后继续累计。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ApiLatencyService {
+
+    static final int MAX_POINTS = 11000;
+
+    private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+
+    private final ApiCallLogFileRepository callLogRepository;
+
+    @Value("${monitor.storage-dir:data}")
+    private String storageDir;
+
+    @Value("${monitor.api-stats.minute-retention-hours:24}")
+    private long minuteRetentionHours;
+
+    @Value("${monitor.api-stats.hour-retention-days:30}")
+    private long hourRetentionDays;
+
+    @Value("${monitor.api-stats.day-retention-days:365}")
+    private long dayRetentionDays;
+
+    @Value("${monitor.api-stats.persist-interval-seconds:300}")
+    private long persistIntervalSeconds;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final ConcurrentHashMap<String, EndpointSeries> endpoints = new ConcurrentHashMap<>();
+    private File dataFile;
+    private ScheduledExecutorService persister;
+
+    /**
+     * 只由调用日志写入线程访问
+     */
+    private long lastEvictAt;
+
+    /**
+     * 直方图的时间粒度
+     */
+    enum Level {
+        MINUTE, HOUR, DAY
+    }
+
+    @PostConstruct
+    public void init() {
+        dataFile = new File(storageDir, "api-latency.json");
+        load();
+        callLogRepository.addListener(this::ingest);
+        persister = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "api-stats-persist");
+            thread.setDaemon(true);
+            return thread;
+        });
+        persister.scheduleWithFixedDelay(this::persistQuietly, persistIntervalSeconds, persistIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (persister != null) {
+            persister.shutdownNow();
+        }
+        persistQuietly();
+    }
+
+    /**
+     * 计入一批调用记录；由调用日志写入线程调用
+     */
+    public void ingest(List<ApiCallLogModel> calls) {
+        Map<String, List<ApiCallLogModel>> byEndpoint = new HashMap<>();
+        for (ApiCallLogModel call : calls) {
+            byEndpoint.computeIfAbsent(endpointKey(call), k -> new ArrayList<>()).add(call);
+        }
+        byEndpoint.forEach((endpoint, list) -> {
+            EndpointSeries series = endpoints.computeIfAbsent(endpoint, k -> new EndpointSeries());
+            synchronized (series) {
+                long minute = Long.MIN_VALUE;
+                LatencyHistogram[] current = new LatencyHistogram[Level.values().length];
+                for (ApiCallLogModel call : list) {
+                    long time = call.getTimestamp();
+                    if (time < minute || time >= minute + MINUTE_MS) {
+                        minute = bucketStart(Level.MINUTE, time);
+                        for (Level level : Level.values()) {
+                            current[level.ordinal()] = series.levels.get(level)
+                                    .computeIfAbsent(bucketStart(level, time), k -> new LatencyHistogram());
+                        }
+                    }
+                    if (Boolean.TRUE.equals(call.getRateLimited())) {
+                        for (LatencyHistogram histogram : current) {
+                            histogram.recordRejected();
+                        }
+                        continue;
+                    }
+                    double duration = call.getDurationMs() != null ? call.getDurationMs() : 0;
+                    boolean error = isError(call);
+                    for (LatencyHistogram histogram : current) {
+                        histogram.record(duration, error);
+                    }
+                }
+            }
+        });
+
+        long now = System.currentTimeMillis();
+        if (now - lastEvictAt >= MINUTE_MS) {
+            lastEvictAt = now;
+            evict(now);
+        }
+    }
+
+    /**
+     * 某个接口（endpoint 为空时为全部接口）按 step 划分的统计序列，时间均为毫秒时间戳
+     * 根据 step 和起始时间选用能覆盖该范围的最细粒度；起始时间对齐到该粒度的时间桶起点，
+     * step 向上取整为该粒度的整数倍，保证每个窗口恰好包含整数个时间桶，QPS 按窗口实际覆盖的时长计算
+     */
+    public List<ApiLatencyStats> series(String endpoint, Long start, Long end, Long step) {
+        long now = System.currentTimeMillis();
+        long endMs = end != null ? end : now;
+        long requestedStart = start != null ? start : endMs - HOUR_MS;
+        long requestedStep = step != null ? step : MINUTE_MS;
+        if (requestedStart > endMs) {
+            throw new IllegalArgumentException("start 不能晚于 end");
+        }
+        if (requestedStep < MINUTE_MS) {
+            throw new IllegalArgumentException("step 不能小于 60000 毫秒");
+        }
+
+        Level level = chooseLevel(requestedStart, requestedStep, now);
+        long resolution = resolution(level);
+        long startMs = bucketStart(level, requestedStart);
+        long stepMs = (requestedStep + resolution - 1) / resolution * resolution;
+        long points = (endMs - startMs) / stepMs + 1;
+        if (points > MAX_POINTS) {
+            throw new IllegalArgumentException("时间点过多（" + points + "），请增大 step 或缩小时间范围");
+        }
+
+        LatencyHistogram[] windows = new LatencyHistogram[(int) points];
+        for (EndpointSeries series : select(endpoint)) {
+            synchronized (series) {
+                for (Map.Entry<Long, LatencyHistogram> entry
+                        : series.levels.get(level).subMap(startMs, true, endMs, true).entrySet()) {
+                    // 夏令时切换当天的天桶不足或超过 24 小时，加半个粒度后取整，避免相邻时间桶落入同一窗口
+                    int window = (int) Math.min(points - 1, (entry.getKey() - startMs + resolution / 2) / stepMs);
+                    if (windows[window] == null) {
+                        windows[window] = new LatencyHistogram();
+                    }
+                    windows[window].merge(entry.getValue());
+                }
+            }
+        }
+
+        List<ApiLatencyStats> result = new ArrayList<>(windows.length);
+        for (int i = 0; i < windows.length; i++) {
+            ApiLatencyStats stats = toStats(windows[i] != null ? windows[i] : new LatencyHistogram(), stepMs);
+            stats.setEndpoint(endpoint);
+            stats.setTimestamp(startMs + i * stepMs);
+            result.add(stats);
+        }
+        return result;
+    }
+
+    /**
+     * 时间范围内有调用的各接口汇总，按调用次数降序
+     */
+    public List<ApiLatencyStats> endpoints(Long start, Long end) {
+        long now = System.currentTimeMillis();
+        long endMs = end != null ? end : now;
+        long startMs = start != null ? start : endMs - HOUR_MS;
+        if (startMs > endMs) {
+            throw new IllegalArgumentException("start 不能晚于 end");
+        }
+        Level level = chooseLevel(startMs, MINUTE_MS, now);
+        long from = bucketStart(level, startMs);
+        List<ApiLatencyStats> result = new ArrayList<>();
+        endpoints.forEach((endpoint, series) -> {
+            LatencyHistogram merged = new LatencyHistogram();
+            synchronized (series) {
+                series.levels.get(level).subMap(from, true, endMs, true).values().forEach(merged::merge);
+            }
+            if (merged.getTotal() > 0 || merged.getRejected() > 0) {
+                // 粗粒度的时间桶可能早于 startMs，按合并的时间桶实际覆盖的时长计算 QPS
+                ApiLatencyStats stats = toStats(merged, Math.max(1, endMs - from));
+                stats.setEndpoint(endpoint);
+                result.add(stats);
+            }
+        });
+        result.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        return result;
+    }
+
+    /**
+     * 接口标识：有 endpointId 时为其数值，否则为“方法 路径”
+     */
+    public static String endpointKey(ApiCallLogModel call) {
+        if (call.getEndpointId() != null) {
+            return String.valueOf(call.getEndpointId());
+        }
+        String path = call.getPath() != null ? call.getPath() : "unknown";
+        return call.getMethod() != null ? call.getMethod() + " " + path : path;
+    }
+
+    /**
+     * 5xx 视为错误；没有状态码时以是否带错误信息判断
+     */
+    private static boolean isError(ApiCallLogModel call) {
+        Integer status = call.getStatusCode();
+        return status != null ? status >= 500 : call.getErrorMessage() != null;
+    }
+
+    private Collection<EndpointSeries> select(String endpoint) {
+        if (endpoint == null) {
+            return endpoints.values();
+        }
+        EndpointSeries series = endpoints.get(endpoint);
+        return series != null ? Collections.singletonList(series) : Collections.emptyList();
+    }
+
+    /**
+     * step 是整天或整小时时用对应粒度；起始时间早于细粒度的保留期时退到更粗的粒度
+     */
+    private Level chooseLevel(long startMs, long stepMs, long now) {
+        if (stepMs % DAY_MS == 0 || startMs < now - TimeUnit.DAYS.toMillis(hourRetentionDays)) {
+            return Level.DAY;
+        }
+        if (stepMs % HOUR_MS == 0 || startMs < now - TimeUnit.HOURS.toMillis(minuteRetentionHours)) {
+            return Level.HOUR;
+        }
+        return Level.MINUTE;
+    }
+
+    private static long resolution(Level level) {
+        switch (level) {
+            case MINUTE:
+                return MINUTE_MS;
+            case HOUR:
+                return HOUR_MS;
+            default:
+                return DAY_MS;
+        }
+    }
+
+    private long bucketStart(Level level, long time) {
+        switch (level) {
+            case MINUTE:
+                return time - Math.floorMod(time, MINUTE_MS);
+            case HOUR:
+                return Instant.ofEpochMilli(time).atZone(zone).truncatedTo(ChronoUnit.HOURS).toInstant().toEpochMilli();
+            default:
+                return Instant.ofEpochMilli(time).atZone(zone).truncatedTo(ChronoUnit.DAYS).toInstant().toEpochMilli();
+        }
+    }
+
+    private static ApiLatencyStats toStats(LatencyHistogram histogram, long windowMs) {
+        ApiLatencyStats stats = new ApiLatencyStats();
+        long total = histogram.getTotal();
+        stats.setCount(total);
+        stats.setErrors(histogram.getErrors());
+        stats.setRejected(histogram.getRejected());
+        stats.setQps(round(total * 1000.0 / windowMs));
+        if (total > 0) {
+            stats.setErrorRate(round((double) histogram.getErrors() / total));
+            stats.setAvgMs(round(histogram.getSumMs() / total));
+            stats.setMaxMs(round(histogram.getMaxMs()));
+            stats.setP50Ms(round(histogram.percentile(0.50)));
+            stats.setP95Ms(round(histogram.percentile(0.95)));
+            stats.setP99Ms(round(histogram.percentile(0.99)));
+        }
+        return stats;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    private void evict(long now) {
+        Map<Level, Long> cutoffs = new EnumMap<>(Level.class);
+        cutoffs.put(Level.MINUTE, now - TimeUnit.HOURS.toMillis(minuteRetentionHours));
+        cutoffs.put(Level.HOUR, now - TimeUnit.DAYS.toMillis(hourRetentionDays));
+        cutoffs.put(Level.DAY, now - TimeUnit.DAYS.toMillis(dayRetentionDays));
+        endpoints.forEach((endpoint, series) -> {
+            synchronized (series) {
+                cutoffs.forEach((level, cutoff) -> series.levels.get(level).headMap(bucketStart(level, cutoff)).clear());
+                if (series.levels.get(Level.DAY).isEmpty()) {
+                    endpoints.remove(endpoint, series);
+                }
+            }
+        });
+    }
+
+    private void load() {
+        if (!dataFile.exists()) {
+            return;
+        }
+        try {
+            Map<String, EnumMap<Level, TreeMap<Long, LatencyHistogram>>> stored = objectMapper.readValue(dataFile,
+                    new TypeReference<Map<String, EnumMap<Level, TreeMap<Long, LatencyHistogram>>>>() {});
+            stored.forEach((endpoint, levels) -> {
+                EndpointSeries series = new EndpointSeries();
+                levels.forEach((level, buckets) -> series.levels.get(level).putAll(buckets));
+                endpoints.put(endpoint, series);
+            });
+            evict(System.currentTimeMillis());
+            log.info("Loaded API latency statistics for {} endpoints", endpoints.size());
+        } catch (IOException e) {
+            log.error("Failed to load API latency statistics", e);
+        }
+    }
+
+    private void persistQuietly() {
+        try {
+            persist();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to save API latency statistics", e);
+        }
+    }
+
+    /**
+     * 逐个接口加锁写出，写入临时文件后原子替换
+     */
+    void persist() throws IOException {
+        Path target = dataFile.toPath();
+        Path temp = target.resolveSibling(dataFile.getName() + ".tmp");
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(temp.toFile(),
+                JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            for (Map.Entry<String, EndpointSeries> entry : endpoints.entrySet()) {
+                EndpointSeries series = entry.getValue();
+                synchronized (series) {
+                    series.levels.values().forEach(buckets -> buckets.values().forEach(LatencyHistogram::compact));
+                    generator.writeFieldName(entry.getKey());
+                    generator.writeObject(series.levels);
+                }
+            }
+            generator.writeEndObject();
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 一个接口各粒度的直方图，按时间桶起始时间排序；访问时对象本身加锁
+     */
+    private static final class EndpointSeries {
+        final EnumMap<Level, TreeMap<Long, LatencyHistogram>> levels = new EnumMap<>(Level.class);
+
+        EndpointSeries() {
+            for (Level level : Level.values()) {
+                levels.put(level, new TreeMap<>());
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.monitor.service;
+
+import com.example.monitor.model.ApiCallLogModel;
+import com.example.monitor.storage.ApiCallLogFileRepository;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * API 管理：调用前的认证与限流，调用日志的记录与查询
+ */
+@Service
+@RequiredArgsConstructor
+public class ApiManagementService {
+
+    private static final int MAX_QUERY_LIMIT = 1000;
+
+    private final ApiCallLogFileRepository callLogRepository;
+    private final ApiAuthService apiAuthService;
+    private final ApiRateLimitService apiRateLimitService;
+
+    /**
+     * 调用前的准入结果；status 为密钥校验结果，校验通过但被限流时为 RATE_LIMITED
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static final class AccessDecision {
+        private final String status;
+        private final Long keyId;
+        private final boolean allowed;
+        /**
+         * 被限流时距下一次可放行的毫秒数
+         */
+        private final long retryAfterMs;
+    }
+
+    /**
+     * 网关转发调用前校验密钥并按（密钥，接口）限流，被限流的调用以 429 记入调用日志
+     */
+    public AccessDecision authorize(String rawKey, ApiCallLogModel call) {
+        ApiAuthService.AuthResult auth = apiAuthService.verify(rawKey, call.getServiceId());
+        if (!auth.isValid()) {
+            return new AccessDecision(auth.getStatus().name(), auth.getKeyId(), false, 0);
+        }
+        long waitNanos = apiRateLimitService.tryAcquire(auth.getKeyId(), ApiLatencyService.endpointKey(call),
+                auth.getRateLimit(), auth.getBurst());
+        if (waitNanos == 0) {
+            return new AccessDecision(auth.getStatus().name(), auth.getKeyId(), true, 0);
+        }
+        call.setAuthKeyId(auth.getKeyId());
+        call.setStatusCode(429);
+        call.setDurationMs(0.0);
+        call.setRateLimited(true);
+        callLogRepository.publish(call);
+        return new AccessDecision("RATE_LIMITED", auth.getKeyId(), false,
+                Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+    }
+
+    /**
+     * 记录一次调用，不阻塞调用方；日志队列已满时丢弃并返回 false
+     */
+    public boolean recordCall(ApiCallLogModel call) {
+        return callLogRepository.publish(call);
+    }
+
+    /**
+     * 查询调用日志，默认最近一小时，按时间倒序
+     */
+    public List<ApiCallLogModel> findCalls(Long start, Long end, Long serviceId, Long endpointId, String path, Integer limit) {
+        long endMs = end != null ? end : System.currentTimeMillis();
+        long startMs = start != null ? start : endMs - TimeUnit.HOURS.toMillis(1);
+        if (startMs > endMs) {
+            throw new IllegalArgumentException("start 不能晚于 end");
+        }
+        Predicate<ApiCallLogModel> filter = call ->
+                (serviceId == null || serviceId.equals(call.getServiceId()))
+                        && (endpointId == null || endpointId.equals(call.getEndpointId()))
+                        && (path == null || path.equals(call.getPath()));
+        int max = limit == null || limit <= 0 ? 100 : Math.min(limit, MAX_QUERY_LIMIT);
+        return callLogRepository.find(startMs, endMs, filter, max);
+    }
+
+    public Map<String, Object> getCallLogStats() {
+        return callLogRepository.getStats();
+    }
+
+    public Map<String, Object> getRateLimitStats() {
+        return apiRateLimitService.getStats();
+    }
+}
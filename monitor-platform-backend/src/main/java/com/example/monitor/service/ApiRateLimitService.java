@@ -0,0 +1,204 @@
+package com.example.monitor.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * API 限流：每个（密钥，接口）一个令牌桶
+ * 桶只保存一个“理论到达时间”（GCRA 形式的令牌桶）：每放行一次推后一个发放间隔，领先当前时间超过突发容量即拒绝，
+ * 令牌随时间流逝自然补满，不需要后台补充。状态只有一个 long，用 CAS 更新，不同桶之间没有共享的锁或计数，
+ * 计数使用 LongAdder，放行判断的吞吐随核数线性增长。
+ * 理论到达时间早于当前时间说明桶已满，空闲超过 idle-seconds 的满桶由后台线程删除，删除后再创建的桶同样是满的，行为不变。
+ */
+@Slf4j
+@Service
+public class ApiRateLimitService {
+
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /** 突发容量上限（约 73 年），保证 now + 容量不会溢出 */
+    private static final long MAX_TOLERANCE_NANOS = Long.MAX_VALUE / 4;
+    private static final AtomicLongFieldUpdater<Bucket> TAT =
+            AtomicLongFieldUpdater.newUpdater(Bucket.class, "theoreticalArrival");
+
+    @Value("${monitor.api-rate-limit.default-rate:0}")
+    private double defaultRate;
+
+    @Value("${monitor.api-rate-limit.default-burst:0}")
+    private int defaultBurst;
+
+    @Value("${monitor.api-rate-limit.idle-seconds:300}")
+    private long idleSeconds;
+
+    private final ConcurrentHashMap<BucketKey, Bucket> buckets = new ConcurrentHashMap<>();
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private ScheduledExecutorService evictor;
+
+    private static final class BucketKey {
+        final long keyId;
+        final String endpoint;
+        final int hash;
+
+        BucketKey(long keyId, String endpoint) {
+            this.keyId = keyId;
+            this.endpoint = endpoint;
+            this.hash = Long.hashCode(keyId) * 31 + endpoint.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BucketKey)) {
+                return false;
+            }
+            BucketKey other = (BucketKey) o;
+            return keyId == other.keyId && endpoint.equals(other.endpoint);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * 发放间隔与突发容量（纳秒），限流配置不变时沿用同一个对象。
+     * 突发容量至少为 1，否则所有调用都会被拒绝；速率极小时间隔和容量截断到上限
+     */
+    private static final class Quota {
+        final double rate;
+        final int burst;
+        final long intervalNanos;
+        final long toleranceNanos;
+
+        Quota(double rate, int burst) {
+            this.rate = rate;
+            this.burst = burst;
+            this.intervalNanos = Math.min(MAX_TOLERANCE_NANOS, Math.max(1, (long) (SECOND_NANOS / rate)));
+            long tolerance;
+            try {
+                tolerance = Math.multiplyExact(intervalNanos, (long) Math.max(1, burst));
+            } catch (ArithmeticException e) {
+                tolerance = MAX_TOLERANCE_NANOS;
+            }
+            this.toleranceNanos = Math.min(MAX_TOLERANCE_NANOS, tolerance);
+        }
+    }
+
+    private static final class Bucket {
+        volatile long theoreticalArrival;
+        volatile Quota quota;
+
+        Bucket(Quota quota, long now) {
+            this.quota = quota;
+            this.theoreticalArrival = now;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        FunctionCounter.builder("monitor.api.rate_limit", allowed, LongAdder::doubleValue)
+                .tag("result", "allowed").description("API 限流判断次数").register(Metrics.globalRegistry);
+        FunctionCounter.builder("monitor.api.rate_limit", rejected, LongAdder::doubleValue)
+                .tag("result", "rejected").description("API 限流判断次数").register(Metrics.globalRegistry);
+        Gauge.builder("monitor.api.rate_limit.buckets", buckets, Map::size)
+                .description("当前的限流令牌桶数").register(Metrics.globalRegistry);
+
+        long period = Math.max(1, idleSeconds / 2);
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "api-rate-limit-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(() -> evictIdle(System.nanoTime()), period, period, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+    }
+
+    /**
+     * 尝试放行一次调用：放行返回 0，拒绝时返回距下一个令牌可用的纳秒数。
+     * rate、burst 为密钥自身的配置，为空时使用默认值；速率为 0 表示不限流
+     */
+    public long tryAcquire(long keyId, String endpoint, Double rate, Integer burst) {
+        double effectiveRate = rate != null ? rate : defaultRate;
+        if (effectiveRate <= 0) {
+            allowed.increment();
+            return 0;
+        }
+        int effectiveBurst = burst != null ? burst : defaultBurst > 0 ? defaultBurst : (int) Math.max(1, Math.ceil(effectiveRate));
+        long now = System.nanoTime();
+        Bucket bucket = buckets.get(new BucketKey(keyId, endpoint));
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(new BucketKey(keyId, endpoint),
+                    k -> new Bucket(new Quota(effectiveRate, effectiveBurst), now));
+        }
+        Quota quota = bucket.quota;
+        if (quota.rate != effectiveRate || quota.burst != effectiveBurst) {
+            // 密钥的限流配置已修改，桶内已用的额度保留
+            quota = new Quota(effectiveRate, effectiveBurst);
+            bucket.quota = quota;
+        }
+        while (true) {
+            long current = bucket.theoreticalArrival;
+            long next = Math.max(current - now, 0) + quota.intervalNanos;
+            if (next > quota.toleranceNanos) {
+                rejected.increment();
+                return next - quota.toleranceNanos;
+            }
+            if (TAT.compareAndSet(bucket, current, now + next)) {
+                allowed.increment();
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 删除空闲超过 idle-seconds 的满桶
+     */
+    public int evictIdle(long nowNanos) {
+        long idleNanos = TimeUnit.SECONDS.toNanos(idleSeconds);
+        int removed = 0;
+        for (Map.Entry<BucketKey, Bucket> entry : buckets.entrySet()) {
+            // 删除与放行并发时最多多放行一次，桶本来就是满的，可以忽略
+            if (nowNanos - entry.getValue().theoreticalArrival >= idleNanos
+                    && buckets.remove(entry.getKey(), entry.getValue())) {
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            evicted.add(removed);
+            log.debug("Evicted {} idle rate limit buckets", removed);
+        }
+        return removed;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("buckets", buckets.size());
+        stats.put("allowed", allowed.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("evicted", evicted.sum());
+        stats.put("defaultRate", defaultRate);
+        return stats;
+    }
+}
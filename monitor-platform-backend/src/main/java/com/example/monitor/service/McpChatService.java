@@ -1,70 +1,175 @@
 package com.example.monitor.service;
 
+import com.example.monitor.chat.ChatAggregates;
+import com.example.monitor.chat.KeywordMatcher;
 import com.example.monitor.model.*;
-import com.example.monitor.storage.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
-import java.time.ZoneId;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class McpChatService {
 
-    private final ServiceInfoFileRepository serviceInfoRepository;
-    private final ServerInfoFileRepository serverInfoRepository;
-    private final AnomalyEventFileRepository anomalyEventRepository;
-    private final MetricSampleFileRepository metricSampleRepository;
-    private final ServerResourceFileRepository serverResourceRepository;
+    /**
+     * 问题中可识别的关键词；前 7 个是问题类别，按声明顺序决定优先级，其余用于类别内的细分
+     */
+    private enum Keyword {
+        SERVICE("服务", "service"),
+        SERVER("服务器", "server"),
+        ANOMALY("异常", "anomaly", "告警"),
+        METRIC("指标", "metric", "响应时间"),
+        RESOURCE("资源", "cpu", "内存", "memory", "磁盘", "disk"),
+        HEALTH("健康", "状态", "health"),
+        STATISTICS("统计", "数量", "总数", "总"),
+
+        COUNT("多少", "数量", "总数"),
+        LIST("列表"),
+        PROD("prod", "生产"),
+        TEST("test", "测试"),
+        ONLINE("在线", "online"),
+        TYPE("类型", "type"),
+        RECENT("最近", "latest"),
+        HIGH("高", "严重"),
+        RESPONSE("响应时间", "response"),
+        CPU("cpu"),
+        MEMORY("内存", "memory"),
+        DISK("磁盘", "disk");
+
+        private final String[] words;
+
+        Keyword(String... words) {
+            this.words = words;
+        }
 
-    public String processQuery(String query) {
-        if (query == null || query.trim().isEmpty()) {
-            return "请提供您的问题。";
+        boolean isCategory() {
+            return ordinal() <= STATISTICS.ordinal();
         }
+    }
 
-        String lowerQuery = query.toLowerCase();
+    private static final KeywordMatcher<Keyword> MATCHER = buildMatcher();
 
-        // 服务相关查询
-        if (lowerQuery.contains("服务") || lowerQuery.contains("service")) {
-            return handleServiceQuery(query);
-        }
+    /**
+     * 流式回答中长列表每多少行发送一次
+     */
+    private static final int LINES_PER_CHUNK = 100;
 
-        // 服务器相关查询
-        if (lowerQuery.contains("服务器") || lowerQuery.contains("server")) {
-            return handleServerQuery(query);
-        }
+    private final ChatAggregates aggregates;
 
-        // 异常相关查询
-        if (lowerQuery.contains("异常") || lowerQuery.contains("anomaly") || lowerQuery.contains("告警")) {
-            return handleAnomalyQuery(query);
-        }
+    @Value("${monitor.chat.max-streams:16}")
+    private int maxStreams;
+
+    @Value("${monitor.chat.query-threads:4}")
+    private int queryThreads;
+
+    /**
+     * 流式回答的执行线程，与并发取数的线程分开，避免回答线程占满后互相等待
+     */
+    private ThreadPoolExecutor streamExecutor;
+    private ThreadPoolExecutor queryExecutor;
 
-        // 指标相关查询
-        if (lowerQuery.contains("指标") || lowerQuery.contains("metric") || lowerQuery.contains("响应时间")) {
-            return handleMetricQuery(query);
+    private static KeywordMatcher<Keyword> buildMatcher() {
+        Map<Keyword, List<String>> words = new EnumMap<>(Keyword.class);
+        for (Keyword keyword : Keyword.values()) {
+            words.put(keyword, Arrays.asList(keyword.words));
         }
+        return new KeywordMatcher<>(Keyword.class, words);
+    }
 
-        // 资源相关查询
-        if (lowerQuery.contains("资源") || lowerQuery.contains("cpu") || lowerQuery.contains("内存") || lowerQuery.contains("disk")) {
-            return handleResourceQuery(query);
+    @PostConstruct
+    public void init() {
+        streamExecutor = pool("chat-stream-", maxStreams, maxStreams * 4);
+        queryExecutor = pool("chat-query-", queryThreads, Integer.MAX_VALUE);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (streamExecutor != null) {
+            streamExecutor.shutdownNow();
+        }
+        if (queryExecutor != null) {
+            queryExecutor.shutdownNow();
         }
+    }
+
+    private static ThreadPoolExecutor pool(String prefix, int threads, int queueCapacity) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 
-        // 健康状态查询
-        if (lowerQuery.contains("健康") || lowerQuery.contains("状态") || lowerQuery.contains("health")) {
-            return handleHealthQuery(query);
+    public String processQuery(String query) {
+        StringBuilder sb = new StringBuilder();
+        answer(query, sb::append);
+        return sb.toString();
+    }
+
+    /**
+     * 流式回答：在后台线程中生成回答，每算出一段就交给 sink，各段按顺序拼接即为完整回答。
+     * 返回的 future 在回答结束后完成；sink 抛出异常（如客户端已断开）时回答中止，future 以该异常完成。
+     * 同时在处理的流式回答过多时抛出 RejectedExecutionException。
+     */
+    public CompletableFuture<Void> streamQuery(String query, Consumer<String> sink) {
+        return CompletableFuture.runAsync(() -> answer(query, sink), streamExecutor);
+    }
+
+    private void answer(String query, Consumer<String> out) {
+        if (query == null || query.trim().isEmpty()) {
+            out.accept("请提供您的问题。");
+            return;
         }
 
-        // 统计查询
-        if (lowerQuery.contains("统计") || lowerQuery.contains("数量") || lowerQuery.contains("总")) {
-            return handleStatisticsQuery(query);
+        Set<Keyword> keywords = MATCHER.match(query.toLowerCase());
+        for (Keyword category : keywords) {
+            if (!category.isCategory()) {
+                break;
+            }
+            switch (category) {
+                case SERVICE:
+                    handleServiceQuery(keywords, out);
+                    return;
+                case SERVER:
+                    handleServerQuery(keywords, out);
+                    return;
+                case ANOMALY:
+                    handleAnomalyQuery(keywords, out);
+                    return;
+                case METRIC:
+                    handleMetricQuery(keywords, out);
+                    return;
+                case RESOURCE:
+                    handleResourceQuery(keywords, out);
+                    return;
+                case HEALTH:
+                    handleHealthQuery(out);
+                    return;
+                default:
+                    handleStatisticsQuery(out);
+                    return;
+            }
         }
 
-        return "抱歉，我目前可以帮助您查询以下信息：\n" +
+        out.accept("抱歉，我目前可以帮助您查询以下信息：\n" +
                "1. 服务信息（服务数量、列表等）\n" +
                "2. 服务器信息（服务器数量、资源使用等）\n" +
                "3. 异常事件（最近异常、告警统计等）\n" +
@@ -72,252 +177,249 @@ public class McpChatService {
                "5. 资源使用（CPU、内存、磁盘等）\n" +
                "6. 系统健康状态\n" +
                "7. 统计信息\n\n" +
-               "请具体说明您想了解什么信息。";
+               "请具体说明您想了解什么信息。");
+    }
+
+    /**
+     * 在取数线程池中并发读取一份聚合数据
+     */
+    private <T> CompletableFuture<T> load(Supplier<T> loader) {
+        return CompletableFuture.supplyAsync(loader, queryExecutor);
     }
 
-    private String handleServiceQuery(String query) {
-        List<ServiceInfo> services = serviceInfoRepository.findAll();
+    private void handleServiceQuery(Set<Keyword> keywords, Consumer<String> out) {
+        ChatAggregates.ServiceStats stats = aggregates.services();
+        List<ServiceInfo> services = stats.getAll();
 
-        if (query.contains("多少") || query.contains("数量") || query.contains("总数")) {
-            return "当前共有 " + services.size() + " 个服务。";
+        if (keywords.contains(Keyword.COUNT)) {
+            out.accept("当前共有 " + services.size() + " 个服务。");
+            return;
         }
 
-        if (query.contains("列表")) {
-            StringBuilder sb = new StringBuilder("服务列表：\n");
-            services.forEach(s -> {
-                sb.append(String.format("- %s (环境: %s, 描述: %s)\n",
-                    s.getName(), s.getEnv() != null ? s.getEnv() : "未设置",
-                    s.getDescription() != null ? s.getDescription() : "无"));
-            });
-            return sb.toString();
+        if (keywords.contains(Keyword.LIST)) {
+            Chunker chunker = new Chunker(out, "服务列表：\n");
+            services.forEach(s -> chunker.line(String.format("- %s (环境: %s, 描述: %s)\n",
+                s.getName(), s.getEnv() != null ? s.getEnv() : "未设置",
+                s.getDescription() != null ? s.getDescription() : "无")));
+            chunker.flush();
+            return;
         }
 
-        if (query.contains("prod") || query.contains("生产")) {
-            long count = services.stream().filter(s -> "prod".equalsIgnoreCase(s.getEnv())).count();
-            return "生产环境共有 " + count + " 个服务。";
+        if (keywords.contains(Keyword.PROD)) {
+            out.accept("生产环境共有 " + stats.countByEnv("prod") + " 个服务。");
+            return;
         }
 
-        if (query.contains("test") || query.contains("测试")) {
-            long count = services.stream().filter(s -> "test".equalsIgnoreCase(s.getEnv())).count();
-            return "测试环境共有 " + count + " 个服务。";
+        if (keywords.contains(Keyword.TEST)) {
+            out.accept("测试环境共有 " + stats.countByEnv("test") + " 个服务。");
+            return;
         }
 
-        return "当前共有 " + services.size() + " 个服务。您想了解具体哪个服务的信息吗？";
+        out.accept("当前共有 " + services.size() + " 个服务。您想了解具体哪个服务的信息吗？");
     }
 
-    private String handleServerQuery(String query) {
-        List<ServerInfo> servers = serverInfoRepository.findAll();
+    private void handleServerQuery(Set<Keyword> keywords, Consumer<String> out) {
+        ChatAggregates.ServerStats stats = aggregates.servers();
+        List<ServerInfo> servers = stats.getAll();
 
-        if (query.contains("多少") || query.contains("数量") || query.contains("总数")) {
-            return "当前共有 " + servers.size() + " 台服务器。";
+        if (keywords.contains(Keyword.COUNT)) {
+            out.accept("当前共有 " + servers.size() + " 台服务器。");
+            return;
         }
 
-        if (query.contains("在线") || query.contains("online")) {
-            long onlineCount = servers.stream().filter(s -> "online".equals(s.getStatus())).count();
-            return "当前有 " + onlineCount + " 台服务器在线，" + (servers.size() - onlineCount) + " 台离线。";
+        if (keywords.contains(Keyword.ONLINE)) {
+            out.accept("当前有 " + stats.getOnline() + " 台服务器在线，" + (servers.size() - stats.getOnline()) + " 台离线。");
+            return;
         }
 
-        if (query.contains("列表")) {
-            StringBuilder sb = new StringBuilder("服务器列表：\n");
-            servers.forEach(s -> {
-                sb.append(String.format("- %s (IP: %s, 类型: %s, 状态: %s)\n",
-                    s.getName(), s.getIp() != null ? s.getIp() : "未设置",
-                    s.getType() != null ? s.getType() : "未设置",
-                    s.getStatus()));
-            });
-            return sb.toString();
+        if (keywords.contains(Keyword.LIST)) {
+            Chunker chunker = new Chunker(out, "服务器列表：\n");
+            servers.forEach(s -> chunker.line(String.format("- %s (IP: %s, 类型: %s, 状态: %s)\n",
+                s.getName(), s.getIp() != null ? s.getIp() : "未设置",
+                s.getType() != null ? s.getType() : "未设置",
+                s.getStatus())));
+            chunker.flush();
+            return;
         }
 
-        if (query.contains("类型") || query.contains("type")) {
-            Map<String, Long> byType = servers.stream()
-                .filter(s -> s.getType() != null)
-                .collect(Collectors.groupingBy(ServerInfo::getType, Collectors.counting()));
-            StringBuilder sb = new StringBuilder("服务器按类型统计：\n");
-            byType.forEach((type, count) -> sb.append(String.format("- %s: %d 台\n", type, count)));
-            return sb.toString();
+        if (keywords.contains(Keyword.TYPE)) {
+            Chunker chunker = new Chunker(out, "服务器按类型统计：\n");
+            stats.getByType().forEach((type, count) -> chunker.line(String.format("- %s: %d 台\n", type, count)));
+            chunker.flush();
+            return;
         }
 
-        return "当前共有 " + servers.size() + " 台服务器。您想了解哪方面的服务器信息？";
+        out.accept("当前共有 " + servers.size() + " 台服务器。您想了解哪方面的服务器信息？");
     }
 
-    private String handleAnomalyQuery(String query) {
-        List<AnomalyEvent> anomalies = anomalyEventRepository.findAll();
+    private void handleAnomalyQuery(Set<Keyword> keywords, Consumer<String> out) {
+        ChatAggregates.AnomalyStats stats = aggregates.anomalies();
 
-        if (anomalies.isEmpty()) {
-            return "当前没有异常事件记录。";
+        if (stats.getTotal() == 0) {
+            out.accept("当前没有异常事件记录。");
+            return;
         }
 
-        if (query.contains("多少") || query.contains("数量")) {
-            return "系统中共有 " + anomalies.size() + " 条异常事件记录。";
+        if (keywords.contains(Keyword.COUNT)) {
+            out.accept("系统中共有 " + stats.getTotal() + " 条异常事件记录。");
+            return;
         }
 
-        if (query.contains("最近") || query.contains("latest")) {
-            List<AnomalyEvent> recent = anomalies.stream()
-                .sorted((a, b) -> b.getCreatedAt().compareTo(a.getCreatedAt()))
-                .limit(5)
-                .collect(Collectors.toList());
-
-            StringBuilder sb = new StringBuilder("最近5条异常事件：\n");
-            recent.forEach(a -> {
-                sb.append(String.format("- [%s] %s 服务: %s, 评分: %.2f, 原因: %s\n",
-                    a.getSeverity(), a.getCreatedAt(), a.getServiceId(), a.getScore(), a.getReason()));
-            });
-            return sb.toString();
+        if (keywords.contains(Keyword.RECENT)) {
+            Chunker chunker = new Chunker(out, "最近5条异常事件：\n");
+            stats.getRecent().forEach(a -> chunker.line(String.format("- [%s] %s 服务: %s, 评分: %.2f, 原因: %s\n",
+                a.getSeverity(), a.getCreatedAt(), a.getServiceId(), a.getScore(), a.getReason())));
+            chunker.flush();
+            return;
         }
 
-        if (query.contains("高") || query.contains("严重")) {
-            long highCount = anomalies.stream()
-                .filter(a -> "high".equalsIgnoreCase(a.getSeverity()))
-                .count();
-            List<AnomalyEvent> highAnomalies = anomalies.stream()
-                .filter(a -> "high".equalsIgnoreCase(a.getSeverity()))
-                .sorted((a, b) -> b.getCreatedAt().compareTo(a.getCreatedAt()))
-                .limit(5)
-                .collect(Collectors.toList());
-
-            StringBuilder sb = new StringBuilder("共 " + highCount + " 条高严重级别异常。最近5条：\n");
-            highAnomalies.forEach(a -> {
-                sb.append(String.format("- %s 服务: %s, 评分: %.2f, 原因: %s\n",
-                    a.getCreatedAt(), a.getServiceId(), a.getScore(), a.getReason()));
-            });
-            return sb.toString();
+        if (keywords.contains(Keyword.HIGH)) {
+            Chunker chunker = new Chunker(out, "共 " + stats.getHigh() + " 条高严重级别异常。最近5条：\n");
+            stats.getRecentHigh().forEach(a -> chunker.line(String.format("- %s 服务: %s, 评分: %.2f, 原因: %s\n",
+                a.getCreatedAt(), a.getServiceId(), a.getScore(), a.getReason())));
+            chunker.flush();
+            return;
         }
 
-        return "系统中共有 " + anomalies.size() + " 条异常事件记录。";
+        out.accept("系统中共有 " + stats.getTotal() + " 条异常事件记录。");
     }
 
-    private String handleMetricQuery(String query) {
-        List<ServiceInfo> services = serviceInfoRepository.findAll();
-
-        if (query.contains("响应时间") || query.contains("response")) {
-            Map<String, Double> avgResponseTimes = new HashMap<>();
-            for (ServiceInfo service : services) {
-                List<MetricSample> samples = metricSampleRepository.findRecentByServiceId(service.getId(), 50);
-                OptionalDouble avg = samples.stream()
-                    .filter(s -> "responseTime".equals(s.getMetricName()))
-                    .mapToDouble(MetricSample::getValue)
-                    .average();
-                avg.ifPresent(value -> avgResponseTimes.put(service.getName(), value));
-            }
-
-            if (avgResponseTimes.isEmpty()) {
-                return "暂无响应时间数据。";
+    private void handleMetricQuery(Set<Keyword> keywords, Consumer<String> out) {
+        if (keywords.contains(Keyword.RESPONSE)) {
+            Map<String, DoubleSummaryStatistics> responseTimes = aggregates.responseTimes();
+            if (responseTimes.isEmpty()) {
+                out.accept("暂无响应时间数据。");
+                return;
             }
 
-            StringBuilder sb = new StringBuilder("各服务平均响应时间：\n");
-            avgResponseTimes.forEach((name, time) -> {
-                sb.append(String.format("- %s: %.2f ms\n", name, time));
-            });
-            return sb.toString();
+            Chunker chunker = new Chunker(out, "各服务平均响应时间：\n");
+            responseTimes.forEach((name, stats) ->
+                chunker.line(String.format("- %s: %.2f ms（最大 %.2f ms）\n", name, stats.getAverage(), stats.getMax())));
+            chunker.flush();
+            return;
         }
 
-        return "暂无相关指标数据。您可以查询响应时间等信息。";
+        out.accept("暂无相关指标数据。您可以查询响应时间等信息。");
     }
 
-    private String handleResourceQuery(String query) {
-        List<ServerInfo> servers = serverInfoRepository.findAll();
-        List<ServerResource> latestResources = serverResourceRepository.findRecent(servers.size());
+    private void handleResourceQuery(Set<Keyword> keywords, Consumer<String> out) {
+        CompletableFuture<ChatAggregates.ServerStats> serversFuture = load(aggregates::servers);
+        Map<Long, ServerResource> latestResources = aggregates.latestResources();
 
         if (latestResources.isEmpty()) {
-            return "暂无资源使用数据。";
+            out.accept("暂无资源使用数据。");
+            return;
         }
 
-        if (query.contains("cpu")) {
-            StringBuilder sb = new StringBuilder("服务器CPU使用率：\n");
-            latestResources.forEach(r -> {
-                ServerInfo server = servers.stream()
-                    .filter(s -> s.getId().equals(r.getServerId()))
-                    .findFirst().orElse(null);
-                if (server != null) {
-                    sb.append(String.format("- %s: %.1f%%\n", server.getName(), r.getCpuUsage()));
-                }
-            });
-            return sb.toString();
+        if (keywords.contains(Keyword.CPU)) {
+            Chunker chunker = new Chunker(out, "服务器CPU使用率：\n");
+            forEachLatest(serversFuture.join(), latestResources, (server, r) ->
+                chunker.line(String.format("- %s: %.1f%%\n", server.getName(), r.getCpuUsage())));
+            chunker.flush();
+            return;
         }
 
-        if (query.contains("内存") || query.contains("memory")) {
-            StringBuilder sb = new StringBuilder("服务器内存使用情况：\n");
-            latestResources.forEach(r -> {
-                ServerInfo server = servers.stream()
-                    .filter(s -> s.getId().equals(r.getServerId()))
-                    .findFirst().orElse(null);
-                if (server != null) {
-                    sb.append(String.format("- %s: %.1f%% (%.2f GB / %.2f GB)\n",
-                        server.getName(), r.getMemoryUsage(),
-                        r.getMemoryUsed(), server.getTotalMemory()));
-                }
-            });
-            return sb.toString();
+        if (keywords.contains(Keyword.MEMORY)) {
+            Chunker chunker = new Chunker(out, "服务器内存使用情况：\n");
+            forEachLatest(serversFuture.join(), latestResources, (server, r) ->
+                chunker.line(String.format("- %s: %.1f%% (%.2f GB / %.2f GB)\n",
+                    server.getName(), r.getMemoryUsage(),
+                    r.getMemoryUsed(), server.getTotalMemory())));
+            chunker.flush();
+            return;
         }
 
-        if (query.contains("磁盘") || query.contains("disk")) {
-            StringBuilder sb = new StringBuilder("服务器磁盘使用情况：\n");
-            latestResources.forEach(r -> {
-                ServerInfo server = servers.stream()
-                    .filter(s -> s.getId().equals(r.getServerId()))
-                    .findFirst().orElse(null);
-                if (server != null) {
-                    sb.append(String.format("- %s: %.1f%% (%.2f GB / %.2f GB)\n",
-                        server.getName(), r.getDiskUsage(),
-                        r.getDiskUsed(), server.getTotalDisk()));
-                }
-            });
-            return sb.toString();
+        if (keywords.contains(Keyword.DISK)) {
+            Chunker chunker = new Chunker(out, "服务器磁盘使用情况：\n");
+            forEachLatest(serversFuture.join(), latestResources, (server, r) ->
+                chunker.line(String.format("- %s: %.1f%% (%.2f GB / %.2f GB)\n",
+                    server.getName(), r.getDiskUsage(),
+                    r.getDiskUsed(), server.getTotalDisk())));
+            chunker.flush();
+            return;
         }
 
-        return "您可以查询CPU、内存、磁盘等资源使用情况。";
+        out.accept("您可以查询CPU、内存、磁盘等资源使用情况。");
     }
 
-    private String handleHealthQuery(String query) {
-        List<ServerInfo> servers = serverInfoRepository.findAll();
-        long onlineServers = servers.stream().filter(s -> "online".equals(s.getStatus())).count();
-        long offlineServers = servers.size() - onlineServers;
+    private static void forEachLatest(ChatAggregates.ServerStats servers, Map<Long, ServerResource> latestResources,
+                                      BiConsumer<ServerInfo, ServerResource> action) {
+        for (ServerInfo server : servers.getAll()) {
+            ServerResource resource = latestResources.get(server.getId());
+            if (resource != null) {
+                action.accept(server, resource);
+            }
+        }
+    }
 
-        List<AnomalyEvent> recentAnomalies = anomalyEventRepository.findAll().stream()
-            .filter(a -> {
-                Date today = Date.from(LocalDateTime.now().minusDays(1).atZone(ZoneId.systemDefault()).toInstant());
-                return a.getCreatedAt() != null && a.getCreatedAt().after(today);
-            })
-            .collect(Collectors.toList());
+    private void handleHealthQuery(Consumer<String> out) {
+        CompletableFuture<ChatAggregates.ServerStats> serversFuture = load(aggregates::servers);
+        CompletableFuture<ChatAggregates.AnomalyStats> anomaliesFuture = load(aggregates::anomalies);
+        out.accept("系统健康状态：\n");
 
-        long highSeverity = recentAnomalies.stream()
-            .filter(a -> "high".equalsIgnoreCase(a.getSeverity()))
-            .count();
+        ChatAggregates.ServerStats servers = serversFuture.join();
+        long onlineServers = servers.getOnline();
+        long offlineServers = servers.getAll().size() - onlineServers;
+        out.accept(String.format("- 服务器状态: %d/%d 在线\n", onlineServers, servers.getAll().size()));
 
-        StringBuilder sb = new StringBuilder("系统健康状态：\n");
-        sb.append(String.format("- 服务器状态: %d/%d 在线\n", onlineServers, servers.size()));
-        sb.append(String.format("- 最近24小时异常: %d 条\n", recentAnomalies.size()));
-        sb.append(String.format("- 高严重级别异常: %d 条\n", highSeverity));
+        long since = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+        ChatAggregates.AnomalyStats anomalies = anomaliesFuture.join();
+        int highSeverity = anomalies.countHighSince(since);
+        out.accept(String.format("- 最近24小时异常: %d 条\n", anomalies.countSince(since))
+            + String.format("- 高严重级别异常: %d 条\n", highSeverity));
 
         if (highSeverity == 0 && offlineServers == 0) {
-            sb.append("\n✓ 系统运行正常，无严重异常。");
+            out.accept("\n✓ 系统运行正常，无严重异常。");
         } else if (highSeverity > 0) {
-            sb.append("\n⚠ 系统存在高严重级别异常，需要关注。");
+            out.accept("\n⚠ 系统存在高严重级别异常，需要关注。");
         } else if (offlineServers > 0) {
-            sb.append("\n⚠ 有服务器离线，需要检查。");
+            out.accept("\n⚠ 有服务器离线，需要检查。");
         }
+    }
 
-        return sb.toString();
+    private void handleStatisticsQuery(Consumer<String> out) {
+        CompletableFuture<ChatAggregates.ServiceStats> servicesFuture = load(aggregates::services);
+        CompletableFuture<ChatAggregates.ServerStats> serversFuture = load(aggregates::servers);
+        CompletableFuture<ChatAggregates.AnomalyStats> anomaliesFuture = load(aggregates::anomalies);
+        out.accept("系统统计概览：\n");
+
+        ChatAggregates.ServiceStats services = servicesFuture.join();
+        out.accept(String.format("服务数量: %d\n", services.getAll().size()));
+        out.accept(String.format("服务器数量: %d\n", serversFuture.join().getAll().size()));
+        out.accept(String.format("异常事件总数: %d\n", anomaliesFuture.join().getTotal()));
+
+        if (!services.getByEnv().isEmpty()) {
+            Chunker chunker = new Chunker(out, "\n按环境分布：\n");
+            services.getByEnv().forEach((env, count) -> chunker.line(String.format("- %s: %d\n", env, count)));
+            chunker.flush();
+        }
     }
 
-    private String handleStatisticsQuery(String query) {
-        List<ServiceInfo> services = serviceInfoRepository.findAll();
-        List<ServerInfo> servers = serverInfoRepository.findAll();
-        List<AnomalyEvent> anomalies = anomalyEventRepository.findAll();
-
-        StringBuilder sb = new StringBuilder("系统统计概览：\n");
-        sb.append(String.format("服务数量: %d\n", services.size()));
-        sb.append(String.format("服务器数量: %d\n", servers.size()));
-        sb.append(String.format("异常事件总数: %d\n", anomalies.size()));
-
-        Map<String, Long> byEnv = services.stream()
-            .filter(s -> s.getEnv() != null)
-            .collect(Collectors.groupingBy(ServiceInfo::getEnv, Collectors.counting()));
-        if (!byEnv.isEmpty()) {
-            sb.append("\n按环境分布：\n");
-            byEnv.forEach((env, count) -> sb.append(String.format("- %s: %d\n", env, count)));
+    /**
+     * 把列表类回答按行数分段输出，每 LINES_PER_CHUNK 行交给 sink 一次
+     */
+    private static final class Chunker {
+        private final Consumer<String> out;
+        private final StringBuilder buffer;
+        private int lines;
+
+        Chunker(Consumer<String> out, String header) {
+            this.out = out;
+            this.buffer = new StringBuilder(header);
         }
 
-        return sb.toString();
+        void line(String line) {
+            buffer.append(line);
+            if (++lines % LINES_PER_CHUNK == 0) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (buffer.length() > 0) {
+                out.accept(buffer.toString());
+                buffer.setLength(0);
+            }
+        }
     }
 }
@@ -0,0 +1,63 @@
+package com.example.monitor.service;
+
+import com.example.monitor.ingest.PrometheusTextParser;
+import com.example.monitor.model.IngestResult;
+import com.example.monitor.model.MetricSample;
+import com.example.monitor.storage.MetricSampleFileRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 指标导入服务：把 Prometheus / OpenMetrics 文本流式解析为指标样本并批量写入
+ */
+@Service
+@RequiredArgsConstructor
+public class MetricIngestService {
+
+    private static final int BATCH_SIZE = 50_000;
+
+    private final MetricSampleFileRepository metricSampleRepository;
+
+    /**
+     * 解析器内部有可复用的缓冲区和序列名缓存，按线程复用
+     */
+    private final ThreadLocal<PrometheusTextParser> parsers = ThreadLocal.withInitial(PrometheusTextParser::new);
+    private final Counter acceptedCounter = Metrics.counter("monitor.ingest.samples", "format", "prometheus");
+    private final Counter skippedCounter = Metrics.counter("monitor.ingest.skipped", "format", "prometheus");
+
+    public IngestResult ingestPrometheus(Long serviceId, InputStream body, boolean openMetrics) throws IOException {
+        Date receivedAt = new Date();
+        List<MetricSample> batch = new ArrayList<>();
+        PrometheusTextParser.Result result = parsers.get().parse(body, openMetrics, (series, value, timestampMs) -> {
+            batch.add(toSample(serviceId, series, value, timestampMs, receivedAt));
+            if (batch.size() >= BATCH_SIZE) {
+                metricSampleRepository.saveAll(new ArrayList<>(batch));
+                batch.clear();
+            }
+        });
+        metricSampleRepository.saveAll(batch);
+        acceptedCounter.increment(result.getSamples());
+        skippedCounter.increment(result.getSkipped());
+        return new IngestResult(result.getSamples(), result.getSkipped());
+    }
+
+    /**
+     * 未携带时间戳的样本使用接收时间
+     */
+    static MetricSample toSample(Long serviceId, String series, double value, long timestampMs, Date defaultTime) {
+        MetricSample sample = new MetricSample();
+        sample.setServiceId(serviceId);
+        sample.setMetricName(series);
+        sample.setValue(value);
+        sample.setTimestamp(PrometheusTextParser.hasTimestamp(timestampMs) ? new Date(timestampMs) : defaultTime);
+        return sample;
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.monitor.service;
+
+import com.example.monitor.model.MetricQueryResult;
+import com.example.monitor.model.MetricQuerySeries;
+import com.example.monitor.query.MetricQueryParser;
+import com.example.monitor.query.QueryExpr;
+import com.example.monitor.query.SeriesSnapshot;
+import com.example.monitor.storage.MetricSampleFileRepository;
+import com.example.monitor.storage.ServiceInfoFileRepository;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 指标查询服务
+ * 查询在按序列整理的快照上求值；快照在指标或服务数据的版本变化后才重建，
+ * 连续查询（如看板刷新）不会重复读取和整理指标文件。
+ */
+@Service
+@RequiredArgsConstructor
+public class MetricQueryService {
+
+    /**
+     * 区间查询最多计算的时间点数，超过时要求调大步长
+     */
+    private static final int MAX_STEPS = 11000;
+
+    private final MetricSampleFileRepository metricSampleRepository;
+    private final ServiceInfoFileRepository serviceInfoRepository;
+
+    private final Timer instantTimer = queryTimer("instant");
+    private final Timer rangeTimer = queryTimer("range");
+
+    private SeriesSnapshot snapshot;
+    private long snapshotMetricVersion = -1;
+    private long snapshotServiceVersion = -1;
+
+    /**
+     * 瞬时查询，time 为空时取当前时间
+     */
+    public MetricQueryResult query(String query, Long timeMs) {
+        long start = System.nanoTime();
+        QueryExpr expr = MetricQueryParser.parse(query);
+        SeriesSnapshot current = currentSnapshot();
+        long time = timeMs != null ? timeMs : System.currentTimeMillis();
+        List<MetricQuerySeries> result = evaluateInstant(expr, current, time);
+        long elapsed = System.nanoTime() - start;
+        instantTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        return result(query, "vector", result, current, elapsed);
+    }
+
+    /**
+     * 区间查询：从 start 到 end 每隔 stepMs 求值一次，同一组标签的结果合并为一个序列
+     */
+    public MetricQueryResult queryRange(String query, long startMs, long endMs, long stepMs) {
+        checkRange(startMs, endMs, stepMs);
+        long start = System.nanoTime();
+        QueryExpr expr = MetricQueryParser.parse(query);
+        SeriesSnapshot current = currentSnapshot();
+        List<MetricQuerySeries> result = evaluateRange(expr, current, startMs, endMs, stepMs);
+        long elapsed = System.nanoTime() - start;
+        rangeTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        return result(query, "matrix", result, current, elapsed);
+    }
+
+    /**
+     * 校验区间查询的参数，不合法时抛出 IllegalArgumentException
+     */
+    public static void checkRange(long startMs, long endMs, long stepMs) {
+        if (stepMs <= 0) {
+            throw new IllegalArgumentException("step 必须大于 0");
+        }
+        if (endMs < startMs) {
+            throw new IllegalArgumentException("end 不能早于 start");
+        }
+        if ((endMs - startMs) / stepMs + 1 > MAX_STEPS) {
+            throw new IllegalArgumentException("时间点过多（上限 " + MAX_STEPS + "），请增大 step 或缩小时间范围");
+        }
+    }
+
+    /**
+     * 在 time 时刻求值，每个结果元素一个序列
+     */
+    public static List<MetricQuerySeries> evaluateInstant(QueryExpr expr, SeriesSnapshot snapshot, long time) {
+        List<MetricQuerySeries> result = new ArrayList<>();
+        expr.evaluate(snapshot, time, (labels, value) -> {
+            MetricQuerySeries series = new MetricQuerySeries();
+            series.setLabels(labels);
+            series.setTimestamp(time);
+            series.setValue(value);
+            result.add(series);
+        });
+        return result;
+    }
+
+    /**
+     * 从 start 到 end 每隔 stepMs 求值一次，同一组标签的结果合并为一个序列
+     */
+    public static List<MetricQuerySeries> evaluateRange(QueryExpr expr, SeriesSnapshot snapshot,
+                                                        long startMs, long endMs, long stepMs) {
+        Map<Map<String, String>, RangeBuilder> builders = new LinkedHashMap<>();
+        for (long time = startMs; time <= endMs; time += stepMs) {
+            long at = time;
+            expr.evaluate(snapshot, at, (labels, value) ->
+                    builders.computeIfAbsent(labels, k -> new RangeBuilder()).add(at, value));
+        }
+        List<MetricQuerySeries> result = new ArrayList<>(builders.size());
+        builders.forEach((labels, builder) -> {
+            MetricQuerySeries series = new MetricQuerySeries();
+            series.setLabels(labels);
+            series.setTimestamps(Arrays.copyOf(builder.timestamps, builder.size));
+            series.setValues(Arrays.copyOf(builder.values, builder.size));
+            result.add(series);
+        });
+        return result;
+    }
+
+    /**
+     * 当前数据的序列快照，数据未变化时返回同一个实例
+     */
+    public synchronized SeriesSnapshot currentSnapshot() {
+        // 先取版本再读数据：读取期间发生的写入只会让下一次查询多重建一次，不会用到过期快照
+        long metricVersion = metricSampleRepository.getVersion();
+        long serviceVersion = serviceInfoRepository.getVersion();
+        if (snapshot == null || metricVersion != snapshotMetricVersion || serviceVersion != snapshotServiceVersion) {
+            snapshot = SeriesSnapshot.build(metricSampleRepository.findAllSeries(), serviceInfoRepository.findAll());
+            snapshotMetricVersion = metricVersion;
+            snapshotServiceVersion = serviceVersion;
+        }
+        return snapshot;
+    }
+
+    private static MetricQueryResult result(String query, String type, List<MetricQuerySeries> series,
+                                            SeriesSnapshot snapshot, long elapsedNanos) {
+        MetricQueryResult result = new MetricQueryResult();
+        result.setQuery(query);
+        result.setResultType(type);
+        result.setResult(series);
+        result.setSeriesTotal(snapshot.size());
+        result.setDurationMs(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        return result;
+    }
+
+    private static Timer queryTimer(String type) {
+        return Timer.builder("monitor.query")
+                .description("Metric query evaluation time")
+                .tag("type", type)
+                .register(Metrics.globalRegistry);
+    }
+
+    private static final class RangeBuilder {
+        long[] timestamps = new long[16];
+        double[] values = new double[16];
+        int size;
+
+        void add(long timestamp, double value) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            timestamps[size] = timestamp;
+            values[size] = value;
+            size++;
+        }
+    }
+}
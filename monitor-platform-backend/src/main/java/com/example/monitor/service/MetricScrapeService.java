@@ -0,0 +1,472 @@
+package com.example.monitor.service;
+
+import com.example.monitor.ingest.PrometheusTextParser;
+import com.example.monitor.model.MetricSample;
+import com.example.monitor.model.ScrapeTarget;
+import com.example.monitor.model.ServiceInfo;
+import com.example.monitor.replication.ReplicationService;
+import com.example.monitor.storage.MetricSampleFileRepository;
+import com.example.monitor.storage.ServiceInfoFileRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * 指标抓取服务
+ * 定期拉取各服务 metricEndpoint 暴露的 Prometheus 文本指标，写入指标仓储。
+ * 每个目标的首次抓取时间在一个周期内随机打散，之后每次再叠加 ±10% 的抖动，避免所有目标同时被请求；
+ * 同时在途的请求数受 max-in-flight 限制，上一轮尚未结束的目标本轮跳过；抓到的样本先进入缓冲区，
+ * 由调度线程每秒批量写入一次。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MetricScrapeService {
+
+    private static final long DISPATCH_TICK_MS = 100;
+    private static final long FLUSH_INTERVAL_MS = 1_000;
+    private static final long TARGET_REFRESH_INTERVAL_MS = 30_000;
+    private static final int MAX_FLUSH_BATCH = 100_000;
+    private static final int MAX_PENDING_SAMPLES = 1_000_000;
+    private static final int MAX_ERROR_LENGTH = 200;
+
+    private final ServiceInfoFileRepository serviceInfoRepository;
+    private final MetricSampleFileRepository metricSampleRepository;
+    private final ReplicationService replicationService;
+
+    @Value("${monitor.scrape.enabled:false}")
+    private boolean enabled;
+
+    @Value("${monitor.scrape.interval-seconds:15}")
+    private long intervalSeconds;
+
+    @Value("${monitor.scrape.timeout-ms:2000}")
+    private int timeoutMs;
+
+    @Value("${monitor.scrape.max-in-flight:64}")
+    private int maxInFlight;
+
+    @Value("${monitor.scrape.max-body-bytes:4194304}")
+    private int maxBodyBytes;
+
+    private final Map<Long, TargetState> targets = new ConcurrentHashMap<>();
+    /**
+     * 按下次抓取时间排序，由自身加锁保护
+     */
+    private final PriorityQueue<TargetState> dueQueue =
+            new PriorityQueue<>(Comparator.comparingLong((TargetState t) -> t.nextDueAt));
+    private final ConcurrentLinkedQueue<MetricSample> pendingSamples = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final ThreadLocal<PrometheusTextParser> parsers = ThreadLocal.withInitial(PrometheusTextParser::new);
+
+    private final Timer successTimer = scrapeTimer("success");
+    private final Timer failureTimer = scrapeTimer("failure");
+    private final Counter samplesCounter = Metrics.counter("monitor.scrape.samples");
+    private final Counter droppedCounter = Metrics.counter("monitor.scrape.samples.dropped");
+    private final Counter skippedCounter = Metrics.counter("monitor.scrape.skipped");
+
+    /**
+     * 只抓取满足条件的服务，集群模式下为本节点负责的服务
+     */
+    private volatile LongPredicate targetFilter = serviceId -> true;
+
+    private Semaphore inFlight;
+    private ThreadPoolExecutor workers;
+    private ScheduledExecutorService scheduler;
+    /**
+     * 到达 timeout-ms 时断开仍未完成的抓取连接
+     */
+    private ScheduledThreadPoolExecutor deadlines;
+
+    @PostConstruct
+    public void init() {
+        inFlight = new Semaphore(maxInFlight);
+        // 线程按需创建，空闲一分钟后回收；提交前已经拿到许可，队列长度不会超过 maxInFlight
+        workers = new ThreadPoolExecutor(maxInFlight, maxInFlight, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), namedThreadFactory("metric-scrape-"));
+        workers.allowCoreThreadTimeOut(true);
+        deadlines = new ScheduledThreadPoolExecutor(1, namedThreadFactory("metric-scrape-deadline-"));
+        deadlines.setRemoveOnCancelPolicy(true);
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(namedThreadFactory("metric-scrape-scheduler-"));
+        scheduler.scheduleWithFixedDelay(this::refreshTargetsQuietly, 0, TARGET_REFRESH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::dispatchDueQuietly, DISPATCH_TICK_MS, DISPATCH_TICK_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        log.info("Metric scraping enabled: interval {}s, timeout {}ms, max in flight {}", intervalSeconds, timeoutMs, maxInFlight);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        workers.shutdownNow();
+        deadlines.shutdownNow();
+        flushQuietly();
+    }
+
+    /**
+     * 设置抓取目标的过滤条件并立即按新条件刷新目标
+     */
+    public void setTargetFilter(LongPredicate targetFilter) {
+        this.targetFilter = targetFilter;
+        if (enabled) {
+            refreshTargetsQuietly();
+        }
+    }
+
+    /**
+     * 立即对所有目标执行一轮抓取并写入，返回抓取后的目标状态
+     */
+    public List<ScrapeTarget> scrapeAllNow() throws InterruptedException {
+        refreshTargets();
+        List<Future<?>> futures = new ArrayList<>();
+        for (TargetState target : targets.values()) {
+            inFlight.acquire();
+            if (!target.running.compareAndSet(false, true)) {
+                inFlight.release();
+                continue;
+            }
+            futures.add(workers.submit(() -> runScrape(target)));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                log.warn("Scrape task failed", e.getCause());
+            }
+        }
+        flush();
+        return getTargets();
+    }
+
+    public List<ScrapeTarget> getTargets() {
+        return targets.values().stream()
+                .sorted(Comparator.comparing(t -> t.serviceId))
+                .map(TargetState::toScrapeTarget)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 与服务列表同步抓取目标：新增目标的首次抓取在一个周期内随机打散
+     */
+    void refreshTargets() {
+        Set<Long> seen = new HashSet<>();
+        long now = System.currentTimeMillis();
+        synchronized (dueQueue) {
+            for (ServiceInfo service : serviceInfoRepository.findAll()) {
+                String endpoint = service.getMetricEndpoint();
+                if (endpoint == null || endpoint.trim().isEmpty() || !targetFilter.test(service.getId())) {
+                    continue;
+                }
+                seen.add(service.getId());
+                TargetState target = targets.get(service.getId());
+                if (target == null) {
+                    target = new TargetState(service.getId());
+                    target.nextDueAt = now + ThreadLocalRandom.current().nextLong(intervalMillis());
+                    targets.put(service.getId(), target);
+                    dueQueue.add(target);
+                }
+                target.serviceName = service.getName();
+                target.endpoint = endpoint.trim();
+            }
+            Iterator<TargetState> it = targets.values().iterator();
+            while (it.hasNext()) {
+                TargetState target = it.next();
+                if (!seen.contains(target.serviceId)) {
+                    dueQueue.remove(target);
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void dispatchDueQuietly() {
+        try {
+            dispatchDue();
+        } catch (RuntimeException e) {
+            log.error("Failed to dispatch due scrape targets", e);
+        }
+    }
+
+    private void dispatchDue() {
+        if (replicationService.isReadOnly()) {
+            // 从节点的指标由主节点复制过来，不抓取
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (dueQueue) {
+            TargetState head;
+            while ((head = dueQueue.peek()) != null && head.nextDueAt <= now) {
+                boolean busy = head.running.get();
+                if (!busy && !inFlight.tryAcquire()) {
+                    // 在途请求已满，剩余目标留到下一个 tick
+                    return;
+                }
+                dueQueue.poll();
+                if (!busy && head.running.compareAndSet(false, true)) {
+                    TargetState target = head;
+                    try {
+                        workers.execute(() -> runScrape(target));
+                    } catch (RejectedExecutionException e) {
+                        target.running.set(false);
+                        inFlight.release();
+                    }
+                } else {
+                    // 上一轮抓取还没结束
+                    if (!busy) {
+                        inFlight.release();
+                    }
+                    skippedCounter.increment();
+                }
+                head.nextDueAt = Math.max(head.nextDueAt, now - intervalMillis()) + jitteredInterval();
+                dueQueue.add(head);
+            }
+        }
+    }
+
+    private void runScrape(TargetState target) {
+        long start = System.nanoTime();
+        try {
+            List<MetricSample> samples = scrape(target.serviceId, target.endpoint);
+            long elapsed = System.nanoTime() - start;
+            successTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            enqueue(samples);
+            target.recordSuccess(TimeUnit.NANOSECONDS.toMillis(elapsed), samples.size());
+        } catch (Exception e) {
+            long elapsed = System.nanoTime() - start;
+            failureTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            target.recordFailure(TimeUnit.NANOSECONDS.toMillis(elapsed), e);
+        } finally {
+            target.running.set(false);
+            inFlight.release();
+        }
+    }
+
+    /**
+     * 抓取单个目标，连接、读取以及整个请求都受 timeout-ms 限制
+     * 读超时在建立连接时设置到 socket 上，只限制单次读取；连接加读取响应头超过 timeout-ms 时由定时任务断开连接，
+     * 响应体的读取另外按截止时间检查。
+     */
+    List<MetricSample> scrape(Long serviceId, String endpoint) throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        HttpURLConnection conn = (HttpURLConnection) new URL(endpoint).openConnection();
+        conn.setConnectTimeout(timeoutMs);
+        conn.setReadTimeout(timeoutMs);
+        conn.setRequestProperty("Accept",
+                "application/openmetrics-text;version=1.0.0,text/plain;version=0.0.4;q=0.9,*/*;q=0.1");
+        ScheduledFuture<?> abort = deadlines.schedule(conn::disconnect, timeoutMs, TimeUnit.MILLISECONDS);
+        try {
+            return readResponse(conn, serviceId, deadline);
+        } catch (IOException e) {
+            if (System.currentTimeMillis() >= deadline) {
+                throw new IOException("Scrape timed out", e);
+            }
+            throw e;
+        } finally {
+            abort.cancel(false);
+        }
+    }
+
+    private List<MetricSample> readResponse(HttpURLConnection conn, Long serviceId, long deadline) throws IOException {
+        int status = conn.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            InputStream error = conn.getErrorStream();
+            if (error != null) {
+                error.close();
+            }
+            throw new IOException("HTTP " + status);
+        }
+        Date scrapeTime = new Date();
+        String contentType = conn.getContentType();
+        boolean openMetrics = contentType != null && contentType.startsWith("application/openmetrics-text");
+        List<MetricSample> samples = new ArrayList<>();
+        try (InputStream body = new BoundedInputStream(conn.getInputStream(), maxBodyBytes, deadline)) {
+            parsers.get().parse(body, openMetrics, (series, value, timestampMs) ->
+                    samples.add(MetricIngestService.toSample(serviceId, series, value, timestampMs, scrapeTime)));
+        }
+        return samples;
+    }
+
+    private void enqueue(List<MetricSample> samples) {
+        for (MetricSample sample : samples) {
+            if (pendingCount.incrementAndGet() > MAX_PENDING_SAMPLES) {
+                pendingCount.decrementAndGet();
+                droppedCounter.increment();
+                continue;
+            }
+            pendingSamples.add(sample);
+        }
+        samplesCounter.increment(samples.size());
+    }
+
+    void flush() {
+        while (true) {
+            List<MetricSample> batch = new ArrayList<>();
+            MetricSample sample;
+            while (batch.size() < MAX_FLUSH_BATCH && (sample = pendingSamples.poll()) != null) {
+                batch.add(sample);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            pendingCount.addAndGet(-batch.size());
+            metricSampleRepository.saveAll(batch);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Failed to write scraped metric samples", e);
+        }
+    }
+
+    private void refreshTargetsQuietly() {
+        try {
+            refreshTargets();
+        } catch (RuntimeException e) {
+            log.error("Failed to refresh scrape targets", e);
+        }
+    }
+
+    private long intervalMillis() {
+        return Math.max(1, TimeUnit.SECONDS.toMillis(intervalSeconds));
+    }
+
+    private long jitteredInterval() {
+        long interval = intervalMillis();
+        long jitter = interval / 10;
+        return interval + (jitter > 0 ? ThreadLocalRandom.current().nextLong(-jitter, jitter + 1) : 0);
+    }
+
+    private static Timer scrapeTimer(String outcome) {
+        return Timer.builder("monitor.scrape")
+                .tag("outcome", outcome)
+                .description("单个目标一次抓取的耗时")
+                .register(Metrics.globalRegistry);
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger sequence = new AtomicInteger(1);
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + sequence.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 单个抓取目标的运行状态
+     */
+    private static class TargetState {
+        private final Long serviceId;
+        private final AtomicBoolean running = new AtomicBoolean();
+        private volatile String serviceName;
+        private volatile String endpoint;
+        private long nextDueAt;
+
+        private volatile Date lastScrapeTime;
+        private volatile Long lastDurationMs;
+        private volatile Integer lastSampleCount;
+        private volatile String lastError;
+        private volatile int consecutiveFailures;
+
+        TargetState(Long serviceId) {
+            this.serviceId = serviceId;
+        }
+
+        void recordSuccess(long durationMs, int sampleCount) {
+            lastScrapeTime = new Date();
+            lastDurationMs = durationMs;
+            lastSampleCount = sampleCount;
+            lastError = null;
+            consecutiveFailures = 0;
+        }
+
+        void recordFailure(long durationMs, Exception e) {
+            lastScrapeTime = new Date();
+            lastDurationMs = durationMs;
+            lastSampleCount = 0;
+            String message = e.getClass().getSimpleName() + ": " + e.getMessage();
+            lastError = message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+            consecutiveFailures++;
+        }
+
+        ScrapeTarget toScrapeTarget() {
+            ScrapeTarget target = new ScrapeTarget();
+            target.setServiceId(serviceId);
+            target.setServiceName(serviceName);
+            target.setEndpoint(endpoint);
+            target.setHealth(lastScrapeTime == null ? "unknown" : (lastError == null ? "up" : "down"));
+            target.setLastScrapeTime(lastScrapeTime);
+            target.setLastDurationMs(lastDurationMs);
+            target.setLastSampleCount(lastSampleCount);
+            target.setLastError(lastError);
+            target.setConsecutiveFailures(consecutiveFailures);
+            return target;
+        }
+    }
+
+    /**
+     * 限制响应体大小和整体读取时间的输入流
+     */
+    private static class BoundedInputStream extends InputStream {
+        private final InputStream in;
+        private final long deadline;
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long maxBytes, long deadline) {
+            this.in = in;
+            this.remaining = maxBytes;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("Scrape timed out");
+            }
+            if (remaining <= 0) {
+                throw new IOException("Response body exceeds limit");
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
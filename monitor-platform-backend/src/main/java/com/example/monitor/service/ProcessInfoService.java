@@ -1,6 +1,7 @@
 package com.example.monitor.service;
 
 import com.example.monitor.model.ProcessInfo;
+import com.example.monitor.model.ProcessJob;
 import com.example.monitor.model.ProcessResource;
 import com.example.monitor.storage.ProcessInfoFileRepository;
 import com.example.monitor.storage.ProcessResourceFileRepository;
@@ -8,6 +9,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Random;
@@ -19,6 +21,7 @@ public class ProcessInfoService {
 
     private final ProcessInfoFileRepository processInfoRepository;
     private final ProcessResourceFileRepository processResourceRepository;
+    private final ProcessLifecycleService processLifecycleService;
     private final Random random = new Random();
 
     public List<ProcessInfo> getAllProcesses() {
@@ -72,77 +75,31 @@ public class ProcessInfoService {
     }
 
     /**
-     * 启动进程（优雅启动）
+     * 启动进程：提交到进程启停执行器后立即返回任务，进程不存在时返回 null
      */
-    public boolean startProcess(Long id) {
-        ProcessInfo process = processInfoRepository.findById(id);
-        if (process == null) {
-            return false;
-        }
-
-        try {
-            // 这里可以实际执行启动命令
-            if (process.getStartCommand() != null && !process.getStartCommand().isEmpty()) {
-                log.info("Starting process {} with command: {}", process.getName(), process.getStartCommand());
-                // 实际环境中可以执行: Runtime.getRuntime().exec(process.getStartCommand());
-            }
-
-            // 更新进程状态
-            process.setStatus("running");
-            process.setPid(String.valueOf(1000 + random.nextInt(9000))); // 模拟生成PID
-            processInfoRepository.save(process);
-            return true;
-        } catch (Exception e) {
-            log.error("Failed to start process {}", id, e);
-            return false;
-        }
+    public ProcessJob startProcess(Long id) {
+        return submitLifecycleJob("start", id);
     }
 
     /**
      * 停止进程（优雅停止）
      */
-    public boolean stopProcess(Long id) {
-        ProcessInfo process = processInfoRepository.findById(id);
-        if (process == null) {
-            return false;
-        }
-
-        try {
-            // 这里可以实际执行停止命令
-            if (process.getStopCommand() != null && !process.getStopCommand().isEmpty()) {
-                log.info("Stopping process {} with command: {}", process.getName(), process.getStopCommand());
-                // 实际环境中可以执行: Runtime.getRuntime().exec(process.getStopCommand());
-            } else if (process.getPid() != null) {
-                // 默认使用kill命令
-                log.info("Stopping process {} with PID: {}", process.getName(), process.getPid());
-                // 实际环境中可以执行: Runtime.getRuntime().exec("kill " + process.getPid());
-            }
-
-            // 更新进程状态
-            process.setStatus("stopped");
-            process.setPid(null);
-            processInfoRepository.save(process);
-            return true;
-        } catch (Exception e) {
-            log.error("Failed to stop process {}", id, e);
-            return false;
-        }
+    public ProcessJob stopProcess(Long id) {
+        return submitLifecycleJob("stop", id);
     }
 
     /**
-     * 重启进程
+     * 重启进程：先停止、确认原进程退出后再启动，全部在执行器线程中完成
      */
-    public boolean restartProcess(Long id) {
-        if (!stopProcess(id)) {
-            return false;
-        }
-        // 等待一小段时间
-        try {
-            Thread.sleep(1000);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    public ProcessJob restartProcess(Long id) {
+        return submitLifecycleJob("restart", id);
+    }
+
+    private ProcessJob submitLifecycleJob(String action, Long id) {
+        if (processInfoRepository.findById(id) == null) {
+            return null;
         }
-        return startProcess(id);
+        return processLifecycleService.submit(action, Collections.singletonList(id), null, null);
     }
 
     /**
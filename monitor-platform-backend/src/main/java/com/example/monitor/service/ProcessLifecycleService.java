@@ -0,0 +1,479 @@
+package com.example.monitor.service;
+
+import com.example.monitor.model.ProcessInfo;
+import com.example.monitor.model.ProcessJob;
+import com.example.monitor.model.ProcessJobTask;
+import com.example.monitor.storage.ProcessInfoFileRepository;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程启停执行器
+ * 启动 / 停止 / 重启请求只登记任务并立即返回任务 ID，命令通过 ProcessBuilder（sh -c 或 cmd /c）在专用线程池中执行，
+ * 请求线程不会等待命令或进程退出。每个命令的 stdout 与 stderr 合并写入 storage-dir/process-jobs 下的日志文件，
+ * 查询任务时返回日志末尾，执行过程中即可看到实时输出。
+ * <ul>
+ *     <li>停止：执行 stopCommand（未配置时默认 kill -15 $PID），命令超时会被强制结束；之后等待原进程退出，超过 stop-wait-seconds 视为超时</li>
+ *     <li>启动：执行 startCommand（单条命令以 exec 方式执行），start-check-seconds 内以非零码退出视为失败；仍在运行则视为以前台方式启动的服务本身，记录其进程号</li>
+ *     <li>多个进程可并行执行，也可按批次滚动执行，某批失败后其余进程跳过</li>
+ * </ul>
+ * 同一进程同时只允许一个操作执行。任务只保存在内存中，最多保留 max-jobs 个。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProcessLifecycleService {
+
+    private static final int OUTPUT_TAIL_BYTES = 8 * 1024;
+    private static final boolean WINDOWS = System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+    private static final List<String> ACTIONS = Arrays.asList("start", "stop", "restart");
+
+    private final ProcessInfoFileRepository processInfoRepository;
+
+    @Value("${monitor.storage-dir:data}")
+    private String storageDir;
+
+    @Value("${monitor.lifecycle.max-concurrent:8}")
+    private int maxConcurrent;
+
+    @Value("${monitor.lifecycle.command-timeout-seconds:60}")
+    private long commandTimeoutSeconds;
+
+    @Value("${monitor.lifecycle.start-check-seconds:3}")
+    private long startCheckSeconds;
+
+    @Value("${monitor.lifecycle.stop-wait-seconds:30}")
+    private long stopWaitSeconds;
+
+    @Value("${monitor.lifecycle.max-jobs:200}")
+    private int maxJobs;
+
+    private final AtomicLong idGenerator = new AtomicLong(1);
+    private final Map<Long, ProcessJob> jobs = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Long> jobOrder = new ConcurrentLinkedQueue<>();
+    private final Set<Long> busyProcesses = ConcurrentHashMap.newKeySet();
+
+    private File logDir;
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        logDir = new File(storageDir, "process-jobs");
+        if (!logDir.exists()) {
+            logDir.mkdirs();
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "process-lifecycle-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 提交任务并立即返回
+     *
+     * @param mode      parallel / rolling，默认 parallel
+     * @param batchSize rolling 模式下每批的进程数，默认 1
+     * @throws IllegalArgumentException 操作类型或进程列表不合法
+     */
+    public ProcessJob submit(String action, List<Long> processIds, String mode, Integer batchSize) {
+        if (!ACTIONS.contains(action)) {
+            throw new IllegalArgumentException("不支持的操作：" + action);
+        }
+        if (processIds == null || processIds.isEmpty()) {
+            throw new IllegalArgumentException("进程列表不能为空");
+        }
+        boolean rolling = "rolling".equals(mode);
+        int batch = rolling ? Math.max(1, batchSize != null ? batchSize : 1) : processIds.size();
+
+        ProcessJob job = new ProcessJob();
+        job.setId(idGenerator.getAndIncrement());
+        job.setAction(action);
+        job.setMode(rolling ? "rolling" : "parallel");
+        job.setBatchSize(batch);
+        job.setStatus("pending");
+        job.setCreatedAt(new Date());
+        for (Long processId : processIds) {
+            ProcessJobTask task = new ProcessJobTask();
+            task.setProcessId(processId);
+            ProcessInfo process = processInfoRepository.findById(processId);
+            task.setProcessName(process != null ? process.getName() : null);
+            task.setStatus("pending");
+            job.getTasks().add(task);
+        }
+        register(job);
+
+        Timer.Sample sample = Timer.start(Metrics.globalRegistry);
+        CompletableFuture<Boolean> chain = CompletableFuture.completedFuture(true);
+        List<ProcessJobTask> tasks = job.getTasks();
+        for (int from = 0; from < tasks.size(); from += batch) {
+            List<ProcessJobTask> group = tasks.subList(from, Math.min(tasks.size(), from + batch));
+            chain = chain.thenCompose(ok -> ok || !rolling ? runBatch(job, group) : skipBatch(job, group));
+        }
+        chain.whenComplete((ok, error) -> {
+            if (error != null) {
+                log.error("Process job {} failed", job.getId(), error);
+            }
+            synchronized (job) {
+                boolean success = error == null
+                        && job.getTasks().stream().allMatch(t -> "success".equals(t.getStatus()));
+                job.setStatus(success ? "success" : "failed");
+                job.setFinishedAt(new Date());
+            }
+            sample.stop(Timer.builder("monitor.lifecycle")
+                    .tag("action", action)
+                    .description("进程启停任务从提交到完成的耗时")
+                    .register(Metrics.globalRegistry));
+        });
+        return getJob(job.getId());
+    }
+
+    /**
+     * 返回任务快照，包含各进程命令输出的末尾部分
+     */
+    public ProcessJob getJob(Long jobId) {
+        ProcessJob job = jobs.get(jobId);
+        if (job == null) {
+            return null;
+        }
+        ProcessJob copy = new ProcessJob();
+        synchronized (job) {
+            copy.setId(job.getId());
+            copy.setAction(job.getAction());
+            copy.setMode(job.getMode());
+            copy.setBatchSize(job.getBatchSize());
+            copy.setStatus(job.getStatus());
+            copy.setCreatedAt(job.getCreatedAt());
+            copy.setFinishedAt(job.getFinishedAt());
+            for (ProcessJobTask task : job.getTasks()) {
+                ProcessJobTask taskCopy = new ProcessJobTask();
+                taskCopy.setProcessId(task.getProcessId());
+                taskCopy.setProcessName(task.getProcessName());
+                taskCopy.setStatus(task.getStatus());
+                taskCopy.setExitCode(task.getExitCode());
+                taskCopy.setMessage(task.getMessage());
+                taskCopy.setStartedAt(task.getStartedAt());
+                taskCopy.setFinishedAt(task.getFinishedAt());
+                copy.getTasks().add(taskCopy);
+            }
+        }
+        for (ProcessJobTask task : copy.getTasks()) {
+            task.setOutput(readTail(logFile(copy.getId(), task.getProcessId())));
+        }
+        return copy;
+    }
+
+    /**
+     * 最近的任务，新任务在前
+     */
+    public List<ProcessJob> getRecentJobs(int limit) {
+        List<Long> ids = new ArrayList<>(jobOrder);
+        List<ProcessJob> result = new ArrayList<>();
+        for (int i = ids.size() - 1; i >= 0 && result.size() < limit; i--) {
+            ProcessJob job = getJob(ids.get(i));
+            if (job != null) {
+                result.add(job);
+            }
+        }
+        return result;
+    }
+
+    private void register(ProcessJob job) {
+        jobs.put(job.getId(), job);
+        jobOrder.add(job.getId());
+        // 超出上限时淘汰最早的已结束任务及其日志
+        while (jobOrder.size() > maxJobs) {
+            Long oldest = jobOrder.peek();
+            ProcessJob old = oldest != null ? jobs.get(oldest) : null;
+            if (old != null && old.getFinishedAt() == null) {
+                break;
+            }
+            jobOrder.poll();
+            if (old != null) {
+                jobs.remove(oldest);
+                for (ProcessJobTask task : old.getTasks()) {
+                    logFile(old.getId(), task.getProcessId()).delete();
+                }
+            }
+        }
+    }
+
+    private CompletableFuture<Boolean> runBatch(ProcessJob job, List<ProcessJobTask> group) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[group.size()];
+        for (int i = 0; i < group.size(); i++) {
+            ProcessJobTask task = group.get(i);
+            futures[i] = CompletableFuture.runAsync(() -> runTask(job, task), executor);
+        }
+        return CompletableFuture.allOf(futures).thenApply(v -> {
+            synchronized (job) {
+                return group.stream().allMatch(t -> "success".equals(t.getStatus()));
+            }
+        });
+    }
+
+    private CompletableFuture<Boolean> skipBatch(ProcessJob job, List<ProcessJobTask> group) {
+        synchronized (job) {
+            for (ProcessJobTask task : group) {
+                task.setStatus("skipped");
+                task.setMessage("前一批执行失败，已跳过");
+            }
+        }
+        return CompletableFuture.completedFuture(false);
+    }
+
+    private void runTask(ProcessJob job, ProcessJobTask task) {
+        Long processId = task.getProcessId();
+        synchronized (job) {
+            job.setStatus("running");
+            task.setStatus("running");
+            task.setStartedAt(new Date());
+        }
+        if (!busyProcesses.add(processId)) {
+            finish(job, task, "failed", null, "该进程已有操作在执行");
+            return;
+        }
+        try {
+            ProcessInfo process = processInfoRepository.findById(processId);
+            if (process == null) {
+                finish(job, task, "failed", null, "进程不存在");
+                return;
+            }
+            File logFile = logFile(job.getId(), processId);
+            String action = job.getAction();
+            if (("stop".equals(action) || "restart".equals(action)) && !stop(job, task, process, logFile)) {
+                return;
+            }
+            if ("start".equals(action) || "restart".equals(action)) {
+                start(job, task, process, logFile);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finish(job, task, "failed", null, "任务被中断");
+        } catch (Exception e) {
+            log.error("Process job {} failed for process {}", job.getId(), processId, e);
+            finish(job, task, "failed", null, e.getMessage());
+        } finally {
+            busyProcesses.remove(processId);
+        }
+    }
+
+    private boolean stop(ProcessJob job, ProcessJobTask task, ProcessInfo process, File logFile)
+            throws IOException, InterruptedException {
+        String pid = isNumeric(process.getPid()) ? process.getPid() : null;
+        String command = process.getStopCommand();
+        if (command == null || command.trim().isEmpty()) {
+            if (pid == null) {
+                // 没有进程号也没有停止命令，视为已停止
+                markStopped(process);
+                finishIfStopOnly(job, task, null, "进程未运行");
+                return true;
+            }
+            command = WINDOWS ? "taskkill /PID %PID%" : "kill -15 $PID";
+        }
+
+        Process child = launch(command, pid, logFile);
+        if (!child.waitFor(commandTimeoutSeconds, TimeUnit.SECONDS)) {
+            child.destroyForcibly();
+            finish(job, task, "timeout", null, "停止命令执行超过 " + commandTimeoutSeconds + " 秒，已强制结束");
+            return false;
+        }
+        int exitCode = child.exitValue();
+        if (exitCode != 0) {
+            finish(job, task, "failed", exitCode, "停止命令退出码 " + exitCode);
+            return false;
+        }
+        if (pid != null && !waitForExit(pid)) {
+            finish(job, task, "timeout", exitCode, "进程在 " + stopWaitSeconds + " 秒内未退出");
+            return false;
+        }
+        markStopped(process);
+        finishIfStopOnly(job, task, exitCode, "进程已停止");
+        return true;
+    }
+
+    private void start(ProcessJob job, ProcessJobTask task, ProcessInfo process, File logFile)
+            throws IOException, InterruptedException {
+        String command = process.getStartCommand();
+        if (command == null || command.trim().isEmpty()) {
+            finish(job, task, "failed", null, "未配置启动命令");
+            return;
+        }
+        // 单条命令用 exec 让 shell 被服务进程替换，前台运行的服务才能拿到真实进程号；复合命令原样执行
+        Process child = launch(WINDOWS || !isSimpleCommand(command) ? command : "exec " + command, null, logFile);
+        if (child.waitFor(startCheckSeconds, TimeUnit.SECONDS)) {
+            int exitCode = child.exitValue();
+            if (exitCode != 0) {
+                finish(job, task, "failed", exitCode, "启动命令退出码 " + exitCode);
+                return;
+            }
+            // 启动脚本已返回（服务自行转入后台），进程号由进程发现补齐
+            markRunning(process, null);
+            finish(job, task, "success", exitCode, "启动命令已执行完成");
+            return;
+        }
+        Long pid = pidOf(child);
+        markRunning(process, pid != null ? String.valueOf(pid) : null);
+        finish(job, task, "success", null, pid != null ? "进程已启动，PID " + pid : "进程已启动");
+    }
+
+    private Process launch(String command, String pid, File logFile) throws IOException {
+        String header = String.format("[%s] $ %s%n",
+                new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()), command);
+        Files.write(logFile.toPath(), header.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        ProcessBuilder builder = WINDOWS
+                ? new ProcessBuilder("cmd", "/c", command)
+                : new ProcessBuilder("sh", "-c", command);
+        if (pid != null) {
+            builder.environment().put("PID", pid);
+        }
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile));
+        builder.redirectInput(ProcessBuilder.Redirect.from(WINDOWS ? new File("NUL") : new File("/dev/null")));
+        return builder.start();
+    }
+
+    /**
+     * 等待进程退出；无法判断进程是否存在（非 Linux）时直接返回 true
+     */
+    private boolean waitForExit(String pid) throws InterruptedException {
+        File proc = new File("/proc");
+        if (!proc.isDirectory()) {
+            return true;
+        }
+        File dir = new File(proc, pid);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(stopWaitSeconds);
+        while (dir.exists()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(200);
+        }
+        return true;
+    }
+
+    private void markStopped(ProcessInfo process) {
+        process.setStatus("stopped");
+        process.setPid(null);
+        processInfoRepository.save(process);
+    }
+
+    private void markRunning(ProcessInfo process, String pid) {
+        process.setStatus("running");
+        process.setPid(pid);
+        processInfoRepository.save(process);
+    }
+
+    private void finishIfStopOnly(ProcessJob job, ProcessJobTask task, Integer exitCode, String message) {
+        if ("stop".equals(job.getAction())) {
+            finish(job, task, "success", exitCode, message);
+        }
+    }
+
+    private void finish(ProcessJob job, ProcessJobTask task, String status, Integer exitCode, String message) {
+        synchronized (job) {
+            task.setStatus(status);
+            task.setExitCode(exitCode);
+            task.setMessage(message);
+            task.setFinishedAt(new Date());
+        }
+    }
+
+    private File logFile(Long jobId, Long processId) {
+        return new File(logDir, jobId + "-" + processId + ".log");
+    }
+
+    private static String readTail(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long length = in.length();
+            int size = (int) Math.min(length, OUTPUT_TAIL_BYTES);
+            byte[] bytes = new byte[size];
+            in.seek(length - size);
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Java 9+ 通过 Process.pid()，Java 8 读取 UNIXProcess 的 pid 字段；都不可用时返回 null
+     */
+    private static Long pidOf(Process process) {
+        try {
+            return (Long) Process.class.getMethod("pid").invoke(process);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8
+        }
+        try {
+            Field field = process.getClass().getDeclaredField("pid");
+            field.setAccessible(true);
+            return field.getLong(process);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean isSimpleCommand(String command) {
+        for (int i = 0; i < command.length(); i++) {
+            if (";&|()`\n".indexOf(command.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNumeric(String value) {
+        if (value == null || value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.monitor.service;
+
+import com.example.monitor.model.SelfMetric;
+import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 平台自监控：汇总仓储、定时任务、检测分析以及 HTTP 接口的 Micrometer 指标
+ */
+@Service
+@RequiredArgsConstructor
+public class SelfMetricsService {
+
+    private static final String PLATFORM_PREFIX = "monitor.";
+    private static final String HTTP_REQUESTS = "http.server.requests";
+
+    private final MeterRegistry meterRegistry;
+
+    public List<SelfMetric> getSelfMetrics() {
+        List<SelfMetric> result = new ArrayList<>();
+        for (Meter meter : meterRegistry.getMeters()) {
+            String name = meter.getId().getName();
+            if (!name.startsWith(PLATFORM_PREFIX) && !name.equals(HTTP_REQUESTS)) {
+                continue;
+            }
+            SelfMetric metric = toSelfMetric(meter);
+            if (metric != null) {
+                result.add(metric);
+            }
+        }
+        result.sort(Comparator.comparing(SelfMetric::getName).thenComparing(SelfMetric::getTags));
+        return result;
+    }
+
+    private SelfMetric toSelfMetric(Meter meter) {
+        SelfMetric metric = new SelfMetric();
+        metric.setName(meter.getId().getName());
+        metric.setTags(meter.getId().getTags().stream()
+            .map(tag -> tag.getKey() + "=" + tag.getValue())
+            .collect(Collectors.joining(",")));
+        metric.setBaseUnit(meter.getId().getBaseUnit());
+
+        if (meter instanceof Timer) {
+            Timer timer = (Timer) meter;
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            metric.setType("timer");
+            metric.setCount(snapshot.count());
+            metric.setMean(snapshot.mean(TimeUnit.MILLISECONDS));
+            metric.setMax(snapshot.max(TimeUnit.MILLISECONDS));
+            metric.setP99(estimatePercentile(snapshot, 0.99, true));
+            metric.setBaseUnit("ms");
+        } else if (meter instanceof DistributionSummary) {
+            HistogramSnapshot snapshot = ((DistributionSummary) meter).takeSnapshot();
+            metric.setType("summary");
+            metric.setCount(snapshot.count());
+            metric.setMean(snapshot.mean());
+            metric.setMax(snapshot.max());
+            metric.setP99(estimatePercentile(snapshot, 0.99, false));
+            metric.setValue(snapshot.total());
+        } else if (meter instanceof Gauge) {
+            metric.setType("gauge");
+            metric.setValue(((Gauge) meter).value());
+        } else if (meter instanceof Counter) {
+            metric.setType("counter");
+            metric.setValue(((Counter) meter).count());
+        } else {
+            return null;
+        }
+        return metric;
+    }
+
+    /**
+     * 取第一个累计计数达到目标秩的桶上界；未开启直方图时返回 null
+     */
+    private Double estimatePercentile(HistogramSnapshot snapshot, double quantile, boolean time) {
+        CountAtBucket[] buckets = snapshot.histogramCounts();
+        if (buckets.length == 0 || snapshot.count() == 0) {
+            return null;
+        }
+        double rank = quantile * snapshot.count();
+        for (CountAtBucket bucket : buckets) {
+            if (bucket.count() >= rank) {
+                return time ? bucket.bucket(TimeUnit.MILLISECONDS) : bucket.bucket();
+            }
+        }
+        return time ? snapshot.max(TimeUnit.MILLISECONDS) : snapshot.max();
+    }
+}
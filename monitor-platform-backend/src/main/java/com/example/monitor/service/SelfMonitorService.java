@@ -0,0 +1,301 @@
+package com.example.monitor.service;
+
+import com.example.monitor.model.*;
+import com.example.monitor.replication.ReplicationService;
+import com.example.monitor.storage.*;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 平台自监控采集
+ * 按固定间隔通过 MXBean 采集本 JVM 的堆内存、GC 停顿、线程数、接口延迟和数据文件大小，
+ * 写入保留服务的指标序列，并为自身进程写入资源记录；线程快照按更低的频率采集，供热点分析使用。
+ * 默认关闭，通过 monitor.self-monitor.enabled=true 开启。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "monitor.self-monitor", name = "enabled", havingValue = "true")
+public class SelfMonitorService {
+
+    private static final double MB = 1024.0 * 1024.0;
+
+    private final ServiceInfoFileRepository serviceInfoRepository;
+    private final ServerInfoService serverInfoService;
+    private final ProcessInfoFileRepository processInfoRepository;
+    private final MetricSampleFileRepository metricSampleRepository;
+    private final ProcessResourceFileRepository processResourceRepository;
+    private final ThreadInfoFileRepository threadInfoRepository;
+    private final ThreadStackFileRepository threadStackRepository;
+    private final MeterRegistry meterRegistry;
+    private final ReplicationService replicationService;
+
+    @Value("${monitor.self-monitor.service-name:monitor-platform}")
+    private String serviceName;
+
+    @Value("${monitor.self-monitor.thread-snapshot-interval-seconds:300}")
+    private long threadSnapshotIntervalSeconds;
+
+    @Value("${monitor.self-monitor.thread-stack-depth:32}")
+    private int threadStackDepth;
+
+    @Value("${server.port:8080}")
+    private String serverPort;
+
+    private final Timer jobTimer = Timer.builder("monitor.job")
+            .tag("job", "self-monitor")
+            .description("定时任务耗时")
+            .register(Metrics.globalRegistry);
+
+    private Long serviceId;
+    private Long processId;
+    private long lastGcCount = -1;
+    private long lastGcTime;
+    private long lastRequestCount = -1;
+    private double lastRequestTotalMs;
+    private long lastThreadSnapshotAt;
+
+    @Scheduled(initialDelay = 10_000, fixedDelayString = "#{${monitor.self-monitor.interval-seconds:30} * 1000}")
+    public void scheduledCollect() {
+        if (replicationService.isReadOnly()) {
+            // 从节点不写入自身的指标，保留服务的数据以主节点复制过来的为准
+            return;
+        }
+        collect();
+    }
+
+    public void collect() {
+        Timer.Sample sample = Timer.start();
+        try {
+            ensureRegistered();
+            Date now = new Date();
+            metricSampleRepository.saveAll(sampleMetrics(now));
+            processResourceRepository.save(sampleProcessResource(now));
+            long nowMillis = now.getTime();
+            if (threadSnapshotIntervalSeconds > 0
+                    && nowMillis - lastThreadSnapshotAt >= TimeUnit.SECONDS.toMillis(threadSnapshotIntervalSeconds)) {
+                snapshotThreads(now);
+                lastThreadSnapshotAt = nowMillis;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Self monitor collection failed", e);
+        } finally {
+            sample.stop(jobTimer);
+        }
+    }
+
+    /**
+     * 首次采集时登记保留服务、本机服务器和自身进程，已存在则复用
+     */
+    private void ensureRegistered() {
+        if (serviceId != null && processId != null) {
+            return;
+        }
+        ServerInfo server = serverInfoService.findOrRegisterLocalHost();
+
+        String pid = currentPid();
+        ProcessInfo process = processInfoRepository.findByServerId(server.getId()).stream()
+                .filter(p -> serviceName.equals(p.getName()))
+                .findFirst()
+                .orElseGet(ProcessInfo::new);
+        if (process.getId() == null) {
+            process.setServerId(server.getId());
+            process.setName(serviceName);
+            process.setType("app");
+            process.setUser(System.getProperty("user.name"));
+            process.setDescription("监控平台自身进程（自监控自动登记）");
+            process.setAutoStart(false);
+        }
+        process.setPid(pid);
+        process.setCommand("java " + System.getProperty("sun.java.command", ""));
+        process.setPorts(serverPort);
+        process.setStatus("running");
+        processInfoRepository.save(process);
+        processId = process.getId();
+
+        ServiceInfo service = serviceInfoRepository.findAll().stream()
+                .filter(s -> serviceName.equals(s.getName()))
+                .findFirst()
+                .orElseGet(ServiceInfo::new);
+        if (service.getId() == null) {
+            service.setName(serviceName);
+            service.setEnv("self");
+            service.setDescription("监控平台自身（保留服务，由自监控写入指标）");
+        }
+        service.setServerId(server.getId());
+        service.setProcessId(processId);
+        serviceInfoRepository.save(service);
+        serviceId = service.getId();
+        log.info("Self monitor registered as service {} / process {} (pid {})", serviceId, processId, pid);
+    }
+
+    private List<MetricSample> sampleMetrics(Date now) {
+        List<MetricSample> samples = new ArrayList<>();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        MemoryUsage nonHeap = memory.getNonHeapMemoryUsage();
+        samples.add(metric("heapUsed", heap.getUsed() / MB, now));
+        samples.add(metric("heapCommitted", heap.getCommitted() / MB, now));
+        samples.add(metric("nonHeapUsed", nonHeap.getUsed() / MB, now));
+
+        long gcCount = 0;
+        long gcTime = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcTime += Math.max(0, gc.getCollectionTime());
+        }
+        if (lastGcCount >= 0) {
+            samples.add(metric("gcCount", gcCount - lastGcCount, now));
+            samples.add(metric("gcPauseTime", gcTime - lastGcTime, now));
+        }
+        lastGcCount = gcCount;
+        lastGcTime = gcTime;
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        samples.add(metric("threadCount", threads.getThreadCount(), now));
+        samples.add(metric("daemonThreadCount", threads.getDaemonThreadCount(), now));
+
+        // 区间内接口平均耗时写成 responseTime，现有异常检测可直接作用于平台自身
+        long requestCount = 0;
+        double requestTotalMs = 0;
+        for (Timer timer : meterRegistry.find("http.server.requests").timers()) {
+            requestCount += timer.count();
+            requestTotalMs += timer.totalTime(TimeUnit.MILLISECONDS);
+        }
+        if (lastRequestCount >= 0 && requestCount > lastRequestCount) {
+            double avg = (requestTotalMs - lastRequestTotalMs) / (requestCount - lastRequestCount);
+            samples.add(metric("responseTime", avg, now));
+        }
+        lastRequestCount = requestCount;
+        lastRequestTotalMs = requestTotalMs;
+
+        for (Gauge gauge : meterRegistry.find(RepositoryMetrics.FILE_SIZE).gauges()) {
+            double bytes = gauge.value();
+            if (!Double.isNaN(bytes)) {
+                samples.add(metric("repositoryFileSize." + gauge.getId().getTag("repository"), bytes / MB, now));
+            }
+        }
+        return samples;
+    }
+
+    private MetricSample metric(String name, double value, Date timestamp) {
+        MetricSample sample = new MetricSample();
+        sample.setServiceId(serviceId);
+        sample.setMetricName(name);
+        sample.setValue(value);
+        sample.setTimestamp(timestamp);
+        return sample;
+    }
+
+    private ProcessResource sampleProcessResource(Date now) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        double usedBytes = memory.getHeapMemoryUsage().getUsed() + memory.getNonHeapMemoryUsage().getUsed();
+
+        ProcessResource resource = new ProcessResource();
+        resource.setProcessId(processId);
+        resource.setMemoryUsage(usedBytes / MB);
+        resource.setThreadCount(ManagementFactory.getThreadMXBean().getThreadCount());
+        resource.setUptime(ManagementFactory.getRuntimeMXBean().getUptime() / 1000);
+        resource.setStatus("running");
+        resource.setTimestamp(now);
+
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            com.sun.management.OperatingSystemMXBean sunOs = (com.sun.management.OperatingSystemMXBean) os;
+            double cpuLoad = sunOs.getProcessCpuLoad();
+            resource.setCpuUsage(cpuLoad < 0 ? 0.0 : cpuLoad * 100);
+            long totalMemory = sunOs.getTotalPhysicalMemorySize();
+            resource.setMemoryPercent(totalMemory > 0 ? usedBytes * 100 / totalMemory : 0.0);
+        }
+        if (os instanceof com.sun.management.UnixOperatingSystemMXBean) {
+            resource.setHandleCount((int) ((com.sun.management.UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount());
+        }
+        return resource;
+    }
+
+    /**
+     * 采集一次线程快照，替换自身进程上一次的线程与堆栈数据
+     */
+    private void snapshotThreads(Date now) {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        java.lang.management.ThreadInfo[] dump = threadBean.dumpAllThreads(false, false);
+        boolean cpuTimeSupported = threadBean.isThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled();
+
+        List<ThreadInfo> threads = new ArrayList<>(dump.length);
+        List<ThreadStack> stacks = new ArrayList<>();
+        for (java.lang.management.ThreadInfo info : dump) {
+            if (info == null) {
+                continue;
+            }
+            ThreadInfo thread = new ThreadInfo();
+            thread.setProcessId(processId);
+            thread.setThreadId(info.getThreadId());
+            thread.setThreadName(info.getThreadName());
+            thread.setState(info.getThreadState().name());
+            thread.setAlive(true);
+            thread.setInterrupted(false);
+            if (cpuTimeSupported) {
+                thread.setCpuTime(TimeUnit.NANOSECONDS.toMillis(Math.max(0, threadBean.getThreadCpuTime(info.getThreadId()))));
+                thread.setUserTime(TimeUnit.NANOSECONDS.toMillis(Math.max(0, threadBean.getThreadUserTime(info.getThreadId()))));
+            }
+            if (info.getWaitedTime() >= 0) {
+                thread.setWaitTime(info.getWaitedTime());
+            }
+            if (info.getBlockedTime() >= 0) {
+                thread.setBlockedTime(info.getBlockedTime());
+            }
+            StackTraceElement[] frames = info.getStackTrace();
+            if (frames.length > 0) {
+                thread.setCurrentClass(frames[0].getClassName());
+                thread.setCurrentMethod(frames[0].getMethodName());
+                thread.setCurrentLine(frames[0].getLineNumber());
+            }
+            thread.setTimestamp(now);
+            threads.add(thread);
+
+            for (int depth = 0; depth < Math.min(frames.length, threadStackDepth); depth++) {
+                StackTraceElement frame = frames[depth];
+                ThreadStack stack = new ThreadStack();
+                stack.setProcessId(processId);
+                stack.setThreadId(info.getThreadId());
+                stack.setDepth(depth);
+                stack.setClassName(frame.getClassName());
+                stack.setMethodName(frame.getMethodName());
+                stack.setFileName(frame.getFileName());
+                stack.setLineNumber(frame.getLineNumber());
+                stack.setNativeMethod(frame.isNativeMethod());
+                stack.setStackTrace("at " + frame);
+                stack.setTimestamp(now);
+                stacks.add(stack);
+            }
+        }
+
+        threadInfoRepository.clearByProcessId(processId);
+        threadStackRepository.clearByProcessId(processId);
+        threadInfoRepository.saveAll(threads);
+        threadStackRepository.saveAll(stacks);
+    }
+
+    private static String currentPid() {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        int at = name.indexOf('@');
+        return at > 0 ? name.substring(0, at) : name;
+    }
+}
@@ -7,6 +7,11 @@ import com.example.monitor.storage.ServerResourceFileRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.Date;
 import java.util.List;
 import java.util.Random;
@@ -19,6 +24,8 @@ public class ServerInfoService {
     private final ServerResourceFileRepository serverResourceRepository;
     private final Random random = new Random();
 
+    private static final double GB = 1024.0 * 1024.0 * 1024.0;
+
     public List<ServerInfo> getAllServers() {
         return serverInfoRepository.findAll();
     }
@@ -67,6 +74,48 @@ public class ServerInfoService {
         serverInfoRepository.deleteById(id);
     }
 
+    /**
+     * 查找平台所在主机（按主机名匹配），不存在时自动登记
+     */
+    public synchronized ServerInfo findOrRegisterLocalHost() {
+        String hostName = localHostName();
+        for (ServerInfo server : serverInfoRepository.findAll()) {
+            if (hostName.equals(server.getName())) {
+                return server;
+            }
+        }
+        ServerInfo server = new ServerInfo();
+        server.setName(hostName);
+        server.setIp(localHostAddress());
+        server.setType("app");
+        server.setEnv("self");
+        server.setDescription("监控平台所在主机（自动登记）");
+        server.setCpuCores(Runtime.getRuntime().availableProcessors());
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            server.setTotalMemory(((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize() / GB);
+        }
+        server.setTotalDisk(new File(".").getAbsoluteFile().getTotalSpace() / GB);
+        server.setStatus("online");
+        return serverInfoRepository.save(server);
+    }
+
+    private static String localHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+
+    private static String localHostAddress() {
+        try {
+            return InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            return "127.0.0.1";
+        }
+    }
+
     /**
      * 生成模拟服务器资源数据
      * @param serverId 服务器ID
@@ -24,6 +24,8 @@ public class ServiceInfoService {
         serviceInfo.setEnv(request.getEnv());
         serviceInfo.setDescription(request.getDescription());
         serviceInfo.setMetricEndpoint(request.getMetricEndpoint());
+        serviceInfo.setServerId(request.getServerId());
+        serviceInfo.setProcessId(request.getProcessId());
         return repository.save(serviceInfo);
     }
 
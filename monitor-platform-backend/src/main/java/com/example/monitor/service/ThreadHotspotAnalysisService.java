@@ -6,6 +6,8 @@ import com.example.monitor.model.ThreadInfo;
 import com.example.monitor.model.ThreadStack;
 import com.example.monitor.storage.ThreadInfoFileRepository;
 import com.example.monitor.storage.ThreadStackFileRepository;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -26,10 +28,18 @@ public class ThreadHotspotAnalysisService {
 
     private static final int TOP_N = 10;
 
+    private final Timer analyzeTimer = Timer.builder("monitor.hotspot.analyze")
+            .description("单个进程一次线程热点分析的耗时")
+            .register(Metrics.globalRegistry);
+
     /**
      * 分析指定进程的线程热点
      */
     public ThreadHotspotAnalysis analyze(Long processId) {
+        return analyzeTimer.record(() -> doAnalyze(processId));
+    }
+
+    private ThreadHotspotAnalysis doAnalyze(Long processId) {
         log.info("开始分析进程 {} 的线程热点", processId);
 
         // 1. 获取所有线程
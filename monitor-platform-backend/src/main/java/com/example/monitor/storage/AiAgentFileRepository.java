@@ -1,166 +1,380 @@
 package com.example.monitor.storage;
 
 import com.example.monitor.model.AiAgent;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
+import javax.annotation.PostConstruct;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * AI Agent文件仓储
+ * 数据按 ID 存放在并发 Map 中，写入时保存副本，读取也只返回副本，调用方修改返回的对象不会影响仓储；按类型、状态、目标的查询读取一份不可变的索引快照，
+ * 快照在写入后的第一次查询时重建，查询本身不加锁也不扫描全部 Agent。
+ * 写入采用组提交：并发的多次写入由先拿到落盘锁的线程一次写完，数据先写临时文件再原子替换，
+ * 进程中途退出也不会留下半个文件。ID 由共用的 {@link IdSequenceService} 发放，删除最大 ID 的 Agent 后不会复用其 ID。
  */
 @Slf4j
 @Repository
 public class AiAgentFileRepository {
-    
-    private static final String DATA_FILE = "data/ai-agents.json";
+
+    @Value("${monitor.storage-dir:data}")
+    private String storageDir;
+
+    private File dataFile;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final List<AiAgent> cache = new ArrayList<>();
-    
-    public AiAgentFileRepository() {
-        loadData();
+    private final ConcurrentHashMap<Long, AiAgent> storage = new ConcurrentHashMap<>();
+    private IdSequenceService.Sequence idSequence;
+    private final AtomicLong version = new AtomicLong();
+    /**
+     * 不经过 Spring 创建时（单元测试）使用各自独立的注册表
+     */
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RepositoryMetrics metrics;
+
+    /**
+     * 写入次数，每次修改 storage 后递增；flushedWrites 为已落盘的写入次数，只在 flushLock 内访问
+     */
+    private final AtomicLong writes = new AtomicLong();
+    private final Object flushLock = new Object();
+    private long flushedWrites;
+
+    private volatile Snapshot snapshot;
+
+    @PostConstruct
+    public void init() {
+        metrics = RepositoryMetrics.of("ai-agents", meterRegistry);
+        File dir = new File(storageDir);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        dataFile = new File(dir, "ai-agents.json");
+        idSequence = IdSequenceService.forDirectory(storageDir).sequence("ai-agents");
+        loadFromFile();
+        metrics.gaugeSize(storage, Map::size);
+        metrics.gaugeFileSize(this, r -> r.dataFile.length());
     }
-    
+
     /**
-     * 加载数据
+     * 数据文件被外部替换后（如从主节点复制过来）重新加载
      */
-    private void loadData() {
-        File file = new File(DATA_FILE);
-        if (file.exists()) {
+    public void reload() {
+        loadFromFile();
+        version.incrementAndGet();
+    }
+
+    private synchronized void loadFromFile() {
+        storage.clear();
+        snapshot = null;
+        if (dataFile.exists()) {
+            long start = metrics.start();
             try {
-                List<AiAgent> agents = objectMapper.readValue(file, 
-                    new TypeReference<List<AiAgent>>() {});
-                cache.addAll(agents);
-                log.info("已加载 {} 个AI Agent", cache.size());
+                List<AiAgent> list = objectMapper.readValue(
+                    dataFile,
+                    TypeFactory.defaultInstance().constructCollectionType(List.class, AiAgent.class)
+                );
+                if (list != null) {
+                    list.forEach(agent -> storage.put(agent.getId(), agent));
+                }
+                metrics.recordRead(start, dataFile.length(), storage.size());
+                log.info("已加载 {} 个AI Agent", storage.size());
             } catch (IOException e) {
                 log.error("加载AI Agent数据失败", e);
             }
         }
+        storage.keySet().stream().mapToLong(Long::longValue).max().ifPresent(idSequence::observe);
+        // 旧版本单独保存的 ID 序列，迁移后删除
+        File legacySequence = new File(dataFile.getParentFile(), "ai-agents.seq");
+        if (legacySequence.exists()) {
+            try {
+                long next = Long.parseLong(new String(Files.readAllBytes(legacySequence.toPath()), StandardCharsets.UTF_8).trim());
+                idSequence.observe(next - 1);
+                Files.delete(legacySequence.toPath());
+            } catch (IOException | NumberFormatException e) {
+                log.warn("读取旧的AI Agent ID序列失败，按现有最大ID继续", e);
+            }
+        }
     }
-    
+
     /**
-     * 保存数据
+     * 把截至第 upTo 次的写入落盘；已被其他线程一并写完时直接返回
      */
-    private void saveData() {
-        try {
-            File file = new File(DATA_FILE);
-            file.getParentFile().mkdirs();
-            objectMapper.writerWithDefaultPrettyPrinter()
-                .writeValue(file, cache);
-        } catch (IOException e) {
-            log.error("保存AI Agent数据失败", e);
+    private void flush(long upTo) {
+        synchronized (flushLock) {
+            if (flushedWrites >= upTo) {
+                return;
+            }
+            long target = writes.get();
+            List<AiAgent> list = snapshot().all;
+            long start = metrics.start();
+            try {
+                StorageFiles.replace(dataFile.toPath(), objectMapper.writeValueAsBytes(list));
+                metrics.recordWrite(start, dataFile.length(), list.size());
+            } catch (IOException e) {
+                log.error("保存AI Agent数据失败", e);
+            }
+            flushedWrites = target;
+            version.incrementAndGet();
         }
     }
-    
+
+    /**
+     * 当前的索引快照，写入后第一次调用时重建
+     */
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                snapshot = new Snapshot(storage.values());
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * 修改完成后调用（需持有 this 锁），返回本次写入的序号
+     */
+    private long modified() {
+        snapshot = null;
+        return writes.incrementAndGet();
+    }
+
     /**
      * 查找所有Agent
      */
     public List<AiAgent> findAll() {
-        return new ArrayList<>(cache);
+        return copies(snapshot().all);
     }
-    
+
     /**
      * 根据类型查找Agent
      */
     public List<AiAgent> findByType(String type) {
-        return cache.stream()
-            .filter(agent -> type.equals(agent.getType()))
-            .collect(Collectors.toList());
+        return copies(snapshot().byType.getOrDefault(type, Collections.emptyList()));
     }
-    
+
     /**
      * 根据状态查找Agent
      */
     public List<AiAgent> findByStatus(String status) {
-        return cache.stream()
-            .filter(agent -> status.equals(agent.getStatus()))
-            .collect(Collectors.toList());
+        return copies(snapshot().byStatus.getOrDefault(status, Collections.emptyList()));
     }
-    
+
     /**
      * 根据目标ID查找Agent
      */
     public List<AiAgent> findByTargetId(Long targetId) {
-        return cache.stream()
-            .filter(agent -> targetId.equals(agent.getTargetId()))
-            .collect(Collectors.toList());
+        return copies(snapshot().byTarget.getOrDefault(targetId, Collections.emptyList()));
     }
-    
+
     /**
      * 根据ID查找Agent
+     * 返回副本，修改后需通过 save 写回
      */
     public AiAgent findById(Long id) {
-        return cache.stream()
-            .filter(agent -> id.equals(agent.getId()))
-            .findFirst()
-            .orElse(null);
+        AiAgent agent = storage.get(id);
+        return agent != null ? copy(agent) : null;
     }
-    
+
     /**
      * 保存Agent
      */
     public AiAgent save(AiAgent agent) {
+        long seq;
+        synchronized (this) {
+            put(agent, new Date());
+            seq = modified();
+        }
+        flush(seq);
+        return agent;
+    }
+
+    /**
+     * 批量保存，整批只写一次文件
+     */
+    public List<AiAgent> saveAll(List<AiAgent> agents) {
+        if (agents.isEmpty()) {
+            return agents;
+        }
+        long seq;
+        synchronized (this) {
+            Date now = new Date();
+            agents.forEach(agent -> put(agent, now));
+            seq = modified();
+        }
+        flush(seq);
+        return agents;
+    }
+
+    private void put(AiAgent agent, Date now) {
         if (agent.getId() == null) {
-            agent.setId(generateId());
-            agent.setCreatedAt(new java.util.Date());
-        }
-        agent.setUpdatedAt(new java.util.Date());
-        
-        // 如果已存在则更新
-        for (int i = 0; i < cache.size(); i++) {
-            if (agent.getId().equals(cache.get(i).getId())) {
-                cache.set(i, agent);
-                saveData();
-                return agent;
+            agent.setId(idSequence.next());
+            agent.setCreatedAt(now);
+        } else {
+            idSequence.observe(agent.getId());
+        }
+        agent.setUpdatedAt(now);
+        storage.put(agent.getId(), copy(agent));
+    }
+
+    /**
+     * 批量更新：在锁内对已存在的Agent逐个应用修改，整批只写一次文件；不存在的Agent忽略
+     */
+    public void updateAll(Map<Long, Consumer<AiAgent>> updates) {
+        long seq;
+        synchronized (this) {
+            Date now = new Date();
+            boolean changed = false;
+            for (Map.Entry<Long, Consumer<AiAgent>> entry : updates.entrySet()) {
+                AiAgent current = storage.get(entry.getKey());
+                if (current != null) {
+                    AiAgent updated = copy(current);
+                    entry.getValue().accept(updated);
+                    updated.setUpdatedAt(now);
+                    storage.put(updated.getId(), updated);
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                return;
             }
+            seq = modified();
         }
-        
-        // 否则添加
-        cache.add(agent);
-        saveData();
-        return agent;
+        flush(seq);
     }
-    
+
     /**
      * 删除Agent
      */
     public void delete(Long id) {
-        cache.removeIf(agent -> id.equals(agent.getId()));
-        saveData();
+        long seq;
+        synchronized (this) {
+            if (storage.remove(id) == null) {
+                return;
+            }
+            seq = modified();
+        }
+        flush(seq);
     }
-    
+
     /**
      * 删除目标的所有Agent
      */
     public void deleteByTargetId(Long targetId) {
-        cache.removeIf(agent -> targetId.equals(agent.getTargetId()));
-        saveData();
-    }
-    
-    /**
-     * 生成ID
-     */
-    private Long generateId() {
-        return cache.stream()
-            .mapToLong(AiAgent::getId)
-            .max()
-            .orElse(0L) + 1;
+        long seq;
+        synchronized (this) {
+            List<AiAgent> agents = snapshot().byTarget.getOrDefault(targetId, Collections.emptyList());
+            if (agents.isEmpty()) {
+                return;
+            }
+            agents.forEach(agent -> storage.remove(agent.getId()));
+            seq = modified();
+        }
+        flush(seq);
     }
-    
+
     /**
      * 查找最新的Agent（按更新时间）
      */
     public List<AiAgent> findLatest(int limit) {
-        return cache.stream()
-            .sorted(Comparator.comparing(AiAgent::getUpdatedAt).reversed())
+        return snapshot().all.stream()
+            .sorted(Comparator.comparing(AiAgent::getUpdatedAt, Comparator.nullsLast(Comparator.reverseOrder())))
             .limit(limit)
+            .map(AiAgentFileRepository::copy)
             .collect(Collectors.toList());
     }
+
+    /**
+     * 每次写入文件后递增，供查询缓存判断数据是否变化
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    private static List<AiAgent> copies(List<AiAgent> agents) {
+        List<AiAgent> result = new ArrayList<>(agents.size());
+        for (AiAgent agent : agents) {
+            result.add(copy(agent));
+        }
+        return result;
+    }
+
+    private static AiAgent copy(AiAgent agent) {
+        return AiAgent.builder()
+            .id(agent.getId())
+            .name(agent.getName())
+            .type(agent.getType())
+            .status(agent.getStatus())
+            .targetId(agent.getTargetId())
+            .targetName(agent.getTargetName())
+            .capabilities(agent.getCapabilities())
+            .lastActiveTime(agent.getLastActiveTime())
+            .createdAt(agent.getCreatedAt())
+            .updatedAt(agent.getUpdatedAt())
+            .description(agent.getDescription())
+            .config(agent.getConfig())
+            .healthScore(agent.getHealthScore())
+            .metricsSummary(agent.getMetricsSummary())
+            .build();
+    }
+
+    /**
+     * 某一时刻全部 Agent 的只读视图及其索引，构建后不再修改
+     */
+    private static final class Snapshot {
+        /**
+         * 按 ID 升序
+         */
+        final List<AiAgent> all;
+        final Map<String, List<AiAgent>> byType;
+        final Map<String, List<AiAgent>> byStatus;
+        final Map<Long, List<AiAgent>> byTarget;
+
+        Snapshot(Iterable<AiAgent> agents) {
+            List<AiAgent> list = new ArrayList<>();
+            agents.forEach(list::add);
+            list.sort(Comparator.comparing(AiAgent::getId));
+            this.all = Collections.unmodifiableList(list);
+            this.byType = group(list, AiAgent::getType);
+            this.byStatus = group(list, AiAgent::getStatus);
+            this.byTarget = group(list, AiAgent::getTargetId);
+        }
+
+        private static <K> Map<K, List<AiAgent>> group(List<AiAgent> agents, Function<AiAgent, K> key) {
+            Map<K, List<AiAgent>> groups = new HashMap<>();
+            for (AiAgent agent : agents) {
+                K value = key.apply(agent);
+                if (value != null) {
+                    groups.computeIfAbsent(value, k -> new ArrayList<>()).add(agent);
+                }
+            }
+            groups.replaceAll((k, v) -> Collections.unmodifiableList(v));
+            return groups;
+        }
+    }
 }
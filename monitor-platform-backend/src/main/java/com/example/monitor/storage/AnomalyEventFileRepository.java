@@ -3,10 +3,15 @@ package com.example.monitor.storage;
 import com.example.monitor.model.AnomalyEvent;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -15,17 +20,49 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Component
 public class AnomalyEventFileRepository {
 
     private final Path filePath;
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong version = new AtomicLong();
+    private final RepositoryMetrics metrics;
+    private final IdSequenceService.Sequence idSequence;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
 
-    public AnomalyEventFileRepository(@Value("${monitor.storage-dir:data}") String storageDir) throws IOException {
+    /**
+     * 写入监听，用于在写入路径上增量维护聚合数据。
+     * 回调都在仓储的锁内执行，reset 给出的全部事件与之后每次 saved 之间既不遗漏也不重复；回调中不能访问本仓储
+     */
+    public interface Listener {
+        /**
+         * 注册时和数据文件被外部替换后调用
+         */
+        void reset(List<AnomalyEvent> events);
+
+        /**
+         * 每次保存后调用，previous 为被替换的同 ID 事件，没有时为 null
+         */
+        void saved(AnomalyEvent previous, AnomalyEvent event);
+    }
+
+    /**
+     * 不经过 Spring 创建时（单元测试）使用独立的注册表
+     */
+    public AnomalyEventFileRepository(String storageDir) throws IOException {
+        this(storageDir, new SimpleMeterRegistry());
+    }
+
+    @Autowired
+    public AnomalyEventFileRepository(@Value("${monitor.storage-dir:data}") String storageDir, MeterRegistry meterRegistry) throws IOException {
+        this.metrics = RepositoryMetrics.of("anomalies", meterRegistry);
         Path dir = Paths.get(storageDir);
         if (!Files.exists(dir)) {
             Files.createDirectories(dir);
@@ -34,6 +71,8 @@ public class AnomalyEventFileRepository {
         if (!Files.exists(this.filePath)) {
             Files.write(this.filePath, "[]".getBytes(StandardCharsets.UTF_8));
         }
+        metrics.gaugeFileSize(this.filePath, p -> p.toFile().length());
+        this.idSequence = IdSequenceService.forDirectory(storageDir).sequence("anomalies", this::maxId);
     }
 
     public AnomalyEvent save(AnomalyEvent event) {
@@ -41,12 +80,7 @@ public class AnomalyEventFileRepository {
         try {
             List<AnomalyEvent> all = readAllInternal();
             if (event.getId() == null) {
-                long nextId = all.stream()
-                        .map(AnomalyEvent::getId)
-                        .filter(id -> id != null)
-                        .max(Comparator.naturalOrder())
-                        .orElse(0L) + 1;
-                event.setId(nextId);
+                event.setId(idSequence.next());
             }
 
             Optional<AnomalyEvent> existingOpt = all.stream()
@@ -56,6 +90,14 @@ public class AnomalyEventFileRepository {
 
             all.add(event);
             writeAllInternal(all);
+            AnomalyEvent previous = existingOpt.orElse(null);
+            for (Listener listener : listeners) {
+                try {
+                    listener.saved(previous, event);
+                } catch (RuntimeException e) {
+                    log.warn("Anomaly event listener failed", e);
+                }
+            }
             return event;
         } catch (IOException e) {
             throw new RuntimeException("Failed to save anomaly event", e);
@@ -91,21 +133,83 @@ public class AnomalyEventFileRepository {
         }
     }
 
+    /**
+     * 数据文件中现有的最大 ID，只在 ID 序列首次建立时读取一次
+     */
+    private long maxId() {
+        try {
+            return readAllInternal().stream()
+                    .map(AnomalyEvent::getId)
+                    .filter(id -> id != null)
+                    .max(Comparator.naturalOrder())
+                    .orElse(0L);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read anomalies", e);
+        }
+    }
+
     private List<AnomalyEvent> readAllInternal() throws IOException {
         if (!Files.exists(filePath)) {
             return new ArrayList<>();
         }
-        String json = new String(Files.readAllBytes(filePath), StandardCharsets.UTF_8);
+        long start = metrics.start();
+        byte[] bytes = Files.readAllBytes(filePath);
+        String json = new String(bytes, StandardCharsets.UTF_8);
         if (json.trim().isEmpty()) {
             return new ArrayList<>();
         }
-        return objectMapper.readValue(json, new TypeReference<List<AnomalyEvent>>() {
+        List<AnomalyEvent> all = objectMapper.readValue(json, new TypeReference<List<AnomalyEvent>>() {
         });
+        metrics.recordRead(start, bytes.length, all.size());
+        return all;
+    }
+
+    /**
+     * 注册写入监听，注册时先在读锁内收到一次全部事件
+     */
+    public void addListener(Listener listener) {
+        lock.readLock().lock();
+        try {
+            listener.reset(readAllInternal());
+            listeners.add(listener);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read anomaly events", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 数据文件被外部替换后（如从主节点复制过来）调用；数据每次都从文件读取，只需让查询缓存失效并通知监听方
+     */
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            version.incrementAndGet();
+            if (!listeners.isEmpty()) {
+                List<AnomalyEvent> all = readAllInternal();
+                listeners.forEach(listener -> listener.reset(all));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to reload anomaly events", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 每次写入文件后递增，供查询缓存判断数据是否变化
+     */
+    public long getVersion() {
+        return version.get();
     }
 
     private void writeAllInternal(List<AnomalyEvent> events) throws IOException {
-        String json = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(events);
-        Files.write(filePath, json.getBytes(StandardCharsets.UTF_8));
+        long start = metrics.start();
+        byte[] bytes = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(events);
+        StorageFiles.replace(filePath, bytes);
+        metrics.recordWrite(start, bytes.length, events.size());
+        version.incrementAndGet();
     }
 }
 
@@ -0,0 +1,152 @@
+package com.example.monitor.storage;
+
+import com.example.monitor.model.ApiAuthKeyModel;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * API 认证密钥仓储
+ * 每次写入文件后通知变更监听方，认证服务据此重建内存中的查找表
+ */
+@Slf4j
+@Repository
+public class ApiAuthKeyFileRepository {
+
+    @Value("${monitor.storage-dir:data}")
+    private String storageDir;
+
+    private File dataFile;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private IdSequenceService.Sequence idSequence;
+    private final ConcurrentHashMap<Long, ApiAuthKeyModel> storage = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * 不经过 Spring 创建时（单元测试）使用各自独立的注册表
+     */
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RepositoryMetrics metrics;
+
+    @PostConstruct
+    public void init() {
+        metrics = RepositoryMetrics.of("api-auth-keys", meterRegistry);
+        File dir = new File(storageDir);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        dataFile = new File(dir, "api-auth-keys.json");
+        idSequence = IdSequenceService.forDirectory(storageDir).sequence("api-auth-keys");
+        loadFromFile();
+        metrics.gaugeSize(storage, Map::size);
+    }
+
+    /**
+     * 数据文件被外部替换后（如从主节点复制过来）重新加载
+     */
+    public void reload() {
+        loadFromFile();
+    }
+
+    private synchronized void loadFromFile() {
+        storage.clear();
+        if (dataFile.exists()) {
+            long start = metrics.start();
+            try {
+                List<ApiAuthKeyModel> list = objectMapper.readValue(
+                    dataFile,
+                    TypeFactory.defaultInstance().constructCollectionType(List.class, ApiAuthKeyModel.class)
+                );
+                if (list != null) {
+                    list.forEach(item -> storage.put(item.getId(), item));
+                }
+                storage.keySet().stream().mapToLong(Long::longValue).max().ifPresent(idSequence::observe);
+                metrics.recordRead(start, dataFile.length(), storage.size());
+                log.info("Loaded {} API auth keys from {}", storage.size(), dataFile.getAbsolutePath());
+            } catch (IOException e) {
+                log.error("Failed to load API auth keys from file", e);
+            }
+        }
+        version.incrementAndGet();
+        notifyListeners();
+    }
+
+    private synchronized void saveToFile() {
+        long start = metrics.start();
+        try {
+            List<ApiAuthKeyModel> list = new ArrayList<>(storage.values());
+            StorageFiles.replace(dataFile.toPath(), objectMapper.writeValueAsBytes(list));
+            metrics.recordWrite(start, dataFile.length(), list.size());
+        } catch (IOException e) {
+            log.error("Failed to save API auth keys to file", e);
+        }
+        version.incrementAndGet();
+        notifyListeners();
+    }
+
+    private void notifyListeners() {
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.warn("API auth key listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * 注册变更监听：加载或每次写入后在写入线程内回调
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public ApiAuthKeyModel save(ApiAuthKeyModel key) {
+        if (key.getId() == null) {
+            key.setId(idSequence.next());
+            key.setCreatedAt(new Date());
+        }
+        key.setUpdatedAt(new Date());
+        storage.put(key.getId(), key);
+        saveToFile();
+        return key;
+    }
+
+    public ApiAuthKeyModel findById(Long id) {
+        return storage.get(id);
+    }
+
+    public List<ApiAuthKeyModel> findAll() {
+        return new ArrayList<>(storage.values());
+    }
+
+    public void deleteById(Long id) {
+        if (storage.remove(id) != null) {
+            saveToFile();
+        }
+    }
+
+    /**
+     * 每次写入文件后递增，供查询缓存判断数据是否变化
+     */
+    public long getVersion() {
+        return version.get();
+    }
+}
@@ -0,0 +1,326 @@
+package com.example.monitor.storage;
+
+import com.example.monitor.model.ApiCallLogModel;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * API 调用日志仓储
+ * 调用方通过 publish 把记录放入无锁环形队列后立即返回，队列满时丢弃并计数，从不阻塞被统计的接口；
+ * 后台写入线程批量取出记录，以 JSON Lines 追加到按小时划分的分段文件（api-calls/yyyyMMdd-HH.jsonl），
+ * 历史分段只读不改，超过保留时长的分段在切换小时时删除。查询按时间范围只读取涉及的分段。
+ */
+@Slf4j
+@Repository
+public class ApiCallLogFileRepository {
+
+    private static final DateTimeFormatter SEGMENT_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HH");
+    private static final String SEGMENT_SUFFIX = ".jsonl";
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    /**
+     * 四位年份的分段名才能按字典序比较，查询的结束时间不超过这一时刻
+     */
+    private static final long LATEST_QUERY_MS = Instant.parse("9999-12-30T00:00:00Z").toEpochMilli();
+
+    @Value("${monitor.storage-dir:data}")
+    private String storageDir;
+
+    @Value("${monitor.api-log.buffer-size:65536}")
+    private int bufferSize;
+
+    @Value("${monitor.api-log.batch-size:4096}")
+    private int batchSize;
+
+    @Value("${monitor.api-log.retention-hours:168}")
+    private long retentionHours;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong written = new AtomicLong();
+
+    /**
+     * 不经过 Spring 创建时（单元测试）使用各自独立的注册表
+     */
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final List<Consumer<List<ApiCallLogModel>>> listeners = new CopyOnWriteArrayList<>();
+
+    private File segmentDir;
+    private MpscRingBuffer<ApiCallLogModel> buffer;
+    private Thread writer;
+    private volatile boolean running;
+
+    /**
+     * 以下字段只由写入线程访问
+     */
+    private long openHour = Long.MIN_VALUE;
+    private long latestHour = Long.MIN_VALUE;
+    private JsonGenerator generator;
+
+    @PostConstruct
+    public void init() {
+        segmentDir = new File(storageDir, "api-calls");
+        segmentDir.mkdirs();
+        buffer = new MpscRingBuffer<>(bufferSize);
+        FunctionCounter.builder("monitor.api.calls", published, LongAdder::doubleValue)
+                .tag("result", "published").description("API 调用日志记录数").register(meterRegistry);
+        FunctionCounter.builder("monitor.api.calls", dropped, LongAdder::doubleValue)
+                .tag("result", "dropped").description("API 调用日志记录数").register(meterRegistry);
+        FunctionCounter.builder("monitor.api.calls", written, AtomicLong::doubleValue)
+                .tag("result", "written").description("API 调用日志记录数").register(meterRegistry);
+        Gauge.builder("monitor.api.calls.backlog", this, r -> r.buffer.size())
+                .description("等待写入的 API 调用日志数").register(meterRegistry);
+
+        running = true;
+        writer = new Thread(this::writeLoop, "api-call-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    /**
+     * 记录一次调用；队列已满时丢弃并返回 false。可由任意线程调用，不会阻塞
+     */
+    public boolean publish(ApiCallLogModel call) {
+        if (call.getTimestamp() == null) {
+            call.setTimestamp(System.currentTimeMillis());
+        }
+        if (buffer.offer(call)) {
+            published.increment();
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    /**
+     * 注册批量监听：写入线程每写完一批记录后在本线程内回调，用于在写入路径上维护聚合数据。
+     * 回调返回后这批记录的列表会被复用，监听方不能保留列表本身
+     */
+    public void addListener(Consumer<List<ApiCallLogModel>> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 按时间范围查询，结果按时间倒序，最多 limit 条；尚在队列中未写入的记录不包含在内。
+     * 从现有分段中按文件名挑出范围内的，不按小时逐个探测文件，范围很大（如从 0 开始）时也只访问一次目录
+     */
+    public List<ApiCallLogModel> find(long startMs, long endMs, Predicate<ApiCallLogModel> filter, int limit) {
+        List<ApiCallLogModel> result = new ArrayList<>();
+        if (startMs > endMs) {
+            return result;
+        }
+        String first = segmentName(hourOf(startMs));
+        String last = segmentName(hourOf(Math.min(endMs, LATEST_QUERY_MS)));
+        List<String> segments = listSegments();
+        for (int i = segments.size() - 1; i >= 0 && result.size() < limit; i--) {
+            String name = segments.get(i);
+            // 分段名按时间字典序排列
+            if (name.compareTo(last) > 0) {
+                continue;
+            }
+            if (name.compareTo(first) < 0) {
+                break;
+            }
+            File segment = new File(segmentDir, name);
+            List<ApiCallLogModel> matched = new ArrayList<>();
+            try (BufferedReader reader = Files.newBufferedReader(segment.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    ApiCallLogModel call;
+                    try {
+                        call = objectMapper.readValue(line, ApiCallLogModel.class);
+                    } catch (JsonProcessingException e) {
+                        // 写入线程可能正在追加最后一行，或上次异常退出时留下了半行
+                        continue;
+                    }
+                    long time = call.getTimestamp();
+                    if (time >= startMs && time <= endMs && filter.test(call)) {
+                        matched.add(call);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Failed to read API call log segment {}", segment.getName(), e);
+            }
+            matched.sort((a, b) -> Long.compare(b.getTimestamp(), a.getTimestamp()));
+            result.addAll(matched.subList(0, Math.min(matched.size(), limit - result.size())));
+        }
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("published", published.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("written", written.get());
+        stats.put("backlog", buffer.size());
+        stats.put("capacity", buffer.capacity());
+        stats.put("segments", listSegments().size());
+        return stats;
+    }
+
+    private void writeLoop() {
+        List<ApiCallLogModel> batch = new ArrayList<>(batchSize);
+        while (true) {
+            boolean stopping = !running;
+            int count = buffer.drain(batch, batchSize);
+            if (count == 0) {
+                if (stopping) {
+                    break;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            try {
+                write(batch);
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed to write {} API call logs", count, e);
+                closeSegment();
+            }
+            for (Consumer<List<ApiCallLogModel>> listener : listeners) {
+                try {
+                    listener.accept(batch);
+                } catch (RuntimeException e) {
+                    log.warn("API call log listener failed", e);
+                }
+            }
+            batch.clear();
+        }
+        closeSegment();
+    }
+
+    private void write(List<ApiCallLogModel> batch) throws IOException {
+        // 同一批中跨小时的记录先按小时归组，避免在两个分段之间来回切换
+        Map<Long, List<ApiCallLogModel>> byHour = new TreeMap<>();
+        for (ApiCallLogModel call : batch) {
+            byHour.computeIfAbsent(hourOf(call.getTimestamp()), k -> new ArrayList<>()).add(call);
+        }
+        for (Map.Entry<Long, List<ApiCallLogModel>> entry : byHour.entrySet()) {
+            if (entry.getKey() != openHour) {
+                openSegment(entry.getKey());
+            }
+            for (ApiCallLogModel call : entry.getValue()) {
+                generator.writeObject(call);
+                generator.writeRaw('\n');
+            }
+        }
+        generator.flush();
+        written.addAndGet(batch.size());
+    }
+
+    private void openSegment(long hour) throws IOException {
+        closeSegment();
+        generator = objectMapper.getFactory().createGenerator(
+                new BufferedOutputStream(new FileOutputStream(segmentFile(hour), true), 64 * 1024));
+        // 每条记录自带换行，不需要默认的空格分隔
+        generator.setRootValueSeparator(null);
+        openHour = hour;
+        if (hour > latestHour) {
+            latestHour = hour;
+            deleteExpiredSegments(hour);
+        }
+    }
+
+    private void closeSegment() {
+        if (generator != null) {
+            try {
+                generator.close();
+            } catch (IOException e) {
+                log.warn("Failed to close API call log segment", e);
+            }
+            generator = null;
+            openHour = Long.MIN_VALUE;
+        }
+    }
+
+    private void deleteExpiredSegments(long currentHour) {
+        String oldest = segmentName(currentHour - retentionHours * HOUR_MS);
+        String[] names = segmentDir.list((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            // 分段名按时间字典序排列
+            if (name.compareTo(oldest) < 0 && new File(segmentDir, name).delete()) {
+                log.info("Deleted expired API call log segment {}", name);
+            }
+        }
+    }
+
+    private long hourOf(long timeMs) {
+        return Instant.ofEpochMilli(timeMs).atZone(zone).truncatedTo(ChronoUnit.HOURS).toInstant().toEpochMilli();
+    }
+
+    private File segmentFile(long hour) {
+        return new File(segmentDir, segmentName(hour));
+    }
+
+    private String segmentName(long hour) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(hour), zone).format(SEGMENT_FORMAT) + SEGMENT_SUFFIX;
+    }
+
+    /**
+     * 现有分段的文件名，按时间升序
+     */
+    public List<String> listSegments() {
+        String[] names = segmentDir.list((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, names);
+        Collections.sort(list);
+        return list;
+    }
+}
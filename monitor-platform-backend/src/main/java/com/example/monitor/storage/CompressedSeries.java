@@ -0,0 +1,68 @@
+package com.example.monitor.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一个序列的全部压缩数据块，最后一块可继续追加，写满后封存并开启新块
+ * 非线程安全，由所属仓储的锁保护；{@link #chunks()} 返回的只读列表可以交给其他线程解码。
+ */
+public final class CompressedSeries {
+
+    private final int longColumns;
+    private final int doubleColumns;
+    private final List<TimeSeriesChunk> chunks = new ArrayList<>();
+    private TimeSeriesChunk open;
+    private int rows;
+    private long bytes;
+
+    public CompressedSeries(int longColumns, int doubleColumns) {
+        this.longColumns = longColumns;
+        this.doubleColumns = doubleColumns;
+    }
+
+    public void append(long[] longs, double[] doubles) {
+        openChunk().append(longs, doubles);
+        rows++;
+    }
+
+    public void appendBits(long[] longs, long[] doubleBits) {
+        openChunk().appendBits(longs, doubleBits);
+        rows++;
+    }
+
+    private TimeSeriesChunk openChunk() {
+        if (open == null || open.isFull()) {
+            if (open != null) {
+                open.seal();
+                bytes += open.sizeInBytes();
+            }
+            open = new TimeSeriesChunk(longColumns, doubleColumns);
+            chunks.add(open);
+        }
+        return open;
+    }
+
+    /**
+     * 当前数据的只读视图：已封存的块直接共享，正在写入的块取副本
+     */
+    public List<TimeSeriesChunk> chunks() {
+        List<TimeSeriesChunk> view = new ArrayList<>(chunks);
+        if (open != null && !view.isEmpty()) {
+            view.set(view.size() - 1, open.copy());
+        }
+        return Collections.unmodifiableList(view);
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * 编码后占用的字节数
+     */
+    public long sizeInBytes() {
+        return bytes + (open != null ? open.sizeInBytes() : 0);
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.monitor.storage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 各仓储共用的 ID 序列
+ * 每种实体一个序列，ID 按块预留：id-sequences.json 只记录每个序列已预留到的上界，
+ * 发号本身是一次原子自增，用完一块（默认 10000 个）才加锁写一次文件。文件先写临时文件并刷盘再原子替换，
+ * 重启后从已预留的上界继续发号，上次没用完的部分直接跳过，异常退出也不会发出重复的 ID。
+ * 同一数据目录共用一个实例，仓储在初始化时通过 {@link #forDirectory(String)} 取得。
+ */
+@Slf4j
+public final class IdSequenceService {
+
+    public static final int DEFAULT_BLOCK_SIZE = 10_000;
+
+    private static final String FILE_NAME = "id-sequences.json";
+    private static final ConcurrentHashMap<String, IdSequenceService> INSTANCES = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final int blockSize;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ConcurrentHashMap<String, Sequence> sequences = new ConcurrentHashMap<>();
+    /**
+     * 各序列已落盘的预留上界，只在 synchronized 方法内访问
+     */
+    private final Map<String, Long> reserved = new TreeMap<>();
+
+    public IdSequenceService(File dir, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize 至少为 1");
+        }
+        dir.mkdirs();
+        this.file = new File(dir, FILE_NAME);
+        this.blockSize = blockSize;
+        if (file.exists()) {
+            try {
+                reserved.putAll(objectMapper.readValue(file, new TypeReference<Map<String, Long>>() {}));
+            } catch (IOException e) {
+                // 不能确认哪些 ID 已发出时继续发号可能重复，宁可启动失败
+                throw new UncheckedIOException("Failed to read id sequences from " + file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    /**
+     * 数据目录对应的共享实例
+     */
+    public static IdSequenceService forDirectory(String storageDir) {
+        String key = new File(storageDir).getAbsoluteFile().toPath().normalize().toString();
+        return INSTANCES.computeIfAbsent(key, k -> new IdSequenceService(new File(k), DEFAULT_BLOCK_SIZE));
+    }
+
+    /**
+     * 取得序列；文件中还没有该序列时（首次使用或从旧版本升级），以 existingMax 给出的现有最大 ID 为起点
+     */
+    public Sequence sequence(String name, LongSupplier existingMax) {
+        Sequence sequence = sequences.get(name);
+        if (sequence != null) {
+            return sequence;
+        }
+        synchronized (this) {
+            return sequences.computeIfAbsent(name, k -> {
+                Long limit = reserved.get(k);
+                long next = limit != null ? limit : existingMax.getAsLong() + 1;
+                return new Sequence(k, Math.max(1, next));
+            });
+        }
+    }
+
+    public Sequence sequence(String name) {
+        return sequence(name, () -> 0L);
+    }
+
+    public final class Sequence {
+
+        private final String name;
+        private final AtomicLong next;
+        /**
+         * 小于 limit 的 ID 都已落盘预留，可以直接发出
+         */
+        private volatile long limit;
+
+        private Sequence(String name, long next) {
+            this.name = name;
+            this.next = new AtomicLong(next);
+            this.limit = next;
+        }
+
+        public long next() {
+            long id = next.getAndIncrement();
+            if (id < limit) {
+                return id;
+            }
+            reserve(this, id + 1);
+            return id;
+        }
+
+        /**
+         * 调用方指定了 ID 或从数据文件加载时登记已存在的 ID，之后只发比它大的
+         */
+        public void observe(long id) {
+            next.accumulateAndGet(id + 1, Math::max);
+            if (id >= limit) {
+                reserve(this, id + 1);
+            }
+        }
+
+        /**
+         * 下一个将要发出的 ID
+         */
+        public long peek() {
+            return next.get();
+        }
+
+        public long getLimit() {
+            return limit;
+        }
+    }
+
+    private synchronized void reserve(Sequence sequence, long atLeast) {
+        if (sequence.limit >= atLeast) {
+            return;
+        }
+        long blocks = (atLeast - sequence.limit + blockSize - 1) / blockSize;
+        long limit = sequence.limit + blocks * blockSize;
+        Long previous = reserved.put(sequence.name, limit);
+        try {
+            persist();
+        } catch (IOException e) {
+            if (previous != null) {
+                reserved.put(sequence.name, previous);
+            } else {
+                reserved.remove(sequence.name);
+            }
+            throw new UncheckedIOException("Failed to reserve ids for " + sequence.name, e);
+        }
+        // 先落盘再放开，发出的 ID 一定在已持久化的范围内
+        sequence.limit = limit;
+        log.debug("Reserved ids for {} up to {}", sequence.name, limit);
+    }
+
+    private void persist() throws IOException {
+        Path target = file.toPath();
+        Path temp = target.resolveSibling(FILE_NAME + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+            out.write(objectMapper.writeValueAsBytes(reserved));
+            out.getFD().sync();
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 序列文件被外部替换后（如从主节点复制过来）重新读取：各序列从文件记录的上界继续发号，
+     * 从节点提升为主节点后不会发出原主节点已经发过的 ID
+     */
+    public synchronized void reload() {
+        if (!file.exists()) {
+            return;
+        }
+        Map<String, Long> latest;
+        try {
+            latest = objectMapper.readValue(file, new TypeReference<Map<String, Long>>() {});
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read id sequences from " + file.getAbsolutePath(), e);
+        }
+        latest.forEach((name, limit) -> {
+            reserved.merge(name, limit, Math::max);
+            Sequence sequence = sequences.get(name);
+            if (sequence != null && limit > sequence.limit) {
+                // 先推后发号位置再放开上界，其间的发号会进入 reserve 等待本方法结束
+                sequence.next.accumulateAndGet(limit, Math::max);
+                sequence.limit = limit;
+            }
+        });
+    }
+
+    /**
+     * 所有序列已预留到的上界
+     */
+    public synchronized Map<String, Long> getReserved() {
+        return new TreeMap<>(reserved);
+    }
+}
@@ -3,121 +3,462 @@ package com.example.monitor.storage;
 import com.example.monitor.model.MetricSample;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collectors;
 
+/**
+ * 指标样本仓储
+ * 每个服务的每个指标名为一个序列，样本以 Gorilla 编码的数据块（{@link TimeSeriesChunk}，列为时间戳、ID 和值）保存在内存中，
+ * 数据文件 metrics.tsdb 只追加每批新增的行，文件增长到上次整理后的两倍时用内存中的完整数据块重写。
+ * 启动时发现旧版的 metrics.json 会导入后改名为 metrics.json.migrated。
+ */
+@Slf4j
 @Component
 public class MetricSampleFileRepository {
 
-    private final Path filePath;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String FILE_NAME = "metrics.tsdb";
+    private static final String LEGACY_FILE_NAME = "metrics.json";
+    private static final int TIMESTAMP = 0;
+    private static final int ID = 1;
+
+    private final Path legacyPath;
+    private final TimeSeriesFile file;
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong version = new AtomicLong();
+    private final RepositoryMetrics metrics;
+    /**
+     * (serviceId, 指标名) → 序列，按首次写入的顺序
+     */
+    private final Map<SeriesKey, CompressedSeries> series = new LinkedHashMap<>();
+    private final IdSequenceService.Sequence idSequence;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 写入监听，用于在写入路径上增量维护聚合数据。
+     * 回调都在仓储的锁内执行，reset 给出的全部序列与之后每次 appended 给出的样本之间既不遗漏也不重复；
+     * 回调中不能访问本仓储，也不能等待可能由本仓储的读者持有的锁
+     */
+    public interface Listener {
+        /**
+         * 注册时和数据文件被外部替换后调用
+         */
+        void reset(List<SeriesData> series);
+
+        /**
+         * 每批样本写入后调用
+         */
+        void appended(List<MetricSample> samples);
+    }
+
+    /**
+     * 一个序列的只读视图，数据块可以在锁外解码
+     */
+    @Getter
+    public static final class SeriesData {
+        private final Long serviceId;
+        private final String metricName;
+        private final List<TimeSeriesChunk> chunks;
+
+        SeriesData(Long serviceId, String metricName, List<TimeSeriesChunk> chunks) {
+            this.serviceId = serviceId;
+            this.metricName = metricName;
+            this.chunks = chunks;
+        }
+
+        public int size() {
+            return chunks.stream().mapToInt(TimeSeriesChunk::rows).sum();
+        }
+
+        /**
+         * 时间最新的 limit 个样本，按时间倒序；只解码末尾的数据块
+         */
+        public List<MetricSample> recent(int limit) {
+            return MetricSampleFileRepository.recent(serviceId, metricName, chunks, limit);
+        }
+    }
+
+    /**
+     * 不经过 Spring 创建时（单元测试）使用独立的注册表
+     */
+    public MetricSampleFileRepository(String storageDir) throws IOException {
+        this(storageDir, new SimpleMeterRegistry());
+    }
 
-    public MetricSampleFileRepository(@Value("${monitor.storage-dir:data}") String storageDir) throws IOException {
+    @Autowired
+    public MetricSampleFileRepository(@Value("${monitor.storage-dir:data}") String storageDir, MeterRegistry meterRegistry) throws IOException {
+        this.metrics = RepositoryMetrics.of("metrics", meterRegistry);
         Path dir = Paths.get(storageDir);
         if (!Files.exists(dir)) {
             Files.createDirectories(dir);
         }
-        this.filePath = dir.resolve("metrics.json");
-        if (!Files.exists(this.filePath)) {
-            Files.write(this.filePath, "[]".getBytes(StandardCharsets.UTF_8));
-        }
+        this.file = new TimeSeriesFile(dir.resolve(FILE_NAME), 2, 1);
+        this.legacyPath = dir.resolve(LEGACY_FILE_NAME);
+        loadFromFile(true);
+        metrics.gaugeFileSize(file.getPath(), p -> p.toFile().length());
+        metrics.gaugeSize(this, MetricSampleFileRepository::rows);
+        metrics.gaugeMemory(this, MetricSampleFileRepository::memoryBytes);
+        this.idSequence = IdSequenceService.forDirectory(storageDir).sequence("metrics", this::maxId);
     }
 
     public MetricSample save(MetricSample sample) {
+        List<MetricSample> one = new ArrayList<>(1);
+        one.add(sample);
+        saveAll(one);
+        return sample;
+    }
+
+    /**
+     * 批量保存，整批只追加一次文件
+     */
+    public List<MetricSample> saveAll(List<MetricSample> samples) {
+        if (samples.isEmpty()) {
+            return samples;
+        }
         lock.writeLock().lock();
         try {
-            List<MetricSample> all = readAllInternal();
-            if (sample.getId() == null) {
-                long nextId = all.stream()
-                        .map(MetricSample::getId)
-                        .filter(id -> id != null)
-                        .max(Comparator.naturalOrder())
-                        .orElse(0L) + 1;
-                sample.setId(nextId);
+            long start = metrics.start();
+            Map<SeriesKey, CompressedSeries> added = new LinkedHashMap<>();
+            for (MetricSample sample : samples) {
+                if (sample.getId() == null) {
+                    sample.setId(idSequence.next());
+                }
+                if (sample.getTimestamp() == null) {
+                    sample.setTimestamp(new Date());
+                }
+                added.computeIfAbsent(new SeriesKey(sample.getServiceId(), sample.getMetricName()), k -> new CompressedSeries(2, 1))
+                        .append(new long[]{sample.getTimestamp().getTime(), sample.getId()}, new double[]{sample.getValue()});
             }
-            all.add(sample);
-            writeAllInternal(all);
-            return sample;
+            List<TimeSeriesFile.Record> records = new ArrayList<>();
+            added.forEach((key, batch) -> batch.chunks().forEach(chunk ->
+                    records.add(new TimeSeriesFile.Record(key.serviceId, key.metricName, chunk))));
+            long before = file.length();
+            file.append(records);
+            // 写入文件成功后才加入内存，写入失败时内存与文件保持一致
+            added.forEach((key, batch) -> append(key, batch.chunks()));
+            version.incrementAndGet();
+            if (file.needsCompaction()) {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    log.warn("Failed to compact {}", file.getPath(), e);
+                }
+            }
+            metrics.recordWrite(start, Math.max(0, file.length() - before), samples.size());
+            notifyAppended(samples);
+            return samples;
         } catch (IOException e) {
-            throw new RuntimeException("Failed to save metric sample", e);
+            throw new RuntimeException("Failed to save metric samples", e);
         } finally {
             lock.writeLock().unlock();
         }
     }
 
-    public List<MetricSample> findRecentByServiceAndMetric(Long serviceId, String metricName, int limit) {
+    private void notifyAppended(List<MetricSample> samples) {
+        for (Listener listener : listeners) {
+            try {
+                listener.appended(samples);
+            } catch (RuntimeException e) {
+                log.warn("Metric sample listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * 把数据块中的行重新编码追加到序列末尾
+     */
+    private void append(SeriesKey key, List<TimeSeriesChunk> chunks) {
+        CompressedSeries data = series.computeIfAbsent(key, k -> new CompressedSeries(2, 1));
+        for (TimeSeriesChunk chunk : chunks) {
+            TimeSeriesChunk.Cursor cursor = chunk.cursor();
+            while (cursor.next()) {
+                data.append(new long[]{cursor.getLong(TIMESTAMP), cursor.getLong(ID)}, new double[]{cursor.getDouble(0)});
+            }
+        }
+    }
+
+    /**
+     * 全部序列的只读视图，查询快照直接在数据块上解码
+     */
+    public List<SeriesData> findAllSeries() {
         lock.readLock().lock();
         try {
-            List<MetricSample> all = readAllInternal();
-            return all.stream()
-                    .filter(s -> s.getServiceId().equals(serviceId)
-                            && metricName.equals(s.getMetricName()))
-                    .sorted(Comparator.comparing(MetricSample::getTimestamp).reversed())
-                    .limit(limit)
-                    .sorted(Comparator.comparing(MetricSample::getTimestamp))
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to read metric samples", e);
+            List<SeriesData> result = new ArrayList<>(series.size());
+            series.forEach((key, data) -> result.add(new SeriesData(key.serviceId, key.metricName, data.chunks())));
+            return result;
         } finally {
             lock.readLock().unlock();
         }
     }
 
-    public List<MetricSample> findAll() {
+    public List<MetricSample> findRecentByServiceAndMetric(Long serviceId, String metricName, int limit) {
         lock.readLock().lock();
+        List<TimeSeriesChunk> chunks;
         try {
-            return new ArrayList<>(readAllInternal());
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to read metric samples", e);
+            CompressedSeries data = series.get(new SeriesKey(serviceId, metricName));
+            if (data == null) {
+                return new ArrayList<>();
+            }
+            chunks = data.chunks();
         } finally {
             lock.readLock().unlock();
         }
+        List<MetricSample> recent = recent(serviceId, metricName, chunks, limit);
+        recent.sort(Comparator.comparing(MetricSample::getTimestamp));
+        return recent;
+    }
+
+    public List<MetricSample> findAll() {
+        List<MetricSample> all = new ArrayList<>();
+        for (SeriesData data : findAllSeries()) {
+            for (TimeSeriesChunk chunk : data.chunks) {
+                decode(data.serviceId, data.metricName, chunk, all);
+            }
+        }
+        return all;
     }
 
     public List<MetricSample> findRecentByServiceId(Long serviceId, int limit) {
+        List<MetricSample> recent = new ArrayList<>();
+        for (SeriesData data : findAllSeries()) {
+            if (Objects.equals(data.serviceId, serviceId)) {
+                recent.addAll(recent(serviceId, data.metricName, data.chunks, limit));
+            }
+        }
+        recent.sort(Comparator.comparing(MetricSample::getTimestamp).reversed());
+        List<MetricSample> result = new ArrayList<>(recent.subList(0, Math.min(limit, recent.size())));
+        result.sort(Comparator.comparing(MetricSample::getTimestamp));
+        return result;
+    }
+
+    /**
+     * 一个序列中时间最新的 limit 个样本：从最后一块往前解码，更早的块中不可能有更新的样本时停止
+     */
+    private static List<MetricSample> recent(Long serviceId, String metricName, List<TimeSeriesChunk> chunks, int limit) {
+        List<MetricSample> collected = new ArrayList<>();
+        long oldest = Long.MAX_VALUE;
+        for (int i = chunks.size() - 1; i >= 0; i--) {
+            TimeSeriesChunk chunk = chunks.get(i);
+            if (collected.size() >= limit && chunk.maxTime() < oldest) {
+                break;
+            }
+            decode(serviceId, metricName, chunk, collected);
+            oldest = Math.min(oldest, chunk.minTime());
+        }
+        collected.sort(Comparator.comparing(MetricSample::getTimestamp).reversed());
+        return new ArrayList<>(collected.subList(0, Math.min(limit, collected.size())));
+    }
+
+    private static void decode(Long serviceId, String metricName, TimeSeriesChunk chunk, List<MetricSample> out) {
+        TimeSeriesChunk.Cursor cursor = chunk.cursor();
+        while (cursor.next()) {
+            MetricSample sample = new MetricSample();
+            sample.setId(cursor.getLong(ID));
+            sample.setServiceId(serviceId);
+            sample.setMetricName(metricName);
+            sample.setTimestamp(new Date(cursor.getLong(TIMESTAMP)));
+            sample.setValue(cursor.getDouble(0));
+            out.add(sample);
+        }
+    }
+
+    /**
+     * 数据文件中现有的最大 ID，只在 ID 序列首次建立时读取一次
+     */
+    private long maxId() {
+        long max = 0;
+        for (CompressedSeries data : series.values()) {
+            for (TimeSeriesChunk chunk : data.chunks()) {
+                TimeSeriesChunk.Cursor cursor = chunk.cursor();
+                while (cursor.next()) {
+                    max = Math.max(max, cursor.getLong(ID));
+                }
+            }
+        }
+        return max;
+    }
+
+    private long rows() {
         lock.readLock().lock();
         try {
-            List<MetricSample> all = readAllInternal();
-            return all.stream()
-                    .filter(s -> s.getServiceId().equals(serviceId))
-                    .sorted(Comparator.comparing(MetricSample::getTimestamp).reversed())
-                    .limit(limit)
-                    .sorted(Comparator.comparing(MetricSample::getTimestamp))
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to read metric samples", e);
+            return series.values().stream().mapToLong(CompressedSeries::rows).sum();
         } finally {
             lock.readLock().unlock();
         }
     }
 
-    private List<MetricSample> readAllInternal() throws IOException {
-        if (!Files.exists(filePath)) {
-            return new ArrayList<>();
+    /**
+     * 编码后的数据块在内存中占用的字节数
+     */
+    private long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            return series.values().stream().mapToLong(CompressedSeries::sizeInBytes).sum();
+        } finally {
+            lock.readLock().unlock();
         }
-        String json = new String(Files.readAllBytes(filePath), StandardCharsets.UTF_8);
-        if (json.trim().isEmpty())  {
-            return new ArrayList<>();
+    }
+
+    /**
+     * @param writable 启动时可以迁移旧文件、整理数据文件；复制过来的文件只读取
+     */
+    private void loadFromFile(boolean writable) throws IOException {
+        lock.writeLock().lock();
+        try {
+            long start = metrics.start();
+            series.clear();
+            // 追加时每批一个小数据块，读入后重新编码成完整的块
+            file.load((serviceId, metricName, chunk) -> append(new SeriesKey(serviceId, metricName), Collections.singletonList(chunk)));
+            if (writable && !file.exists() && Files.exists(legacyPath)) {
+                migrateLegacyFile();
+            } else if (writable && file.needsCompaction()) {
+                compact();
+            }
+            int rows = series.values().stream().mapToInt(CompressedSeries::rows).sum();
+            metrics.recordRead(start, file.length(), rows);
+        } finally {
+            lock.writeLock().unlock();
         }
-        return objectMapper.readValue(json, new TypeReference<List<MetricSample>>() {
+    }
+
+    private void migrateLegacyFile() throws IOException {
+        List<MetricSample> legacy = new ObjectMapper().readValue(legacyPath.toFile(), new TypeReference<List<MetricSample>>() {
         });
+        legacy.sort(Comparator.comparing(MetricSample::getTimestamp, Comparator.nullsFirst(Comparator.naturalOrder())));
+        for (MetricSample sample : legacy) {
+            if (sample.getId() == null || sample.getTimestamp() == null) {
+                continue;
+            }
+            series.computeIfAbsent(new SeriesKey(sample.getServiceId(), sample.getMetricName()), k -> new CompressedSeries(2, 1))
+                    .append(new long[]{sample.getTimestamp().getTime(), sample.getId()}, new double[]{sample.getValue()});
+        }
+        compact();
+        Files.move(legacyPath, legacyPath.resolveSibling(LEGACY_FILE_NAME + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+        log.info("Migrated {} metric samples from {} to {}", legacy.size(), legacyPath, file.getPath());
     }
 
-    private void writeAllInternal(List<MetricSample> samples) throws IOException {
-        String json = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(samples);
-        Files.write(filePath, json.getBytes(StandardCharsets.UTF_8));
+    /**
+     * 用内存中的完整数据块重写数据文件
+     */
+    private void compact() throws IOException {
+        List<TimeSeriesFile.Record> records = new ArrayList<>();
+        series.forEach((key, data) -> data.chunks().forEach(chunk ->
+                records.add(new TimeSeriesFile.Record(key.serviceId, key.metricName, chunk))));
+        file.rewrite(records);
     }
-}
 
+    /**
+     * 注册写入监听，注册时先在读锁内收到一次全部序列
+     */
+    public void addListener(Listener listener) {
+        lock.readLock().lock();
+        try {
+            listener.reset(findAllSeries());
+            listeners.add(listener);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 数据文件被外部替换后（如从主节点复制过来）重新加载
+     */
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            loadFromFile(false);
+            version.incrementAndGet();
+            List<SeriesData> all = findAllSeries();
+            listeners.forEach(listener -> listener.reset(all));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to reload metric samples", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 数据文件末尾被外部追加后（如从主节点复制过来）只读入新增的记录，监听按普通写入收到这些样本；
+     * 文件被整体替换时重新加载
+     */
+    public void loadAppended() {
+        lock.writeLock().lock();
+        try {
+            long start = metrics.start();
+            long before = file.length();
+            List<MetricSample> samples = new ArrayList<>();
+            boolean appended = file.loadAppended((serviceId, metricName, chunk) -> {
+                append(new SeriesKey(serviceId, metricName), Collections.singletonList(chunk));
+                decode(serviceId, metricName, chunk, samples);
+            });
+            if (!appended) {
+                reload();
+                return;
+            }
+            if (samples.isEmpty()) {
+                return;
+            }
+            metrics.recordRead(start, file.length() - before, samples.size());
+            version.incrementAndGet();
+            notifyAppended(samples);
+        } catch (IOException e) {
+            log.warn("Failed to read appended metric samples from {}, reloading", file.getPath(), e);
+            reload();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 每次写入后递增，供查询缓存判断数据是否变化
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    private static final class SeriesKey {
+        final Long serviceId;
+        final String metricName;
+
+        SeriesKey(Long serviceId, String metricName) {
+            this.serviceId = serviceId;
+            this.metricName = metricName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SeriesKey)) {
+                return false;
+            }
+            SeriesKey other = (SeriesKey) o;
+            return Objects.equals(serviceId, other.serviceId) && Objects.equals(metricName, other.metricName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(serviceId, metricName);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.example.monitor.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+/**
+ * 堆外的定长记录存储，用于数量大的数值型采样（服务器资源、进程资源）
+ * 每行由若干 8 字节的列组成，写入按段分配的直接内存（{@link ByteBuffer#allocateDirect}），Java 堆上只有每个归属对象
+ * （服务器、进程）的一个小对象，保留几百万行也不增加堆大小和 GC 停顿。前三列固定为 ID、归属 ID 和毫秒时间戳，
+ * double 列保存位模式，空值用 {@link TimeSeriesChunk#NULL_BITS} 和 {@link #NULL} 表示。
+ * 每行末尾另有一列指向同一归属的上一行，按归属查询沿这条链从新到旧访问，不需要堆上的索引。
+ * 写入顺序与时间戳不一致时（补写的历史数据），查询最新数据用容量为 limit 的小顶堆，并按每段的最大时间戳提前结束，
+ * 不为每一行分配对象；乱序的行随段淘汰后恢复按写入顺序直接取。
+ * 行数超过上限时整段淘汰最早的数据，淘汰的段留作下一段复用。
+ * 读取通过 {@link Row} 享元在锁内访问，调用方只为返回的结果创建对象。
+ */
+final class OffHeapRecordStore {
+
+    static final int ID = 0;
+    static final int OWNER = 1;
+    static final int TIME = 2;
+
+    /**
+     * long 列的空值
+     */
+    static final long NULL = Long.MIN_VALUE;
+
+    private static final int DEFAULT_SEGMENT_ROWS = 16384;
+
+    private final int columns;
+    private final int recordBytes;
+    private final int segmentRows;
+    private final int maxSegments;
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    /**
+     * 与 segments 一一对应的段内最大时间戳
+     */
+    private final long[] segmentMaxTime;
+    private final Deque<ByteBuffer> spare = new ArrayDeque<>();
+    private final Map<Long, Owner> owners = new HashMap<>();
+    /**
+     * 仍保留的第一行和下一行的全局行号，行号只增不减
+     */
+    private long firstRow;
+    private long nextRow;
+    private long lastTime = Long.MIN_VALUE;
+    /**
+     * 最近一次时间戳比上一行早的行号；早于 firstRow 时保留的行按写入顺序时间戳不减，查询最新数据可以直接从末尾取
+     */
+    private long lastDisorderRow = -1;
+
+    /**
+     * 归属对象的链头
+     */
+    private static final class Owner {
+        long lastRow;
+        long lastId = Long.MIN_VALUE;
+        long lastTime = Long.MIN_VALUE;
+        boolean idOrdered = true;
+        /**
+         * 链上最近一次时间戳比上一行早的行号，含义同 {@link #lastDisorderRow}
+         */
+        long lastDisorderRow = -1;
+        /**
+         * 时间最新的一行，时间相同时取后写入的
+         */
+        long latestRow;
+        long latestTime = Long.MIN_VALUE;
+    }
+
+    OffHeapRecordStore(int columns, int maxRows) {
+        this(columns, DEFAULT_SEGMENT_ROWS, maxRows);
+    }
+
+    OffHeapRecordStore(int columns, int segmentRows, int maxRows) {
+        if (columns < 3 || segmentRows < 1 || maxRows < 1) {
+            throw new IllegalArgumentException("列数、段大小和行数上限不合法");
+        }
+        this.columns = columns;
+        this.recordBytes = (columns + 1) * 8;
+        this.segmentRows = segmentRows;
+        this.maxSegments = (maxRows + segmentRows - 1) / segmentRows + 1;
+        this.segmentMaxTime = new long[maxSegments];
+    }
+
+    /**
+     * 追加一行，超过上限时先淘汰最早的一段
+     */
+    synchronized void append(long[] values) {
+        if (values.length != columns) {
+            throw new IllegalArgumentException("列数不匹配");
+        }
+        int index = (int) ((nextRow - firstRow) / segmentRows);
+        if (index == segments.size()) {
+            if (segments.size() == maxSegments) {
+                evictOldestSegment();
+                index--;
+            }
+            segments.add(spare.isEmpty()
+                    ? ByteBuffer.allocateDirect(segmentRows * recordBytes).order(ByteOrder.nativeOrder())
+                    : spare.pop());
+            segmentMaxTime[index] = Long.MIN_VALUE;
+        }
+        ByteBuffer segment = segments.get(index);
+        int offset = (int) ((nextRow - firstRow) % segmentRows) * recordBytes;
+        for (int c = 0; c < columns; c++) {
+            segment.putLong(offset + c * 8, values[c]);
+        }
+        long time = values[TIME];
+        segmentMaxTime[index] = Math.max(segmentMaxTime[index], time);
+        long prev = -1;
+        long owner = values[OWNER];
+        if (owner != NULL) {
+            Owner state = owners.computeIfAbsent(owner, k -> new Owner());
+            if (state.lastId != Long.MIN_VALUE) {
+                prev = state.lastRow;
+                state.idOrdered &= values[ID] > state.lastId;
+                if (time < state.lastTime) {
+                    state.lastDisorderRow = nextRow;
+                }
+            }
+            state.lastRow = nextRow;
+            state.lastId = values[ID];
+            state.lastTime = time;
+            if (time >= state.latestTime) {
+                state.latestRow = nextRow;
+                state.latestTime = time;
+            }
+        }
+        segment.putLong(offset + columns * 8, prev);
+        if (time < lastTime) {
+            lastDisorderRow = nextRow;
+        }
+        lastTime = time;
+        nextRow++;
+    }
+
+    private void evictOldestSegment() {
+        spare.push(segments.remove(0));
+        System.arraycopy(segmentMaxTime, 1, segmentMaxTime, 0, segments.size());
+        firstRow += segmentRows;
+        owners.values().removeIf(state -> state.lastRow < firstRow);
+        for (Owner state : owners.values()) {
+            if (state.latestRow < firstRow) {
+                // 时间最新的一行被淘汰，而之后写入的行时间都更早，只在这种情况下沿链重新查找
+                findLatest(state);
+            }
+        }
+    }
+
+    private void findLatest(Owner state) {
+        Row row = new Row();
+        state.latestTime = Long.MIN_VALUE;
+        for (long r = state.lastRow; r >= firstRow; r = row.prev()) {
+            if (row.at(r).getLong(TIME) > state.latestTime) {
+                state.latestTime = row.getLong(TIME);
+                state.latestRow = r;
+            }
+        }
+    }
+
+    /**
+     * 清空数据，已分配的段保留复用
+     */
+    synchronized void clear() {
+        spare.addAll(segments);
+        segments.clear();
+        owners.clear();
+        firstRow = nextRow;
+        lastTime = Long.MIN_VALUE;
+    }
+
+    synchronized int size() {
+        return (int) (nextRow - firstRow);
+    }
+
+    /**
+     * 已分配的直接内存字节数
+     */
+    synchronized long memoryBytes() {
+        return (long) (segments.size() + spare.size()) * segmentRows * recordBytes;
+    }
+
+    /**
+     * 按写入顺序（从旧到新）访问全部行
+     */
+    synchronized void forEach(Consumer<Row> consumer) {
+        Row row = new Row();
+        for (long r = firstRow; r < nextRow; r++) {
+            consumer.accept(row.at(r));
+        }
+    }
+
+    /**
+     * 某个归属最新的 limit 行，按时间倒序；scanned 收到实际访问的行数
+     */
+    synchronized <T> List<T> newestByOwner(long owner, int limit, Function<Row, T> mapper, IntConsumer scanned) {
+        Owner state = owners.get(owner);
+        if (state == null || limit <= 0) {
+            return new ArrayList<>();
+        }
+        Row row = new Row();
+        int visited = 0;
+        if (state.lastDisorderRow < firstRow) {
+            List<T> result = new ArrayList<>(Math.min(limit, 1024));
+            for (long r = state.lastRow; r >= firstRow && result.size() < limit; r = row.prev()) {
+                result.add(mapper.apply(row.at(r)));
+                visited++;
+            }
+            scanned.accept(visited);
+            return result;
+        }
+        long[] maxTimeUpTo = maxTimeUpTo();
+        NewestRows newest = new NewestRows(limit);
+        for (long r = state.lastRow; r >= firstRow; r = row.prev()) {
+            if (newest.isFull() && maxTimeUpTo[segmentOf(r)] <= newest.oldestTime()) {
+                break;
+            }
+            newest.offer(r, row.at(r).getLong(TIME));
+            visited++;
+        }
+        scanned.accept(visited);
+        return newest.map(mapper);
+    }
+
+    /**
+     * 全部归属中最新的 limit 行，按时间倒序；scanned 收到实际访问的行数
+     */
+    synchronized <T> List<T> newest(int limit, Function<Row, T> mapper, IntConsumer scanned) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        Row row = new Row();
+        int visited = 0;
+        if (lastDisorderRow < firstRow) {
+            List<T> result = new ArrayList<>(Math.min(limit, 1024));
+            for (long r = nextRow - 1; r >= firstRow && result.size() < limit; r--) {
+                result.add(mapper.apply(row.at(r)));
+                visited++;
+            }
+            scanned.accept(visited);
+            return result;
+        }
+        long[] maxTimeUpTo = maxTimeUpTo();
+        NewestRows newest = new NewestRows(limit);
+        for (long r = nextRow - 1; r >= firstRow; r--) {
+            if (newest.isFull() && maxTimeUpTo[segmentOf(r)] <= newest.oldestTime()) {
+                break;
+            }
+            newest.offer(r, row.at(r).getLong(TIME));
+            visited++;
+        }
+        scanned.accept(visited);
+        return newest.map(mapper);
+    }
+
+    private int segmentOf(long row) {
+        return (int) ((row - firstRow) / segmentRows);
+    }
+
+    /**
+     * 第 0 段到第 i 段的最大时间戳：更早写入的行都不会比它新，候选已满且不比堆顶新时可以停止
+     */
+    private long[] maxTimeUpTo() {
+        long[] result = new long[segments.size()];
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < result.length; i++) {
+            max = Math.max(max, segmentMaxTime[i]);
+            result[i] = max;
+        }
+        return result;
+    }
+
+    /**
+     * 写入顺序与时间戳不一致时的最新 limit 行：按 (时间, 行号) 的小顶堆，最多保留 limit 个候选，
+     * 堆顶为候选中最旧的一行，相同时间戳的后写入的更新
+     */
+    private final class NewestRows {
+        private final int limit;
+        private final PriorityQueue<long[]> heap;
+
+        NewestRows(int limit) {
+            this.limit = limit;
+            this.heap = new PriorityQueue<>(Math.min(limit, 1024),
+                    Comparator.comparingLong((long[] r) -> r[1]).thenComparingLong(r -> r[0]));
+        }
+
+        boolean isFull() {
+            return heap.size() >= limit;
+        }
+
+        long oldestTime() {
+            return heap.peek()[1];
+        }
+
+        /**
+         * 按行号从大到小调用，相同时间戳的行不会替换已在堆中的行
+         */
+        void offer(long row, long time) {
+            if (!isFull()) {
+                heap.add(new long[]{row, time});
+            } else if (time > oldestTime()) {
+                long[] oldest = heap.poll();
+                oldest[0] = row;
+                oldest[1] = time;
+                heap.add(oldest);
+            }
+        }
+
+        <T> List<T> map(Function<Row, T> mapper) {
+            List<long[]> rows = new ArrayList<>(heap);
+            rows.sort(heap.comparator().reversed());
+            Row row = new Row();
+            List<T> result = new ArrayList<>(rows.size());
+            for (long[] r : rows) {
+                result.add(mapper.apply(row.at(r[0])));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 某个归属中 ID 大于 afterId 的行，按 ID 升序
+     */
+    synchronized <T> List<T> afterId(long owner, long afterId, Function<Row, T> mapper) {
+        Owner state = owners.get(owner);
+        List<T> result = new ArrayList<>();
+        if (state == null) {
+            return result;
+        }
+        Row row = new Row();
+        List<long[]> rows = new ArrayList<>();
+        for (long r = state.lastRow; r >= firstRow; r = row.prev()) {
+            long id = row.at(r).getLong(ID);
+            if (id > afterId) {
+                rows.add(new long[]{r, id});
+            } else if (state.idOrdered) {
+                break;
+            }
+        }
+        if (!state.idOrdered) {
+            rows.sort(Comparator.comparingLong((long[] r) -> r[1]).reversed());
+        }
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            result.add(mapper.apply(row.at(rows.get(i)[0])));
+        }
+        return result;
+    }
+
+    /**
+     * 每个归属时间最新的一行，直接取归属上记录的位置
+     */
+    synchronized <T> Map<Long, T> latestByOwner(Function<Row, T> mapper) {
+        Map<Long, T> result = new LinkedHashMap<>();
+        Row row = new Row();
+        owners.forEach((owner, state) -> result.put(owner, mapper.apply(row.at(state.latestRow))));
+        return result;
+    }
+
+    /**
+     * 定位到某一行的享元，只在存储的锁内（查询的回调中）有效
+     */
+    final class Row {
+
+        private ByteBuffer segment;
+        private int offset;
+
+        private Row() {
+        }
+
+        private Row at(long row) {
+            long index = row - firstRow;
+            segment = segments.get((int) (index / segmentRows));
+            offset = (int) (index % segmentRows) * recordBytes;
+            return this;
+        }
+
+        private long prev() {
+            return segment.getLong(offset + columns * 8);
+        }
+
+        long getLong(int column) {
+            return segment.getLong(offset + column * 8);
+        }
+
+        Long getNullableLong(int column) {
+            long value = getLong(column);
+            return value == NULL ? null : value;
+        }
+
+        Integer getNullableInt(int column) {
+            long value = getLong(column);
+            return value == NULL ? null : (int) value;
+        }
+
+        Double getNullableDouble(int column) {
+            return TimeSeriesChunk.valueOf(getLong(column));
+        }
+    }
+}
@@ -3,7 +3,10 @@ package com.example.monitor.storage;
 import com.example.monitor.model.ProcessInfo;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
@@ -12,7 +15,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
@@ -26,16 +31,33 @@ public class ProcessInfoFileRepository {
 
     private File dataFile;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final AtomicLong idGenerator = new AtomicLong(1);
+    private IdSequenceService.Sequence idSequence;
     private final ConcurrentHashMap<Long, ProcessInfo> storage = new ConcurrentHashMap<>();
+    /**
+     * 不经过 Spring 创建时（单元测试）使用各自独立的注册表
+     */
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RepositoryMetrics metrics;
 
     @PostConstruct
     public void init() {
+        metrics = RepositoryMetrics.of("processes", meterRegistry);
         File dir = new File(storageDir);
         if (!dir.exists()) {
             dir.mkdirs();
         }
         dataFile = new File(dir, "processes.json");
+        idSequence = IdSequenceService.forDirectory(storageDir).sequence("processes");
+        loadFromFile();
+        metrics.gaugeSize(storage, Map::size);
+        metrics.gaugeFileSize(this, r -> r.dataFile.length());
+    }
+
+    /**
+     * 数据文件被外部替换后（如从主节点复制过来）重新加载
+     */
+    public void reload() {
         loadFromFile();
     }
 
@@ -44,6 +66,7 @@ public class ProcessInfoFileRepository {
             storage.clear();
             return;
         }
+        long start = metrics.start();
         try {
             List<ProcessInfo> list = objectMapper.readValue(
                 dataFile,
@@ -51,13 +74,10 @@ public class ProcessInfoFileRepository {
             );
             storage.clear();
             if (list != null) {
-                list.forEach(item -> {
-                    storage.put(item.getId(), item);
-                    if (item.getId() >= idGenerator.get()) {
-                        idGenerator.set(item.getId() + 1);
-                    }
-                });
+                list.forEach(item -> storage.put(item.getId(), item));
             }
+            storage.keySet().stream().mapToLong(Long::longValue).max().ifPresent(idSequence::observe);
+            metrics.recordRead(start, dataFile.length(), storage.size());
             log.info("Loaded {} process infos from {}", storage.size(), dataFile.getAbsolutePath());
         } catch (IOException e) {
             log.error("Failed to load process infos from file", e);
@@ -65,8 +85,11 @@ public class ProcessInfoFileRepository {
     }
 
     private synchronized void saveToFile() {
+        long start = metrics.start();
         try {
-            objectMapper.writeValue(dataFile, new ArrayList<>(storage.values()));
+            List<ProcessInfo> list = new ArrayList<>(storage.values());
+            StorageFiles.replace(dataFile.toPath(), objectMapper.writeValueAsBytes(list));
+            metrics.recordWrite(start, dataFile.length(), list.size());
         } catch (IOException e) {
             log.error("Failed to save process infos to file", e);
         }
@@ -74,7 +97,7 @@ public class ProcessInfoFileRepository {
 
     public ProcessInfo save(ProcessInfo processInfo) {
         if (processInfo.getId() == null) {
-            processInfo.setId(idGenerator.getAndIncrement());
+            processInfo.setId(idSequence.next());
             processInfo.setCreatedAt(new Date());
         }
         processInfo.setUpdatedAt(new Date());
@@ -83,13 +106,30 @@ public class ProcessInfoFileRepository {
         return processInfo;
     }
 
+    /**
+     * 批量保存，整批只写一次文件
+     */
+    public List<ProcessInfo> saveAll(List<ProcessInfo> processInfos) {
+        Date now = new Date();
+        for (ProcessInfo processInfo : processInfos) {
+            if (processInfo.getId() == null) {
+                processInfo.setId(idSequence.next());
+                processInfo.setCreatedAt(now);
+            }
+            processInfo.setUpdatedAt(now);
+            storage.put(processInfo.getId(), processInfo);
+        }
+        saveToFile();
+        return processInfos;
+    }
+
     public ProcessInfo findById(Long id) {
         return storage.get(id);
     }
 
     public List<ProcessInfo> findAll() {
         // 按自定义顺序排序：Java应用服务、MySQL、Nginx排在前面，其他按ID排序
-        return storage.values().stream()
+        return metrics.scan(storage.size(), () -> storage.values().stream()
             .sorted((p1, p2) -> {
                 int order1 = getProcessOrder(p1.getName());
                 int order2 = getProcessOrder(p2.getName());
@@ -99,7 +139,7 @@ public class ProcessInfoFileRepository {
                 // 相同优先级按ID排序
                 return Long.compare(p1.getId(), p2.getId());
             })
-            .collect(Collectors.toList());
+            .collect(Collectors.toList()));
     }
 
     private int getProcessOrder(String name) {
@@ -113,7 +153,7 @@ public class ProcessInfoFileRepository {
     }
 
     public List<ProcessInfo> findByServerId(Long serverId) {
-        return storage.values().stream()
+        return metrics.scan(storage.size(), () -> storage.values().stream()
             .filter(p -> serverId == null || serverId.equals(p.getServerId()))
             .sorted((p1, p2) -> {
                 int order1 = getProcessOrder(p1.getName());
@@ -123,11 +163,11 @@ public class ProcessInfoFileRepository {
                 }
                 return Long.compare(p1.getId(), p2.getId());
             })
-            .collect(Collectors.toList());
+            .collect(Collectors.toList()));
     }
 
     public List<ProcessInfo> findByStatus(String status) {
-        return storage.values().stream()
+        return metrics.scan(storage.size(), () -> storage.values().stream()
             .filter(p -> status == null || status.equals(p.getStatus()))
             .sorted((p1, p2) -> {
                 int order1 = getProcessOrder(p1.getName());
@@ -137,11 +177,11 @@ public class ProcessInfoFileRepository {
                 }
                 return Long.compare(p1.getId(), p2.getId());
             })
-            .collect(Collectors.toList());
+            .collect(Collectors.toList()));
     }
 
     public List<ProcessInfo> findByType(String type) {
-        return storage.values().stream()
+        return metrics.scan(storage.size(), () -> storage.values().stream()
             .filter(p -> type == null || type.equals(p.getType()))
             .sorted((p1, p2) -> {
                 int order1 = getProcessOrder(p1.getName());
@@ -151,7 +191,25 @@ public class ProcessInfoFileRepository {
                 }
                 return Long.compare(p1.getId(), p2.getId());
             })
-            .collect(Collectors.toList());
+            .collect(Collectors.toList()));
+    }
+
+    /**
+     * 用另一份完整的列表替换本地数据（集群模式下从元数据节点同步），内容相同时不写文件
+     *
+     * @return 是否有变化
+     */
+    public synchronized boolean replaceAll(List<ProcessInfo> processes) {
+        Map<Long, ProcessInfo> incoming = new HashMap<>();
+        processes.forEach(item -> incoming.put(item.getId(), item));
+        if (incoming.equals(storage)) {
+            return false;
+        }
+        storage.keySet().retainAll(incoming.keySet());
+        storage.putAll(incoming);
+        incoming.keySet().stream().mapToLong(Long::longValue).max().ifPresent(idSequence::observe);
+        saveToFile();
+        return true;
     }
 
     public void deleteById(Long id) {
@@ -161,7 +219,6 @@ public class ProcessInfoFileRepository {
 
     public void clear() {
         storage.clear();
-        idGenerator.set(1);
         saveToFile();
     }
 }
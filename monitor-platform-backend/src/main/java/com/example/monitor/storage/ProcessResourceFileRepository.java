@@ -3,20 +3,35 @@ package com.example.monitor.storage;
 import com.example.monitor.model.ProcessResource;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import javax.annotation.PostConstruct;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+import java.util.Map;
 
+/**
+ * 进程资源仓储
+ * 内存中的记录保存在堆外的定长记录存储（{@link OffHeapRecordStore}）中，最多保留 max-rows 行，查询只为返回的结果创建对象；
+ * 进程状态只有少数几种取值，按字典编号存放。
+ * 数据文件 process-resources.tsdb 按（进程、状态）分组保存 Gorilla 编码的数据块，每批保存只追加新增的行，
+ * 文件增长到上次整理后的两倍时用内存中保留的记录重写。
+ * 启动时发现旧版的 process-resources.json 会导入后改名为 process-resources.json.migrated。
+ */
 @Slf4j
 @Repository
 public class ProcessResourceFileRepository {
@@ -24,108 +39,344 @@ public class ProcessResourceFileRepository {
     @Value("${monitor.storage-dir:data}")
     private String storageDir;
 
+    /**
+     * 内存和数据文件中保留的最多行数，超过后按段淘汰最早的记录
+     */
+    @Value("${monitor.resource-store.max-rows:1000000}")
+    private int maxRows = 1_000_000;
+
     private File dataFile;
+    private File legacyFile;
+    private TimeSeriesFile timeSeriesFile;
+    private OffHeapRecordStore store;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final AtomicLong idGenerator = new AtomicLong(1);
-    private final ConcurrentHashMap<Long, ProcessResource> storage = new ConcurrentHashMap<>();
+    private IdSequenceService.Sequence idSequence;
+    /**
+     * 不经过 Spring 创建时（单元测试）使用各自独立的注册表
+     */
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RepositoryMetrics metrics;
+    /**
+     * 进程状态字典：编号 → 状态，只增不减
+     */
+    private final List<String> statuses = new ArrayList<>();
+    private final Map<String, Integer> statusCodes = new HashMap<>();
 
-    private static final int MAX_HISTORY = 10000;
+    /**
+     * 堆外记录的列：ID、进程 ID、时间戳、线程数、句柄数、运行时间、状态编号，之后是 7 项 double 指标
+     */
+    private static final int THREAD_COUNT = 3;
+    private static final int HANDLE_COUNT = 4;
+    private static final int UPTIME = 5;
+    private static final int STATUS = 6;
+    private static final int CPU_USAGE = 7;
+    private static final int DOUBLE_COLUMNS = 7;
+    private static final int COLUMNS = CPU_USAGE + DOUBLE_COLUMNS;
+    /**
+     * 数据文件的列：时间戳、ID、线程数、句柄数、运行时间和 7 项 double 指标，状态为记录名
+     */
+    private static final int FILE_LONG_COLUMNS = 5;
+    private static final int FILE_ID = 1;
 
     @PostConstruct
     public void init() {
+        metrics = RepositoryMetrics.of("process-resources", meterRegistry);
         File dir = new File(storageDir);
         if (!dir.exists()) {
             dir.mkdirs();
         }
-        dataFile = new File(dir, "process-resources.json");
+        dataFile = new File(dir, "process-resources.tsdb");
+        legacyFile = new File(dir, "process-resources.json");
+        timeSeriesFile = new TimeSeriesFile(dataFile.toPath(), FILE_LONG_COLUMNS, DOUBLE_COLUMNS);
+        store = new OffHeapRecordStore(COLUMNS, maxRows);
+        idSequence = IdSequenceService.forDirectory(storageDir).sequence("process-resources");
+        if (!dataFile.exists() && legacyFile.exists()) {
+            migrateLegacyFile();
+        }
+        loadFromFile();
+        metrics.gaugeSize(this, r -> r.store.size());
+        metrics.gaugeMemory(this, r -> r.store.memoryBytes());
+        metrics.gaugeFileSize(this, r -> r.dataFile.length());
+    }
+
+    /**
+     * 数据文件被外部替换后（如从主节点复制过来）重新加载
+     */
+    public void reload() {
         loadFromFile();
     }
 
     private synchronized void loadFromFile() {
-        if (!dataFile.exists()) {
-            storage.clear();
-            return;
+        long start = metrics.start();
+        store.clear();
+        try {
+            long[] values = new long[COLUMNS];
+            long[] maxId = {0};
+            timeSeriesFile.loadInOrder(FILE_ID, (processId, status, row) ->
+                maxId[0] = Math.max(maxId[0], appendRow(processId, status, row, values)));
+            idSequence.observe(maxId[0]);
+            metrics.recordRead(start, timeSeriesFile.length(), store.size());
+            log.info("Loaded {} process resources from {}", store.size(), dataFile.getAbsolutePath());
+        } catch (IOException e) {
+            log.error("Failed to load process resources from file", e);
+            // 即使加载失败，也清空存储以避免不一致状态
+            store.clear();
+        }
+    }
+
+    /**
+     * 数据文件末尾被外部追加后（如从主节点复制过来）只把新增的行追加到存储，文件被整体替换时重新加载
+     */
+    public synchronized void loadAppended() {
+        long start = metrics.start();
+        long before = timeSeriesFile.length();
+        try {
+            long[] values = new long[COLUMNS];
+            long[] maxId = {0};
+            int[] rows = {0};
+            boolean appended = timeSeriesFile.loadAppendedInOrder(FILE_ID, (processId, status, row) -> {
+                maxId[0] = Math.max(maxId[0], appendRow(processId, status, row, values));
+                rows[0]++;
+            });
+            if (!appended) {
+                reload();
+                return;
+            }
+            if (rows[0] == 0) {
+                return;
+            }
+            idSequence.observe(maxId[0]);
+            metrics.recordRead(start, timeSeriesFile.length() - before, rows[0]);
+        } catch (IOException e) {
+            log.warn("Failed to read appended process resources from {}, reloading", dataFile.getAbsolutePath(), e);
+            reload();
         }
+    }
 
-        // 检查文件是否为空
-        if (dataFile.length() == 0) {
-            storage.clear();
-            log.info("Process resource file is empty, starting with empty storage");
-            return;
+    /**
+     * 把数据文件中的一行写入堆外存储，返回该行的 ID
+     */
+    private long appendRow(Long processId, String status, TimeSeriesChunk.Cursor row, long[] values) {
+        values[OffHeapRecordStore.ID] = row.getLong(FILE_ID);
+        values[OffHeapRecordStore.OWNER] = processId != null ? processId : OffHeapRecordStore.NULL;
+        values[OffHeapRecordStore.TIME] = row.getTimestamp();
+        values[THREAD_COUNT] = row.getLong(2);
+        values[HANDLE_COUNT] = row.getLong(3);
+        values[UPTIME] = row.getLong(4);
+        values[STATUS] = statusCode(status);
+        for (int i = 0; i < DOUBLE_COLUMNS; i++) {
+            values[CPU_USAGE + i] = row.getBits(i);
         }
+        store.append(values);
+        return values[OffHeapRecordStore.ID];
+    }
 
+    private synchronized void migrateLegacyFile() {
         try {
             List<ProcessResource> list = objectMapper.readValue(
-                dataFile,
+                legacyFile,
                 TypeFactory.defaultInstance().constructCollectionType(List.class, ProcessResource.class)
             );
-            storage.clear();
-            if (list != null) {
-                list.forEach(item -> {
-                    storage.put(item.getId(), item);
-                    if (item.getId() >= idGenerator.get()) {
-                        idGenerator.set(item.getId() + 1);
-                    }
-                });
-            }
-            log.info("Loaded {} process resources from {}", storage.size(), dataFile.getAbsolutePath());
+            Map<List<Object>, CompressedSeries> grouped = new LinkedHashMap<>();
+            list.stream()
+                .filter(r -> r.getId() != null && r.getTimestamp() != null)
+                .sorted(Comparator.comparing(ProcessResource::getId))
+                .forEach(r -> grouped.computeIfAbsent(Arrays.asList(r.getProcessId(), r.getStatus()),
+                    k -> new CompressedSeries(FILE_LONG_COLUMNS, DOUBLE_COLUMNS)).appendBits(fileLongs(r), doubleBits(r)));
+            timeSeriesFile.rewrite(toRecords(grouped));
+            Files.move(legacyFile.toPath(), new File(legacyFile.getParentFile(), legacyFile.getName() + ".migrated").toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+            log.info("Migrated {} process resources from {} to {}", list.size(), legacyFile.getAbsolutePath(), dataFile.getAbsolutePath());
         } catch (IOException e) {
-            log.error("Failed to load process resources from file", e);
-            // 即使加载失败，也清空存储以避免不一致状态
-            storage.clear();
+            log.error("Failed to migrate process resources from {}", legacyFile.getAbsolutePath(), e);
+        }
+    }
+
+    private static List<TimeSeriesFile.Record> toRecords(Map<List<Object>, CompressedSeries> grouped) {
+        List<TimeSeriesFile.Record> records = new ArrayList<>();
+        grouped.forEach((key, series) -> series.chunks().forEach(chunk ->
+            records.add(new TimeSeriesFile.Record((Long) key.get(0), (String) key.get(1), chunk))));
+        return records;
+    }
+
+    private long statusCode(String status) {
+        if (status == null) {
+            return OffHeapRecordStore.NULL;
+        }
+        synchronized (statuses) {
+            return statusCodes.computeIfAbsent(status, s -> {
+                statuses.add(s);
+                return statuses.size() - 1;
+            });
+        }
+    }
+
+    private String status(long code) {
+        if (code == OffHeapRecordStore.NULL) {
+            return null;
         }
+        synchronized (statuses) {
+            return statuses.get((int) code);
+        }
+    }
+
+    private static long nullable(Number value) {
+        return value != null ? value.longValue() : OffHeapRecordStore.NULL;
+    }
+
+    private static long[] fileLongs(ProcessResource r) {
+        return new long[]{r.getTimestamp().getTime(), r.getId(), nullable(r.getThreadCount()), nullable(r.getHandleCount()), nullable(r.getUptime())};
     }
 
+    private static long[] doubleBits(ProcessResource r) {
+        return new long[]{
+            TimeSeriesChunk.bitsOf(r.getCpuUsage()),
+            TimeSeriesChunk.bitsOf(r.getMemoryUsage()),
+            TimeSeriesChunk.bitsOf(r.getMemoryPercent()),
+            TimeSeriesChunk.bitsOf(r.getDiskReadRate()),
+            TimeSeriesChunk.bitsOf(r.getDiskWriteRate()),
+            TimeSeriesChunk.bitsOf(r.getNetworkReceiveRate()),
+            TimeSeriesChunk.bitsOf(r.getNetworkSendRate())
+        };
+    }
+
+    private ProcessResource toResource(OffHeapRecordStore.Row row) {
+        ProcessResource r = new ProcessResource();
+        r.setId(row.getLong(OffHeapRecordStore.ID));
+        r.setProcessId(row.getNullableLong(OffHeapRecordStore.OWNER));
+        r.setTimestamp(new Date(row.getLong(OffHeapRecordStore.TIME)));
+        r.setThreadCount(row.getNullableInt(THREAD_COUNT));
+        r.setHandleCount(row.getNullableInt(HANDLE_COUNT));
+        r.setUptime(row.getNullableLong(UPTIME));
+        r.setStatus(status(row.getLong(STATUS)));
+        r.setCpuUsage(row.getNullableDouble(CPU_USAGE));
+        r.setMemoryUsage(row.getNullableDouble(CPU_USAGE + 1));
+        r.setMemoryPercent(row.getNullableDouble(CPU_USAGE + 2));
+        r.setDiskReadRate(row.getNullableDouble(CPU_USAGE + 3));
+        r.setDiskWriteRate(row.getNullableDouble(CPU_USAGE + 4));
+        r.setNetworkReceiveRate(row.getNullableDouble(CPU_USAGE + 5));
+        r.setNetworkSendRate(row.getNullableDouble(CPU_USAGE + 6));
+        return r;
+    }
+
+    /**
+     * 用内存中保留的记录重写数据文件
+     */
     private synchronized void saveToFile() {
+        long start = metrics.start();
         try {
-            List<ProcessResource> list = new ArrayList<>(storage.values());
-            if (list.size() > MAX_HISTORY) {
-                list = list.stream()
-                    .sorted((a, b) -> a.getTimestamp().compareTo(b.getTimestamp()))
-                    .skip(list.size() - MAX_HISTORY)
-                    .collect(Collectors.toList());
-            }
-            objectMapper.writeValue(dataFile, list);
+            Map<List<Object>, CompressedSeries> grouped = new LinkedHashMap<>();
+            long[] longs = new long[FILE_LONG_COLUMNS];
+            long[] bits = new long[DOUBLE_COLUMNS];
+            store.forEach(row -> {
+                longs[0] = row.getLong(OffHeapRecordStore.TIME);
+                longs[FILE_ID] = row.getLong(OffHeapRecordStore.ID);
+                longs[2] = row.getLong(THREAD_COUNT);
+                longs[3] = row.getLong(HANDLE_COUNT);
+                longs[4] = row.getLong(UPTIME);
+                for (int i = 0; i < DOUBLE_COLUMNS; i++) {
+                    bits[i] = row.getLong(CPU_USAGE + i);
+                }
+                grouped.computeIfAbsent(Arrays.asList(row.getNullableLong(OffHeapRecordStore.OWNER), status(row.getLong(STATUS))),
+                    k -> new CompressedSeries(FILE_LONG_COLUMNS, DOUBLE_COLUMNS)).appendBits(longs, bits);
+            });
+            timeSeriesFile.rewrite(toRecords(grouped));
+            metrics.recordWrite(start, timeSeriesFile.length(), store.size());
         } catch (IOException e) {
             log.error("Failed to save process resources to file", e);
         }
     }
 
-    public ProcessResource save(ProcessResource resource) {
+    /**
+     * 在数据文件末尾追加新增的行，文件增长过多时整理
+     */
+    private synchronized void appendToFile(List<ProcessResource> resources) {
+        long start = metrics.start();
+        try {
+            long before = timeSeriesFile.length();
+            Map<List<Object>, CompressedSeries> grouped = new LinkedHashMap<>();
+            for (ProcessResource r : resources) {
+                grouped.computeIfAbsent(Arrays.asList(r.getProcessId(), r.getStatus()),
+                    k -> new CompressedSeries(FILE_LONG_COLUMNS, DOUBLE_COLUMNS)).appendBits(fileLongs(r), doubleBits(r));
+            }
+            timeSeriesFile.append(toRecords(grouped));
+            metrics.recordWrite(start, timeSeriesFile.length() - before, resources.size());
+        } catch (IOException e) {
+            log.error("Failed to append process resources to file", e);
+        }
+        if (timeSeriesFile.needsCompaction()) {
+            saveToFile();
+        }
+    }
+
+    private void append(ProcessResource resource, Date now) {
         if (resource.getId() == null) {
-            resource.setId(idGenerator.getAndIncrement());
+            resource.setId(idSequence.next());
         }
         if (resource.getTimestamp() == null) {
-            resource.setTimestamp(new Date());
+            resource.setTimestamp(now);
         }
-        storage.put(resource.getId(), resource);
-        saveToFile();
+        long[] values = new long[COLUMNS];
+        long[] longs = fileLongs(resource);
+        values[OffHeapRecordStore.ID] = resource.getId();
+        values[OffHeapRecordStore.OWNER] = nullable(resource.getProcessId());
+        values[OffHeapRecordStore.TIME] = longs[0];
+        values[THREAD_COUNT] = longs[2];
+        values[HANDLE_COUNT] = longs[3];
+        values[UPTIME] = longs[4];
+        values[STATUS] = statusCode(resource.getStatus());
+        System.arraycopy(doubleBits(resource), 0, values, CPU_USAGE, DOUBLE_COLUMNS);
+        store.append(values);
+    }
+
+    public synchronized ProcessResource save(ProcessResource resource) {
+        append(resource, new Date());
+        List<ProcessResource> one = new ArrayList<>(1);
+        one.add(resource);
+        appendToFile(one);
         return resource;
     }
 
+    /**
+     * 批量保存，整批只追加一次文件
+     */
+    public synchronized List<ProcessResource> saveAll(List<ProcessResource> resources) {
+        Date now = new Date();
+        for (ProcessResource resource : resources) {
+            append(resource, now);
+        }
+        appendToFile(resources);
+        return resources;
+    }
+
+    /**
+     * 按时间倒序；processId 为 null 时返回全部进程的记录
+     */
     public List<ProcessResource> findByProcessId(Long processId) {
-        return storage.values().stream()
-            .filter(r -> processId == null || processId.equals(r.getProcessId()))
-            .sorted((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()))
-            .collect(Collectors.toList());
+        return findRecentByProcessId(processId, Integer.MAX_VALUE);
     }
 
     public List<ProcessResource> findRecentByProcessId(Long processId, int limit) {
-        return findByProcessId(processId).stream()
-            .limit(limit)
-            .collect(Collectors.toList());
+        if (processId == null) {
+            return findRecent(limit);
+        }
+        return metrics.scan(scanned -> store.newestByOwner(processId, limit, this::toResource, scanned));
+    }
+
+    /**
+     * 某个进程在 afterId 之后写入的记录，按 id 升序，只沿该目标的记录链访问
+     */
+    public List<ProcessResource> findByProcessIdAfter(Long processId, long afterId) {
+        return processId != null ? store.afterId(processId, afterId, this::toResource) : new ArrayList<>();
     }
 
     public List<ProcessResource> findRecent(int limit) {
-        return storage.values().stream()
-            .sorted((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()))
-            .limit(limit)
-            .collect(Collectors.toList());
+        return metrics.scan(scanned -> store.newest(limit, this::toResource, scanned));
     }
 
-    public void clear() {
-        storage.clear();
-        idGenerator.set(1);
+    public synchronized void clear() {
+        store.clear();
         saveToFile();
     }
 }
@@ -0,0 +1,151 @@
+package com.example.monitor.storage;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 仓储读写指标：读/写/查询耗时、序列化字节数、扫描行数以及当前规模
+ * 注册到仓储注入的注册表（Spring 上下文中为应用的 Prometheus 注册表）。同名同标签的计量在一个注册表中只有一份，
+ * 每个仓储实例需要自己的注册表，否则后创建的实例会沿用第一个实例的 gauge。
+ */
+public final class RepositoryMetrics {
+
+    public static final String READ = "monitor.repository.read";
+    public static final String WRITE = "monitor.repository.write";
+    public static final String QUERY = "monitor.repository.query";
+    public static final String BYTES = "monitor.repository.bytes";
+    public static final String ROWS = "monitor.repository.rows";
+    public static final String SIZE = "monitor.repository.size";
+    public static final String FILE_SIZE = "monitor.repository.file.size";
+    public static final String MEMORY = "monitor.repository.memory";
+
+    private final String repository;
+    private final MeterRegistry registry;
+    private final Timer readTimer;
+    private final Timer writeTimer;
+    private final Timer queryTimer;
+    private final DistributionSummary readBytes;
+    private final DistributionSummary writeBytes;
+    private final DistributionSummary readRows;
+    private final DistributionSummary writeRows;
+    private final DistributionSummary scannedRows;
+
+    private RepositoryMetrics(String repository, MeterRegistry registry) {
+        this.repository = repository;
+        this.registry = registry;
+        this.readTimer = timer(READ, "读取并反序列化数据文件");
+        this.writeTimer = timer(WRITE, "序列化并写入数据文件");
+        this.queryTimer = timer(QUERY, "内存数据查询");
+        this.readBytes = summary(BYTES, "read", "bytes");
+        this.writeBytes = summary(BYTES, "write", "bytes");
+        this.readRows = summary(ROWS, "read", "rows");
+        this.writeRows = summary(ROWS, "write", "rows");
+        this.scannedRows = summary(ROWS, "scan", "rows");
+    }
+
+    public static RepositoryMetrics of(String repository, MeterRegistry registry) {
+        return new RepositoryMetrics(repository, registry);
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void recordRead(long startNanos, long bytes, int rows) {
+        readTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        readBytes.record(bytes);
+        readRows.record(rows);
+    }
+
+    public void recordWrite(long startNanos, long bytes, int rows) {
+        writeTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        writeBytes.record(bytes);
+        writeRows.record(rows);
+    }
+
+    public void recordScan(long startNanos, int rows) {
+        queryTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        scannedRows.record(rows);
+    }
+
+    /**
+     * 计时执行一次内存查询，rows 为本次需要扫描的行数
+     */
+    public <T> T scan(int rows, Supplier<T> query) {
+        long start = System.nanoTime();
+        try {
+            return query.get();
+        } finally {
+            recordScan(start, rows);
+        }
+    }
+
+    /**
+     * 计时执行一次内存查询，查询通过回调报告实际访问的行数
+     */
+    public <T> T scan(Function<IntConsumer, T> query) {
+        long start = System.nanoTime();
+        int[] rows = {0};
+        try {
+            return query.apply(n -> rows[0] += n);
+        } finally {
+            recordScan(start, rows[0]);
+        }
+    }
+
+    /**
+     * 当前行数
+     */
+    public <T> void gaugeSize(T state, ToDoubleFunction<T> rows) {
+        Gauge.builder(SIZE, state, rows)
+            .tag("repository", repository)
+            .baseUnit("rows")
+            .description("仓储当前行数")
+            .register(registry);
+    }
+
+    /**
+     * 数据文件大小
+     */
+    public <T> void gaugeFileSize(T state, ToDoubleFunction<T> bytes) {
+        Gauge.builder(FILE_SIZE, state, bytes)
+            .tag("repository", repository)
+            .baseUnit("bytes")
+            .description("数据文件大小")
+            .register(registry);
+    }
+
+    /**
+     * 压缩数据块或堆外记录在内存中占用的字节数
+     */
+    public <T> void gaugeMemory(T state, ToDoubleFunction<T> bytes) {
+        Gauge.builder(MEMORY, state, bytes)
+            .tag("repository", repository)
+            .baseUnit("bytes")
+            .description("压缩数据块或堆外记录占用的内存大小")
+            .register(registry);
+    }
+
+    private Timer timer(String name, String description) {
+        return Timer.builder(name)
+            .tag("repository", repository)
+            .description(description)
+            .register(registry);
+    }
+
+    private DistributionSummary summary(String name, String operation, String baseUnit) {
+        return DistributionSummary.builder(name)
+            .tag("repository", repository)
+            .tag("operation", operation)
+            .baseUnit(baseUnit)
+            .register(registry);
+    }
+}
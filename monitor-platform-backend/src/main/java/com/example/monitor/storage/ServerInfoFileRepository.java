@@ -3,7 +3,10 @@ package com.example.monitor.storage;
 import com.example.monitor.model.ServerInfo;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
@@ -12,7 +15,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
@@ -26,17 +31,36 @@ public class ServerInfoFileRepository {
 
     private File dataFile;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final AtomicLong idGenerator = new AtomicLong(1);
+    private IdSequenceService.Sequence idSequence;
     private final ConcurrentHashMap<Long, ServerInfo> storage = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    /**
+     * 不经过 Spring 创建时（单元测试）使用各自独立的注册表
+     */
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RepositoryMetrics metrics;
 
     @PostConstruct
     public void init() {
+        metrics = RepositoryMetrics.of("servers", meterRegistry);
         File dir = new File(storageDir);
         if (!dir.exists()) {
             dir.mkdirs();
         }
         dataFile = new File(dir, "servers.json");
+        idSequence = IdSequenceService.forDirectory(storageDir).sequence("servers");
         loadFromFile();
+        metrics.gaugeSize(storage, Map::size);
+        metrics.gaugeFileSize(this, r -> r.dataFile.length());
+    }
+
+    /**
+     * 数据文件被外部替换后（如从主节点复制过来）重新加载
+     */
+    public void reload() {
+        loadFromFile();
+        version.incrementAndGet();
     }
 
     private synchronized void loadFromFile() {
@@ -44,6 +68,7 @@ public class ServerInfoFileRepository {
             storage.clear();
             return;
         }
+        long start = metrics.start();
         try {
             List<ServerInfo> list = objectMapper.readValue(
                 dataFile,
@@ -51,13 +76,10 @@ public class ServerInfoFileRepository {
             );
             storage.clear();
             if (list != null) {
-                list.forEach(item -> {
-                    storage.put(item.getId(), item);
-                    if (item.getId() >= idGenerator.get()) {
-                        idGenerator.set(item.getId() + 1);
-                    }
-                });
+                list.forEach(item -> storage.put(item.getId(), item));
             }
+            storage.keySet().stream().mapToLong(Long::longValue).max().ifPresent(idSequence::observe);
+            metrics.recordRead(start, dataFile.length(), storage.size());
             log.info("Loaded {} server infos from {}", storage.size(), dataFile.getAbsolutePath());
         } catch (IOException e) {
             log.error("Failed to load server infos from file", e);
@@ -65,16 +87,20 @@ public class ServerInfoFileRepository {
     }
 
     private synchronized void saveToFile() {
+        long start = metrics.start();
         try {
-            objectMapper.writeValue(dataFile, new ArrayList<>(storage.values()));
+            List<ServerInfo> list = new ArrayList<>(storage.values());
+            StorageFiles.replace(dataFile.toPath(), objectMapper.writeValueAsBytes(list));
+            metrics.recordWrite(start, dataFile.length(), list.size());
         } catch (IOException e) {
             log.error("Failed to save server infos to file", e);
         }
+        version.incrementAndGet();
     }
 
     public ServerInfo save(ServerInfo serverInfo) {
         if (serverInfo.getId() == null) {
-            serverInfo.setId(idGenerator.getAndIncrement());
+            serverInfo.setId(idSequence.next());
             serverInfo.setCreatedAt(new Date());
         }
         serverInfo.setUpdatedAt(new Date());
@@ -92,21 +118,39 @@ public class ServerInfoFileRepository {
     }
 
     public List<ServerInfo> findByStatus(String status) {
-        return storage.values().stream()
+        return metrics.scan(storage.size(), () -> storage.values().stream()
             .filter(s -> status == null || status.equals(s.getStatus()))
-            .collect(Collectors.toList());
+            .collect(Collectors.toList()));
     }
 
     public List<ServerInfo> findByType(String type) {
-        return storage.values().stream()
+        return metrics.scan(storage.size(), () -> storage.values().stream()
             .filter(s -> type == null || type.equals(s.getType()))
-            .collect(Collectors.toList());
+            .collect(Collectors.toList()));
     }
 
     public List<ServerInfo> findByEnv(String env) {
-        return storage.values().stream()
+        return metrics.scan(storage.size(), () -> storage.values().stream()
             .filter(s -> env == null || env.equals(s.getEnv()))
-            .collect(Collectors.toList());
+            .collect(Collectors.toList()));
+    }
+
+    /**
+     * 用另一份完整的列表替换本地数据（集群模式下从元数据节点同步），内容相同时不写文件
+     *
+     * @return 是否有变化
+     */
+    public synchronized boolean replaceAll(List<ServerInfo> servers) {
+        Map<Long, ServerInfo> incoming = new HashMap<>();
+        servers.forEach(item -> incoming.put(item.getId(), item));
+        if (incoming.equals(storage)) {
+            return false;
+        }
+        storage.keySet().retainAll(incoming.keySet());
+        storage.putAll(incoming);
+        incoming.keySet().stream().mapToLong(Long::longValue).max().ifPresent(idSequence::observe);
+        saveToFile();
+        return true;
     }
 
     public void deleteById(Long id) {
@@ -114,9 +158,15 @@ public class ServerInfoFileRepository {
         saveToFile();
     }
 
+    /**
+     * 每次写入文件后递增，供查询缓存判断数据是否变化
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
     public void clear() {
         storage.clear();
-        idGenerator.set(1);
         saveToFile();
     }
 }
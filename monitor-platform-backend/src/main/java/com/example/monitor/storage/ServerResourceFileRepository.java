@@ -3,20 +3,33 @@ package com.example.monitor.storage;
 import com.example.monitor.model.ServerResource;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import javax.annotation.PostConstruct;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
 
+/**
+ * 服务器资源仓储
+ * 内存中的记录保存在堆外的定长记录存储（{@link OffHeapRecordStore}）中，最多保留 max-rows 行，查询只为返回的结果创建对象。
+ * 数据文件 server-resources.tsdb 按服务器分组保存 Gorilla 编码的数据块（列为时间戳、ID 和 8 项资源指标），
+ * 每次保存只追加一行，文件增长到上次整理后的两倍时用内存中保留的记录重写。
+ * 启动时发现旧版的 server-resources.json 会导入后改名为 server-resources.json.migrated。
+ */
 @Slf4j
 @Repository
 public class ServerResourceFileRepository {
@@ -24,108 +37,292 @@ public class ServerResourceFileRepository {
     @Value("${monitor.storage-dir:data}")
     private String storageDir;
 
+    /**
+     * 内存和数据文件中保留的最多行数，超过后按段淘汰最早的记录
+     */
+    @Value("${monitor.resource-store.max-rows:1000000}")
+    private int maxRows = 1_000_000;
+
     private File dataFile;
+    private File legacyFile;
+    private TimeSeriesFile timeSeriesFile;
+    private OffHeapRecordStore store;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final AtomicLong idGenerator = new AtomicLong(1);
-    private final ConcurrentHashMap<Long, ServerResource> storage = new ConcurrentHashMap<>();
+    private IdSequenceService.Sequence idSequence;
+    private final AtomicLong version = new AtomicLong();
+    /**
+     * 不经过 Spring 创建时（单元测试）使用各自独立的注册表
+     */
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RepositoryMetrics metrics;
 
-    private static final int MAX_HISTORY = 10000;
+    /**
+     * 堆外记录的列：ID、服务器 ID、时间戳之后是 8 项资源指标
+     */
+    private static final int CPU_USAGE = 3;
+    private static final int COLUMNS = CPU_USAGE + 8;
+    /**
+     * 数据文件的列：时间戳、ID 和 8 项资源指标
+     */
+    private static final int FILE_LONG_COLUMNS = 2;
+    private static final int FILE_DOUBLE_COLUMNS = 8;
+    private static final int FILE_ID = 1;
 
     @PostConstruct
     public void init() {
+        metrics = RepositoryMetrics.of("server-resources", meterRegistry);
         File dir = new File(storageDir);
         if (!dir.exists()) {
             dir.mkdirs();
         }
-        dataFile = new File(dir, "server-resources.json");
+        dataFile = new File(dir, "server-resources.tsdb");
+        legacyFile = new File(dir, "server-resources.json");
+        timeSeriesFile = new TimeSeriesFile(dataFile.toPath(), FILE_LONG_COLUMNS, FILE_DOUBLE_COLUMNS);
+        store = new OffHeapRecordStore(COLUMNS, maxRows);
+        idSequence = IdSequenceService.forDirectory(storageDir).sequence("server-resources");
+        if (!dataFile.exists() && legacyFile.exists()) {
+            migrateLegacyFile();
+        }
+        loadFromFile();
+        metrics.gaugeSize(this, r -> r.store.size());
+        metrics.gaugeMemory(this, r -> r.store.memoryBytes());
+        metrics.gaugeFileSize(this, r -> r.dataFile.length());
+    }
+
+    /**
+     * 数据文件被外部替换后（如从主节点复制过来）重新加载
+     */
+    public void reload() {
         loadFromFile();
+        version.incrementAndGet();
     }
 
     private synchronized void loadFromFile() {
-        if (!dataFile.exists()) {
-            storage.clear();
-            return;
+        long start = metrics.start();
+        store.clear();
+        try {
+            long[] values = new long[COLUMNS];
+            long[] maxId = {0};
+            timeSeriesFile.loadInOrder(FILE_ID, (serverId, name, row) -> maxId[0] = Math.max(maxId[0], appendRow(serverId, row, values)));
+            idSequence.observe(maxId[0]);
+            metrics.recordRead(start, timeSeriesFile.length(), store.size());
+            log.info("Loaded {} server resources from {}", store.size(), dataFile.getAbsolutePath());
+        } catch (IOException e) {
+            log.error("Failed to load server resources from file", e);
+            // 即使加载失败，也清空存储以避免不一致状态
+            store.clear();
         }
+    }
 
-        // 检查文件是否为空
-        if (dataFile.length() == 0) {
-            storage.clear();
-            log.info("Server resource file is empty, starting with empty storage");
-            return;
+    /**
+     * 数据文件末尾被外部追加后（如从主节点复制过来）只把新增的行追加到存储，文件被整体替换时重新加载
+     */
+    public synchronized void loadAppended() {
+        long start = metrics.start();
+        long before = timeSeriesFile.length();
+        try {
+            long[] values = new long[COLUMNS];
+            long[] maxId = {0};
+            int[] rows = {0};
+            boolean appended = timeSeriesFile.loadAppendedInOrder(FILE_ID, (serverId, name, row) -> {
+                maxId[0] = Math.max(maxId[0], appendRow(serverId, row, values));
+                rows[0]++;
+            });
+            if (!appended) {
+                reload();
+                return;
+            }
+            if (rows[0] == 0) {
+                return;
+            }
+            idSequence.observe(maxId[0]);
+            metrics.recordRead(start, timeSeriesFile.length() - before, rows[0]);
+            version.incrementAndGet();
+        } catch (IOException e) {
+            log.warn("Failed to read appended server resources from {}, reloading", dataFile.getAbsolutePath(), e);
+            reload();
+        }
+    }
+
+    /**
+     * 把数据文件中的一行写入堆外存储，返回该行的 ID
+     */
+    private long appendRow(Long serverId, TimeSeriesChunk.Cursor row, long[] values) {
+        values[OffHeapRecordStore.ID] = row.getLong(FILE_ID);
+        values[OffHeapRecordStore.OWNER] = serverId != null ? serverId : OffHeapRecordStore.NULL;
+        values[OffHeapRecordStore.TIME] = row.getTimestamp();
+        for (int i = 0; i < FILE_DOUBLE_COLUMNS; i++) {
+            values[CPU_USAGE + i] = row.getBits(i);
         }
+        store.append(values);
+        return values[OffHeapRecordStore.ID];
+    }
 
+    private synchronized void migrateLegacyFile() {
         try {
             List<ServerResource> list = objectMapper.readValue(
-                dataFile,
+                legacyFile,
                 TypeFactory.defaultInstance().constructCollectionType(List.class, ServerResource.class)
             );
-            storage.clear();
-            if (list != null) {
-                list.forEach(item -> {
-                    storage.put(item.getId(), item);
-                    if (item.getId() >= idGenerator.get()) {
-                        idGenerator.set(item.getId() + 1);
-                    }
-                });
-            }
-            log.info("Loaded {} server resources from {}", storage.size(), dataFile.getAbsolutePath());
+            Map<Long, CompressedSeries> grouped = new LinkedHashMap<>();
+            list.stream()
+                .filter(r -> r.getId() != null && r.getTimestamp() != null)
+                .sorted(Comparator.comparing(ServerResource::getId))
+                .forEach(r -> grouped.computeIfAbsent(r.getServerId(), k -> new CompressedSeries(FILE_LONG_COLUMNS, FILE_DOUBLE_COLUMNS))
+                    .appendBits(new long[]{r.getTimestamp().getTime(), r.getId()}, doubleBits(r)));
+            timeSeriesFile.rewrite(toRecords(grouped));
+            Files.move(legacyFile.toPath(), new File(legacyFile.getParentFile(), legacyFile.getName() + ".migrated").toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+            log.info("Migrated {} server resources from {} to {}", list.size(), legacyFile.getAbsolutePath(), dataFile.getAbsolutePath());
         } catch (IOException e) {
-            log.error("Failed to load server resources from file", e);
-            // 即使加载失败，也清空存储以避免不一致状态
-            storage.clear();
+            log.error("Failed to migrate server resources from {}", legacyFile.getAbsolutePath(), e);
         }
     }
 
+    private static List<TimeSeriesFile.Record> toRecords(Map<Long, CompressedSeries> grouped) {
+        List<TimeSeriesFile.Record> records = new ArrayList<>();
+        grouped.forEach((serverId, series) -> series.chunks().forEach(chunk -> records.add(new TimeSeriesFile.Record(serverId, null, chunk))));
+        return records;
+    }
+
+    private static long[] doubleBits(ServerResource r) {
+        return new long[]{
+            TimeSeriesChunk.bitsOf(r.getCpuUsage()),
+            TimeSeriesChunk.bitsOf(r.getMemoryUsage()),
+            TimeSeriesChunk.bitsOf(r.getMemoryUsed()),
+            TimeSeriesChunk.bitsOf(r.getDiskUsage()),
+            TimeSeriesChunk.bitsOf(r.getDiskUsed()),
+            TimeSeriesChunk.bitsOf(r.getNetworkIn()),
+            TimeSeriesChunk.bitsOf(r.getNetworkOut()),
+            TimeSeriesChunk.bitsOf(r.getLoadAverage())
+        };
+    }
+
+    private static ServerResource toResource(OffHeapRecordStore.Row row) {
+        ServerResource r = new ServerResource();
+        r.setId(row.getLong(OffHeapRecordStore.ID));
+        r.setServerId(row.getNullableLong(OffHeapRecordStore.OWNER));
+        r.setTimestamp(new Date(row.getLong(OffHeapRecordStore.TIME)));
+        r.setCpuUsage(row.getNullableDouble(CPU_USAGE));
+        r.setMemoryUsage(row.getNullableDouble(CPU_USAGE + 1));
+        r.setMemoryUsed(row.getNullableDouble(CPU_USAGE + 2));
+        r.setDiskUsage(row.getNullableDouble(CPU_USAGE + 3));
+        r.setDiskUsed(row.getNullableDouble(CPU_USAGE + 4));
+        r.setNetworkIn(row.getNullableDouble(CPU_USAGE + 5));
+        r.setNetworkOut(row.getNullableDouble(CPU_USAGE + 6));
+        r.setLoadAverage(row.getNullableDouble(CPU_USAGE + 7));
+        return r;
+    }
+
+    /**
+     * 用内存中保留的记录重写数据文件
+     */
     private synchronized void saveToFile() {
+        long start = metrics.start();
         try {
-            List<ServerResource> list = new ArrayList<>(storage.values());
-            if (list.size() > MAX_HISTORY) {
-                list = list.stream()
-                    .sorted((a, b) -> a.getTimestamp().compareTo(b.getTimestamp()))
-                    .skip(list.size() - MAX_HISTORY)
-                    .collect(Collectors.toList());
-            }
-            objectMapper.writeValue(dataFile, list);
+            Map<Long, CompressedSeries> grouped = new LinkedHashMap<>();
+            long[] longs = new long[FILE_LONG_COLUMNS];
+            long[] bits = new long[FILE_DOUBLE_COLUMNS];
+            store.forEach(row -> {
+                longs[0] = row.getLong(OffHeapRecordStore.TIME);
+                longs[FILE_ID] = row.getLong(OffHeapRecordStore.ID);
+                for (int i = 0; i < FILE_DOUBLE_COLUMNS; i++) {
+                    bits[i] = row.getLong(CPU_USAGE + i);
+                }
+                grouped.computeIfAbsent(row.getNullableLong(OffHeapRecordStore.OWNER),
+                    k -> new CompressedSeries(FILE_LONG_COLUMNS, FILE_DOUBLE_COLUMNS)).appendBits(longs, bits);
+            });
+            timeSeriesFile.rewrite(toRecords(grouped));
+            metrics.recordWrite(start, timeSeriesFile.length(), store.size());
         } catch (IOException e) {
             log.error("Failed to save server resources to file", e);
         }
+        version.incrementAndGet();
     }
 
-    public ServerResource save(ServerResource resource) {
+    /**
+     * 在数据文件末尾追加一行，文件增长过多时整理
+     */
+    private synchronized void appendToFile(ServerResource resource) {
+        long start = metrics.start();
+        try {
+            long before = timeSeriesFile.length();
+            TimeSeriesChunk chunk = new TimeSeriesChunk(FILE_LONG_COLUMNS, FILE_DOUBLE_COLUMNS);
+            chunk.appendBits(new long[]{resource.getTimestamp().getTime(), resource.getId()}, doubleBits(resource));
+            chunk.seal();
+            List<TimeSeriesFile.Record> records = new ArrayList<>(1);
+            records.add(new TimeSeriesFile.Record(resource.getServerId(), null, chunk));
+            timeSeriesFile.append(records);
+            metrics.recordWrite(start, timeSeriesFile.length() - before, 1);
+        } catch (IOException e) {
+            log.error("Failed to append server resource to file", e);
+        }
+        if (timeSeriesFile.needsCompaction()) {
+            saveToFile();
+        } else {
+            version.incrementAndGet();
+        }
+    }
+
+    public synchronized ServerResource save(ServerResource resource) {
         if (resource.getId() == null) {
-            resource.setId(idGenerator.getAndIncrement());
+            resource.setId(idSequence.next());
         }
         if (resource.getTimestamp() == null) {
             resource.setTimestamp(new Date());
         }
-        storage.put(resource.getId(), resource);
-        saveToFile();
+        long[] values = new long[COLUMNS];
+        values[OffHeapRecordStore.ID] = resource.getId();
+        values[OffHeapRecordStore.OWNER] = resource.getServerId() != null ? resource.getServerId() : OffHeapRecordStore.NULL;
+        values[OffHeapRecordStore.TIME] = resource.getTimestamp().getTime();
+        System.arraycopy(doubleBits(resource), 0, values, CPU_USAGE, FILE_DOUBLE_COLUMNS);
+        store.append(values);
+        appendToFile(resource);
         return resource;
     }
 
+    /**
+     * 按时间倒序；serverId 为 null 时返回全部服务器的记录
+     */
     public List<ServerResource> findByServerId(Long serverId) {
-        return storage.values().stream()
-            .filter(r -> serverId == null || serverId.equals(r.getServerId()))
-            .sorted((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()))
-            .collect(Collectors.toList());
+        return findRecentByServerId(serverId, Integer.MAX_VALUE);
     }
 
     public List<ServerResource> findRecentByServerId(Long serverId, int limit) {
-        return findByServerId(serverId).stream()
-            .limit(limit)
-            .collect(Collectors.toList());
+        if (serverId == null) {
+            return findRecent(limit);
+        }
+        return metrics.scan(scanned -> store.newestByOwner(serverId, limit, ServerResourceFileRepository::toResource, scanned));
+    }
+
+    /**
+     * 某个服务器在 afterId 之后写入的记录，按 id 升序，只沿该目标的记录链访问
+     */
+    public List<ServerResource> findByServerIdAfter(Long serverId, long afterId) {
+        return serverId != null ? store.afterId(serverId, afterId, ServerResourceFileRepository::toResource) : new ArrayList<>();
     }
 
     public List<ServerResource> findRecent(int limit) {
-        return storage.values().stream()
-            .sorted((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()))
-            .limit(limit)
-            .collect(Collectors.toList());
+        return metrics.scan(scanned -> store.newest(limit, ServerResourceFileRepository::toResource, scanned));
+    }
+
+    /**
+     * 每台服务器时间最新的一条记录
+     */
+    public Map<Long, ServerResource> findLatestByServer() {
+        return store.latestByOwner(ServerResourceFileRepository::toResource);
+    }
+
+    /**
+     * 每次写入文件后递增，供查询缓存判断数据是否变化
+     */
+    public long getVersion() {
+        return version.get();
     }
 
-    public void clear() {
-        storage.clear();
-        idGenerator.set(1);
+    public synchronized void clear() {
+        store.clear();
         saveToFile();
     }
 }
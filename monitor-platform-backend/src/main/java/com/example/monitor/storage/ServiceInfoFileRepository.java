@@ -3,15 +3,20 @@ package com.example.monitor.storage;
 import com.example.monitor.model.ServiceInfo;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @Component
@@ -20,8 +25,20 @@ public class ServiceInfoFileRepository {
     private final Path filePath;
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong version = new AtomicLong();
+    private final RepositoryMetrics metrics;
+    private final IdSequenceService.Sequence idSequence;
 
-    public ServiceInfoFileRepository(@Value("${monitor.storage-dir:data}") String storageDir) throws IOException {
+    /**
+     * 不经过 Spring 创建时（单元测试）使用独立的注册表
+     */
+    public ServiceInfoFileRepository(String storageDir) throws IOException {
+        this(storageDir, new SimpleMeterRegistry());
+    }
+
+    @Autowired
+    public ServiceInfoFileRepository(@Value("${monitor.storage-dir:data}") String storageDir, MeterRegistry meterRegistry) throws IOException {
+        this.metrics = RepositoryMetrics.of("services", meterRegistry);
         Path dir = Paths.get(storageDir);
         if (!Files.exists(dir)) {
             Files.createDirectories(dir);
@@ -30,6 +47,8 @@ public class ServiceInfoFileRepository {
         if (!Files.exists(this.filePath)) {
             Files.write(this.filePath, "[]".getBytes(StandardCharsets.UTF_8));
         }
+        metrics.gaugeFileSize(this.filePath, p -> p.toFile().length());
+        this.idSequence = IdSequenceService.forDirectory(storageDir).sequence("services", this::maxId);
     }
 
     public List<ServiceInfo> findAll() {
@@ -49,12 +68,7 @@ public class ServiceInfoFileRepository {
             List<ServiceInfo> all = readAllInternal();
 
             if (serviceInfo.getId() == null) {
-                long nextId = all.stream()
-                        .map(ServiceInfo::getId)
-                        .filter(id -> id != null)
-                        .max(Comparator.naturalOrder())
-                        .orElse(0L) + 1;
-                serviceInfo.setId(nextId);
+                serviceInfo.setId(idSequence.next());
             }
             if (serviceInfo.getCreatedAt() == null) {
                 serviceInfo.setCreatedAt(new Date());
@@ -77,6 +91,31 @@ public class ServiceInfoFileRepository {
         }
     }
 
+    /**
+     * 用另一份完整的服务列表替换本地数据（集群模式下从元数据节点同步），内容相同时不写文件
+     *
+     * @return 是否有变化
+     */
+    public boolean replaceAll(List<ServiceInfo> services) {
+        lock.writeLock().lock();
+        try {
+            if (readAllInternal().equals(services)) {
+                return false;
+            }
+            services.stream()
+                    .map(ServiceInfo::getId)
+                    .filter(Objects::nonNull)
+                    .max(Comparator.naturalOrder())
+                    .ifPresent(idSequence::observe);
+            writeAllInternal(new ArrayList<>(services));
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to save services to file", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     public Optional<ServiceInfo> findById(Long id) {
         lock.readLock().lock();
         try {
@@ -90,21 +129,57 @@ public class ServiceInfoFileRepository {
         }
     }
 
+    /**
+     * 数据文件中现有的最大 ID，只在 ID 序列首次建立时读取一次
+     */
+    private long maxId() {
+        try {
+            return readAllInternal().stream()
+                    .map(ServiceInfo::getId)
+                    .filter(id -> id != null)
+                    .max(Comparator.naturalOrder())
+                    .orElse(0L);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read services", e);
+        }
+    }
+
     private List<ServiceInfo> readAllInternal() throws IOException {
         if (!Files.exists(filePath)) {
             return new ArrayList<>();
         }
-        String json = new String(Files.readAllBytes(filePath), StandardCharsets.UTF_8);
+        long start = metrics.start();
+        byte[] bytes = Files.readAllBytes(filePath);
+        String json = new String(bytes, StandardCharsets.UTF_8);
         if (json.trim().isEmpty()) {
             return new ArrayList<>();
         }
-        return objectMapper.readValue(json, new TypeReference<List<ServiceInfo>>() {
+        List<ServiceInfo> all = objectMapper.readValue(json, new TypeReference<List<ServiceInfo>>() {
         });
+        metrics.recordRead(start, bytes.length, all.size());
+        return all;
+    }
+
+    /**
+     * 数据文件被外部替换后（如从主节点复制过来）调用；数据每次都从文件读取，只需让查询缓存失效
+     */
+    public void reload() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * 每次写入文件后递增，供查询缓存判断数据是否变化
+     */
+    public long getVersion() {
+        return version.get();
     }
 
     private void writeAllInternal(List<ServiceInfo> services) throws IOException {
-        String json = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(services);
-        Files.write(filePath, json.getBytes(StandardCharsets.UTF_8));
+        long start = metrics.start();
+        byte[] bytes = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(services);
+        StorageFiles.replace(filePath, bytes);
+        metrics.recordWrite(start, bytes.length, services.size());
+        version.incrementAndGet();
     }
 }
 
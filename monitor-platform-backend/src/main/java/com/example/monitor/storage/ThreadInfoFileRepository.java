@@ -3,7 +3,10 @@ package com.example.monitor.storage;
 import com.example.monitor.model.ThreadInfo;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
@@ -13,6 +16,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
@@ -26,18 +30,35 @@ public class ThreadInfoFileRepository {
 
     private File dataFile;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final AtomicLong idGenerator = new AtomicLong(1);
+    private IdSequenceService.Sequence idSequence;
     private final ConcurrentHashMap<Long, ThreadInfo> storage = new ConcurrentHashMap<>();
+    /**
+     * 不经过 Spring 创建时（单元测试）使用各自独立的注册表
+     */
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RepositoryMetrics metrics;
 
     private static final int MAX_HISTORY = 10000;
 
     @PostConstruct
     public void init() {
+        metrics = RepositoryMetrics.of("threads", meterRegistry);
         File dir = new File(storageDir);
         if (!dir.exists()) {
             dir.mkdirs();
         }
         dataFile = new File(dir, "threads.json");
+        idSequence = IdSequenceService.forDirectory(storageDir).sequence("threads");
+        loadFromFile();
+        metrics.gaugeSize(storage, Map::size);
+        metrics.gaugeFileSize(this, r -> r.dataFile.length());
+    }
+
+    /**
+     * 数据文件被外部替换后（如从主节点复制过来）重新加载
+     */
+    public void reload() {
         loadFromFile();
     }
 
@@ -54,6 +75,7 @@ public class ThreadInfoFileRepository {
             return;
         }
 
+        long start = metrics.start();
         try {
             List<ThreadInfo> list = objectMapper.readValue(
                 dataFile,
@@ -61,13 +83,10 @@ public class ThreadInfoFileRepository {
             );
             storage.clear();
             if (list != null) {
-                list.forEach(item -> {
-                    storage.put(item.getId(), item);
-                    if (item.getId() >= idGenerator.get()) {
-                        idGenerator.set(item.getId() + 1);
-                    }
-                });
+                list.forEach(item -> storage.put(item.getId(), item));
             }
+            storage.keySet().stream().mapToLong(Long::longValue).max().ifPresent(idSequence::observe);
+            metrics.recordRead(start, dataFile.length(), storage.size());
             log.info("Loaded {} thread infos from {}", storage.size(), dataFile.getAbsolutePath());
         } catch (IOException e) {
             log.error("Failed to load thread infos from file", e);
@@ -77,6 +96,7 @@ public class ThreadInfoFileRepository {
     }
 
     private synchronized void saveToFile() {
+        long start = metrics.start();
         try {
             List<ThreadInfo> list = new ArrayList<>(storage.values());
             if (list.size() > MAX_HISTORY) {
@@ -85,7 +105,8 @@ public class ThreadInfoFileRepository {
                     .skip(list.size() - MAX_HISTORY)
                     .collect(Collectors.toList());
             }
-            objectMapper.writeValue(dataFile, list);
+            StorageFiles.replace(dataFile.toPath(), objectMapper.writeValueAsBytes(list));
+            metrics.recordWrite(start, dataFile.length(), list.size());
         } catch (IOException e) {
             log.error("Failed to save thread infos to file", e);
         }
@@ -93,7 +114,7 @@ public class ThreadInfoFileRepository {
 
     public ThreadInfo save(ThreadInfo threadInfo) {
         if (threadInfo.getId() == null) {
-            threadInfo.setId(idGenerator.getAndIncrement());
+            threadInfo.setId(idSequence.next());
         }
         if (threadInfo.getTimestamp() == null) {
             threadInfo.setTimestamp(new Date());
@@ -103,16 +124,34 @@ public class ThreadInfoFileRepository {
         return threadInfo;
     }
 
+    /**
+     * 批量保存，整批只写一次文件
+     */
+    public List<ThreadInfo> saveAll(List<ThreadInfo> items) {
+        Date now = new Date();
+        for (ThreadInfo item : items) {
+            if (item.getId() == null) {
+                item.setId(idSequence.next());
+            }
+            if (item.getTimestamp() == null) {
+                item.setTimestamp(now);
+            }
+            storage.put(item.getId(), item);
+        }
+        saveToFile();
+        return items;
+    }
+
     public List<ThreadInfo> findByProcessId(Long processId) {
-        return storage.values().stream()
+        return metrics.scan(storage.size(), () -> storage.values().stream()
             .filter(t -> processId == null || processId.equals(t.getProcessId()))
             .sorted((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()))
-            .collect(Collectors.toList());
+            .collect(Collectors.toList()));
     }
 
     public List<ThreadInfo> findLatestByProcessId(Long processId) {
         // 获取每个线程的最新记录
-        return storage.values().stream()
+        return metrics.scan(storage.size(), () -> storage.values().stream()
             .filter(t -> processId == null || processId.equals(t.getProcessId()))
             .collect(Collectors.toMap(
                 ThreadInfo::getThreadId,
@@ -122,12 +161,11 @@ public class ThreadInfoFileRepository {
             .values()
             .stream()
             .sorted((a, b) -> a.getThreadId().compareTo(b.getThreadId()))
-            .collect(Collectors.toList());
+            .collect(Collectors.toList()));
     }
 
     public void clear() {
         storage.clear();
-        idGenerator.set(1);
         saveToFile();
     }
 
@@ -3,7 +3,10 @@ package com.example.monitor.storage;
 import com.example.monitor.model.ThreadStack;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
@@ -13,6 +16,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
@@ -26,18 +30,35 @@ public class ThreadStackFileRepository {
 
     private File dataFile;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final AtomicLong idGenerator = new AtomicLong(1);
+    private IdSequenceService.Sequence idSequence;
     private final ConcurrentHashMap<Long, ThreadStack> storage = new ConcurrentHashMap<>();
+    /**
+     * 不经过 Spring 创建时（单元测试）使用各自独立的注册表
+     */
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RepositoryMetrics metrics;
 
     private static final int MAX_HISTORY = 50000;
 
     @PostConstruct
     public void init() {
+        metrics = RepositoryMetrics.of("thread-stacks", meterRegistry);
         File dir = new File(storageDir);
         if (!dir.exists()) {
             dir.mkdirs();
         }
         dataFile = new File(dir, "thread-stacks.json");
+        idSequence = IdSequenceService.forDirectory(storageDir).sequence("thread-stacks");
+        loadFromFile();
+        metrics.gaugeSize(storage, Map::size);
+        metrics.gaugeFileSize(this, r -> r.dataFile.length());
+    }
+
+    /**
+     * 数据文件被外部替换后（如从主节点复制过来）重新加载
+     */
+    public void reload() {
         loadFromFile();
     }
 
@@ -54,6 +75,7 @@ public class ThreadStackFileRepository {
             return;
         }
 
+        long start = metrics.start();
         try {
             List<ThreadStack> list = objectMapper.readValue(
                 dataFile,
@@ -61,13 +83,10 @@ public class ThreadStackFileRepository {
             );
             storage.clear();
             if (list != null) {
-                list.forEach(item -> {
-                    storage.put(item.getId(), item);
-                    if (item.getId() >= idGenerator.get()) {
-                        idGenerator.set(item.getId() + 1);
-                    }
-                });
+                list.forEach(item -> storage.put(item.getId(), item));
             }
+            storage.keySet().stream().mapToLong(Long::longValue).max().ifPresent(idSequence::observe);
+            metrics.recordRead(start, dataFile.length(), storage.size());
             log.info("Loaded {} thread stacks from {}", storage.size(), dataFile.getAbsolutePath());
         } catch (IOException e) {
             log.error("Failed to load thread stacks from file", e);
@@ -77,6 +96,7 @@ public class ThreadStackFileRepository {
     }
 
     private synchronized void saveToFile() {
+        long start = metrics.start();
         try {
             List<ThreadStack> list = new ArrayList<>(storage.values());
             if (list.size() > MAX_HISTORY) {
@@ -85,7 +105,8 @@ public class ThreadStackFileRepository {
                     .skip(list.size() - MAX_HISTORY)
                     .collect(Collectors.toList());
             }
-            objectMapper.writeValue(dataFile, list);
+            StorageFiles.replace(dataFile.toPath(), objectMapper.writeValueAsBytes(list));
+            metrics.recordWrite(start, dataFile.length(), list.size());
         } catch (IOException e) {
             log.error("Failed to save thread stacks to file", e);
         }
@@ -93,7 +114,7 @@ public class ThreadStackFileRepository {
 
     public ThreadStack save(ThreadStack threadStack) {
         if (threadStack.getId() == null) {
-            threadStack.setId(idGenerator.getAndIncrement());
+            threadStack.setId(idSequence.next());
         }
         if (threadStack.getTimestamp() == null) {
             threadStack.setTimestamp(new Date());
@@ -103,17 +124,34 @@ public class ThreadStackFileRepository {
         return threadStack;
     }
 
+    /**
+     * 批量保存，整批只写一次文件
+     */
+    public List<ThreadStack> saveAll(List<ThreadStack> items) {
+        Date now = new Date();
+        for (ThreadStack item : items) {
+            if (item.getId() == null) {
+                item.setId(idSequence.next());
+            }
+            if (item.getTimestamp() == null) {
+                item.setTimestamp(now);
+            }
+            storage.put(item.getId(), item);
+        }
+        saveToFile();
+        return items;
+    }
+
     public List<ThreadStack> findByThreadId(Long processId, Long threadId) {
-        return storage.values().stream()
+        return metrics.scan(storage.size(), () -> storage.values().stream()
             .filter(t -> (processId == null || processId.equals(t.getProcessId())) &&
                        (threadId == null || threadId.equals(t.getThreadId())))
             .sorted((a, b) -> b.getDepth().compareTo(a.getDepth()))
-            .collect(Collectors.toList());
+            .collect(Collectors.toList()));
     }
 
     public void clear() {
         storage.clear();
-        idGenerator.set(1);
         saveToFile();
     }
 
@@ -0,0 +1,372 @@
+package com.example.monitor.storage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 时间序列的压缩数据块（Gorilla 编码）
+ * 每行由若干 long 列（第 0 列为毫秒时间戳）和若干 double 列组成，按行依次写入同一个位流：
+ * <pre>
+ * long 列   首行原样 64 位，之后写二阶差分：0 → '0'；7 / 9 / 12 位有符号数 → '10' / '110' / '1110' 加数值；其余 '1111' 加 64 位
+ * double 列 首行原样 64 位，之后写与上一行的异或：相同 → '0'；有效位落在上一次的前导零 / 尾随零范围内 → '10' 加有效位；
+ *           否则 '11' 加 5 位前导零个数、6 位有效位长度和有效位
+ * </pre>
+ * 固定间隔采集的时间戳每行只占 1 位，变化缓慢的值通常十几位，一行约 2～3 字节。
+ * 数据块只能追加，写满 {@link #MAX_ROWS} 行后封存；读取通过 {@link Cursor} 顺序解码，不创建中间对象。
+ * 非线程安全，共享给读取方时先用 {@link #copy()} 取得只读副本。
+ */
+public final class TimeSeriesChunk {
+
+    public static final int MAX_ROWS = 512;
+
+    /**
+     * 表示空值的 NaN 位模式，与 Double.NaN 的规范位模式不同
+     */
+    public static final long NULL_BITS = 0x7ff4_0000_0000_0001L;
+
+    private final int longColumns;
+    private final int doubleColumns;
+
+    private long[] words;
+    private int bitLength;
+    private int rows;
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+
+    /**
+     * 编码状态，封存后释放
+     */
+    private long[] lastLong;
+    private long[] lastDelta;
+    private long[] lastBits;
+    private int[] leading;
+    private int[] trailing;
+
+    public TimeSeriesChunk(int longColumns, int doubleColumns) {
+        if (longColumns < 1 || doubleColumns < 0) {
+            throw new IllegalArgumentException("至少需要一列时间戳");
+        }
+        this.longColumns = longColumns;
+        this.doubleColumns = doubleColumns;
+        this.words = new long[8];
+        this.lastLong = new long[longColumns];
+        this.lastDelta = new long[longColumns];
+        this.lastBits = new long[doubleColumns];
+        this.leading = new int[doubleColumns];
+        this.trailing = new int[doubleColumns];
+    }
+
+    private TimeSeriesChunk(int longColumns, int doubleColumns, long[] words, int bitLength, int rows, long minTime, long maxTime) {
+        this.longColumns = longColumns;
+        this.doubleColumns = doubleColumns;
+        this.words = words;
+        this.bitLength = bitLength;
+        this.rows = rows;
+        this.minTime = minTime;
+        this.maxTime = maxTime;
+    }
+
+    /**
+     * 可空值的位模式，null 编码为 {@link #NULL_BITS}
+     */
+    public static long bitsOf(Double value) {
+        return value == null ? NULL_BITS : Double.doubleToLongBits(value);
+    }
+
+    public static Double valueOf(long bits) {
+        return bits == NULL_BITS ? null : Double.longBitsToDouble(bits);
+    }
+
+    public boolean isFull() {
+        return rows >= MAX_ROWS || lastLong == null;
+    }
+
+    public void append(long[] longs, double[] doubles) {
+        long[] bits = new long[doubles.length];
+        for (int i = 0; i < doubles.length; i++) {
+            bits[i] = Double.doubleToLongBits(doubles[i]);
+        }
+        appendBits(longs, bits);
+    }
+
+    /**
+     * 追加一行，double 列直接给出位模式（可包含 {@link #NULL_BITS}）
+     */
+    public void appendBits(long[] longs, long[] doubleBits) {
+        if (isFull()) {
+            throw new IllegalStateException("数据块已写满");
+        }
+        if (longs.length != longColumns || doubleBits.length != doubleColumns) {
+            throw new IllegalArgumentException("列数不匹配");
+        }
+        for (int c = 0; c < longColumns; c++) {
+            long value = longs[c];
+            if (rows == 0) {
+                write(value, 64);
+            } else {
+                long delta = value - lastLong[c];
+                writeDeltaOfDelta(delta - lastDelta[c]);
+                lastDelta[c] = delta;
+            }
+            lastLong[c] = value;
+        }
+        for (int c = 0; c < doubleColumns; c++) {
+            long value = doubleBits[c];
+            if (rows == 0) {
+                write(value, 64);
+                leading[c] = -1;
+            } else {
+                writeXor(c, value ^ lastBits[c]);
+            }
+            lastBits[c] = value;
+        }
+        rows++;
+        minTime = Math.min(minTime, longs[0]);
+        maxTime = Math.max(maxTime, longs[0]);
+    }
+
+    private void writeDeltaOfDelta(long dod) {
+        if (dod == 0) {
+            write(0, 1);
+        } else if (fits(dod, 7)) {
+            write(0b10, 2);
+            write(dod, 7);
+        } else if (fits(dod, 9)) {
+            write(0b110, 3);
+            write(dod, 9);
+        } else if (fits(dod, 12)) {
+            write(0b1110, 4);
+            write(dod, 12);
+        } else {
+            write(0b1111, 4);
+            write(dod, 64);
+        }
+    }
+
+    private static boolean fits(long value, int bits) {
+        long bound = 1L << (bits - 1);
+        return value >= -bound && value < bound;
+    }
+
+    private void writeXor(int column, long xor) {
+        if (xor == 0) {
+            write(0, 1);
+            return;
+        }
+        int lead = Math.min(31, Long.numberOfLeadingZeros(xor));
+        int trail = Long.numberOfTrailingZeros(xor);
+        if (leading[column] >= 0 && lead >= leading[column] && trail >= trailing[column]) {
+            write(0b10, 2);
+            int significant = 64 - leading[column] - trailing[column];
+            write(xor >>> trailing[column], significant);
+        } else {
+            int significant = 64 - lead - trail;
+            write(0b11, 2);
+            write(lead, 5);
+            write(significant - 1, 6);
+            write(xor >>> trail, significant);
+            leading[column] = lead;
+            trailing[column] = trail;
+        }
+    }
+
+    /**
+     * 写入 value 的低 n 位，高位在前
+     */
+    private void write(long value, int n) {
+        int word = bitLength >>> 6;
+        if (word + 1 >= words.length) {
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+        long masked = n == 64 ? value : value & ((1L << n) - 1);
+        int free = 64 - (bitLength & 63);
+        if (n <= free) {
+            words[word] |= masked << (free - n);
+        } else {
+            int rest = n - free;
+            words[word] |= masked >>> rest;
+            words[word + 1] = masked << (64 - rest);
+        }
+        bitLength += n;
+    }
+
+    /**
+     * 封存：释放编码状态并收紧缓冲区，之后不能再追加
+     */
+    public void seal() {
+        words = Arrays.copyOf(words, (bitLength + 63) >>> 6);
+        lastLong = null;
+        lastDelta = null;
+        lastBits = null;
+        leading = null;
+        trailing = null;
+    }
+
+    /**
+     * 当前内容的只读副本
+     */
+    public TimeSeriesChunk copy() {
+        return new TimeSeriesChunk(longColumns, doubleColumns, Arrays.copyOf(words, (bitLength + 63) >>> 6),
+                bitLength, rows, minTime, maxTime);
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public long minTime() {
+        return minTime;
+    }
+
+    public long maxTime() {
+        return maxTime;
+    }
+
+    /**
+     * 编码后的字节数
+     */
+    public int sizeInBytes() {
+        return (bitLength + 7) >>> 3;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(rows);
+        out.writeLong(minTime);
+        out.writeLong(maxTime);
+        out.writeInt(bitLength);
+        int count = (bitLength + 63) >>> 6;
+        for (int i = 0; i < count; i++) {
+            out.writeLong(words[i]);
+        }
+    }
+
+    static TimeSeriesChunk readFrom(DataInputStream in, int longColumns, int doubleColumns) throws IOException {
+        int rows = in.readInt();
+        long minTime = in.readLong();
+        long maxTime = in.readLong();
+        int bitLength = in.readInt();
+        if (rows < 0 || rows > MAX_ROWS || bitLength < 0 || bitLength > MAX_ROWS * (longColumns + doubleColumns) * 77) {
+            throw new IOException("Corrupted time series chunk: rows=" + rows + ", bits=" + bitLength);
+        }
+        long[] words = new long[(bitLength + 63) >>> 6];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return new TimeSeriesChunk(longColumns, doubleColumns, words, bitLength, rows, minTime, maxTime);
+    }
+
+    /**
+     * 顺序解码的游标，每次 {@link #next()} 后读取当前行
+     */
+    public final class Cursor {
+
+        private final long[] longs = new long[longColumns];
+        private final long[] deltas = new long[longColumns];
+        private final long[] bits = new long[doubleColumns];
+        private final int[] lead = new int[doubleColumns];
+        private final int[] significant = new int[doubleColumns];
+        private final long[] data = words;
+        private final int total = rows;
+        private int row;
+        private int position;
+
+        private Cursor() {
+        }
+
+        public boolean next() {
+            if (row >= total) {
+                return false;
+            }
+            for (int c = 0; c < longColumns; c++) {
+                if (row == 0) {
+                    longs[c] = read(64);
+                } else {
+                    deltas[c] += readDeltaOfDelta();
+                    longs[c] += deltas[c];
+                }
+            }
+            for (int c = 0; c < doubleColumns; c++) {
+                if (row == 0) {
+                    bits[c] = read(64);
+                } else if (read(1) != 0) {
+                    if (read(1) != 0) {
+                        lead[c] = (int) read(5);
+                        significant[c] = (int) read(6) + 1;
+                    }
+                    int trail = 64 - lead[c] - significant[c];
+                    bits[c] ^= read(significant[c]) << trail;
+                }
+            }
+            row++;
+            return true;
+        }
+
+        private long readDeltaOfDelta() {
+            if (read(1) == 0) {
+                return 0;
+            }
+            if (read(1) == 0) {
+                return signed(read(7), 7);
+            }
+            if (read(1) == 0) {
+                return signed(read(9), 9);
+            }
+            if (read(1) == 0) {
+                return signed(read(12), 12);
+            }
+            return read(64);
+        }
+
+        private long signed(long value, int n) {
+            return (value << (64 - n)) >> (64 - n);
+        }
+
+        private long read(int n) {
+            int word = position >>> 6;
+            int offset = position & 63;
+            int free = 64 - offset;
+            long result;
+            if (n <= free) {
+                result = (data[word] << offset) >>> (64 - n);
+            } else {
+                int rest = n - free;
+                long high = data[word] & ((1L << free) - 1);
+                result = (high << rest) | (data[word + 1] >>> (64 - rest));
+            }
+            position += n;
+            return result;
+        }
+
+        public long getTimestamp() {
+            return longs[0];
+        }
+
+        public long getLong(int column) {
+            return longs[column];
+        }
+
+        public double getDouble(int column) {
+            return Double.longBitsToDouble(bits[column]);
+        }
+
+        /**
+         * double 列的原始位模式
+         */
+        public long getBits(int column) {
+            return bits[column];
+        }
+
+        /**
+         * 可空的 double 列，写入时为 null 的返回 null
+         */
+        public Double getNullableDouble(int column) {
+            return valueOf(bits[column]);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.monitor.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * 压缩时间序列的数据文件
+ * <pre>
+ * 文件 := magic(4) longColumns(1) doubleColumns(1) 记录*
+ * 记录 := [key(8)] [name(UTF)] 数据块      key、name 前各有 1 字节表示是否为 null
+ * </pre>
+ * 每次写入只在文件末尾追加新增的行组成的小数据块；文件超过上次整理后大小的两倍时，由仓储用内存中的完整数据块重写一次。
+ * 异常退出时末尾可能留下不完整的记录或文件头，读取时忽略，下一次追加前截掉。
+ */
+@Slf4j
+final class TimeSeriesFile {
+
+    private static final int MAGIC = 0x54534331;
+    private static final int HEADER_BYTES = 6;
+    private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+
+    private final Path path;
+    private final int longColumns;
+    private final int doubleColumns;
+    /**
+     * 最后一条完整记录的结束位置
+     */
+    private long validLength;
+    private long compactedLength;
+
+    /**
+     * 文件中的一条记录
+     */
+    static final class Record {
+        final Long key;
+        final String name;
+        final TimeSeriesChunk chunk;
+
+        Record(Long key, String name, TimeSeriesChunk chunk) {
+            this.key = key;
+            this.name = name;
+            this.chunk = chunk;
+        }
+    }
+
+    interface RecordConsumer {
+        void accept(Long key, String name, TimeSeriesChunk chunk);
+    }
+
+    interface RowConsumer {
+        void accept(Long key, String name, TimeSeriesChunk.Cursor row);
+    }
+
+    TimeSeriesFile(Path path, int longColumns, int doubleColumns) {
+        this.path = path;
+        this.longColumns = longColumns;
+        this.doubleColumns = doubleColumns;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    boolean exists() {
+        return Files.exists(path);
+    }
+
+    long length() {
+        return validLength;
+    }
+
+    /**
+     * 按顺序读出所有完整的记录
+     */
+    void load(RecordConsumer consumer) throws IOException {
+        validLength = 0;
+        compactedLength = 0;
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            return;
+        }
+        try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(Files.newInputStream(path), 64 * 1024));
+             DataInputStream in = new DataInputStream(counting)) {
+            if (!readHeader(in)) {
+                log.warn("Ignoring incomplete header of {}", path);
+                return;
+            }
+            validLength = HEADER_BYTES;
+            readRecords(in, counting, 0, consumer);
+        }
+        long size = Files.size(path);
+        if (size > validLength) {
+            log.warn("Ignoring {} bytes of incomplete data at the end of {}", size - validLength, path);
+        }
+        compactedLength = validLength;
+    }
+
+    /**
+     * 只读出上次读取之后追加到文件末尾的完整记录，用于从节点收到追加的数据后增量加载。
+     * 还没有读到过文件头，或文件比已读取的部分短（被整体替换或截断）时返回 false，调用方应重新全部加载
+     */
+    boolean loadAppended(RecordConsumer consumer) throws IOException {
+        if (validLength == 0 || !Files.exists(path)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < validLength) {
+                return false;
+            }
+            channel.position(validLength);
+            try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+                 DataInputStream in = new DataInputStream(counting)) {
+                readRecords(in, counting, validLength, consumer);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读到文件末尾，末尾不完整的记录留到下一次读取；start 为输入流起点在文件中的位置
+     */
+    private void readRecords(DataInputStream in, CountingInputStream counting, long start, RecordConsumer consumer) throws IOException {
+        while (true) {
+            Long key;
+            String name;
+            TimeSeriesChunk chunk;
+            try {
+                key = in.readBoolean() ? in.readLong() : null;
+                name = in.readBoolean() ? in.readUTF() : null;
+                chunk = TimeSeriesChunk.readFrom(in, longColumns, doubleColumns);
+            } catch (EOFException e) {
+                return;
+            }
+            consumer.accept(key, name, chunk);
+            validLength = start + counting.count;
+        }
+    }
+
+    /**
+     * 按 long 列 column 的升序读出所有行
+     * 同一 (key, name) 的记录在文件中按该列递增排列（追加和整理都保持这一顺序），读入后多路归并，
+     * 只在内存中保留压缩的数据块。
+     */
+    void loadInOrder(int column, RowConsumer consumer) throws IOException {
+        Map<List<Object>, List<TimeSeriesChunk>> streams = new LinkedHashMap<>();
+        load((key, name, chunk) -> streams.computeIfAbsent(Arrays.asList(key, name), k -> new ArrayList<>()).add(chunk));
+        merge(streams, column, consumer);
+    }
+
+    /**
+     * 按 long 列 column 的升序读出上次读取之后追加的行，返回值同 {@link #loadAppended(RecordConsumer)}
+     */
+    boolean loadAppendedInOrder(int column, RowConsumer consumer) throws IOException {
+        Map<List<Object>, List<TimeSeriesChunk>> streams = new LinkedHashMap<>();
+        if (!loadAppended((key, name, chunk) -> streams.computeIfAbsent(Arrays.asList(key, name), k -> new ArrayList<>()).add(chunk))) {
+            return false;
+        }
+        merge(streams, column, consumer);
+        return true;
+    }
+
+    private static void merge(Map<List<Object>, List<TimeSeriesChunk>> streams, int column, RowConsumer consumer) {
+        PriorityQueue<Stream> queue = new PriorityQueue<>(Comparator.comparingLong((Stream stream) -> stream.cursor.getLong(column)));
+        streams.forEach((id, chunks) -> {
+            Stream stream = new Stream((Long) id.get(0), (String) id.get(1), chunks.iterator());
+            if (stream.next()) {
+                queue.add(stream);
+            }
+        });
+        while (!queue.isEmpty()) {
+            Stream stream = queue.poll();
+            consumer.accept(stream.key, stream.name, stream.cursor);
+            if (stream.next()) {
+                queue.add(stream);
+            }
+        }
+    }
+
+    /**
+     * 一个 (key, name) 的全部数据块上的游标
+     */
+    private static final class Stream {
+        final Long key;
+        final String name;
+        final Iterator<TimeSeriesChunk> chunks;
+        TimeSeriesChunk.Cursor cursor;
+
+        Stream(Long key, String name, Iterator<TimeSeriesChunk> chunks) {
+            this.key = key;
+            this.name = name;
+            this.chunks = chunks;
+        }
+
+        boolean next() {
+            while (cursor == null || !cursor.next()) {
+                if (!chunks.hasNext()) {
+                    return false;
+                }
+                cursor = chunks.next().cursor();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 在文件末尾追加记录
+     */
+    void append(List<Record> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        if (validLength == 0) {
+            writeHeader(out);
+        }
+        for (Record record : records) {
+            writeRecord(out, record);
+        }
+        byte[] bytes = buffer.toByteArray();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (channel.size() != validLength) {
+                // 截掉上次异常退出留下的不完整记录
+                channel.truncate(validLength);
+            }
+            ByteBuffer data = ByteBuffer.wrap(bytes);
+            long position = validLength;
+            while (data.hasRemaining()) {
+                position += channel.write(data, position);
+            }
+        }
+        validLength += bytes.length;
+    }
+
+    /**
+     * 文件已明显大于整理后的大小，应当用完整数据块重写
+     */
+    boolean needsCompaction() {
+        return validLength > Math.max(MIN_COMPACT_BYTES, compactedLength * 2);
+    }
+
+    /**
+     * 用给定的记录整体替换文件
+     */
+    void rewrite(List<Record> records) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        writeHeader(out);
+        for (Record record : records) {
+            writeRecord(out, record);
+        }
+        byte[] bytes = buffer.toByteArray();
+        StorageFiles.replace(path, bytes);
+        validLength = bytes.length;
+        compactedLength = bytes.length;
+    }
+
+    /**
+     * 读取并校验文件头，文件头不完整（写入文件头时异常退出）返回 false，按空文件处理，下一次追加时重写
+     */
+    private boolean readHeader(DataInputStream in) throws IOException {
+        int magic;
+        int longs;
+        int doubles;
+        try {
+            magic = in.readInt();
+            longs = in.readByte();
+            doubles = in.readByte();
+        } catch (EOFException e) {
+            return false;
+        }
+        if (magic != MAGIC || longs != longColumns || doubles != doubleColumns) {
+            throw new IOException("Not a time series file or column layout changed: " + path);
+        }
+        return true;
+    }
+
+    private void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(longColumns);
+        out.writeByte(doubleColumns);
+    }
+
+    private static void writeRecord(DataOutputStream out, Record record) throws IOException {
+        out.writeBoolean(record.key != null);
+        if (record.key != null) {
+            out.writeLong(record.key);
+        }
+        out.writeBoolean(record.name != null);
+        if (record.name != null) {
+            out.writeUTF(record.name);
+        }
+        record.chunk.writeTo(out);
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -30,6 +30,7 @@ function addMessage(role, content) {
 
     // 滚动到底部
     chatMessages.scrollTop = chatMessages.scrollHeight;
+    return contentDiv;
 }
 
 function showLoading() {
@@ -74,17 +75,10 @@ async function sendMessage() {
     showLoading();
 
     try {
-        const response = await fetchJSON("/api/chat/query", {
-            method: "POST",
-            body: JSON.stringify({ query })
-        });
-
-        hideLoading();
-
-        if (response && response.response) {
-            addMessage("system", response.response);
+        if (window.EventSource) {
+            await streamAnswer(query);
         } else {
-            addMessage("system", "抱歉，未能获取到回答，请稍后重试。");
+            await queryAnswer(query);
         }
     } catch (e) {
         hideLoading();
@@ -96,6 +90,73 @@ async function sendMessage() {
     }
 }
 
+/**
+ * 通过 SSE 流式接收回答，每收到一段就追加到同一条消息中；
+ * 连接在收到任何内容前失败时退回普通查询接口
+ */
+function streamAnswer(query) {
+    return new Promise((resolve, reject) => {
+        const source = new EventSource("/api/chat/stream?query=" + encodeURIComponent(query));
+        let contentDiv = null;
+        let received = false;
+
+        const finish = () => {
+            source.close();
+            hideLoading();
+            resolve();
+        };
+
+        source.addEventListener("chunk", (event) => {
+            const text = JSON.parse(event.data).text;
+            if (!contentDiv) {
+                hideLoading();
+                contentDiv = addMessage("system", "");
+            }
+            received = true;
+            contentDiv.textContent += text;
+            const chatMessages = document.getElementById("chat-messages");
+            chatMessages.scrollTop = chatMessages.scrollHeight;
+        });
+
+        source.addEventListener("done", () => {
+            if (!received) {
+                addMessage("system", "抱歉，未能获取到回答，请稍后重试。");
+            }
+            finish();
+        });
+
+        source.addEventListener("failed", (event) => {
+            finish();
+            addMessage("system", JSON.parse(event.data).text);
+        });
+
+        source.onerror = () => {
+            source.close();
+            if (received) {
+                finish();
+                addMessage("system", "连接中断，回答可能不完整。");
+            } else {
+                queryAnswer(query).then(resolve, reject);
+            }
+        };
+    });
+}
+
+async function queryAnswer(query) {
+    const response = await fetchJSON("/api/chat/query", {
+        method: "POST",
+        body: JSON.stringify({ query })
+    });
+
+    hideLoading();
+
+    if (response && response.response) {
+        addMessage("system", response.response);
+    } else {
+        addMessage("system", "抱歉，未能获取到回答，请稍后重试。");
+    }
+}
+
 function handleKeyPress(event) {
     if (event.key === "Enter") {
         sendMessage();
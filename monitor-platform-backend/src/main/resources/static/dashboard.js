@@ -118,12 +118,43 @@ async function loadDashboardData() {
     }
 }
 
+// 平台自监控：只展示有数据的计时器和仓储规模
+async function loadSelfMetrics() {
+    const list = document.getElementById("self-metrics-list");
+    try {
+        const metrics = await fetchJSON("/api/self-metrics");
+        const rows = (metrics || []).filter(m =>
+            (m.type === "timer" && m.count > 0) || m.type === "gauge" || m.type === "counter");
+        list.innerHTML = "";
+        if (rows.length === 0) {
+            list.innerHTML = "<tr><td colspan='7' style='text-align:center;'>暂无数据</td></tr>";
+            return;
+        }
+        rows.forEach(m => {
+            const tr = document.createElement("tr");
+            tr.innerHTML = `
+                <td>${m.name}</td>
+                <td>${m.tags || ""}</td>
+                <td>${m.count != null ? formatNumber(m.count) : "-"}</td>
+                <td>${formatDecimal(m.mean)}</td>
+                <td>${formatDecimal(m.p99)}</td>
+                <td>${formatDecimal(m.max)}</td>
+                <td>${m.value != null ? formatDecimal(m.value) + (m.baseUnit ? " " + m.baseUnit : "") : "-"}</td>
+            `;
+            list.appendChild(tr);
+        });
+    } catch (e) {
+        console.error(e);
+        list.innerHTML = "<tr><td colspan='7' style='text-align:center;'>加载失败</td></tr>";
+    }
+}
+
 // 自动刷新 - 使用节流优化
 let isRefreshing = false;
 const throttledRefresh = throttle(() => {
     if (!isRefreshing) {
         isRefreshing = true;
-        loadDashboardData()
+        Promise.all([loadDashboardData(), loadSelfMetrics()])
             .finally(() => {
                 isRefreshing = false;
             })
@@ -136,4 +167,5 @@ setInterval(throttledRefresh, 30000);
 // 初始加载
 window.addEventListener("DOMContentLoaded", () => {
     loadDashboardData().catch(e => console.error(e));
+    loadSelfMetrics().catch(e => console.error(e));
 });
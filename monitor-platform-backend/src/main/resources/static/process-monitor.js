@@ -188,6 +188,27 @@ async function handleAddProcess(event) {
     }
 }
 
+/**
+ * 启停命令在后台执行，轮询任务状态直到结束；失败时展示命令输出的末尾
+ */
+async function waitForProcessJob(jobId, label) {
+    const deadline = Date.now() + 10 * 60 * 1000;
+    let job = null;
+    while (Date.now() < deadline) {
+        job = await fetchJSON(`/api/processes/jobs/${jobId}`);
+        await loadProcesses();
+        if (job.status === "success" || job.status === "failed") {
+            break;
+        }
+        await new Promise(resolve => setTimeout(resolve, 1000));
+    }
+    await loadStats();
+    if (job && job.status === "failed") {
+        const task = job.tasks[0] || {};
+        alert(`进程${label}失败：${task.message || ""}\n\n${task.output || ""}`);
+    }
+}
+
 async function startProcess(id) {
     if (!confirm("确定要启动该进程吗？")) return;
 
@@ -196,8 +217,7 @@ async function startProcess(id) {
             method: "POST"
         });
         if (result.success) {
-            await loadProcesses();
-            await loadStats();
+            await waitForProcessJob(result.jobId, "启动");
         } else {
             alert(result.message);
         }
@@ -215,8 +235,7 @@ async function stopProcess(id) {
             method: "POST"
         });
         if (result.success) {
-            await loadProcesses();
-            await loadStats();
+            await waitForProcessJob(result.jobId, "停止");
         } else {
             alert(result.message);
         }
@@ -234,8 +253,7 @@ async function restartProcess(id) {
             method: "POST"
         });
         if (result.success) {
-            await loadProcesses();
-            await loadStats();
+            await waitForProcessJob(result.jobId, "重启");
         } else {
             alert(result.message);
         }
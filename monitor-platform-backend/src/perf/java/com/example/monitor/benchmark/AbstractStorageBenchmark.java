@@ -0,0 +1,105 @@
+package com.example.monitor.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基准测试公共骨架
+ * 每个 Trial 在临时目录中生成一次数据文件并启动上下文；每轮迭代前还原数据文件，
+ * 这样写入类基准不会让数据规模在测量过程中持续膨胀。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public abstract class AbstractStorageBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private Path root;
+    private Path storageDir;
+    private Path fixtureDir;
+    private final List<String> fixtureFiles = new ArrayList<>();
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void startContext() throws IOException {
+        root = Files.createTempDirectory("monitor-bench-");
+        storageDir = Files.createDirectories(root.resolve("data"));
+        fixtureDir = Files.createDirectories(root.resolve("fixtures"));
+        prepareFixtures();
+        restoreFixtures();
+        context = BenchmarkApplication.start(storageDir);
+        bindBeans(context);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetData() throws IOException {
+        restoreFixtures();
+        reload();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContext() throws IOException {
+        if (context != null) {
+            context.close();
+        }
+        BenchmarkFixtures.deleteRecursively(root);
+    }
+
+    /**
+     * 通过 {@link #fixture(String, List)} 登记本基准需要的数据文件
+     */
+    protected abstract void prepareFixtures() throws IOException;
+
+    protected abstract void bindBeans(ApplicationContext context);
+
+    /**
+     * 数据文件还原后调用，内存型仓储需要在这里重新加载
+     */
+    protected void reload() {
+    }
+
+    protected void fixture(String fileName, List<?> rows) throws IOException {
+        BenchmarkFixtures.write(fixtureDir.resolve(fileName), rows);
+        fixtureFiles.add(fileName);
+    }
+
+    /**
+     * 时序仓储的数据文件：先生成旧版的 JSON，由仓储自己的迁移转换成 .tsdb 后登记。
+     * 仓储只在 .tsdb 不存在时导入 JSON，登记 JSON 的话每轮迭代前的还原不起作用。
+     */
+    protected void timeSeriesFixture(String legacyFileName, List<?> rows, Migration migration) throws IOException {
+        Path scratch = Files.createTempDirectory(root, "migrate-");
+        BenchmarkFixtures.write(scratch.resolve(legacyFileName), rows);
+        migration.migrate(scratch.toString());
+        String fileName = legacyFileName.substring(0, legacyFileName.lastIndexOf('.')) + ".tsdb";
+        Files.move(scratch.resolve(fileName), fixtureDir.resolve(fileName));
+        fixtureFiles.add(fileName);
+    }
+
+    /**
+     * 在给定的数据目录上创建一次仓储，触发旧文件迁移
+     */
+    protected interface Migration {
+        void migrate(String storageDir) throws IOException;
+    }
+
+    private void restoreFixtures() throws IOException {
+        for (String fileName : fixtureFiles) {
+            Files.copy(fixtureDir.resolve(fileName), storageDir.resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.monitor.benchmark;
+
+import com.example.monitor.model.AiAgent;
+import com.example.monitor.storage.AiAgentFileRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.context.ApplicationContext;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * AI Agent 仓储：按索引查询、单条保存，以及多线程并发保存时的组提交效果
+ */
+@State(Scope.Benchmark)
+public class AiAgentRepositoryBenchmark extends AbstractStorageBenchmark {
+
+    private AiAgentFileRepository agentRepository;
+
+    @Override
+    protected void prepareFixtures() throws IOException {
+        fixture("ai-agents.json", BenchmarkFixtures.aiAgents(size));
+    }
+
+    @Override
+    protected void bindBeans(ApplicationContext context) {
+        agentRepository = context.getBean(AiAgentFileRepository.class);
+    }
+
+    @Override
+    protected void reload() {
+        agentRepository.init();
+    }
+
+    @Benchmark
+    public AiAgent findById() {
+        return agentRepository.findById((long) size / 2);
+    }
+
+    @Benchmark
+    public List<AiAgent> findByTargetId() {
+        return agentRepository.findByTargetId(1L);
+    }
+
+    @Benchmark
+    public List<AiAgent> findByStatus() {
+        return agentRepository.findByStatus("active");
+    }
+
+    @Benchmark
+    public AiAgent saveAgent() {
+        AiAgent agent = new AiAgent();
+        agent.setName("bench-agent");
+        agent.setType("server");
+        agent.setStatus("active");
+        agent.setTargetId(1L);
+        return agentRepository.save(agent);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public AiAgent saveAgentConcurrently() {
+        return saveAgent();
+    }
+}
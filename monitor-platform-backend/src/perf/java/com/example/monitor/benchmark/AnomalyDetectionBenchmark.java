@@ -0,0 +1,40 @@
+package com.example.monitor.benchmark;
+
+import com.example.monitor.model.AnomalyEvent;
+import com.example.monitor.service.AnomalyDetectionService;
+import com.example.monitor.storage.MetricSampleFileRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.context.ApplicationContext;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 全量异常检测：size 条指标样本分布在固定数量的服务上
+ */
+@State(Scope.Benchmark)
+public class AnomalyDetectionBenchmark extends AbstractStorageBenchmark {
+
+    private AnomalyDetectionService anomalyDetectionService;
+
+    @Override
+    protected void prepareFixtures() throws IOException {
+        fixture("services.json", BenchmarkFixtures.services(BenchmarkFixtures.SERVICE_COUNT));
+        fixture("servers.json", BenchmarkFixtures.servers(BenchmarkFixtures.SERVER_COUNT));
+        timeSeriesFixture("metrics.json", BenchmarkFixtures.metrics(size, BenchmarkFixtures.SERVICE_COUNT),
+                MetricSampleFileRepository::new);
+        fixture("anomalies.json", BenchmarkFixtures.anomalies(0, BenchmarkFixtures.SERVICE_COUNT));
+    }
+
+    @Override
+    protected void bindBeans(ApplicationContext context) {
+        anomalyDetectionService = context.getBean(AnomalyDetectionService.class);
+    }
+
+    @Benchmark
+    public List<AnomalyEvent> detectForAllServices() {
+        return anomalyDetectionService.detectForAllServices();
+    }
+}
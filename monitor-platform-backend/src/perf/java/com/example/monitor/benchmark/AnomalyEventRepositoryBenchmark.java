@@ -0,0 +1,52 @@
+package com.example.monitor.benchmark;
+
+import com.example.monitor.model.AnomalyEvent;
+import com.example.monitor.storage.AnomalyEventFileRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.context.ApplicationContext;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+@State(Scope.Benchmark)
+public class AnomalyEventRepositoryBenchmark extends AbstractStorageBenchmark {
+
+    private AnomalyEventFileRepository repository;
+
+    @Override
+    protected void prepareFixtures() throws IOException {
+        fixture("anomalies.json", BenchmarkFixtures.anomalies(size, BenchmarkFixtures.SERVICE_COUNT));
+    }
+
+    @Override
+    protected void bindBeans(ApplicationContext context) {
+        repository = context.getBean(AnomalyEventFileRepository.class);
+    }
+
+    @Benchmark
+    public AnomalyEvent save() {
+        AnomalyEvent event = new AnomalyEvent();
+        event.setServiceId(1L);
+        event.setMetricName(BenchmarkFixtures.METRIC_NAME);
+        event.setStartTime(new Date());
+        event.setEndTime(new Date());
+        event.setSeverity("high");
+        event.setScore(5.0);
+        event.setReason("benchmark");
+        event.setCreatedAt(new Date());
+        return repository.save(event);
+    }
+
+    @Benchmark
+    public List<AnomalyEvent> findAll() {
+        return repository.findAll();
+    }
+
+    @Benchmark
+    public List<AnomalyEvent> findRecentByService() {
+        return repository.findRecentByService(1L, 100);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.monitor.benchmark;
+
+import com.example.monitor.model.ApiAuthKeyModel;
+import com.example.monitor.service.ApiAuthService;
+import com.example.monitor.storage.ApiAuthKeyFileRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * API 密钥校验耗时：缓存命中的有效 / 无效密钥，以及每次都要计算摘要的未缓存密钥
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class ApiAuthBenchmark {
+
+    private static final int KEYS = 1000;
+
+    private Path root;
+    private ApiAuthService service;
+    private String[] secrets;
+    private String[] unknown;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("monitor-bench-");
+        ApiAuthKeyFileRepository repository = new ApiAuthKeyFileRepository();
+        ReflectionTestUtils.setField(repository, "storageDir", root.toString());
+        repository.init();
+        service = new ApiAuthService(repository);
+        ReflectionTestUtils.setField(service, "cacheSize", 4096);
+        service.init();
+
+        secrets = new String[KEYS];
+        unknown = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            ApiAuthKeyModel request = new ApiAuthKeyModel();
+            request.setName("key-" + i);
+            request.setServiceId((long) (i % 10));
+            secrets[i] = service.createKey(request).getSecret();
+            unknown[i] = "mk_unknown-" + i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public ApiAuthService.AuthResult cachedValid() {
+        int i = next++ % KEYS;
+        // 请求中的密钥每次都是新的字符串对象，不能复用已缓存的哈希值
+        return service.verify(new String(secrets[i]), (long) (i % 10));
+    }
+
+    @Benchmark
+    public ApiAuthService.AuthResult cachedUnknown() {
+        return service.verify(new String(unknown[next++ % KEYS]), null);
+    }
+
+    @Benchmark
+    public ApiAuthService.AuthResult uncached() {
+        return service.verify("mk_random-" + next++, null);
+    }
+}
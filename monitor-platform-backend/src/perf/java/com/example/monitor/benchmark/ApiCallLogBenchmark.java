@@ -0,0 +1,56 @@
+package com.example.monitor.benchmark;
+
+import com.example.monitor.model.ApiCallLogModel;
+import com.example.monitor.storage.ApiCallLogFileRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * API 调用日志记录开销：多个线程同时记录时单次 publish 的耗时
+ * 写入线程同时在后台落盘；队列满时 publish 直接丢弃，结果中的耗时即调用方承受的全部开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ApiCallLogBenchmark {
+
+    private Path root;
+    private ApiCallLogFileRepository repository;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        root = Files.createTempDirectory("monitor-bench-");
+        repository = new ApiCallLogFileRepository();
+        ReflectionTestUtils.setField(repository, "storageDir", root.toString());
+        ReflectionTestUtils.setField(repository, "bufferSize", 1 << 16);
+        ReflectionTestUtils.setField(repository, "batchSize", 4096);
+        ReflectionTestUtils.setField(repository, "retentionHours", 24L);
+        repository.init();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        repository.shutdown();
+        BenchmarkFixtures.deleteRecursively(root);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean publish() {
+        ApiCallLogModel call = new ApiCallLogModel();
+        call.setEndpointId(1L);
+        call.setMethod("GET");
+        call.setPath("/orders/{id}");
+        call.setStatusCode(200);
+        call.setDurationMs(3.2);
+        return repository.publish(call);
+    }
+}
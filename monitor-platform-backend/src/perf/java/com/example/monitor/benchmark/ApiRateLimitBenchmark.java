@@ -0,0 +1,47 @@
+package com.example.monitor.benchmark;
+
+import com.example.monitor.service.ApiRateLimitService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 限流判断耗时：每个线程使用各自的（密钥，接口）桶，以及所有线程争用同一个桶
+ * 用 -t 调整线程数观察吞吐是否随核数增长
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(4)
+public class ApiRateLimitBenchmark {
+
+    private static final AtomicLong KEY_IDS = new AtomicLong();
+
+    private ApiRateLimitService limiter;
+
+    @State(Scope.Thread)
+    public static class Caller {
+        long keyId = KEY_IDS.incrementAndGet();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        limiter = new ApiRateLimitService();
+        ReflectionTestUtils.setField(limiter, "idleSeconds", 300L);
+    }
+
+    @Benchmark
+    public long ownBucket(Caller caller) {
+        return limiter.tryAcquire(caller.keyId, "GET /orders/{id}", 1_000_000.0, 1000);
+    }
+
+    @Benchmark
+    public long sharedBucket() {
+        return limiter.tryAcquire(0L, "GET /orders/{id}", 1_000_000.0, 1000);
+    }
+}
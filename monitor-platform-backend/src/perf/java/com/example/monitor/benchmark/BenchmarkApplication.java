@@ -0,0 +1,34 @@
+package com.example.monitor.benchmark;
+
+import com.example.monitor.MonitorPlatformApplication;
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+
+import java.nio.file.Path;
+
+/**
+ * 基准测试使用的 Spring 上下文：与正式应用装配相同的 Bean，
+ * 但不启用 Web 容器和定时任务，避免后台任务干扰测量结果。
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@ComponentScan(basePackages = "com.example.monitor",
+        excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = MonitorPlatformApplication.class))
+public class BenchmarkApplication {
+
+    public static ConfigurableApplicationContext start(Path storageDir) {
+        return new SpringApplicationBuilder(BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                // 以命令行参数传入，优先于 application.yml 中的 monitor.storage-dir；properties() 只是默认值，会被覆盖
+                .run("--monitor.storage-dir=" + storageDir.toAbsolutePath(),
+                        "--logging.level.root=WARN");
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.monitor.benchmark;
+
+import com.example.monitor.model.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * 基准测试数据生成
+ */
+public final class BenchmarkFixtures {
+
+    public static final int SERVICE_COUNT = 20;
+    public static final int SERVER_COUNT = 20;
+    public static final int PROCESS_COUNT = 50;
+    public static final String METRIC_NAME = "responseTime";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String[] ENVS = {"prod", "test", "dev"};
+    private static final String[] SERVER_TYPES = {"app", "db", "cache", "message-queue"};
+    private static final String[] SEVERITIES = {"low", "medium", "high"};
+    private static final String[] THREAD_STATES = {"RUNNABLE", "WAITING", "TIMED_WAITING", "BLOCKED"};
+    private static final String[] CLASSES = {
+        "java.util.HashMap", "java.util.concurrent.ThreadPoolExecutor", "java.lang.Object",
+        "com.mysql.cj.jdbc.MysqlIO", "com.zaxxer.hikari.pool.HikariPool", "com.example.app.service"
+    };
+    private static final String[] METHODS = {"put", "getTask", "wait", "sendCommand", "getConnection", "execute"};
+
+    private BenchmarkFixtures() {
+    }
+
+    public static void write(Path file, List<?> rows) throws IOException {
+        MAPPER.writeValue(file.toFile(), rows);
+    }
+
+    public static void deleteRecursively(Path root) throws IOException {
+        if (root == null || !Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    public static List<ServiceInfo> services(int count) {
+        List<ServiceInfo> list = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            ServiceInfo s = new ServiceInfo();
+            s.setId((long) i);
+            s.setName("service-" + i);
+            s.setEnv(ENVS[i % ENVS.length]);
+            s.setDescription("benchmark service " + i);
+            s.setServerId((long) (i % SERVER_COUNT) + 1);
+            s.setCreatedAt(new Date());
+            list.add(s);
+        }
+        return list;
+    }
+
+    public static List<ServerInfo> servers(int count) {
+        List<ServerInfo> list = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            ServerInfo s = new ServerInfo();
+            s.setId((long) i);
+            s.setName("server-" + i);
+            s.setIp("10.0." + (i / 250) + "." + (i % 250));
+            s.setType(SERVER_TYPES[i % SERVER_TYPES.length]);
+            s.setEnv(ENVS[i % ENVS.length]);
+            s.setCpuCores(8);
+            s.setTotalMemory(16.0);
+            s.setTotalDisk(500.0);
+            s.setStatus(i % 10 == 0 ? "offline" : "online");
+            s.setCreatedAt(new Date());
+            s.setUpdatedAt(new Date());
+            list.add(s);
+        }
+        return list;
+    }
+
+    public static List<ProcessInfo> processes(int count) {
+        List<ProcessInfo> list = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            ProcessInfo p = new ProcessInfo();
+            p.setId((long) i);
+            p.setServerId((long) (i % SERVER_COUNT) + 1);
+            p.setName("process-" + i);
+            p.setPid(String.valueOf(1000 + i));
+            p.setType("app");
+            p.setStatus(i % 5 == 0 ? "stopped" : "running");
+            p.setCreatedAt(new Date());
+            p.setUpdatedAt(new Date());
+            list.add(p);
+        }
+        return list;
+    }
+
+    public static List<AiAgent> aiAgents(int count) {
+        String[] types = {"server", "process", "thread", "hotspot"};
+        List<AiAgent> list = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            AiAgent a = new AiAgent();
+            a.setId((long) i);
+            a.setName("agent-" + i);
+            a.setType(types[i % types.length]);
+            a.setStatus(i % 4 == 0 ? "idle" : "active");
+            a.setTargetId((long) (i % PROCESS_COUNT) + 1);
+            a.setConfig("{\"intervalSeconds\":60}");
+            a.setHealthScore(100);
+            a.setCreatedAt(new Date());
+            a.setUpdatedAt(new Date());
+            list.add(a);
+        }
+        return list;
+    }
+
+    /**
+     * 生成按服务轮转、时间间隔 10 秒的响应时间样本，最后一个样本为当前时间
+     */
+    public static List<MetricSample> metrics(int rows, int services) {
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        List<MetricSample> list = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            MetricSample m = new MetricSample();
+            m.setId((long) i + 1);
+            m.setServiceId((long) (i % services) + 1);
+            m.setMetricName(METRIC_NAME);
+            m.setTimestamp(new Date(now - (long) (rows - i) / services * 10_000L));
+            m.setValue(100 + random.nextDouble() * 200);
+            list.add(m);
+        }
+        return list;
+    }
+
+    public static List<AnomalyEvent> anomalies(int rows, int services) {
+        Random random = new Random(7);
+        long now = System.currentTimeMillis();
+        List<AnomalyEvent> list = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            AnomalyEvent e = new AnomalyEvent();
+            e.setId((long) i + 1);
+            e.setServiceId((long) (i % services) + 1);
+            e.setMetricName(METRIC_NAME);
+            Date time = new Date(now - (long) (rows - i) * 60_000L);
+            e.setStartTime(time);
+            e.setEndTime(time);
+            e.setCreatedAt(time);
+            e.setSeverity(SEVERITIES[random.nextInt(SEVERITIES.length)]);
+            e.setScore(3 + random.nextDouble() * 5);
+            e.setReason("benchmark anomaly " + i);
+            list.add(e);
+        }
+        return list;
+    }
+
+    public static List<ServerResource> serverResources(int rows, int servers) {
+        Random random = new Random(11);
+        long now = System.currentTimeMillis();
+        List<ServerResource> list = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            ServerResource r = new ServerResource();
+            r.setId((long) i + 1);
+            r.setServerId((long) (i % servers) + 1);
+            r.setCpuUsage(random.nextDouble() * 100);
+            r.setMemoryUsage(random.nextDouble() * 100);
+            r.setMemoryUsed(random.nextDouble() * 16);
+            r.setDiskUsage(random.nextDouble() * 100);
+            r.setDiskUsed(random.nextDouble() * 500);
+            r.setNetworkIn(random.nextDouble() * 50);
+            r.setNetworkOut(random.nextDouble() * 30);
+            r.setLoadAverage(random.nextDouble() * 4);
+            r.setTimestamp(new Date(now - (long) (rows - i) / servers * 60_000L));
+            list.add(r);
+        }
+        return list;
+    }
+
+    public static List<ProcessResource> processResources(int rows, int processes) {
+        Random random = new Random(13);
+        long now = System.currentTimeMillis();
+        List<ProcessResource> list = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            ProcessResource r = new ProcessResource();
+            r.setId((long) i + 1);
+            r.setProcessId((long) (i % processes) + 1);
+            r.setCpuUsage(random.nextDouble() * 30);
+            r.setMemoryUsage(50 + random.nextDouble() * 450);
+            r.setMemoryPercent(random.nextDouble() * 15);
+            r.setThreadCount(5 + random.nextInt(46));
+            r.setHandleCount(50 + random.nextInt(451));
+            r.setDiskReadRate(random.nextDouble() * 100);
+            r.setDiskWriteRate(random.nextDouble() * 50);
+            r.setNetworkReceiveRate(random.nextDouble() * 200);
+            r.setNetworkSendRate(random.nextDouble() * 100);
+            r.setUptime(3600L + i);
+            r.setStatus("running");
+            r.setTimestamp(new Date(now - (long) (rows - i) / processes * 60_000L));
+            list.add(r);
+        }
+        return list;
+    }
+
+    public static List<ThreadInfo> threads(long processId, int count) {
+        Random random = new Random(17);
+        List<ThreadInfo> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ThreadInfo t = new ThreadInfo();
+            t.setId((long) i + 1);
+            t.setProcessId(processId);
+            t.setThreadId(1000L + i);
+            t.setThreadName("worker-" + i);
+            t.setState(THREAD_STATES[random.nextInt(THREAD_STATES.length)]);
+            t.setPriority(5);
+            t.setDaemon(false);
+            t.setAlive(true);
+            t.setInterrupted(false);
+            t.setCpuTime((long) random.nextInt(100_000));
+            t.setCurrentClass(CLASSES[random.nextInt(CLASSES.length)]);
+            t.setCurrentMethod(METHODS[random.nextInt(METHODS.length)]);
+            t.setTimestamp(new Date());
+            list.add(t);
+        }
+        return list;
+    }
+
+    /**
+     * 生成 rows 条堆栈帧，均匀分布到 threads 个线程上
+     */
+    public static List<ThreadStack> threadStacks(long processId, int threads, int rows) {
+        Random random = new Random(19);
+        int depthPerThread = Math.max(1, rows / Math.max(1, threads));
+        List<ThreadStack> list = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            ThreadStack s = new ThreadStack();
+            s.setId((long) i + 1);
+            s.setProcessId(processId);
+            s.setThreadId(1000L + (i / depthPerThread) % Math.max(1, threads));
+            s.setDepth(i % depthPerThread);
+            s.setClassName(CLASSES[random.nextInt(CLASSES.length)]);
+            s.setMethodName(METHODS[random.nextInt(METHODS.length)]);
+            s.setFileName("Benchmark.java");
+            s.setLineNumber(random.nextInt(500));
+            s.setNativeMethod(false);
+            s.setStackTrace("at " + s.getClassName() + "." + s.getMethodName() + "(Benchmark.java)");
+            s.setTimestamp(new Date());
+            list.add(s);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.monitor.benchmark;
+
+import com.example.monitor.model.DashboardSummary;
+import com.example.monitor.service.DashboardService;
+import com.example.monitor.storage.MetricSampleFileRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.context.ApplicationContext;
+
+import java.io.IOException;
+
+/**
+ * 监控大屏汇总：size 条指标样本，异常事件为其十分之一
+ */
+@State(Scope.Benchmark)
+public class DashboardBenchmark extends AbstractStorageBenchmark {
+
+    private DashboardService dashboardService;
+
+    @Override
+    protected void prepareFixtures() throws IOException {
+        fixture("services.json", BenchmarkFixtures.services(BenchmarkFixtures.SERVICE_COUNT));
+        fixture("servers.json", BenchmarkFixtures.servers(BenchmarkFixtures.SERVER_COUNT));
+        timeSeriesFixture("metrics.json", BenchmarkFixtures.metrics(size, BenchmarkFixtures.SERVICE_COUNT),
+                MetricSampleFileRepository::new);
+        fixture("anomalies.json", BenchmarkFixtures.anomalies(size / 10, BenchmarkFixtures.SERVICE_COUNT));
+    }
+
+    @Override
+    protected void bindBeans(ApplicationContext context) {
+        dashboardService = context.getBean(DashboardService.class);
+    }
+
+    @Benchmark
+    public DashboardSummary getSummary() {
+        return dashboardService.getSummary();
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.monitor.benchmark;
+
+import com.example.monitor.storage.IdSequenceService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发号耗时：绝大多数调用只做一次原子自增，每用完一块才写一次序列文件
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(4)
+public class IdSequenceBenchmark {
+
+    private Path root;
+    private IdSequenceService.Sequence sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("monitor-bench-");
+        sequence = new IdSequenceService(root.toFile(), IdSequenceService.DEFAULT_BLOCK_SIZE).sequence("bench");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public long next() {
+        return sequence.next();
+    }
+}
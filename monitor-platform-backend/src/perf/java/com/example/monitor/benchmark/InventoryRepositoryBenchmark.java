@@ -0,0 +1,93 @@
+package com.example.monitor.benchmark;
+
+import com.example.monitor.model.ProcessInfo;
+import com.example.monitor.model.ServerInfo;
+import com.example.monitor.model.ServiceInfo;
+import com.example.monitor.storage.ProcessInfoFileRepository;
+import com.example.monitor.storage.ServerInfoFileRepository;
+import com.example.monitor.storage.ServiceInfoFileRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.context.ApplicationContext;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 服务、服务器、进程等台账类仓储
+ */
+@State(Scope.Benchmark)
+public class InventoryRepositoryBenchmark extends AbstractStorageBenchmark {
+
+    private ServiceInfoFileRepository serviceInfoRepository;
+    private ServerInfoFileRepository serverInfoRepository;
+    private ProcessInfoFileRepository processInfoRepository;
+
+    @Override
+    protected void prepareFixtures() throws IOException {
+        fixture("services.json", BenchmarkFixtures.services(size));
+        fixture("servers.json", BenchmarkFixtures.servers(size));
+        fixture("processes.json", BenchmarkFixtures.processes(size));
+    }
+
+    @Override
+    protected void bindBeans(ApplicationContext context) {
+        serviceInfoRepository = context.getBean(ServiceInfoFileRepository.class);
+        serverInfoRepository = context.getBean(ServerInfoFileRepository.class);
+        processInfoRepository = context.getBean(ProcessInfoFileRepository.class);
+    }
+
+    @Override
+    protected void reload() {
+        serverInfoRepository.init();
+        processInfoRepository.init();
+    }
+
+    @Benchmark
+    public ServiceInfo saveService() {
+        ServiceInfo service = new ServiceInfo();
+        service.setName("bench-service");
+        service.setEnv("prod");
+        return serviceInfoRepository.save(service);
+    }
+
+    @Benchmark
+    public List<ServiceInfo> findAllServices() {
+        return serviceInfoRepository.findAll();
+    }
+
+    @Benchmark
+    public Optional<ServiceInfo> findServiceById() {
+        return serviceInfoRepository.findById((long) size / 2);
+    }
+
+    @Benchmark
+    public ServerInfo saveServer() {
+        ServerInfo server = new ServerInfo();
+        server.setName("bench-server");
+        server.setType("app");
+        server.setStatus("online");
+        return serverInfoRepository.save(server);
+    }
+
+    @Benchmark
+    public List<ServerInfo> findServersByStatus() {
+        return serverInfoRepository.findByStatus("online");
+    }
+
+    @Benchmark
+    public ProcessInfo saveProcess() {
+        ProcessInfo process = new ProcessInfo();
+        process.setServerId(1L);
+        process.setName("bench-process");
+        process.setStatus("running");
+        return processInfoRepository.save(process);
+    }
+
+    @Benchmark
+    public List<ProcessInfo> findProcessesByServerId() {
+        return processInfoRepository.findByServerId(1L);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.monitor.benchmark;
+
+import com.example.monitor.model.MetricSample;
+import com.example.monitor.storage.MetricSampleFileRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.context.ApplicationContext;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+@State(Scope.Benchmark)
+public class MetricSampleRepositoryBenchmark extends AbstractStorageBenchmark {
+
+    private MetricSampleFileRepository repository;
+
+    @Override
+    protected void prepareFixtures() throws IOException {
+        timeSeriesFixture("metrics.json", BenchmarkFixtures.metrics(size, BenchmarkFixtures.SERVICE_COUNT),
+                MetricSampleFileRepository::new);
+    }
+
+    @Override
+    protected void bindBeans(ApplicationContext context) {
+        repository = context.getBean(MetricSampleFileRepository.class);
+    }
+
+    @Override
+    protected void reload() {
+        repository.reload();
+    }
+
+    @Benchmark
+    public MetricSample save() {
+        MetricSample sample = new MetricSample();
+        sample.setServiceId(1L);
+        sample.setMetricName(BenchmarkFixtures.METRIC_NAME);
+        sample.setTimestamp(new Date());
+        sample.setValue(150.0);
+        return repository.save(sample);
+    }
+
+    @Benchmark
+    public List<MetricSample> findRecentByServiceAndMetric() {
+        return repository.findRecentByServiceAndMetric(1L, BenchmarkFixtures.METRIC_NAME, 50);
+    }
+
+    @Benchmark
+    public List<MetricSample> findRecentByServiceId() {
+        return repository.findRecentByServiceId(1L, 50);
+    }
+}
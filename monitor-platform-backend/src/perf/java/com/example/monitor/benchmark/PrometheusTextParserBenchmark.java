@@ -0,0 +1,50 @@
+package com.example.monitor.benchmark;
+
+import com.example.monitor.ingest.PrometheusTextParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文本指标解析吞吐：每次调用解析一份含 samples 行的导出文本，结果按 样本数/秒 换算
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class PrometheusTextParserBenchmark {
+
+    @Param({"1000", "100000"})
+    public int samples;
+
+    private byte[] payload;
+    private final PrometheusTextParser parser = new PrometheusTextParser();
+
+    @Setup(Level.Trial)
+    public void generate() {
+        Random random = new Random(3);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < samples; i++) {
+            if (i % 10 == 0) {
+                text.append("# TYPE http_request_duration_seconds histogram\n");
+            }
+            text.append("http_request_duration_seconds_bucket{service=\"svc-").append(i % 50)
+                .append("\",method=\"GET\",le=\"").append(0.005 * (i % 10 + 1)).append("\"} ")
+                .append(random.nextInt(100_000)).append('\n');
+        }
+        payload = text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long parse(Blackhole blackhole) throws IOException {
+        return parser.parse(new ByteArrayInputStream(payload), false,
+            (series, value, timestampMs) -> blackhole.consume(value)).getSamples();
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.monitor.benchmark;
+
+import com.example.monitor.model.ProcessResource;
+import com.example.monitor.model.ServerResource;
+import com.example.monitor.storage.ProcessResourceFileRepository;
+import com.example.monitor.storage.ServerResourceFileRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 服务器资源、进程资源时序仓储
+ */
+@State(Scope.Benchmark)
+public class ResourceRepositoryBenchmark extends AbstractStorageBenchmark {
+
+    private ServerResourceFileRepository serverResourceRepository;
+    private ProcessResourceFileRepository processResourceRepository;
+
+    @Override
+    protected void prepareFixtures() throws IOException {
+        timeSeriesFixture("server-resources.json", BenchmarkFixtures.serverResources(size, BenchmarkFixtures.SERVER_COUNT),
+                dir -> migrate(new ServerResourceFileRepository(), dir));
+        timeSeriesFixture("process-resources.json", BenchmarkFixtures.processResources(size, BenchmarkFixtures.PROCESS_COUNT),
+                dir -> migrate(new ProcessResourceFileRepository(), dir));
+    }
+
+    @Override
+    protected void bindBeans(ApplicationContext context) {
+        serverResourceRepository = context.getBean(ServerResourceFileRepository.class);
+        processResourceRepository = context.getBean(ProcessResourceFileRepository.class);
+    }
+
+    /**
+     * 重新加载沿用原有的堆外存储，不重复分配内存和注册指标
+     */
+    @Override
+    protected void reload() {
+        serverResourceRepository.reload();
+        processResourceRepository.reload();
+    }
+
+    private static void migrate(Object repository, String storageDir) {
+        ReflectionTestUtils.setField(repository, "storageDir", storageDir);
+        ReflectionTestUtils.invokeMethod(repository, "init");
+    }
+
+    @Benchmark
+    public ServerResource saveServerResource() {
+        ServerResource resource = new ServerResource();
+        resource.setServerId(1L);
+        resource.setCpuUsage(50.0);
+        resource.setMemoryUsage(60.0);
+        resource.setLoadAverage(1.5);
+        return serverResourceRepository.save(resource);
+    }
+
+    @Benchmark
+    public List<ServerResource> findRecentByServerId() {
+        return serverResourceRepository.findRecentByServerId(1L, 50);
+    }
+
+    @Benchmark
+    public List<ServerResource> findRecentServerResources() {
+        return serverResourceRepository.findRecent(BenchmarkFixtures.SERVER_COUNT);
+    }
+
+    @Benchmark
+    public ProcessResource saveProcessResource() {
+        ProcessResource resource = new ProcessResource();
+        resource.setProcessId(1L);
+        resource.setCpuUsage(10.0);
+        resource.setThreadCount(32);
+        resource.setStatus("running");
+        return processResourceRepository.save(resource);
+    }
+
+    @Benchmark
+    public List<ProcessResource> findRecentByProcessId() {
+        return processResourceRepository.findRecentByProcessId(1L, 50);
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.monitor.benchmark;
+
+import com.example.monitor.model.ThreadHotspotAnalysis;
+import com.example.monitor.service.ThreadHotspotAnalysisService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.context.ApplicationContext;
+
+import java.io.IOException;
+
+/**
+ * 线程热点分析：size 条堆栈帧，每个线程 20 帧
+ */
+@State(Scope.Benchmark)
+public class ThreadHotspotAnalysisBenchmark extends AbstractStorageBenchmark {
+
+    private static final long PROCESS_ID = 1L;
+
+    private ThreadHotspotAnalysisService hotspotAnalysisService;
+
+    @Override
+    protected void prepareFixtures() throws IOException {
+        int threads = Math.max(1, size / 20);
+        fixture("threads.json", BenchmarkFixtures.threads(PROCESS_ID, threads));
+        fixture("thread-stacks.json", BenchmarkFixtures.threadStacks(PROCESS_ID, threads, size));
+    }
+
+    @Override
+    protected void bindBeans(ApplicationContext context) {
+        hotspotAnalysisService = context.getBean(ThreadHotspotAnalysisService.class);
+    }
+
+    @Benchmark
+    public ThreadHotspotAnalysis analyze() {
+        return hotspotAnalysisService.analyze(PROCESS_ID);
+    }
+}
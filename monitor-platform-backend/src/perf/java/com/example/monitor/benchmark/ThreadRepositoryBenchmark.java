@@ -0,0 +1,74 @@
+package com.example.monitor.benchmark;
+
+import com.example.monitor.model.ThreadInfo;
+import com.example.monitor.model.ThreadStack;
+import com.example.monitor.storage.ThreadInfoFileRepository;
+import com.example.monitor.storage.ThreadStackFileRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.context.ApplicationContext;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 线程、线程堆栈仓储
+ */
+@State(Scope.Benchmark)
+public class ThreadRepositoryBenchmark extends AbstractStorageBenchmark {
+
+    private static final long PROCESS_ID = 1L;
+
+    private ThreadInfoFileRepository threadInfoRepository;
+    private ThreadStackFileRepository threadStackRepository;
+
+    @Override
+    protected void prepareFixtures() throws IOException {
+        fixture("threads.json", BenchmarkFixtures.threads(PROCESS_ID, size));
+        fixture("thread-stacks.json", BenchmarkFixtures.threadStacks(PROCESS_ID, Math.max(1, size / 20), size));
+    }
+
+    @Override
+    protected void bindBeans(ApplicationContext context) {
+        threadInfoRepository = context.getBean(ThreadInfoFileRepository.class);
+        threadStackRepository = context.getBean(ThreadStackFileRepository.class);
+    }
+
+    @Override
+    protected void reload() {
+        threadInfoRepository.init();
+        threadStackRepository.init();
+    }
+
+    @Benchmark
+    public ThreadInfo saveThread() {
+        ThreadInfo thread = new ThreadInfo();
+        thread.setProcessId(PROCESS_ID);
+        thread.setThreadId(1L);
+        thread.setThreadName("bench");
+        thread.setState("RUNNABLE");
+        return threadInfoRepository.save(thread);
+    }
+
+    @Benchmark
+    public List<ThreadInfo> findLatestByProcessId() {
+        return threadInfoRepository.findLatestByProcessId(PROCESS_ID);
+    }
+
+    @Benchmark
+    public ThreadStack saveStack() {
+        ThreadStack stack = new ThreadStack();
+        stack.setProcessId(PROCESS_ID);
+        stack.setThreadId(1000L);
+        stack.setDepth(0);
+        stack.setClassName("java.lang.Thread");
+        stack.setMethodName("run");
+        return threadStackRepository.save(stack);
+    }
+
+    @Benchmark
+    public List<ThreadStack> findStacksByThreadId() {
+        return threadStackRepository.findByThreadId(PROCESS_ID, 1000L);
+    }
+}
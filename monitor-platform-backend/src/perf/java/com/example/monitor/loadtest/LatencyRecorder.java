@@ -0,0 +1,118 @@
+package com.example.monitor.loadtest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 线程安全的对数-线性延迟直方图（微秒），相对误差约 6%
+ * 记录只做一次原子自增；{@link #drain()} 取出当前区间的数据并清零，用于按时间输出报告。
+ */
+public class LatencyRecorder {
+
+    private static final int LINEAR_BUCKETS = 32;
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (64 - 5) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder errors = new LongAdder();
+    private final Histogram total = new Histogram();
+
+    public LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long micros, boolean success) {
+        counts.incrementAndGet(indexOf(Math.max(0, micros)));
+        if (!success) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * 取出自上次调用以来的区间直方图，并累加到总直方图
+     */
+    public synchronized Histogram drain() {
+        Histogram interval = new Histogram();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long c = counts.getAndSet(i, 0);
+            interval.counts[i] = c;
+            interval.count += c;
+        }
+        interval.errors = errors.sumThenReset();
+        total.add(interval);
+        return interval;
+    }
+
+    public synchronized Histogram total() {
+        Histogram copy = new Histogram();
+        copy.add(total);
+        return copy;
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (magnitude - 5) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundOf(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int magnitude = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 5;
+        int sub = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (magnitude - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * 直方图快照
+     */
+    public static class Histogram {
+        private final long[] counts = new long[BUCKET_COUNT];
+        private long count;
+        private long errors;
+
+        void add(Histogram other) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            errors += other.errors;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * 百分位延迟（微秒），q 取值 0-1
+         */
+        public long percentile(double q) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(q * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    return upperBoundOf(i);
+                }
+            }
+            return upperBoundOf(BUCKET_COUNT - 1);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.example.monitor.loadtest;
+
+import com.example.monitor.MonitorPlatformApplication;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * 合成负载与浸泡测试工具
+ * 在本机启动完整应用（或指向 --target 指定的本机实例），模拟 N 台服务器、M 个进程、K 个服务，
+ * 以固定速率通过真实的 Controller 写入指标和资源数据，同时并发请求大屏、列表和分析接口，
+ * 按时间间隔输出吞吐、p50/p99/p999 延迟以及堆内存、GC 情况。
+ *
+ * 延迟按“计划发送时间”计算，服务端变慢导致的排队等待也会体现在结果中。
+ *
+ * 运行：mvn -Pperf verify -Dperf.main=com.example.monitor.loadtest.SoakTestHarness -Dperf.args="--duration 300"
+ */
+public class SoakTestHarness {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Options options;
+    private final HttpDriver http;
+    private final List<Long> serverIds = new ArrayList<>();
+    private final List<Long> processIds = new ArrayList<>();
+    private final List<Long> serviceIds = new ArrayList<>();
+    private final Map<String, LatencyRecorder> recorders = new LinkedHashMap<>();
+    private final Map<String, LongAdder> dropped = new ConcurrentHashMap<>();
+
+    private SoakTestHarness(Options options, String baseUrl) {
+        this.options = options;
+        this.http = new HttpDriver(baseUrl, options.timeoutMillis);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        ConfigurableApplicationContext context = null;
+        String baseUrl = options.target;
+        Path storageDir = null;
+        if (baseUrl == null) {
+            storageDir = options.storageDir != null
+                    ? Paths.get(options.storageDir)
+                    : Files.createTempDirectory("monitor-soak-");
+            context = SpringApplication.run(MonitorPlatformApplication.class,
+                    "--server.port=0",
+                    "--server.address=127.0.0.1",
+                    "--monitor.storage-dir=" + storageDir.toAbsolutePath(),
+                    "--logging.level.root=WARN");
+            baseUrl = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port");
+        } else if (!baseUrl.contains("://localhost") && !baseUrl.contains("://127.0.0.1")) {
+            throw new IllegalArgumentException("--target must point at localhost: " + baseUrl);
+        }
+
+        System.out.printf("Soak test against %s (storage: %s)%n", baseUrl,
+                storageDir != null ? storageDir.toAbsolutePath() : "external instance");
+        try {
+            SoakTestHarness harness = new SoakTestHarness(options, baseUrl);
+            harness.seed();
+            harness.run();
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    /**
+     * 通过 REST 接口创建服务器、进程和服务拓扑
+     */
+    private void seed() throws IOException {
+        for (int i = 1; i <= options.servers; i++) {
+            String body = String.format("{\"name\":\"soak-server-%d\",\"ip\":\"127.0.%d.%d\",\"type\":\"app\",\"env\":\"prod\","
+                    + "\"cpuCores\":8,\"totalMemory\":16.0,\"totalDisk\":500.0,\"status\":\"online\"}", i, i / 250, i % 250);
+            serverIds.add(createAndGetId("/api/servers", body));
+        }
+        for (int i = 1; i <= options.processes; i++) {
+            long serverId = serverIds.get(i % serverIds.size());
+            String body = String.format("{\"serverId\":%d,\"name\":\"soak-process-%d\",\"type\":\"app\",\"status\":\"running\"}",
+                    serverId, i);
+            processIds.add(createAndGetId("/api/processes", body));
+        }
+        for (int i = 1; i <= options.services; i++) {
+            long processId = processIds.get(i % processIds.size());
+            String body = String.format("{\"name\":\"soak-service-%d\",\"env\":\"prod\",\"processId\":%d}", i, processId);
+            serviceIds.add(createAndGetId("/api/services", body));
+        }
+        for (int i = 0; i < Math.min(5, processIds.size()); i++) {
+            http.post("/api/processes/" + processIds.get(i) + "/threads/collect-hotspot", "{}");
+        }
+        System.out.printf("Seeded %d servers, %d processes, %d services%n",
+                serverIds.size(), processIds.size(), serviceIds.size());
+    }
+
+    private long createAndGetId(String path, String body) throws IOException {
+        HttpDriver.Response response = http.post(path, body);
+        if (!response.isSuccess()) {
+            throw new IOException("Seeding " + path + " failed with HTTP " + response.status);
+        }
+        JsonNode node = MAPPER.readTree(response.body);
+        return node.get("id").asLong();
+    }
+
+    private void run() throws Exception {
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(options.threads, options.threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(options.queueCapacity), daemonFactory("soak-worker"));
+        ScheduledExecutorService pacers = Executors.newScheduledThreadPool(2, daemonFactory("soak-pacer"));
+
+        long startNanos = System.nanoTime();
+        schedule(pacers, workers, startNanos, "metrics.collect", options.metricRate, i -> post(
+                "/api/metrics/collect", "{\"serviceId\":" + pick(serviceIds, i) + ",\"count\":1}"));
+        schedule(pacers, workers, startNanos, "server.resources.collect", options.resourceRate, i -> post(
+                "/api/servers/" + pick(serverIds, i) + "/resources/collect", "{\"count\":1}"));
+        schedule(pacers, workers, startNanos, "process.resources.collect", options.resourceRate, i -> post(
+                "/api/processes/" + pick(processIds, i) + "/resources/collect", "{\"count\":1}"));
+        schedule(pacers, workers, startNanos, "dashboard.summary", options.readRate, i -> get("/api/dashboard/summary"));
+        schedule(pacers, workers, startNanos, "servers.list", options.readRate, i -> get("/api/servers"));
+        schedule(pacers, workers, startNanos, "processes.list", options.readRate, i -> get("/api/processes"));
+        schedule(pacers, workers, startNanos, "server.resources", options.readRate, i -> get(
+                "/api/servers/" + pick(serverIds, i) + "/resources?limit=50"));
+        schedule(pacers, workers, startNanos, "metrics.recent", options.readRate, i -> get(
+                "/api/metrics/" + pick(serviceIds, i) + "?limit=50"));
+        schedule(pacers, workers, startNanos, "anomalies.list", options.readRate, i -> get("/api/anomalies?limit=100"));
+        schedule(pacers, workers, startNanos, "threads.analyze", options.analysisRate, i -> post(
+                "/api/processes/" + pick(processIds.subList(0, Math.min(5, processIds.size())), i) + "/threads/analyze", "{}"));
+
+        Path output = Paths.get(options.output);
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        JvmSampler jvm = new JvmSampler();
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            long end = startNanos + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+            long nextReport = startNanos + TimeUnit.SECONDS.toNanos(options.reportIntervalSeconds);
+            while (System.nanoTime() < end) {
+                long sleep = Math.min(nextReport, end) - System.nanoTime();
+                if (sleep > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                }
+                long elapsed = System.nanoTime() - startNanos;
+                report(writer, jvm, elapsed, options.reportIntervalSeconds, false);
+                nextReport += TimeUnit.SECONDS.toNanos(options.reportIntervalSeconds);
+            }
+            pacers.shutdownNow();
+            workers.shutdown();
+            workers.awaitTermination(options.timeoutMillis * 2L, TimeUnit.MILLISECONDS);
+            report(writer, jvm, System.nanoTime() - startNanos, options.durationSeconds, true);
+        }
+        System.out.printf("Report written to %s%n", output.toAbsolutePath());
+    }
+
+    /**
+     * 开环调度：按计划时间点投递请求，工作线程排队或拒绝都不会降低发送速率
+     */
+    private void schedule(ScheduledExecutorService pacers, ThreadPoolExecutor workers, long startNanos,
+                          String name, double ratePerSecond, IntFunction<Call> callFactory) {
+        if (ratePerSecond <= 0) {
+            return;
+        }
+        LatencyRecorder recorder = new LatencyRecorder(name);
+        recorders.put(name, recorder);
+        LongAdder rejected = new LongAdder();
+        dropped.put(name, rejected);
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        AtomicLong issued = new AtomicLong();
+        pacers.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            long due = (now - startNanos) / intervalNanos + 1;
+            for (long i = issued.get(); i < due; i = issued.incrementAndGet()) {
+                long intended = startNanos + i * intervalNanos;
+                Call call = callFactory.apply((int) i);
+                try {
+                    workers.execute(() -> {
+                        boolean success;
+                        try {
+                            success = call.execute();
+                        } catch (IOException e) {
+                            success = false;
+                        }
+                        recorder.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended), success);
+                    });
+                } catch (RejectedExecutionException e) {
+                    rejected.increment();
+                }
+            }
+        }, 0, 5, TimeUnit.MILLISECONDS);
+    }
+
+    private Call get(String path) {
+        return () -> http.get(path).isSuccess();
+    }
+
+    private Call post(String path, String body) {
+        return () -> http.post(path, body).isSuccess();
+    }
+
+    private static long pick(List<Long> ids, int sequence) {
+        return ids.get(Math.floorMod(sequence, ids.size()));
+    }
+
+    private void report(BufferedWriter writer, JvmSampler jvm, long elapsedNanos, long windowSeconds, boolean total)
+            throws IOException {
+        long elapsedSec = TimeUnit.NANOSECONDS.toSeconds(elapsedNanos);
+        JvmSampler.Sample sample = jvm.sample();
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("type", total ? "total" : "interval");
+        line.put("elapsedSec", elapsedSec);
+        line.put("heapUsedMb", sample.heapUsedMb);
+        line.put("heapCommittedMb", sample.heapCommittedMb);
+        line.put("gcCount", sample.gcCount);
+        line.put("gcTimeMs", sample.gcTimeMs);
+
+        System.out.printf("%n[%5ds]%s heap %d/%d MB, gc %d (%d ms)%n", elapsedSec, total ? " TOTAL" : "",
+                sample.heapUsedMb, sample.heapCommittedMb, sample.gcCount, sample.gcTimeMs);
+        Map<String, Object> ops = new LinkedHashMap<>();
+        for (LatencyRecorder recorder : recorders.values()) {
+            LatencyRecorder.Histogram h = total ? recorder.total() : recorder.drain();
+            double throughput = windowSeconds > 0 ? (double) h.getCount() / windowSeconds : 0;
+            long droppedCount = total ? dropped.get(recorder.getName()).sum() : 0;
+            Map<String, Object> op = new LinkedHashMap<>();
+            op.put("count", h.getCount());
+            op.put("throughput", round(throughput));
+            op.put("p50Ms", round(h.percentile(0.50) / 1000.0));
+            op.put("p99Ms", round(h.percentile(0.99) / 1000.0));
+            op.put("p999Ms", round(h.percentile(0.999) / 1000.0));
+            op.put("errors", h.getErrors());
+            if (total) {
+                op.put("dropped", droppedCount);
+            }
+            ops.put(recorder.getName(), op);
+            System.out.printf("  %-28s %8d ops %9.1f/s  p50 %8.2fms  p99 %8.2fms  p999 %8.2fms  err %d%s%n",
+                    recorder.getName(), h.getCount(), throughput, h.percentile(0.50) / 1000.0,
+                    h.percentile(0.99) / 1000.0, h.percentile(0.999) / 1000.0, h.getErrors(),
+                    total ? "  dropped " + droppedCount : "");
+        }
+        line.put("ops", ops);
+        writer.write(MAPPER.writeValueAsString(line));
+        writer.newLine();
+        writer.flush();
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+
+    private static ThreadFactory daemonFactory(String prefix) {
+        AtomicLong counter = new AtomicLong();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        boolean execute() throws IOException;
+    }
+
+    /**
+     * 进程内堆与 GC 采样。未指定 --target 时应用与压测线程在同一 JVM 中运行，数据包含两者开销。
+     */
+    private static class JvmSampler {
+        private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+        Sample sample() {
+            MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            long count = 0;
+            long time = 0;
+            for (GarbageCollectorMXBean gc : collectors) {
+                count += Math.max(0, gc.getCollectionCount());
+                time += Math.max(0, gc.getCollectionTime());
+            }
+            return new Sample(heap.getUsed() >> 20, heap.getCommitted() >> 20, count, time);
+        }
+
+        static class Sample {
+            final long heapUsedMb;
+            final long heapCommittedMb;
+            final long gcCount;
+            final long gcTimeMs;
+
+            Sample(long heapUsedMb, long heapCommittedMb, long gcCount, long gcTimeMs) {
+                this.heapUsedMb = heapUsedMb;
+                this.heapCommittedMb = heapCommittedMb;
+                this.gcCount = gcCount;
+                this.gcTimeMs = gcTimeMs;
+            }
+        }
+    }
+
+    /**
+     * 命令行参数
+     */
+    static class Options {
+        int servers = 10;
+        int processes = 30;
+        int services = 20;
+        long durationSeconds = 120;
+        long reportIntervalSeconds = 10;
+        double metricRate = 20;
+        double resourceRate = 10;
+        double readRate = 2;
+        double analysisRate = 0.5;
+        int threads = 32;
+        int queueCapacity = 10_000;
+        int timeoutMillis = 30_000;
+        String target;
+        String storageDir;
+        String output = "target/soak-report.jsonl";
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String key = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + key);
+                }
+                String value = args[++i];
+                switch (key) {
+                    case "--servers": o.servers = Integer.parseInt(value); break;
+                    case "--processes": o.processes = Integer.parseInt(value); break;
+                    case "--services": o.services = Integer.parseInt(value); break;
+                    case "--duration": o.durationSeconds = Long.parseLong(value); break;
+                    case "--report-interval": o.reportIntervalSeconds = Long.parseLong(value); break;
+                    case "--metric-rate": o.metricRate = Double.parseDouble(value); break;
+                    case "--resource-rate": o.resourceRate = Double.parseDouble(value); break;
+                    case "--read-rate": o.readRate = Double.parseDouble(value); break;
+                    case "--analysis-rate": o.analysisRate = Double.parseDouble(value); break;
+                    case "--threads": o.threads = Integer.parseInt(value); break;
+                    case "--queue": o.queueCapacity = Integer.parseInt(value); break;
+                    case "--timeout-ms": o.timeoutMillis = Integer.parseInt(value); break;
+                    case "--target": o.target = value; break;
+                    case "--storage-dir": o.storageDir = value; break;
+                    case "--output": o.output = value; break;
+                    default: throw new IllegalArgumentException("Unknown option " + key);
+                }
+            }
+            if (o.servers <= 0 || o.processes <= 0 || o.services <= 0) {
+                throw new IllegalArgumentException("--servers, --processes and --services must be positive");
+            }
+            return o;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.monitor;
+
+import com.example.monitor.model.AiAgent;
+import com.example.monitor.storage.AiAgentFileRepository;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * AI Agent 仓储测试：索引一致性、并发写入与 ID 序列持久化
+ */
+public class AiAgentFileRepositoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AiAgentFileRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = newRepository();
+    }
+
+    @Test
+    public void testIndexesFollowWrites() {
+        AiAgent a = repository.save(agent("server", "active", 1L));
+        repository.save(agent("process", "idle", 2L));
+        repository.save(agent("server", "idle", 1L));
+
+        assertEquals(2, repository.findByType("server").size());
+        assertEquals(1, repository.findByStatus("active").size());
+        assertEquals(2, repository.findByTargetId(1L).size());
+        assertTrue(repository.findByType("thread").isEmpty());
+
+        // 调用方修改自己的对象不影响仓储，save 之后索引随之更新
+        a.setStatus("idle");
+        assertEquals(1, repository.findByStatus("active").size());
+        repository.save(a);
+        assertTrue(repository.findByStatus("active").isEmpty());
+
+        // 查询返回的也是副本
+        repository.findById(a.getId()).setStatus("active");
+        repository.findAll().forEach(agent -> agent.setStatus("active"));
+        repository.findByTargetId(1L).forEach(agent -> agent.setStatus("active"));
+        assertEquals("idle", repository.findById(a.getId()).getStatus());
+        assertTrue(repository.findByStatus("active").isEmpty());
+
+        repository.updateAll(Collections.singletonMap(a.getId(), agent -> agent.setStatus("error")));
+        assertEquals(a.getId(), repository.findByStatus("error").get(0).getId());
+
+        repository.deleteByTargetId(1L);
+        assertEquals(1, repository.findAll().size());
+        assertTrue(repository.findByType("server").isEmpty());
+    }
+
+    @Test
+    public void testConcurrentSavesArePersisted() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                long target = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        repository.save(agent("server", "active", target));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(400, repository.findAll().size());
+        assertEquals(400, repository.findAll().stream().map(AiAgent::getId).distinct().count());
+        AiAgentFileRepository reloaded = newRepository();
+        assertEquals(400, reloaded.findAll().size());
+        assertEquals(50, reloaded.findByTargetId(3L).size());
+        assertFalse(new File(folder.getRoot(), "ai-agents.json.tmp").exists());
+    }
+
+    @Test
+    public void testIdSequenceSurvivesDeleteAndRestart() {
+        repository.save(agent("server", "active", 1L));
+        AiAgent last = repository.save(agent("server", "active", 2L));
+        repository.delete(last.getId());
+
+        AiAgent next = newRepository().save(agent("server", "active", 3L));
+        assertEquals(last.getId() + 1, (long) next.getId());
+    }
+
+    private AiAgentFileRepository newRepository() {
+        AiAgentFileRepository repo = new AiAgentFileRepository();
+        ReflectionTestUtils.setField(repo, "storageDir", folder.getRoot().getAbsolutePath());
+        repo.init();
+        return repo;
+    }
+
+    private static AiAgent agent(String type, String status, Long targetId) {
+        AiAgent agent = new AiAgent();
+        agent.setName(type + "-" + targetId);
+        agent.setType(type);
+        agent.setStatus(status);
+        agent.setTargetId(targetId);
+        return agent;
+    }
+}
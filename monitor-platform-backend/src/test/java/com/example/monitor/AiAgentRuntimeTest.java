@@ -0,0 +1,173 @@
+package com.example.monitor;
+
+import com.example.monitor.model.AiAgent;
+import com.example.monitor.model.MetricSample;
+import com.example.monitor.model.ServerResource;
+import com.example.monitor.model.ServiceInfo;
+import com.example.monitor.service.AiAgentRuntime;
+import com.example.monitor.service.MetricQueryService;
+import com.example.monitor.storage.AiAgentFileRepository;
+import com.example.monitor.storage.MetricSampleFileRepository;
+import com.example.monitor.storage.ProcessResourceFileRepository;
+import com.example.monitor.storage.ServerResourceFileRepository;
+import com.example.monitor.storage.ServiceInfoFileRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * AI Agent 运行时测试：增量读取、评分与结果写回
+ */
+public class AiAgentRuntimeTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private String dir;
+    private AiAgentFileRepository agentRepository;
+    private ServerResourceFileRepository serverResourceRepository;
+    private MetricSampleFileRepository metricRepository;
+    private ServiceInfoFileRepository serviceRepository;
+    private AiAgentRuntime runtime;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = folder.getRoot().getAbsolutePath();
+        agentRepository = newAgentRepository();
+        serverResourceRepository = new ServerResourceFileRepository();
+        ReflectionTestUtils.setField(serverResourceRepository, "storageDir", dir);
+        serverResourceRepository.init();
+        ProcessResourceFileRepository processResourceRepository = new ProcessResourceFileRepository();
+        ReflectionTestUtils.setField(processResourceRepository, "storageDir", dir);
+        processResourceRepository.init();
+        metricRepository = new MetricSampleFileRepository(dir);
+        serviceRepository = new ServiceInfoFileRepository(dir);
+
+        runtime = new AiAgentRuntime(agentRepository, serverResourceRepository, processResourceRepository,
+                new MetricQueryService(metricRepository, serviceRepository), null);
+        ReflectionTestUtils.setField(runtime, "defaultIntervalSeconds", 60L);
+    }
+
+    @Test
+    public void testServerAgentReadsOnlyNewRecords() throws IOException {
+        AiAgent agent = addAgent("server", "active", 1L);
+        AiAgent idle = addAgent("server", "idle", 1L);
+        for (int i = 0; i < 3; i++) {
+            addServerResource(1L, 20.0);
+        }
+        addServerResource(2L, 99.0);
+
+        runtime.runNow();
+        AiAgent updated = agentRepository.findById(agent.getId());
+        assertEquals(Integer.valueOf(100), updated.getHealthScore());
+        assertNotNull(updated.getLastActiveTime());
+        JsonNode summary = objectMapper.readTree(updated.getMetricsSummary());
+        assertEquals(3, summary.get("samples").asInt());
+        assertEquals(20.0, summary.get("cpuUsage").asDouble(), 0.001);
+        assertFalse(summary.get("stale").asBoolean());
+        assertNull(agentRepository.findById(idle.getId()).getHealthScore());
+
+        // 第二轮只读取新增的记录
+        for (int i = 0; i < 10; i++) {
+            addServerResource(1L, 99.0);
+        }
+        runtime.runNow();
+        updated = agentRepository.findById(agent.getId());
+        summary = objectMapper.readTree(updated.getMetricsSummary());
+        assertEquals(13, summary.get("samples").asInt());
+        assertEquals(10, summary.get("newSamples").asInt());
+        assertTrue(updated.getHealthScore() <= 60);
+
+        // 结果已写回文件
+        AiAgentFileRepository reloaded = newAgentRepository();
+        assertEquals(updated.getHealthScore(), reloaded.findById(agent.getId()).getHealthScore());
+    }
+
+    @Test
+    public void testServiceAgentScoresDeviationAndStaleness() throws IOException {
+        ServiceInfo service = new ServiceInfo();
+        service.setName("order");
+        Long serviceId = serviceRepository.save(service).getId();
+        AiAgent agent = addAgent("service", "active", serviceId);
+
+        long now = System.currentTimeMillis();
+        List<MetricSample> samples = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            samples.add(sample(serviceId, 100 + (i % 3), now - (60 - i) * 1000L));
+        }
+        metricRepository.saveAll(samples);
+        runtime.runNow();
+        assertEquals(Integer.valueOf(100), agentRepository.findById(agent.getId()).getHealthScore());
+
+        samples.clear();
+        for (int i = 40; i < 50; i++) {
+            samples.add(sample(serviceId, 400, now - (60 - i) * 1000L));
+        }
+        metricRepository.saveAll(samples);
+        runtime.runNow();
+        AiAgent updated = agentRepository.findById(agent.getId());
+        JsonNode summary = objectMapper.readTree(updated.getMetricsSummary());
+        assertEquals(50, summary.get("samples").asInt());
+        assertTrue(summary.get("responseTime").asDouble() > 300);
+        assertTrue(updated.getHealthScore() < 100);
+
+        // 目标长时间没有新数据时扣分并标记
+        AiAgent stale = addAgent("server", "active", 9L);
+        ServerResource old = new ServerResource();
+        old.setServerId(9L);
+        old.setCpuUsage(10.0);
+        old.setTimestamp(new Date(now - 3_600_000));
+        serverResourceRepository.save(old);
+        runtime.runNow();
+        updated = agentRepository.findById(stale.getId());
+        assertEquals(Integer.valueOf(70), updated.getHealthScore());
+        assertTrue(objectMapper.readTree(updated.getMetricsSummary()).get("stale").asBoolean());
+    }
+
+    private AiAgentFileRepository newAgentRepository() {
+        AiAgentFileRepository repository = new AiAgentFileRepository();
+        ReflectionTestUtils.setField(repository, "storageDir", dir);
+        repository.init();
+        return repository;
+    }
+
+    private AiAgent addAgent(String type, String status, Long targetId) {
+        AiAgent agent = new AiAgent();
+        agent.setName(type + "-" + targetId);
+        agent.setType(type);
+        agent.setStatus(status);
+        agent.setTargetId(targetId);
+        return agentRepository.save(agent);
+    }
+
+    private void addServerResource(Long serverId, double cpu) {
+        ServerResource resource = new ServerResource();
+        resource.setServerId(serverId);
+        resource.setCpuUsage(cpu);
+        resource.setMemoryUsage(40.0);
+        resource.setTimestamp(new Date());
+        serverResourceRepository.save(resource);
+    }
+
+    private static MetricSample sample(Long serviceId, double value, long time) {
+        MetricSample sample = new MetricSample();
+        sample.setServiceId(serviceId);
+        sample.setMetricName("responseTime");
+        sample.setTimestamp(new Date(time));
+        sample.setValue(value);
+        return sample;
+    }
+}
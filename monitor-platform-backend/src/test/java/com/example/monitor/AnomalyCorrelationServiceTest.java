@@ -0,0 +1,226 @@
+package com.example.monitor;
+
+import com.example.monitor.model.AnomalyCorrelationGroup;
+import com.example.monitor.model.AnomalyEvent;
+import com.example.monitor.model.ServiceInfo;
+import com.example.monitor.service.AnomalyCorrelationService;
+import com.example.monitor.storage.ProcessInfoFileRepository;
+import com.example.monitor.storage.ProcessResourceFileRepository;
+import com.example.monitor.storage.ServerInfoFileRepository;
+import com.example.monitor.storage.ServerResourceFileRepository;
+import com.example.monitor.storage.ServiceInfoFileRepository;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 异常关联测试：按服务器或服务分组、窗口过期、活跃分组淘汰、空闲窗口关闭、乱序事件和配置校验
+ */
+public class AnomalyCorrelationServiceTest {
+
+    private static final long WINDOW_MS = 300_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ServiceInfoFileRepository serviceRepository;
+    private AnomalyCorrelationService service;
+    private long base;
+
+    @Before
+    public void setUp() throws Exception {
+        String dir = folder.getRoot().getAbsolutePath();
+        serviceRepository = new ServiceInfoFileRepository(dir);
+        ServerInfoFileRepository serverRepository = new ServerInfoFileRepository();
+        ProcessInfoFileRepository processRepository = new ProcessInfoFileRepository();
+        ServerResourceFileRepository serverResourceRepository = new ServerResourceFileRepository();
+        ProcessResourceFileRepository processResourceRepository = new ProcessResourceFileRepository();
+        for (Object repository : Arrays.asList(serverRepository, processRepository, serverResourceRepository, processResourceRepository)) {
+            ReflectionTestUtils.setField(repository, "storageDir", dir);
+        }
+        serverRepository.init();
+        processRepository.init();
+        serverResourceRepository.init();
+        processResourceRepository.init();
+
+        service = new AnomalyCorrelationService(serviceRepository, serverRepository, processRepository,
+                serverResourceRepository, processResourceRepository);
+        configure(300, 500, 1000);
+        base = System.currentTimeMillis() - 60_000;
+    }
+
+    @Test
+    public void testEventsGroupedByServerOrService() {
+        Long web = addService("web", 10L);
+        Long api = addService("api", 10L);
+        Long batch = addService("batch", null);
+        service.refreshTopology();
+
+        service.onEvent(event(web, base, "low", 2.0));
+        service.onEvent(event(api, base + 1000, "high", 8.0));
+        service.onEvent(event(batch, base + 2000, "medium", 4.0));
+
+        List<AnomalyCorrelationGroup> groups = service.getRecentGroups(10);
+        assertEquals(2, groups.size());
+        AnomalyCorrelationGroup server = groups.stream().filter(g -> g.getServerId() != null).findFirst().get();
+        assertEquals(Long.valueOf(10), server.getServerId());
+        assertEquals(Arrays.asList(web, api), server.getServiceIds());
+        assertEquals(Integer.valueOf(2), server.getEventCount());
+        assertEquals("high", server.getSeverity());
+        assertEquals("active", server.getStatus());
+        assertEquals("service", server.getRootCause().getType());
+        assertEquals(api, server.getRootCause().getTargetId());
+
+        AnomalyCorrelationGroup alone = groups.stream().filter(g -> g.getServerId() == null).findFirst().get();
+        assertEquals(Collections.singletonList(batch), alone.getServiceIds());
+    }
+
+    @Test
+    public void testLateEventClosesExpiredWindow() {
+        Long web = addService("web", 10L);
+        service.refreshTopology();
+
+        service.onEvent(event(web, base - 2 * WINDOW_MS, "low", 2.0));
+        service.onEvent(event(web, base - 2 * WINDOW_MS + 1000, "low", 3.0));
+        service.onEvent(event(web, base, "high", 9.0));
+
+        List<AnomalyCorrelationGroup> groups = service.getRecentGroups(10);
+        assertEquals(2, groups.size());
+        // 活跃分组在前
+        assertEquals("active", groups.get(0).getStatus());
+        assertEquals(Integer.valueOf(1), groups.get(0).getEventCount());
+        assertEquals("closed", groups.get(1).getStatus());
+        assertEquals(Integer.valueOf(2), groups.get(1).getEventCount());
+        assertNotEquals(groups.get(0).getId(), groups.get(1).getId());
+    }
+
+    @Test
+    public void testOldestActiveGroupEvictedAtLimit() {
+        configure(300, 500, 2);
+        Long first = addService("first", null);
+        Long second = addService("second", null);
+        Long third = addService("third", null);
+        service.refreshTopology();
+
+        service.onEvent(event(first, base, "low", 1.0));
+        service.onEvent(event(second, base + 1000, "low", 1.0));
+        service.onEvent(event(first, base + 2000, "low", 1.0));
+        service.onEvent(event(third, base + 3000, "low", 1.0));
+
+        List<AnomalyCorrelationGroup> groups = service.getRecentGroups(10);
+        assertEquals(3, groups.size());
+        // second 最久未更新，被关闭腾出位置
+        AnomalyCorrelationGroup closed = groups.get(2);
+        assertEquals("closed", closed.getStatus());
+        assertEquals(Collections.singletonList(second), closed.getServiceIds());
+        assertTrue(groups.subList(0, 2).stream().allMatch(g -> "active".equals(g.getStatus())));
+    }
+
+    @Test
+    public void testIdleWindowsClosed() throws InterruptedException {
+        configure(1, 500, 1000);
+        Long web = addService("web", 10L);
+        service.refreshTopology();
+        service.onEvent(event(web, base, "medium", 5.0));
+
+        service.closeIdleWindows();
+        assertEquals("active", service.getRecentGroups(10).get(0).getStatus());
+
+        Thread.sleep(1100);
+        service.closeIdleWindows();
+        List<AnomalyCorrelationGroup> groups = service.getRecentGroups(10);
+        assertEquals(1, groups.size());
+        assertEquals("closed", groups.get(0).getStatus());
+        assertEquals(Long.valueOf(10), groups.get(0).getServerId());
+    }
+
+    @Test
+    public void testEventsPerGroupCapped() {
+        configure(300, 2, 1000);
+        Long web = addService("web", 10L);
+        service.refreshTopology();
+        for (int i = 0; i < 5; i++) {
+            service.onEvent(event(web, base + i * 1000L, "low", 1.0));
+        }
+        AnomalyCorrelationGroup group = service.getRecentGroups(10).get(0);
+        assertEquals("总数按全部事件计", Integer.valueOf(5), group.getEventCount());
+        assertEquals(new Date(base), group.getWindowStart());
+    }
+
+    @Test
+    public void testLateEventBeyondWindowAfterCapTrim() {
+        configure(300, 1, 1000);
+        Long web = addService("web", 10L);
+        service.refreshTopology();
+        service.onEvent(event(web, base, "low", 1.0));
+        // 超出上限先淘汰 base 的事件，迟到的事件本身也早于窗口，保留的事件被清空
+        service.onEvent(event(web, base - 2 * WINDOW_MS, "high", 5.0));
+
+        AnomalyCorrelationGroup group = service.getRecentGroups(10).get(0);
+        assertEquals(Integer.valueOf(2), group.getEventCount());
+        assertEquals(new Date(base - 2 * WINDOW_MS), group.getWindowStart());
+        assertEquals(new Date(base), group.getWindowEnd());
+    }
+
+    @Test
+    public void testWindowStartIsEarliestEventTime() {
+        Long web = addService("web", 10L);
+        service.refreshTopology();
+        service.onEvent(event(web, base + 5000, "low", 1.0));
+        service.onEvent(event(web, base, "low", 1.0));
+        service.onEvent(event(web, base + 2000, "low", 1.0));
+
+        AnomalyCorrelationGroup group = service.getRecentGroups(10).get(0);
+        assertEquals(new Date(base), group.getWindowStart());
+        assertEquals(new Date(base + 5000), group.getWindowEnd());
+    }
+
+    @Test
+    public void testNegativeLimitReturnsEmpty() {
+        Long web = addService("web", 10L);
+        service.refreshTopology();
+        service.onEvent(event(web, base, "low", 2.0));
+
+        assertTrue(service.getRecentGroups(-1).isEmpty());
+        assertEquals(1, service.getRecentGroups(1).size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testZeroEventsPerGroupRejected() {
+        configure(300, 0, 1000);
+    }
+
+    private void configure(long windowSeconds, int maxEventsPerGroup, int maxActiveGroups) {
+        ReflectionTestUtils.setField(service, "windowSeconds", windowSeconds);
+        ReflectionTestUtils.setField(service, "maxEventsPerGroup", maxEventsPerGroup);
+        ReflectionTestUtils.setField(service, "maxActiveGroups", maxActiveGroups);
+        ReflectionTestUtils.setField(service, "maxClosedGroups", 200);
+        service.init();
+    }
+
+    private Long addService(String name, Long serverId) {
+        ServiceInfo info = new ServiceInfo();
+        info.setName(name);
+        info.setServerId(serverId);
+        return serviceRepository.save(info).getId();
+    }
+
+    private static AnomalyEvent event(Long serviceId, long time, String severity, double score) {
+        AnomalyEvent event = new AnomalyEvent();
+        event.setServiceId(serviceId);
+        event.setMetricName("latency");
+        event.setStartTime(new Date(time));
+        event.setSeverity(severity);
+        event.setScore(score);
+        return event;
+    }
+}
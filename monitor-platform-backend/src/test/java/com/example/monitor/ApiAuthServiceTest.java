@@ -0,0 +1,126 @@
+package com.example.monitor;
+
+import com.example.monitor.model.ApiAuthKeyModel;
+import com.example.monitor.service.ApiAuthService;
+import com.example.monitor.storage.ApiAuthKeyFileRepository;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * API 密钥认证测试：只保存摘要、校验结果与变更后缓存失效
+ */
+public class ApiAuthServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ApiAuthKeyFileRepository repository;
+    private ApiAuthService service;
+
+    @Before
+    public void setUp() {
+        repository = newRepository();
+        service = newService(repository);
+    }
+
+    @Test
+    public void testOnlyHashIsStored() throws Exception {
+        ApiAuthService.IssuedKey issued = service.createKey(request("gateway", null));
+        String secret = issued.getSecret();
+        assertTrue(secret.startsWith("mk_"));
+        assertNull(issued.getKey().getKeyHash());
+        assertTrue(secret.startsWith(issued.getKey().getKeyPrefix()));
+
+        String content = new String(Files.readAllBytes(new File(folder.getRoot(), "api-auth-keys.json").toPath()),
+                StandardCharsets.UTF_8);
+        assertFalse(content.contains(secret));
+        assertTrue(content.contains(ApiAuthService.hash(secret)));
+        assertNull(service.listKeys().get(0).getKeyHash());
+
+        // 重启后按摘要仍能校验
+        ApiAuthService reloaded = newService(newRepository());
+        assertTrue(reloaded.verify(secret, null).isValid());
+    }
+
+    @Test
+    public void testVerifyResults() {
+        String scoped = service.createKey(request("order", 7L)).getSecret();
+        ApiAuthKeyModel expiring = request("old", null);
+        expiring.setExpiresAt(new Date(System.currentTimeMillis() - 1000));
+        String expired = service.createKey(expiring).getSecret();
+
+        ApiAuthService.AuthResult result = service.verify(scoped, 7L);
+        assertEquals(ApiAuthService.Status.VALID, result.getStatus());
+        assertEquals("order", result.getKeyName());
+        assertEquals(ApiAuthService.Status.VALID, service.verify(scoped, null).getStatus());
+        assertEquals(ApiAuthService.Status.FORBIDDEN, service.verify(scoped, 8L).getStatus());
+        assertEquals(ApiAuthService.Status.EXPIRED, service.verify(expired, null).getStatus());
+        assertEquals(ApiAuthService.Status.UNKNOWN, service.verify("mk_nope", null).getStatus());
+        assertEquals(ApiAuthService.Status.UNKNOWN, service.verify("mk_nope", null).getStatus());
+        assertEquals(ApiAuthService.Status.MISSING, service.verify(null, null).getStatus());
+
+        Map<String, Object> stats = service.getStats();
+        assertTrue((Long) stats.get("cacheHits") >= 2);
+        @SuppressWarnings("unchecked")
+        Map<String, Long> results = (Map<String, Long>) stats.get("results");
+        assertEquals(Long.valueOf(2), results.get("unknown"));
+    }
+
+    @Test
+    public void testChangesInvalidateCache() {
+        ApiAuthService.IssuedKey issued = service.createKey(request("gateway", null));
+        String secret = issued.getSecret();
+        Long id = issued.getKey().getId();
+        assertTrue(service.verify(secret, null).isValid());
+        assertTrue(service.verify(secret, null).isValid());
+
+        service.updateStatus(id, ApiAuthService.STATUS_DISABLED);
+        assertEquals(ApiAuthService.Status.DISABLED, service.verify(secret, null).getStatus());
+        service.updateStatus(id, ApiAuthService.STATUS_ACTIVE);
+        assertTrue(service.verify(secret, null).isValid());
+
+        service.deleteKey(id);
+        assertEquals(ApiAuthService.Status.UNKNOWN, service.verify(secret, null).getStatus());
+
+        // 先被缓存为不存在的密钥，在写入仓储后立即生效
+        ApiAuthKeyModel key = new ApiAuthKeyModel();
+        key.setName("imported");
+        key.setStatus(ApiAuthService.STATUS_ACTIVE);
+        key.setKeyHash(ApiAuthService.hash("mk_imported"));
+        assertEquals(ApiAuthService.Status.UNKNOWN, service.verify("mk_imported", null).getStatus());
+        repository.save(key);
+        assertTrue(service.verify("mk_imported", null).isValid());
+    }
+
+    private ApiAuthKeyFileRepository newRepository() {
+        ApiAuthKeyFileRepository repo = new ApiAuthKeyFileRepository();
+        ReflectionTestUtils.setField(repo, "storageDir", folder.getRoot().getAbsolutePath());
+        repo.init();
+        return repo;
+    }
+
+    private static ApiAuthService newService(ApiAuthKeyFileRepository repository) {
+        ApiAuthService service = new ApiAuthService(repository);
+        ReflectionTestUtils.setField(service, "cacheSize", 64);
+        service.init();
+        return service;
+    }
+
+    private static ApiAuthKeyModel request(String name, Long serviceId) {
+        ApiAuthKeyModel request = new ApiAuthKeyModel();
+        request.setName(name);
+        request.setServiceId(serviceId);
+        return request;
+    }
+}
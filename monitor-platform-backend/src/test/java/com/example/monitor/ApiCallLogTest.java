@@ -0,0 +1,161 @@
+package com.example.monitor;
+
+import com.example.monitor.model.ApiCallLogModel;
+import com.example.monitor.service.ApiManagementService;
+import com.example.monitor.storage.ApiCallLogFileRepository;
+import com.example.monitor.storage.MpscRingBuffer;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * API 调用日志测试：无锁队列、按小时分段写入与查询、计数注册到注入的注册表
+ */
+public class ApiCallLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ApiCallLogFileRepository repository;
+    private ApiManagementService service;
+
+    @Before
+    public void setUp() {
+        repository = new ApiCallLogFileRepository();
+        ReflectionTestUtils.setField(repository, "storageDir", folder.getRoot().getAbsolutePath());
+        ReflectionTestUtils.setField(repository, "bufferSize", 1 << 16);
+        ReflectionTestUtils.setField(repository, "batchSize", 1024);
+        ReflectionTestUtils.setField(repository, "retentionHours", 24L);
+        repository.init();
+        service = new ApiManagementService(repository, null, null);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        repository.shutdown();
+    }
+
+    @Test
+    public void testRingBufferNeverBlocks() throws Exception {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(1000);
+        assertEquals(1024, buffer.capacity());
+
+        int threads = 4;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int base = t * 1000;
+            new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    buffer.offer(base + i);
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        // 没有读取方时最多容纳 capacity 个，其余直接被拒绝
+        assertEquals(1024, buffer.size());
+        assertFalse(buffer.offer(-1));
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(1024, buffer.drain(drained, Integer.MAX_VALUE));
+        assertEquals(1024, new HashSet<>(drained).size());
+        assertTrue(buffer.offer(-1));
+    }
+
+    @Test
+    public void testCallsArePartitionedByHourAndQueryable() throws Exception {
+        long hour = TimeUnit.HOURS.toMillis(1);
+        long now = System.currentTimeMillis();
+        int threads = 8;
+        int perThread = 5000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            long endpoint = t % 2;
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    ApiCallLogModel call = new ApiCallLogModel();
+                    call.setTimestamp(now - (i % 3) * hour);
+                    call.setEndpointId(endpoint);
+                    call.setPath("/orders/{id}");
+                    call.setStatusCode(200);
+                    call.setDurationMs(1.5);
+                    while (!service.recordCall(call)) {
+                        Thread.yield();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        awaitWritten(threads * perThread);
+
+        Set<String> segments = new HashSet<>(repository.listSegments());
+        assertEquals(3, segments.size());
+
+        List<ApiCallLogModel> recent = service.findCalls(now - 10, now, null, 1L, null, 1000);
+        assertEquals(1000, recent.size());
+        assertTrue(recent.stream().allMatch(c -> c.getEndpointId() == 1L && c.getTimestamp() == now));
+
+        List<ApiCallLogModel> all = service.findCalls(now - 3 * hour, now, null, null, "/orders/{id}", 1000);
+        assertEquals(1000, all.size());
+        // 倒序：最近一小时的记录排在前面
+        assertEquals(now, (long) all.get(0).getTimestamp());
+        // 很大的时间范围只读取现有的分段
+        List<ApiCallLogModel> unbounded = service.findCalls(0L, Long.MAX_VALUE, null, 0L, null, 1000);
+        assertEquals(1000, unbounded.size());
+        assertEquals(now, (long) unbounded.get(0).getTimestamp());
+        assertTrue(service.findCalls(0L, now - 4 * hour, null, null, null, 1000).isEmpty());
+        assertEquals(Long.valueOf(threads * perThread), repository.getStats().get("written"));
+    }
+
+    @Test
+    public void testCountersRegisteredOnInjectedRegistry() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ApiCallLogFileRepository other = new ApiCallLogFileRepository();
+        ReflectionTestUtils.setField(other, "storageDir", folder.newFolder("other").getAbsolutePath());
+        ReflectionTestUtils.setField(other, "bufferSize", 1024);
+        ReflectionTestUtils.setField(other, "batchSize", 64);
+        ReflectionTestUtils.setField(other, "retentionHours", 24L);
+        ReflectionTestUtils.setField(other, "meterRegistry", registry);
+        other.init();
+        try {
+            ApiCallLogModel call = new ApiCallLogModel();
+            call.setEndpointId(1L);
+            call.setPath("/orders");
+            assertTrue(other.publish(call));
+            // 其他实例的记录不计入这个注册表
+            assertTrue(service.recordCall(new ApiCallLogModel()));
+            assertEquals(1.0, registry.get("monitor.api.calls").tag("result", "published").functionCounter().count(), 0.0);
+            assertNotNull(registry.get("monitor.api.calls.backlog").gauge());
+            assertTrue(Metrics.globalRegistry.find("monitor.api.calls").meters().isEmpty());
+        } finally {
+            other.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRange() {
+        service.findCalls(2000L, 1000L, null, null, null, null);
+    }
+
+    private void awaitWritten(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while ((Long) repository.getStats().get("written") < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.monitor;
+
+import com.example.monitor.model.ApiCallLogModel;
+import com.example.monitor.model.ApiLatencyStats;
+import com.example.monitor.query.LatencyHistogram;
+import com.example.monitor.service.ApiLatencyService;
+import com.example.monitor.storage.ApiCallLogFileRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 接口延迟统计测试：直方图精度、按窗口合并与持久化
+ */
+public class ApiLatencyServiceTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ApiCallLogFileRepository repository;
+    private ApiLatencyService service;
+    private long base;
+
+    @Before
+    public void setUp() {
+        repository = new ApiCallLogFileRepository();
+        ReflectionTestUtils.setField(repository, "storageDir", folder.getRoot().getAbsolutePath());
+        ReflectionTestUtils.setField(repository, "bufferSize", 1024);
+        ReflectionTestUtils.setField(repository, "batchSize", 256);
+        ReflectionTestUtils.setField(repository, "retentionHours", 24L);
+        repository.init();
+        service = newService();
+        long now = System.currentTimeMillis();
+        base = now - now % MINUTE - 10 * MINUTE;
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        repository.shutdown();
+    }
+
+    @Test
+    public void testHistogramAccuracyAndMerge() {
+        LatencyHistogram all = new LatencyHistogram();
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            // 0.01 ms ~ 10 s 对数均匀分布
+            double value = Math.pow(10, random.nextDouble() * 6 - 2);
+            all.record(value, false);
+            (i % 2 == 0 ? a : b).record(value, false);
+        }
+        a.merge(b);
+        for (double q : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            double exact = Math.pow(10, q * 6 - 2);
+            assertEquals(exact, all.percentile(q), exact * 0.05);
+            assertEquals(all.percentile(q), a.percentile(q), 0.0);
+        }
+        assertEquals(all.getTotal(), a.getTotal());
+    }
+
+    @Test
+    public void testSeriesMergesMinuteBuckets() {
+        List<ApiCallLogModel> calls = new ArrayList<>();
+        for (int minute = 0; minute < 4; minute++) {
+            for (int i = 1; i <= 100; i++) {
+                calls.add(call(7L, base + minute * MINUTE + i * 100, i, i % 50 == 0 ? 503 : 200));
+            }
+        }
+        calls.add(call(null, base, 5, 200));
+        service.ingest(calls);
+
+        List<ApiLatencyStats> series = service.series("7", base, base + 3 * MINUTE, 2 * MINUTE);
+        assertEquals(2, series.size());
+        ApiLatencyStats first = series.get(0);
+        assertEquals(200, first.getCount());
+        assertEquals(4, first.getErrors());
+        assertEquals(0.02, first.getErrorRate(), 1e-9);
+        assertEquals(200 / 120.0, first.getQps(), 0.001);
+        assertEquals(50, first.getP50Ms(), 50 * 0.04);
+        assertEquals(99, first.getP99Ms(), 99 * 0.04);
+        assertEquals(100, first.getMaxMs(), 0.0);
+
+        // 按小时查询用小时粒度，结果与分钟合并一致
+        ApiLatencyStats hour = service.series("7", base, base, TimeUnit.HOURS.toMillis(1)).get(0);
+        long expected = service.series("7", base - base % TimeUnit.HOURS.toMillis(1), base + 3 * MINUTE,
+                TimeUnit.HOURS.toMillis(1)).get(0).getCount();
+        assertEquals(expected, hour.getCount());
+
+        List<ApiLatencyStats> endpoints = service.endpoints(base, base + 5 * MINUTE);
+        assertEquals(2, endpoints.size());
+        assertEquals("7", endpoints.get(0).getEndpoint());
+        assertEquals("GET /orders", endpoints.get(1).getEndpoint());
+    }
+
+    @Test
+    public void testCoarserLevelWidensStep() {
+        // 超出分钟粒度保留期的范围用小时粒度，step 取整到一小时，QPS 不因窗口小于时间桶而放大
+        long hour = TimeUnit.HOURS.toMillis(1);
+        long hourStart = Instant.ofEpochMilli(System.currentTimeMillis() - 30 * hour)
+                .atZone(ZoneId.systemDefault()).truncatedTo(ChronoUnit.HOURS).toInstant().toEpochMilli();
+        List<ApiCallLogModel> calls = new ArrayList<>();
+        for (int i = 0; i < 3600; i++) {
+            calls.add(call(9L, hourStart + i * 1000L, 10, 200));
+        }
+        service.ingest(calls);
+
+        List<ApiLatencyStats> series = service.series("9", hourStart + 10 * MINUTE, hourStart + 3 * hour, MINUTE);
+        assertEquals(4, series.size());
+        assertEquals(hourStart, series.get(0).getTimestamp().longValue());
+        assertEquals(hourStart + hour, series.get(1).getTimestamp().longValue());
+        assertEquals(3600, series.get(0).getCount());
+        assertEquals(1.0, series.get(0).getQps(), 0.001);
+        assertEquals(0, series.get(1).getCount());
+
+        ApiLatencyStats endpoint = service.endpoints(hourStart + 10 * MINUTE, hourStart + 3 * hour).get(0);
+        assertEquals(3600, endpoint.getCount());
+        assertEquals(1.0 / 3, endpoint.getQps(), 0.001);
+    }
+
+    @Test
+    public void testStatisticsSurviveRestartAndFollowCallLog() throws Exception {
+        ApiCallLogModel logged = call(3L, System.currentTimeMillis(), 12, 200);
+        assertTrue(repository.publish(logged));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (service.endpoints(null, null).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, service.endpoints(null, null).get(0).getCount());
+
+        service.shutdown();
+        ApiLatencyService reloaded = newService();
+        assertEquals(1, reloaded.endpoints(null, null).get(0).getCount());
+        reloaded.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyPoints() {
+        service.series(null, 0L, System.currentTimeMillis(), MINUTE);
+    }
+
+    private ApiLatencyService newService() {
+        ApiLatencyService latencyService = new ApiLatencyService(repository);
+        ReflectionTestUtils.setField(latencyService, "storageDir", folder.getRoot().getAbsolutePath());
+        ReflectionTestUtils.setField(latencyService, "minuteRetentionHours", 24L);
+        ReflectionTestUtils.setField(latencyService, "hourRetentionDays", 30L);
+        ReflectionTestUtils.setField(latencyService, "dayRetentionDays", 365L);
+        ReflectionTestUtils.setField(latencyService, "persistIntervalSeconds", 300L);
+        latencyService.init();
+        return latencyService;
+    }
+
+    private static ApiCallLogModel call(Long endpointId, long time, double durationMs, int status) {
+        ApiCallLogModel call = new ApiCallLogModel();
+        call.setEndpointId(endpointId);
+        call.setMethod("GET");
+        call.setPath("/orders");
+        call.setTimestamp(time);
+        call.setDurationMs(durationMs);
+        call.setStatusCode(status);
+        return call;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.monitor;
+
+import com.example.monitor.model.ApiAuthKeyModel;
+import com.example.monitor.model.ApiCallLogModel;
+import com.example.monitor.service.ApiAuthService;
+import com.example.monitor.service.ApiManagementService;
+import com.example.monitor.service.ApiRateLimitService;
+import com.example.monitor.storage.ApiAuthKeyFileRepository;
+import com.example.monitor.storage.ApiCallLogFileRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * API 限流测试：突发容量、补充、并发放行数、空闲桶回收与拒绝记录写入调用日志
+ */
+public class ApiRateLimitServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ApiRateLimitService limiter;
+
+    @Before
+    public void setUp() {
+        limiter = new ApiRateLimitService();
+        ReflectionTestUtils.setField(limiter, "idleSeconds", 60L);
+    }
+
+    @After
+    public void tearDown() {
+        limiter.shutdown();
+    }
+
+    @Test
+    public void testBurstThenRefill() throws InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.tryAcquire(1L, "GET /orders", 100.0, 5));
+        }
+        long wait = limiter.tryAcquire(1L, "GET /orders", 100.0, 5);
+        assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(10));
+
+        // 其他接口和其他密钥各有自己的桶
+        assertEquals(0, limiter.tryAcquire(1L, "GET /users", 100.0, 5));
+        assertEquals(0, limiter.tryAcquire(2L, "GET /orders", 100.0, 5));
+
+        TimeUnit.MILLISECONDS.sleep(30);
+        assertEquals(0, limiter.tryAcquire(1L, "GET /orders", 100.0, 5));
+        assertEquals(0, limiter.tryAcquire(1L, "GET /orders", 100.0, 5));
+
+        // 速率为 0 表示不限流，不创建桶
+        assertEquals(0, limiter.tryAcquire(3L, "GET /orders", 0.0, null));
+        assertEquals(3, limiter.getStats().get("buckets"));
+        assertEquals(1L, limiter.getStats().get("rejected"));
+    }
+
+    @Test
+    public void testZeroBurstAndTinyRateAreClamped() {
+        // 突发容量为 0 时按 1 处理，第一次调用放行
+        assertEquals(0, limiter.tryAcquire(1L, "GET /orders", 10.0, 0));
+        assertTrue(limiter.tryAcquire(1L, "GET /orders", 10.0, 0) > 0);
+
+        // 速率极小时间隔与容量不溢出，拒绝时返回正的等待时间
+        assertEquals(0, limiter.tryAcquire(2L, "GET /orders", 1e-12, 1000));
+        assertTrue(limiter.tryAcquire(2L, "GET /orders", 1e-12, 1000) > 0);
+        assertEquals(0, limiter.tryAcquire(3L, "GET /orders", 1e-12, Integer.MAX_VALUE));
+        assertTrue(limiter.tryAcquire(3L, "GET /orders", 1e-12, Integer.MAX_VALUE) > 0);
+    }
+
+    @Test
+    public void testConcurrentAcquireNeverExceedsBurst() throws Exception {
+        AtomicInteger allowed = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        if (limiter.tryAcquire(1L, "GET /orders", 0.1, 200) == 0) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(200, allowed.get());
+    }
+
+    @Test
+    public void testIdleBucketsAreEvicted() {
+        limiter.tryAcquire(1L, "GET /orders", 10.0, 10);
+        limiter.tryAcquire(1L, "GET /users", 10.0, 10);
+        assertEquals(0, limiter.evictIdle(System.nanoTime()));
+        assertEquals(2, limiter.evictIdle(System.nanoTime() + TimeUnit.SECONDS.toNanos(61)));
+        assertEquals(0, limiter.getStats().get("buckets"));
+    }
+
+    @Test
+    public void testRejectionsAreLogged() throws InterruptedException {
+        String dir = folder.getRoot().getAbsolutePath();
+        ApiCallLogFileRepository callLogRepository = new ApiCallLogFileRepository();
+        ReflectionTestUtils.setField(callLogRepository, "storageDir", dir);
+        ReflectionTestUtils.setField(callLogRepository, "bufferSize", 1024);
+        ReflectionTestUtils.setField(callLogRepository, "batchSize", 256);
+        ReflectionTestUtils.setField(callLogRepository, "retentionHours", 24L);
+        callLogRepository.init();
+        ApiAuthKeyFileRepository keyRepository = new ApiAuthKeyFileRepository();
+        ReflectionTestUtils.setField(keyRepository, "storageDir", dir);
+        keyRepository.init();
+        ApiAuthService authService = new ApiAuthService(keyRepository);
+        ReflectionTestUtils.setField(authService, "cacheSize", 64);
+        authService.init();
+        ApiManagementService service = new ApiManagementService(callLogRepository, authService, limiter);
+
+        ApiAuthKeyModel request = new ApiAuthKeyModel();
+        request.setName("gateway");
+        request.setRateLimit(1.0);
+        request.setBurst(2);
+        String secret = authService.createKey(request).getSecret();
+
+        assertTrue(service.authorize(secret, call()).isAllowed());
+        assertTrue(service.authorize(secret, call()).isAllowed());
+        ApiManagementService.AccessDecision decision = service.authorize(secret, call());
+        assertFalse(decision.isAllowed());
+        assertEquals("RATE_LIMITED", decision.getStatus());
+        assertTrue(decision.getRetryAfterMs() > 0);
+        assertEquals("UNKNOWN", service.authorize("mk_nope", call()).getStatus());
+
+        callLogRepository.shutdown();
+        long now = System.currentTimeMillis();
+        List<ApiCallLogModel> logged = callLogRepository.find(now - 60_000, now, c -> true, 10);
+        assertEquals(1, logged.size());
+        assertEquals(Integer.valueOf(429), logged.get(0).getStatusCode());
+        assertEquals(Boolean.TRUE, logged.get(0).getRateLimited());
+        assertEquals(decision.getKeyId(), logged.get(0).getAuthKeyId());
+    }
+
+    private static ApiCallLogModel call() {
+        ApiCallLogModel call = new ApiCallLogModel();
+        call.setMethod("GET");
+        call.setPath("/orders/{id}");
+        return call;
+    }
+}
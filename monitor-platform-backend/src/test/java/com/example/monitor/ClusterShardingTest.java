@@ -0,0 +1,199 @@
+package com.example.monitor;
+
+import com.example.monitor.cluster.ClusterNode;
+import com.example.monitor.cluster.ConsistentHashRing;
+import com.example.monitor.model.MetricQueryResult;
+import com.example.monitor.model.MetricQuerySeries;
+import com.example.monitor.model.MetricSample;
+import com.example.monitor.model.ServiceInfo;
+import com.example.monitor.query.DistributedQuery;
+import com.example.monitor.service.MetricQueryService;
+import com.example.monitor.storage.MetricSampleFileRepository;
+import com.example.monitor.storage.ServiceInfoFileRepository;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * 集群分片测试：一致性哈希的均衡与稳定性，以及分布式查询合并结果与单节点查询一致
+ */
+public class ClusterShardingTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MetricQueryService single;
+    private List<MetricQueryService> shards;
+
+    @Before
+    public void setUp() throws IOException {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList(node("node-1"), node("node-2")), 128);
+        ServiceInfoFileRepository singleServices = serviceRepository("single");
+        MetricSampleFileRepository singleMetrics = new MetricSampleFileRepository(dir("single"));
+        single = new MetricQueryService(singleMetrics, singleServices);
+
+        List<ServiceInfoFileRepository> shardServices = new ArrayList<>();
+        List<MetricSampleFileRepository> shardMetrics = new ArrayList<>();
+        shards = new ArrayList<>();
+        for (String name : Arrays.asList("node-1", "node-2")) {
+            ServiceInfoFileRepository services = serviceRepository(name);
+            MetricSampleFileRepository metrics = new MetricSampleFileRepository(dir(name));
+            shardServices.add(services);
+            shardMetrics.add(metrics);
+            shards.add(new MetricQueryService(metrics, services));
+        }
+
+        List<MetricSample> all = new ArrayList<>();
+        for (long serviceId = 1; serviceId <= 8; serviceId++) {
+            ServiceInfo service = new ServiceInfo();
+            service.setId(serviceId);
+            service.setName("svc-" + serviceId);
+            service.setEnv(serviceId % 2 == 0 ? "prod" : "test");
+            // 服务元数据每个节点都有一份，与集群模式下从元数据节点同步一致
+            singleServices.save(service);
+            shardServices.forEach(r -> r.save(service));
+
+            List<MetricSample> samples = new ArrayList<>();
+            for (int i = 0; i <= 30; i++) {
+                long ts = NOW - (30 - i) * 10_000L;
+                samples.add(sample(serviceId, "http_requests_total", ts, i * serviceId));
+                samples.add(sample(serviceId, "cpu_usage", ts, (i * 7 + serviceId * 13) % 100));
+            }
+            all.addAll(samples);
+            int owner = ring.ownerOf(ConsistentHashRing.KeyType.SERVICE, serviceId).getId().equals("node-1") ? 0 : 1;
+            shardMetrics.get(owner).saveAll(samples);
+        }
+        singleMetrics.saveAll(all);
+        assertTrue("两个节点都应分到服务", shards.get(0).currentSnapshot().size() > 0 && shards.get(1).currentSnapshot().size() > 0);
+    }
+
+    @Test
+    public void testRingBalanceAndStability() {
+        List<ClusterNode> three = Arrays.asList(node("node-1"), node("node-2"), node("node-3"));
+        ConsistentHashRing ring = new ConsistentHashRing(three, 128);
+        Map<String, Integer> counts = new HashMap<>();
+        int keys = 30_000;
+        for (long id = 1; id <= keys; id++) {
+            counts.merge(ring.ownerOf(ConsistentHashRing.KeyType.SERVICE, id).getId(), 1, Integer::sum);
+        }
+        for (int count : counts.values()) {
+            assertTrue("各节点分到的键应接近 1/3：" + counts, Math.abs(count - keys / 3) < keys / 3 * 0.15);
+        }
+
+        List<ClusterNode> four = new ArrayList<>(three);
+        four.add(node("node-4"));
+        ConsistentHashRing grown = new ConsistentHashRing(four, 128);
+        int moved = 0;
+        for (long id = 1; id <= keys; id++) {
+            String before = ring.ownerOf(ConsistentHashRing.KeyType.SERVICE, id).getId();
+            String after = grown.ownerOf(ConsistentHashRing.KeyType.SERVICE, id).getId();
+            if (!before.equals(after)) {
+                assertEquals("新增节点只会从原节点接走键", "node-4", after);
+                moved++;
+            }
+        }
+        assertTrue("约 1/4 的键移动到新节点：" + moved, Math.abs(moved - keys / 4) < keys / 4 * 0.2);
+    }
+
+    @Test
+    public void testDistributedInstantQueryMatchesSingleNode() {
+        for (String query : Arrays.asList(
+                "sum(rate(http_requests_total[5m]))",
+                "sum by (env) (rate(http_requests_total[5m]))",
+                "avg by (env) (avg_over_time(cpu_usage[5m]))",
+                "count without (service) (cpu_usage)",
+                "max by (env) (cpu_usage)",
+                "min(cpu_usage)",
+                "topk(3, cpu_usage)",
+                "bottomk(2, sum by (service) (rate(http_requests_total[5m])))",
+                "max(avg by (env) (cpu_usage))",
+                "rate(http_requests_total{env=\"prod\"}[5m])")) {
+            DistributedQuery plan = DistributedQuery.plan(query);
+            List<List<MetricQuerySeries>> partials = new ArrayList<>();
+            for (String sub : plan.getSubqueries()) {
+                List<MetricQuerySeries> merged = new ArrayList<>();
+                for (MetricQueryService shard : shards) {
+                    merged.addAll(shard.query(sub, NOW).getResult());
+                }
+                partials.add(merged);
+            }
+            List<MetricQuerySeries> distributed = MetricQueryService.evaluateInstant(plan.merge(partials), null, NOW);
+            assertSameSeries(query, single.query(query, NOW), distributed);
+        }
+    }
+
+    @Test
+    public void testDistributedRangeQueryMatchesSingleNode() {
+        String query = "avg by (env) (rate(http_requests_total[2m]))";
+        long start = NOW - 120_000L;
+        DistributedQuery plan = DistributedQuery.plan(query);
+        assertEquals(2, plan.getSubqueries().size());
+        List<List<MetricQuerySeries>> partials = new ArrayList<>();
+        for (String sub : plan.getSubqueries()) {
+            List<MetricQuerySeries> merged = new ArrayList<>();
+            for (MetricQueryService shard : shards) {
+                merged.addAll(shard.queryRange(sub, start, NOW, 30_000L).getResult());
+            }
+            partials.add(merged);
+        }
+        List<MetricQuerySeries> distributed =
+                MetricQueryService.evaluateRange(plan.merge(partials), null, start, NOW, 30_000L);
+        MetricQueryResult expected = single.queryRange(query, start, NOW, 30_000L);
+        assertEquals(expected.getResult().size(), distributed.size());
+        for (MetricQuerySeries series : expected.getResult()) {
+            MetricQuerySeries actual = distributed.stream()
+                    .filter(s -> s.getLabels().equals(series.getLabels())).findFirst().orElse(null);
+            assertNotNull(series.getLabels().toString(), actual);
+            assertArrayEquals(series.getTimestamps(), actual.getTimestamps());
+            assertArrayEquals(series.getValues(), actual.getValues(), 1e-9);
+        }
+    }
+
+    private static void assertSameSeries(String query, MetricQueryResult expected, List<MetricQuerySeries> actual) {
+        assertEquals(query, expected.getResult().size(), actual.size());
+        Comparator<MetricQuerySeries> order = Comparator.comparing(s -> s.getLabels().toString());
+        List<MetricQuerySeries> sortedExpected = new ArrayList<>(expected.getResult());
+        List<MetricQuerySeries> sortedActual = new ArrayList<>(actual);
+        sortedExpected.sort(order);
+        sortedActual.sort(order);
+        for (int i = 0; i < sortedExpected.size(); i++) {
+            assertEquals(query, sortedExpected.get(i).getLabels(), sortedActual.get(i).getLabels());
+            assertEquals(query, sortedExpected.get(i).getValue(), sortedActual.get(i).getValue(), 1e-9);
+        }
+    }
+
+    private ServiceInfoFileRepository serviceRepository(String name) throws IOException {
+        return new ServiceInfoFileRepository(dir(name));
+    }
+
+    private String dir(String name) {
+        return folder.getRoot().getAbsolutePath() + "/" + name;
+    }
+
+    private static ClusterNode node(String id) {
+        return new ClusterNode(id, "http://127.0.0.1/" + id);
+    }
+
+    private static MetricSample sample(Long serviceId, String name, long ts, double value) {
+        MetricSample sample = new MetricSample();
+        sample.setServiceId(serviceId);
+        sample.setMetricName(name);
+        sample.setValue(value);
+        sample.setTimestamp(new Date(ts));
+        return sample;
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.monitor;
+
+import com.example.monitor.collector.HostResourceCollector;
+import com.example.monitor.model.ServerResource;
+import com.example.monitor.storage.ServerResourceFileRepository;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 主机资源采集测试：在临时目录中构造 /proc/stat、meminfo、loadavg 和 net/dev，
+ * 覆盖两次采样之间的差值、计数器回绕以及文件缺失或格式不对的情况
+ */
+public class HostResourceCollectorTest {
+
+    private static final String NET_HEADER = "Inter-|   Receive                                                |  Transmit\n"
+            + " face |bytes    packets errs drop fifo frame compressed multicast|bytes    packets errs drop fifo colls carrier compressed\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File procRoot;
+    private ServerResourceFileRepository resourceRepository;
+    private HostResourceCollector collector;
+
+    @Before
+    public void setUp() throws IOException {
+        procRoot = folder.newFolder("proc");
+        File dataDir = folder.newFolder("data");
+        resourceRepository = new ServerResourceFileRepository();
+        ReflectionTestUtils.setField(resourceRepository, "storageDir", dataDir.getAbsolutePath());
+        resourceRepository.init();
+
+        collector = new HostResourceCollector(null, resourceRepository, null);
+        ReflectionTestUtils.setField(collector, "serverId", 1L);
+        ReflectionTestUtils.setField(collector, "procRoot", procRoot.getAbsolutePath());
+        ReflectionTestUtils.setField(collector, "diskPath", dataDir.getAbsolutePath());
+        ReflectionTestUtils.setField(collector, "writeIntervalSeconds", 0L);
+    }
+
+    @Test
+    public void testDeltasBetweenSamples() throws IOException {
+        write("stat", "cpu  100 0 100 800 0 0 0 0 0 0\ncpu0 100 0 100 800 0 0 0 0 0 0\nintr 12345\n");
+        write("meminfo", "MemTotal:        8000000 kB\nMemFree:         1000000 kB\nMemAvailable:    2000000 kB\n");
+        write("loadavg", "0.52 0.40 0.30 1/100 1234\n");
+        write("net/dev", NET_HEADER
+                + "    lo: 9999 10 0 0 0 0 0 0 9999 10 0 0 0 0 0 0\n"
+                + "  eth0: 1000 10 0 0 0 0 0 0 2000 20 0 0 0 0 0 0\n"
+                + "  eth1:  500  5 0 0 0 0 0 0  500  5 0 0 0 0 0 0\n");
+        collector.collect();
+        assertTrue("first pass only records a baseline", resourceRepository.findByServerId(1L).isEmpty());
+
+        // user+system 增加 400，idle+iowait 增加 600；guest 列已计入 user，不重复累加
+        write("stat", "cpu  400 0 200 1300 100 0 0 0 500 0\n");
+        write("net/dev", NET_HEADER
+                + "    lo: 99999999 10 0 0 0 0 0 0 99999999 10 0 0 0 0 0 0\n"
+                + "  eth0: 3000 10 0 0 0 0 0 0 2500 20 0 0 0 0 0 0\n"
+                + "  eth1: 1500  5 0 0 0 0 0 0 1500  5 0 0 0 0 0 0\n");
+        collector.collect();
+
+        List<ServerResource> resources = resourceRepository.findByServerId(1L);
+        assertEquals(1, resources.size());
+        ServerResource resource = resources.get(0);
+        assertEquals(40.0, resource.getCpuUsage(), 1e-9);
+        assertEquals(75.0, resource.getMemoryUsage(), 1e-9);
+        assertEquals(6000000 / (1024.0 * 1024.0), resource.getMemoryUsed(), 1e-9);
+        assertEquals(0.52, resource.getLoadAverage(), 1e-9);
+        // 回环网卡不计入：接收增加 3000 字节，发送增加 1500 字节
+        assertTrue(resource.getNetworkIn() > 0);
+        assertEquals(2.0, resource.getNetworkIn() / resource.getNetworkOut(), 1e-9);
+        assertTrue(resource.getDiskUsage() > 0 && resource.getDiskUsage() <= 100);
+    }
+
+    @Test
+    public void testCounterWrapYieldsZeroRates() throws IOException {
+        write("stat", "cpu  1000 0 1000 8000 0 0 0 0\n");
+        write("meminfo", "MemTotal: 1000 kB\nMemAvailable: 250 kB\n");
+        write("loadavg", "1.00 1.00 1.00 1/1 1\n");
+        write("net/dev", NET_HEADER + "  eth0: 5000000 1 0 0 0 0 0 0 5000000 1 0 0 0 0 0 0\n");
+        collector.collect();
+
+        // 计数器回绕后比上次小；只有 idle 回绕时也不能超过 100%
+        write("stat", "cpu  1100 0 1000 10 0 0 0 0\n");
+        write("net/dev", NET_HEADER + "  eth0: 100 1 0 0 0 0 0 0 200 1 0 0 0 0 0 0\n");
+        collector.collect();
+        write("stat", "cpu  500 0 500 500 0 0 0 0\n");
+        collector.collect();
+
+        List<ServerResource> resources = resourceRepository.findByServerId(1L);
+        assertEquals(2, resources.size());
+        for (ServerResource resource : resources) {
+            assertEquals(0.0, resource.getNetworkIn(), 0.0);
+            assertTrue(resource.getCpuUsage() >= 0 && resource.getCpuUsage() <= 100);
+            assertEquals(75.0, resource.getMemoryUsage(), 1e-9);
+        }
+        assertEquals(0.0, resources.get(1).getCpuUsage(), 0.0);
+    }
+
+    @Test
+    public void testMissingFileFailsPassUntilItAppears() throws IOException {
+        write("stat", "cpu  100 0 100 800 0 0 0 0\n");
+        write("meminfo", "MemTotal: 1000 kB\nMemAvailable: 500 kB\n");
+        write("loadavg", "0.10 0.10 0.10 1/1 1\n");
+        try {
+            collector.collect();
+            fail("expected missing net/dev to fail the pass");
+        } catch (FileNotFoundException expected) {
+            // 本轮不写入
+        }
+
+        write("net/dev", NET_HEADER);
+        collector.collect();
+        write("stat", "cpu  200 0 100 900 0 0 0 0\n");
+        collector.collect();
+        List<ServerResource> resources = resourceRepository.findByServerId(1L);
+        assertEquals(1, resources.size());
+        assertEquals(50.0, resources.get(0).getCpuUsage(), 1e-9);
+        assertEquals(0.0, resources.get(0).getNetworkIn(), 0.0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNonPositiveIntervalRejected() {
+        ReflectionTestUtils.setField(collector, "enabled", true);
+        ReflectionTestUtils.setField(collector, "intervalSeconds", 0L);
+        collector.start();
+    }
+
+    @Test
+    public void testMalformedFilesYieldZeros() throws IOException {
+        write("stat", "intr 1 2 3\ncpu  abc\n");
+        write("meminfo", "MemTotal: 1000 kB\nMemFree: 10 kB\n");
+        write("loadavg", "garbage\n");
+        write("net/dev", NET_HEADER + "no colon here 1 2 3\n  eth0: \n");
+        collector.collect();
+        collector.collect();
+
+        List<ServerResource> resources = resourceRepository.findByServerId(1L);
+        assertEquals(1, resources.size());
+        ServerResource resource = resources.get(0);
+        assertEquals(0.0, resource.getCpuUsage(), 0.0);
+        assertEquals("缺少 MemAvailable 时不计算内存使用率", 0.0, resource.getMemoryUsage(), 0.0);
+        assertEquals(0.0, resource.getLoadAverage(), 0.0);
+        assertEquals(0.0, resource.getNetworkIn(), 0.0);
+        assertEquals(0.0, resource.getNetworkOut(), 0.0);
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(procRoot, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+    }
+}
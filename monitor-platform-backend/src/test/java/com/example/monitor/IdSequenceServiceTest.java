@@ -0,0 +1,82 @@
+package com.example.monitor;
+
+import com.example.monitor.storage.IdSequenceService;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * ID 序列测试：按块预留、重启后跳过已预留的块、并发发号不重复
+ */
+public class IdSequenceServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testBlocksAreReservedAndSkippedAfterRestart() {
+        File dir = folder.getRoot();
+        IdSequenceService service = new IdSequenceService(dir, 100);
+        IdSequenceService.Sequence servers = service.sequence("servers");
+        for (long i = 1; i <= 150; i++) {
+            assertEquals(i, servers.next());
+        }
+        assertEquals(201, servers.getLimit());
+        assertEquals(Long.valueOf(201), service.getReserved().get("servers"));
+
+        // 模拟异常退出后重启：从已预留的上界继续，151~200 不再使用
+        IdSequenceService restarted = new IdSequenceService(dir, 100);
+        assertEquals(201, restarted.sequence("servers", () -> 999_999L).next());
+        // 文件中还没有的序列以现有最大 ID 为起点
+        assertEquals(43, restarted.sequence("metrics", () -> 42L).next());
+        assertFalse(new File(dir, "id-sequences.json.tmp").exists());
+    }
+
+    @Test
+    public void testObserveMovesPastExistingIds() {
+        IdSequenceService service = new IdSequenceService(folder.getRoot(), 10);
+        IdSequenceService.Sequence sequence = service.sequence("threads");
+        sequence.observe(57);
+        assertEquals(58, sequence.next());
+        assertTrue(sequence.getLimit() > 58);
+        sequence.observe(3);
+        assertEquals(59, sequence.next());
+    }
+
+    @Test
+    public void testConcurrentIdsAreUnique() throws Exception {
+        IdSequenceService.Sequence sequence = new IdSequenceService(folder.getRoot(), 64).sequence("events");
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 5000; i++) {
+                        ids.add(sequence.next());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(40_000, ids.size());
+        assertTrue(sequence.getLimit() > 40_000);
+        IdSequenceService restarted = new IdSequenceService(folder.getRoot(), 64);
+        assertTrue(restarted.sequence("events").next() > 40_000);
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.monitor;
+
+import com.example.monitor.chat.ChatAggregates;
+import com.example.monitor.model.AnomalyEvent;
+import com.example.monitor.model.MetricSample;
+import com.example.monitor.model.ServerInfo;
+import com.example.monitor.model.ServerResource;
+import com.example.monitor.model.ServiceInfo;
+import com.example.monitor.service.McpChatService;
+import com.example.monitor.storage.AnomalyEventFileRepository;
+import com.example.monitor.storage.MetricSampleFileRepository;
+import com.example.monitor.storage.ServerInfoFileRepository;
+import com.example.monitor.storage.ServerResourceFileRepository;
+import com.example.monitor.storage.ServiceInfoFileRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 智能问答测试：关键词路由、预聚合数据的刷新与流式回答
+ */
+public class McpChatServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ServiceInfoFileRepository serviceRepository;
+    private ServerInfoFileRepository serverRepository;
+    private AnomalyEventFileRepository anomalyRepository;
+    private MetricSampleFileRepository metricRepository;
+    private McpChatService chatService;
+
+    @Before
+    public void setUp() throws IOException {
+        String dir = folder.getRoot().getAbsolutePath();
+        serviceRepository = new ServiceInfoFileRepository(dir);
+        metricRepository = new MetricSampleFileRepository(dir);
+        anomalyRepository = new AnomalyEventFileRepository(dir);
+        serverRepository = new ServerInfoFileRepository();
+        ReflectionTestUtils.setField(serverRepository, "storageDir", dir);
+        serverRepository.init();
+        ServerResourceFileRepository resourceRepository = new ServerResourceFileRepository();
+        ReflectionTestUtils.setField(resourceRepository, "storageDir", dir);
+        resourceRepository.init();
+
+        ChatAggregates aggregates = new ChatAggregates(serviceRepository, serverRepository, anomalyRepository,
+            resourceRepository, metricRepository);
+        aggregates.init();
+        chatService = new McpChatService(aggregates);
+        ReflectionTestUtils.setField(chatService, "maxStreams", 2);
+        ReflectionTestUtils.setField(chatService, "queryThreads", 2);
+        chatService.init();
+
+        Long order = addService("order", "prod");
+        addService("user", "Prod");
+        addService("report", "test");
+        Long web = addServer("web-1", "online").getId();
+        addServer("db-1", "offline");
+
+        List<MetricSample> samples = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            // 只有最近 50 个样本参与统计：前 10 个的 1000 ms 不计入
+            samples.add(sample(order, i < 10 ? 1000 : 100 + (i % 2) * 20, i));
+        }
+        metricRepository.saveAll(samples);
+
+        ServerResource old = new ServerResource();
+        old.setServerId(web);
+        old.setCpuUsage(90.0);
+        old.setTimestamp(new Date(System.currentTimeMillis() - 60_000));
+        resourceRepository.save(old);
+        ServerResource latest = new ServerResource();
+        latest.setServerId(web);
+        latest.setCpuUsage(12.5);
+        resourceRepository.save(latest);
+    }
+
+    @After
+    public void tearDown() {
+        if (chatService != null) {
+            chatService.shutdown();
+        }
+    }
+
+    @Test
+    public void testRouting() {
+        // “服务器”不能落到“服务”的分支
+        assertEquals("当前共有 2 台服务器。", chatService.processQuery("服务器总数"));
+        assertEquals("当前共有 3 个服务。", chatService.processQuery("服务有多少"));
+        assertEquals("生产环境共有 2 个服务。", chatService.processQuery("生产环境的服务"));
+        assertEquals("当前有 1 台服务器在线，1 台离线。", chatService.processQuery("Server online?"));
+        assertTrue(chatService.processQuery("CPU 使用率").contains("web-1: 12.5%"));
+        assertTrue(chatService.processQuery("各服务响应时间").startsWith("当前共有"));
+        assertTrue(chatService.processQuery("平均响应时间").contains("order: 110.00 ms（最大 120.00 ms）"));
+        assertTrue(chatService.processQuery("今天天气").startsWith("抱歉"));
+    }
+
+    @Test
+    public void testAggregatesFollowWrites() {
+        assertEquals("当前没有异常事件记录。", chatService.processQuery("最近异常"));
+        assertTrue(chatService.processQuery("统计").contains("服务数量: 3"));
+
+        AnomalyEvent event = new AnomalyEvent();
+        event.setServiceId(1L);
+        event.setSeverity("high");
+        event.setReason("spike");
+        event.setCreatedAt(new Date());
+        anomalyRepository.save(event);
+        addService("billing", "prod");
+        addServer("cache-1", "online");
+
+        assertTrue(chatService.processQuery("最近异常").contains("spike"));
+        assertTrue(chatService.processQuery("统计").contains("服务数量: 4"));
+        String health = chatService.processQuery("系统健康");
+        assertTrue(health.contains("2/3 在线"));
+        assertTrue(health.contains("最近24小时异常: 1 条"));
+
+        // 同 ID 的事件被替换时计数跟着调整，数据文件被外部替换后重新统计
+        event.setSeverity("low");
+        anomalyRepository.save(event);
+        assertTrue(chatService.processQuery("高严重级别异常").startsWith("共 0 条"));
+        anomalyRepository.reload();
+        assertTrue(chatService.processQuery("异常总数").contains("共有 1 条"));
+
+        // 新样本把更早的挤出统计窗口，服务改名后按新名字汇总
+        List<MetricSample> samples = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            samples.add(sample(1L, 200, 60 + i));
+        }
+        metricRepository.saveAll(samples);
+        assertTrue(chatService.processQuery("平均响应时间").contains("order: 200.00 ms（最大 200.00 ms）"));
+        ServiceInfo order = serviceRepository.findById(1L).get();
+        order.setName("orders");
+        serviceRepository.save(order);
+        assertTrue(chatService.processQuery("平均响应时间").contains("orders: 200.00 ms"));
+    }
+
+    @Test
+    public void testStreamingSendsSectionsInOrder() throws Exception {
+        for (int i = 0; i < 250; i++) {
+            addServer("node-" + i, "online");
+        }
+        List<String> chunks = new CopyOnWriteArrayList<>();
+        chatService.streamQuery("服务器列表", chunks::add).get(10, TimeUnit.SECONDS);
+        // 252 行按每 100 行一段发送
+        assertEquals(3, chunks.size());
+        assertTrue(chunks.get(0).startsWith("服务器列表：\n- web-1"));
+        assertEquals(chatService.processQuery("服务器列表"), String.join("", chunks));
+
+        chunks.clear();
+        chatService.streamQuery("系统统计", chunks::add).get(10, TimeUnit.SECONDS);
+        assertEquals("系统统计概览：\n", chunks.get(0));
+        assertEquals(chatService.processQuery("系统统计"), String.join("", chunks));
+
+        // 接收端出错（如客户端断开）时回答中止
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            chatService.streamQuery("服务器列表", chunk -> {
+                calls.incrementAndGet();
+                throw new IllegalStateException("closed");
+            }).get(10, TimeUnit.SECONDS);
+            fail("expected failure");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(1, calls.get());
+    }
+
+    private Long addService(String name, String env) {
+        ServiceInfo service = new ServiceInfo();
+        service.setName(name);
+        service.setEnv(env);
+        return serviceRepository.save(service).getId();
+    }
+
+    private ServerInfo addServer(String name, String status) {
+        ServerInfo server = new ServerInfo();
+        server.setName(name);
+        server.setStatus(status);
+        return serverRepository.save(server);
+    }
+
+    private static MetricSample sample(Long serviceId, double value, int index) {
+        MetricSample sample = new MetricSample();
+        sample.setServiceId(serviceId);
+        sample.setMetricName("responseTime");
+        sample.setTimestamp(new Date(System.currentTimeMillis() - (60 - index) * 1000L));
+        sample.setValue(value);
+        return sample;
+    }
+}
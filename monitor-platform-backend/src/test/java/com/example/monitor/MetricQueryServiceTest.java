@@ -0,0 +1,148 @@
+package com.example.monitor;
+
+import com.example.monitor.model.MetricQueryResult;
+import com.example.monitor.model.MetricQuerySeries;
+import com.example.monitor.model.MetricSample;
+import com.example.monitor.model.ServiceInfo;
+import com.example.monitor.service.MetricQueryService;
+import com.example.monitor.storage.MetricSampleFileRepository;
+import com.example.monitor.storage.ServiceInfoFileRepository;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 指标查询测试：两个服务各有一个计数器和一个仪表指标，每 10 秒一个样本
+ */
+public class MetricQueryServiceTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MetricSampleFileRepository metricRepository;
+    private MetricQueryService queryService;
+
+    @Before
+    public void setUp() throws IOException {
+        String dir = folder.getRoot().getAbsolutePath();
+        ServiceInfoFileRepository serviceRepository = new ServiceInfoFileRepository(dir);
+        metricRepository = new MetricSampleFileRepository(dir);
+        queryService = new MetricQueryService(metricRepository, serviceRepository);
+
+        Long order = addService(serviceRepository, "order", "prod");
+        Long user = addService(serviceRepository, "user", "test");
+        List<MetricSample> samples = new ArrayList<>();
+        for (int i = 0; i <= 30; i++) {
+            long ts = NOW - (30 - i) * 10_000L;
+            // order 每秒 1 次请求，user 每秒 2 次；user 在第 20 个样本处计数器重置
+            samples.add(sample(order, "http_requests_total{code=\"200\"}", ts, i * 10));
+            samples.add(sample(user, "http_requests_total{code=\"200\"}", ts, i < 20 ? i * 20 : (i - 19) * 20));
+            samples.add(sample(order, "cpu_usage", ts, i % 2 == 0 ? 40 : 60));
+            samples.add(sample(user, "cpu_usage", ts, i));
+        }
+        metricRepository.saveAll(samples);
+    }
+
+    @Test
+    public void testRateAndAggregation() {
+        MetricQueryResult result = queryService.query("rate(http_requests_total{service=\"order\"}[5m])", NOW);
+        assertEquals("vector", result.getResultType());
+        assertEquals(1, result.getResult().size());
+        MetricQuerySeries series = result.getResult().get(0);
+        assertEquals(1.0, series.getValue(), 1e-9);
+        assertNull("函数结果不带指标名", series.getLabels().get("__name__"));
+        assertEquals("200", series.getLabels().get("code"));
+
+        // 计数器重置后的值计入增量：user 在窗口内仍是每 10 秒增加 20
+        result = queryService.query("increase(http_requests_total{env=\"test\"}[5m])", NOW);
+        assertEquals(580.0, result.getResult().get(0).getValue(), 1e-9);
+
+        result = queryService.query("sum by (code) (rate(http_requests_total[5m]))", NOW);
+        assertEquals(1, result.getResult().size());
+        assertEquals(3.0, result.getResult().get(0).getValue(), 1e-9);
+        assertEquals("200", result.getResult().get(0).getLabels().get("code"));
+
+        result = queryService.query("avg(avg_over_time(cpu_usage[5m])) by (env)", NOW);
+        assertEquals(2, result.getResult().size());
+        for (MetricQuerySeries s : result.getResult()) {
+            assertEquals(s.getLabels().get("env").equals("prod") ? 50.0 : 15.5, s.getValue(), 1e-9);
+        }
+    }
+
+    @Test
+    public void testTopkAndQuantile() {
+        MetricQueryResult result = queryService.query("topk(1, cpu_usage)", NOW);
+        assertEquals(1, result.getResult().size());
+        assertEquals("order", result.getResult().get(0).getLabels().get("service"));
+        assertEquals(40.0, result.getResult().get(0).getValue(), 1e-9);
+
+        result = queryService.query("bottomk(1, max_over_time(cpu_usage{service=~\"o.*|u.*\"}[1m]))", NOW);
+        assertEquals("user", result.getResult().get(0).getLabels().get("service"));
+        assertEquals(30.0, result.getResult().get(0).getValue(), 1e-9);
+
+        // user 最近 1 分钟内的样本为 25..30（窗口左开右闭），中位数 27.5
+        result = queryService.query("quantile_over_time(0.5, cpu_usage{service=\"user\"}[1m])", NOW);
+        assertEquals(27.5, result.getResult().get(0).getValue(), 1e-9);
+    }
+
+    @Test
+    public void testRangeQueryAndSnapshotRefresh() {
+        MetricQueryResult result = queryService.queryRange("cpu_usage{service=\"user\"}", NOW - 60_000, NOW, 30_000);
+        assertEquals("matrix", result.getResultType());
+        MetricQuerySeries series = result.getResult().get(0);
+        assertArrayEquals(new long[]{NOW - 60_000, NOW - 30_000, NOW}, series.getTimestamps());
+        assertArrayEquals(new double[]{24, 27, 30}, series.getValues(), 1e-9);
+        assertEquals(4, result.getSeriesTotal());
+
+        // 新写入的样本在下一次查询中可见
+        metricRepository.save(sample(1L, "queue_depth", NOW, 7));
+        result = queryService.query("queue_depth", NOW);
+        assertEquals(5, result.getSeriesTotal());
+        assertEquals(7.0, result.getResult().get(0).getValue(), 1e-9);
+    }
+
+    @Test
+    public void testParseErrors() {
+        assertParseError("rate(cpu_usage)");
+        assertParseError("cpu_usage[5m]");
+        assertParseError("sum by (env (cpu_usage)");
+        assertParseError("cpu_usage{service=order}");
+        assertParseError("quantile_over_time(2, cpu_usage[5m])");
+        assertParseError("rate(cpu_usage[5x])");
+    }
+
+    private void assertParseError(String query) {
+        try {
+            queryService.query(query, NOW);
+            fail("expected parse error: " + query);
+        } catch (IllegalArgumentException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+    private static Long addService(ServiceInfoFileRepository repository, String name, String env) {
+        ServiceInfo service = new ServiceInfo();
+        service.setName(name);
+        service.setEnv(env);
+        return repository.save(service).getId();
+    }
+
+    private static MetricSample sample(Long serviceId, String name, long timestamp, double value) {
+        MetricSample sample = new MetricSample();
+        sample.setServiceId(serviceId);
+        sample.setMetricName(name);
+        sample.setTimestamp(new Date(timestamp));
+        sample.setValue(value);
+        return sample;
+    }
+}
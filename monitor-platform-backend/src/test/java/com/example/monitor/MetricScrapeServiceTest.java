@@ -0,0 +1,193 @@
+package com.example.monitor;
+
+import com.example.monitor.model.MetricSample;
+import com.example.monitor.model.ScrapeTarget;
+import com.example.monitor.model.ServiceInfo;
+import com.example.monitor.service.MetricScrapeService;
+import com.example.monitor.storage.MetricSampleFileRepository;
+import com.example.monitor.storage.ServiceInfoFileRepository;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * 指标抓取测试：使用本地桩 HTTP 服务模拟被监控服务
+ */
+public class MetricScrapeServiceTest {
+
+    private static final String EXPOSITION =
+        "# HELP http_requests_total Total requests\n"
+            + "# TYPE http_requests_total counter\n"
+            + "http_requests_total{method=\"get\",code=\"200\"} 1027\n"
+            + "http_requests_total{method=\"post\",code=\"500\"} 3 1700000000000\n"
+            + "process_open_fds 42\n"
+            + "go_gc_duration_seconds NaN\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ServiceInfoFileRepository serviceRepository;
+    private MetricSampleFileRepository metricRepository;
+    private MetricScrapeService scrapeService;
+
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/metrics", exchange -> {
+            int now = concurrent.incrementAndGet();
+            maxConcurrent.accumulateAndGet(now, Math::max);
+            try {
+                Thread.sleep(50);
+                byte[] body = EXPOSITION.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(2_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.createContext("/broken", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.start();
+
+        String dir = folder.getRoot().getAbsolutePath();
+        serviceRepository = new ServiceInfoFileRepository(dir);
+        metricRepository = new MetricSampleFileRepository(dir);
+        scrapeService = new MetricScrapeService(serviceRepository, metricRepository, null);
+        ReflectionTestUtils.setField(scrapeService, "intervalSeconds", 15L);
+        ReflectionTestUtils.setField(scrapeService, "timeoutMs", 500);
+        ReflectionTestUtils.setField(scrapeService, "maxInFlight", 2);
+        ReflectionTestUtils.setField(scrapeService, "maxBodyBytes", 1 << 20);
+        scrapeService.init();
+    }
+
+    @After
+    public void tearDown() {
+        scrapeService.shutdown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testScrapeHealthyAndFailingTargets() throws Exception {
+        Long healthy = addService("healthy", "/metrics");
+        Long slow = addService("slow", "/slow");
+        Long broken = addService("broken", "/broken");
+
+        Map<Long, ScrapeTarget> targets = scrapeService.scrapeAllNow().stream()
+            .collect(Collectors.toMap(ScrapeTarget::getServiceId, Function.identity()));
+
+        assertEquals("up", targets.get(healthy).getHealth());
+        assertEquals(Integer.valueOf(3), targets.get(healthy).getLastSampleCount());
+        assertEquals("down", targets.get(slow).getHealth());
+        assertTrue(targets.get(slow).getLastDurationMs() < 1_500);
+        assertEquals("down", targets.get(broken).getHealth());
+        assertTrue(targets.get(broken).getLastError().contains("500"));
+
+        List<MetricSample> samples = metricRepository.findAll();
+        assertEquals(3, samples.size());
+        MetricSample withTimestamp = samples.stream()
+            .filter(s -> s.getMetricName().equals("http_requests_total{method=\"post\",code=\"500\"}"))
+            .findFirst()
+            .orElseThrow(AssertionError::new);
+        assertEquals(3.0, withTimestamp.getValue(), 0.0);
+        assertEquals(1700000000000L, withTimestamp.getTimestamp().getTime());
+    }
+
+    @Test
+    public void testDripFedHeadersBoundedByTimeout() throws Exception {
+        // 每 200ms 发一行响应头，单次读取不会超时，但整个请求超过 timeout-ms
+        try (ServerSocket drip = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"))) {
+            Thread sender = new Thread(() -> {
+                try (Socket socket = drip.accept(); OutputStream out = socket.getOutputStream()) {
+                    out.write("HTTP/1.1 200 OK\r\n".getBytes(StandardCharsets.US_ASCII));
+                    for (int i = 0; i < 15; i++) {
+                        out.write(("X-Drip-" + i + ": 1\r\n").getBytes(StandardCharsets.US_ASCII));
+                        out.flush();
+                        Thread.sleep(200);
+                    }
+                } catch (IOException | InterruptedException ignored) {
+                    // 客户端超时后断开
+                }
+            });
+            sender.setDaemon(true);
+            sender.start();
+            ServiceInfo service = new ServiceInfo();
+            service.setName("drip");
+            service.setMetricEndpoint("http://127.0.0.1:" + drip.getLocalPort() + "/metrics");
+            Long id = serviceRepository.save(service).getId();
+
+            ScrapeTarget target = scrapeService.scrapeAllNow().stream()
+                .filter(t -> t.getServiceId().equals(id))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+            assertEquals("down", target.getHealth());
+            assertTrue(target.getLastError(), target.getLastError().contains("timed out"));
+            assertTrue("duration " + target.getLastDurationMs(), target.getLastDurationMs() < 1_500);
+        }
+    }
+
+    @Test
+    public void testInFlightLimit() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            addService("service-" + i, "/metrics");
+        }
+
+        List<ScrapeTarget> targets = scrapeService.scrapeAllNow();
+
+        assertEquals(10, targets.size());
+        assertTrue(targets.stream().allMatch(t -> "up".equals(t.getHealth())));
+        assertTrue("max concurrent " + maxConcurrent.get(), maxConcurrent.get() <= 2);
+        assertEquals(30, metricRepository.findAll().size());
+    }
+
+    private Long addService(String name, String path) {
+        ServiceInfo service = new ServiceInfo();
+        service.setName(name);
+        service.setEnv("test");
+        service.setMetricEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + path);
+        return serviceRepository.save(service).getId();
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.monitor;
+
+import com.example.monitor.collector.ProcFileReader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * /proc 文件读取器测试：游标解析、文件内容变化后重新读取、超过初始缓冲区的文件以及缺失的文件
+ */
+public class ProcFileReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCursorParsing() throws IOException {
+        File file = write("stat", "4242 (my (odd) app) S 1 -5 7\nMemTotal:  8000 kB\nload 0.52 12. x\n");
+        try (ProcFileReader reader = new ProcFileReader(file.getPath())) {
+            reader.reload();
+            assertTrue(reader.skipPastLast((byte) ')'));
+            // 负号不是数字的一部分，非负整数之间的其他字符都被跳过
+            assertEquals(1, reader.nextLong());
+            assertEquals(5, reader.nextLong());
+            assertEquals(7, reader.nextLong());
+            assertEquals("行尾之后不跨行读取", -1, reader.nextLong());
+
+            assertTrue(reader.findLine("MemTotal:".getBytes(StandardCharsets.US_ASCII)));
+            assertEquals(8000, reader.nextLong());
+            assertTrue(reader.nextLine());
+            assertEquals(0.52, reader.nextDecimal(), 1e-12);
+            assertEquals(12.0, reader.nextDecimal(), 1e-12);
+            assertEquals(-1, reader.nextDecimal(), 0.0);
+            assertFalse(reader.nextLine());
+            assertFalse(reader.findLine("MemTotal:".getBytes(StandardCharsets.US_ASCII)));
+        }
+    }
+
+    @Test
+    public void testReloadSeesNewContentAndLargeFiles() throws IOException {
+        File file = write("meminfo", "MemTotal: 1 kB\n");
+        try (ProcFileReader reader = new ProcFileReader(file.getPath())) {
+            reader.reload();
+            assertTrue(reader.findLine("MemTotal:".getBytes(StandardCharsets.US_ASCII)));
+            assertEquals(1, reader.nextLong());
+
+            StringBuilder large = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                large.append("Line").append(i).append(": ").append(i).append(" kB\n");
+            }
+            large.append("MemTotal: 2 kB\n");
+            write("meminfo", large.toString());
+            reader.reload();
+            assertTrue(reader.findLine("MemTotal:".getBytes(StandardCharsets.US_ASCII)));
+            assertEquals(2, reader.nextLong());
+        }
+    }
+
+    @Test
+    public void testLoadAndText() throws IOException {
+        File cmdline = write("cmdline", "java\0-jar\0app.jar\0");
+        ProcFileReader reader = new ProcFileReader();
+        reader.load(cmdline.getPath());
+        assertEquals("java -jar app.jar", reader.text(4096));
+        assertFalse(reader.hasMore());
+
+        reader.load(write("short", "abcdef").getPath());
+        assertEquals("abc", reader.text(3));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testMissingFile() throws IOException {
+        new ProcFileReader().load(new File(folder.getRoot(), "missing").getPath());
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.monitor;
+
+import com.example.monitor.collector.ProcessDiscovery;
+import com.example.monitor.model.ProcessInfo;
+import com.example.monitor.storage.ProcessInfoFileRepository;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * 进程自动发现测试：在临时目录中构造 /proc
+ */
+public class ProcessDiscoveryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File procRoot;
+    private ProcessInfoFileRepository processRepository;
+    private ProcessDiscovery discovery;
+
+    @Before
+    public void setUp() throws IOException {
+        procRoot = folder.newFolder("proc");
+        processRepository = new ProcessInfoFileRepository();
+        ReflectionTestUtils.setField(processRepository, "storageDir", folder.newFolder("data").getAbsolutePath());
+        processRepository.init();
+
+        discovery = new ProcessDiscovery(null, processRepository, null);
+        ReflectionTestUtils.setField(discovery, "serverId", 1L);
+        ReflectionTestUtils.setField(discovery, "procRoot", procRoot.getAbsolutePath());
+    }
+
+    @Test
+    public void testBirthsAndDeathsAreSynced() throws IOException {
+        ProcessInfo stale = new ProcessInfo();
+        stale.setServerId(1L);
+        stale.setName("旧进程");
+        stale.setPid("999");
+        stale.setStatus("running");
+        processRepository.save(stale);
+
+        writeProcess(2, 0, "kthreadd", "", 10);
+        writeProcess(100, 1, "java", "/usr/bin/java\0-Xmx1g\0-jar\0/opt/app/order-service.jar\0", 100);
+        writeProcess(200, 1, "mysqld", "/usr/sbin/mysqld\0--datadir=/var/lib/mysql\0", 200);
+        writeProcess(300, 1, "nginx", "nginx: master process /usr/sbin/nginx", 300);
+        writeProcess(301, 300, "nginx", "nginx: worker process", 301);
+        writeProcess(400, 1, "bash", "-bash\0", 400);
+        writeProcess(500, 1, "node_exporter", "/usr/local/bin/node_exporter\0", 500);
+
+        // 三个新进程登记 + 已不存在的旧进程置为 stopped
+        assertEquals(4, discovery.scan());
+        Map<String, ProcessInfo> byName = byName();
+        assertEquals(4, byName.size());
+        assertEquals("100", byName.get("Java应用服务 (order-service.jar)").getPid());
+        assertEquals("app", byName.get("Java应用服务 (order-service.jar)").getType());
+        assertEquals("database", byName.get("MySQL").getType());
+        assertEquals("300", byName.get("Nginx").getPid());
+        assertEquals("stopped", byName.get("旧进程").getStatus());
+        assertNull(byName.get("旧进程").getPid());
+
+        // 没有变化时不写入
+        assertEquals(0, discovery.scan());
+
+        // mysqld 退出、redis 启动
+        FileSystemUtils.deleteRecursively(new File(procRoot, "200"));
+        writeProcess(600, 1, "redis-server", "/usr/bin/redis-server *:6379", 600);
+        assertEquals(2, discovery.scan());
+        byName = byName();
+        assertEquals("stopped", byName.get("MySQL").getStatus());
+        assertEquals("cache", byName.get("Redis").getType());
+        assertEquals("running", byName.get("Redis").getStatus());
+
+        // mysqld 以新的进程号重新启动，恢复原记录而不是新增
+        Long mysqlId = byName.get("MySQL").getId();
+        writeProcess(700, 1, "mysqld", "/usr/sbin/mysqld\0--datadir=/var/lib/mysql\0", 700);
+        assertEquals(1, discovery.scan());
+        ProcessInfo mysql = processRepository.findById(mysqlId);
+        assertEquals("running", mysql.getStatus());
+        assertEquals("700", mysql.getPid());
+        assertEquals(5, processRepository.findAll().size());
+
+        // 进程号被复用为其他程序
+        writeProcess(100, 1, "python3", "python3\0worker.py\0", 900);
+        assertEquals(2, discovery.scan());
+        byName = byName();
+        assertEquals("stopped", byName.get("Java应用服务 (order-service.jar)").getStatus());
+        assertEquals("100", byName.get("Python应用").getPid());
+    }
+
+    private Map<String, ProcessInfo> byName() {
+        List<ProcessInfo> all = processRepository.findAll();
+        return all.stream().collect(Collectors.toMap(ProcessInfo::getName, Function.identity()));
+    }
+
+    private void writeProcess(int pid, int ppid, String comm, String cmdline, long startTicks) throws IOException {
+        StringBuilder stat = new StringBuilder();
+        stat.append(pid).append(" (").append(comm).append(") S ").append(ppid);
+        for (int column = 5; column <= 21; column++) {
+            stat.append(column == 7 || column == 8 ? " -1" : " 0");
+        }
+        stat.append(' ').append(startTicks).append(" 0 0\n");
+        File dir = new File(procRoot, String.valueOf(pid));
+        dir.mkdirs();
+        Files.write(new File(dir, "stat").toPath(), stat.toString().getBytes(StandardCharsets.US_ASCII));
+        Files.write(new File(dir, "cmdline").toPath(), cmdline.getBytes(StandardCharsets.US_ASCII));
+    }
+}
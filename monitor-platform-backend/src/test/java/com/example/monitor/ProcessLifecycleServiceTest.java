@@ -0,0 +1,126 @@
+package com.example.monitor;
+
+import com.example.monitor.model.ProcessInfo;
+import com.example.monitor.model.ProcessJob;
+import com.example.monitor.service.ProcessLifecycleService;
+import com.example.monitor.storage.ProcessInfoFileRepository;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * 进程启停执行器测试：使用 sh 执行真实命令（仅 Linux）
+ */
+public class ProcessLifecycleServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ProcessInfoFileRepository processRepository;
+    private ProcessLifecycleService lifecycleService;
+
+    @Before
+    public void setUp() throws IOException {
+        Assume.assumeTrue(new File("/proc/self/stat").exists());
+        String dir = folder.getRoot().getAbsolutePath();
+        processRepository = new ProcessInfoFileRepository();
+        ReflectionTestUtils.setField(processRepository, "storageDir", dir);
+        processRepository.init();
+
+        lifecycleService = new ProcessLifecycleService(processRepository);
+        ReflectionTestUtils.setField(lifecycleService, "storageDir", dir);
+        ReflectionTestUtils.setField(lifecycleService, "maxConcurrent", 4);
+        ReflectionTestUtils.setField(lifecycleService, "commandTimeoutSeconds", 2L);
+        ReflectionTestUtils.setField(lifecycleService, "startCheckSeconds", 1L);
+        ReflectionTestUtils.setField(lifecycleService, "stopWaitSeconds", 5L);
+        ReflectionTestUtils.setField(lifecycleService, "maxJobs", 10);
+        lifecycleService.init();
+    }
+
+    @After
+    public void tearDown() {
+        if (lifecycleService != null) {
+            lifecycleService.shutdown();
+        }
+    }
+
+    @Test
+    public void testStartAndStopRunInBackground() throws Exception {
+        Long id = addProcess("sleeper", "echo starting; exec sleep 30", null);
+
+        long submittedAt = System.nanoTime();
+        ProcessJob job = lifecycleService.submit("start", Arrays.asList(id), null, null);
+        assertTrue("submit must not wait for the command", System.nanoTime() - submittedAt < 500_000_000L);
+
+        job = await(job.getId());
+        assertEquals("success", job.getStatus());
+        assertTrue(job.getTasks().get(0).getOutput().contains("starting"));
+        ProcessInfo process = processRepository.findById(id);
+        assertEquals("running", process.getStatus());
+        String pid = process.getPid();
+        assertNotNull(pid);
+        assertTrue(new File("/proc/" + pid).exists());
+
+        // 未配置停止命令时默认 kill -15 $PID
+        job = await(lifecycleService.submit("stop", Arrays.asList(id), null, null).getId());
+        assertEquals("success", job.getStatus());
+        assertEquals("stopped", processRepository.findById(id).getStatus());
+        assertFalse(new File("/proc/" + pid).exists());
+    }
+
+    @Test
+    public void testRollingRestartStopsAfterFailedBatch() throws Exception {
+        Long ok = addProcess("ok", "true", "true");
+        Long broken = addProcess("broken", "echo boom >&2; exit 3", "true");
+        Long hanging = addProcess("hanging", "true", "sleep 10");
+        Long untouched = addProcess("untouched", "true", "true");
+
+        ProcessJob job = await(lifecycleService.submit("restart",
+            Arrays.asList(ok, broken, hanging, untouched), "rolling", 1).getId());
+
+        assertEquals("failed", job.getStatus());
+        assertEquals("success", job.getTasks().get(0).getStatus());
+        assertEquals("failed", job.getTasks().get(1).getStatus());
+        assertEquals(Integer.valueOf(3), job.getTasks().get(1).getExitCode());
+        assertTrue(job.getTasks().get(1).getOutput().contains("boom"));
+        assertEquals("skipped", job.getTasks().get(2).getStatus());
+        assertEquals("skipped", job.getTasks().get(3).getStatus());
+
+        // 并行模式下各进程互不影响，停止命令超时会被强制结束
+        job = await(lifecycleService.submit("stop", Arrays.asList(hanging, untouched), "parallel", null).getId());
+        assertEquals("timeout", job.getTasks().get(0).getStatus());
+        assertEquals("success", job.getTasks().get(1).getStatus());
+    }
+
+    private ProcessJob await(Long jobId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (System.currentTimeMillis() < deadline) {
+            ProcessJob job = lifecycleService.getJob(jobId);
+            if ("success".equals(job.getStatus()) || "failed".equals(job.getStatus())) {
+                return job;
+            }
+            Thread.sleep(50);
+        }
+        fail("job " + jobId + " did not finish");
+        return null;
+    }
+
+    private Long addProcess(String name, String startCommand, String stopCommand) {
+        ProcessInfo process = new ProcessInfo();
+        process.setName(name);
+        process.setStatus("stopped");
+        process.setStartCommand(startCommand);
+        process.setStopCommand(stopCommand);
+        return processRepository.save(process).getId();
+    }
+}
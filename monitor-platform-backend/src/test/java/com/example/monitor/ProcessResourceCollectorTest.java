@@ -0,0 +1,169 @@
+package com.example.monitor;
+
+import com.example.monitor.collector.ProcessResourceCollector;
+import com.example.monitor.model.ProcessInfo;
+import com.example.monitor.model.ProcessResource;
+import com.example.monitor.storage.ProcessInfoFileRepository;
+import com.example.monitor.storage.ProcessResourceFileRepository;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 进程资源采集测试：在临时目录中构造 /proc 文件
+ */
+public class ProcessResourceCollectorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File procRoot;
+    private ProcessInfoFileRepository processRepository;
+    private ProcessResourceFileRepository resourceRepository;
+    private ProcessResourceCollector collector;
+
+    @Before
+    public void setUp() throws IOException {
+        procRoot = folder.newFolder("proc");
+        File dataDir = folder.newFolder("data");
+        processRepository = new ProcessInfoFileRepository();
+        ReflectionTestUtils.setField(processRepository, "storageDir", dataDir.getAbsolutePath());
+        processRepository.init();
+        resourceRepository = new ProcessResourceFileRepository();
+        ReflectionTestUtils.setField(resourceRepository, "storageDir", dataDir.getAbsolutePath());
+        resourceRepository.init();
+
+        collector = new ProcessResourceCollector(null, processRepository, resourceRepository, null);
+        ReflectionTestUtils.setField(collector, "serverId", 1L);
+        ReflectionTestUtils.setField(collector, "procRoot", procRoot.getAbsolutePath());
+        ReflectionTestUtils.setField(collector, "clockTicks", 100);
+        ReflectionTestUtils.setField(collector, "writeIntervalSeconds", 0L);
+
+        write("meminfo", "MemTotal:        8000000 kB\nMemFree:         1000000 kB\n");
+        write("uptime", "5000.25 12000.00\n");
+    }
+
+    @Test
+    public void testCollectFromProcFiles() throws IOException {
+        ProcessInfo process = new ProcessInfo();
+        process.setServerId(1L);
+        process.setName("java");
+        process.setPid("4242");
+        process.setStatus("running");
+        Long processId = processRepository.save(process).getId();
+
+        ProcessInfo remote = new ProcessInfo();
+        remote.setServerId(2L);
+        remote.setPid("4242");
+        remote.setStatus("running");
+        processRepository.save(remote);
+
+        // 进程名中带空格和括号，确保按最后一个 ')' 切分
+        writeProcess(4242, "4242 (my (odd) app) S 1 4242 4242 0 -1 4194560 100 0 0 0 1000 500 0 0 20 0 17 0 300000 "
+            + "1000000 2000 18446744073709551615 0 0 0 0 0 0 0 0 0 0 0 0 17 3 0 0 0 0 0\n",
+            1_000_000, 2_000_000, 3);
+
+        collector.collect();
+        assertTrue("first pass only records a baseline", resourceRepository.findByProcessId(processId).isEmpty());
+
+        writeProcess(4242, "4242 (my (odd) app) S 1 4242 4242 0 -1 4194560 100 0 0 0 1600 600 0 0 20 0 18 0 300000 "
+            + "1000000 2000 18446744073709551615 0 0 0 0 0 0 0 0 0 0 0 0 17 3 0 0 0 0 0\n",
+            3_000_000, 2_500_000, 5);
+        collector.collect();
+
+        List<ProcessResource> resources = resourceRepository.findRecent(100);
+        assertEquals(1, resources.size());
+        ProcessResource resource = resources.get(0);
+        assertEquals(processId, resource.getProcessId());
+        assertTrue(resource.getCpuUsage() > 0);
+        assertEquals(400.0, resource.getMemoryUsage(), 1e-9);
+        assertEquals(100.0 * 409600 / 8000000, resource.getMemoryPercent(), 1e-9);
+        assertEquals(Integer.valueOf(18), resource.getThreadCount());
+        assertEquals(Integer.valueOf(5), resource.getHandleCount());
+        assertTrue(resource.getDiskReadRate() > resource.getDiskWriteRate());
+        assertEquals(Long.valueOf(2000), resource.getUptime());
+        assertNull(resource.getNetworkReceiveRate());
+    }
+
+    @Test
+    public void testAveragesOnlySamplesWithValues() throws IOException {
+        ReflectionTestUtils.setField(collector, "writeIntervalSeconds", 3600L);
+        ProcessInfo process = new ProcessInfo();
+        process.setServerId(1L);
+        process.setPid("4343");
+        process.setStatus("running");
+        Long processId = processRepository.save(process).getId();
+        String stat = "4343 (app) S 1 4343 4343 0 -1 4194560 100 0 0 0 1000 500 0 0 20 0 18 0 300000 "
+            + "1000000 2000 18446744073709551615 0 0 0 0 0 0 0 0 0 0 0 0 17 3 0 0 0 0 0\n";
+
+        writeProcess(4343, stat, 1_000_000, 2_000_000, 4);
+        collector.collect();
+        collector.collect();
+
+        // 第二次采样读不到常驻内存和 fd 目录，平均值只按有值的那次采样计算
+        write("4343/status", "Name:\tapp\nState:\tS (sleeping)\nThreads:\t18\n");
+        File fdDir = new File(procRoot, "4343/fd");
+        for (File fd : fdDir.listFiles()) {
+            assertTrue(fd.delete());
+        }
+        assertTrue(fdDir.delete());
+        ReflectionTestUtils.setField(collector, "writeIntervalSeconds", 0L);
+        collector.collect();
+
+        List<ProcessResource> resources = resourceRepository.findByProcessId(processId);
+        assertEquals(1, resources.size());
+        ProcessResource resource = resources.get(0);
+        assertEquals(400.0, resource.getMemoryUsage(), 1e-9);
+        assertEquals(100.0 * 409600 / 8000000, resource.getMemoryPercent(), 1e-9);
+        assertEquals(Integer.valueOf(4), resource.getHandleCount());
+        assertEquals(Integer.valueOf(18), resource.getThreadCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNonPositiveIntervalRejected() {
+        ReflectionTestUtils.setField(collector, "enabled", true);
+        ReflectionTestUtils.setField(collector, "intervalSeconds", 0L);
+        collector.start();
+    }
+
+    @Test
+    public void testExitedProcessIsSkipped() throws IOException {
+        ProcessInfo process = new ProcessInfo();
+        process.setPid("9999");
+        process.setStatus("running");
+        processRepository.save(process);
+
+        collector.collect();
+        collector.collect();
+
+        assertTrue(resourceRepository.findRecent(100).isEmpty());
+    }
+
+    private void writeProcess(int pid, String stat, long readBytes, long writeBytes, int fds) throws IOException {
+        write(pid + "/stat", stat);
+        write(pid + "/status", "Name:\tapp\nState:\tS (sleeping)\nVmRSS:\t  409600 kB\nThreads:\t18\n");
+        write(pid + "/io", "rchar: 1\nwchar: 2\nsyscr: 3\nsyscw: 4\nread_bytes: " + readBytes
+            + "\nwrite_bytes: " + writeBytes + "\ncancelled_write_bytes: 0\n");
+        File fdDir = new File(procRoot, pid + "/fd");
+        fdDir.mkdirs();
+        for (int i = 0; i < fds; i++) {
+            new File(fdDir, String.valueOf(i)).createNewFile();
+        }
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(procRoot, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+    }
+}
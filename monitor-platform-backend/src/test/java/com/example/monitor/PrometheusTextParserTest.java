@@ -0,0 +1,107 @@
+package com.example.monitor;
+
+import com.example.monitor.ingest.PrometheusTextParser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Prometheus / OpenMetrics 文本解析测试
+ */
+public class PrometheusTextParserTest {
+
+    @Test
+    public void testCountersGaugesAndHistograms() throws IOException {
+        String text = "# HELP http_requests_total Total requests\n"
+            + "# TYPE http_requests_total counter\n"
+            + "http_requests_total{method=\"get\",path=\"/a \\\"b\\\"\"} 1027 1700000000000\r\n"
+            + "  temperature_celsius -3.5e1\n"
+            + "# TYPE latency_seconds histogram\n"
+            + "latency_seconds_bucket{le=\"0.1\"} 5\n"
+            + "latency_seconds_bucket{le=\"+Inf\"} 9\n"
+            + "latency_seconds_sum 1.25\n"
+            + "latency_seconds_count 9\n"
+            + "broken_gauge NaN\n"
+            + "not a sample line\n"
+            + "last_line_without_newline 7";
+
+        List<Object[]> samples = new ArrayList<>();
+        PrometheusTextParser.Result result = parse(text, false, samples);
+
+        assertEquals(7, result.getSamples());
+        assertEquals(2, result.getSkipped());
+        assertSample(samples.get(0), "http_requests_total{method=\"get\",path=\"/a \\\"b\\\"\"}", 1027, 1700000000000L);
+        assertSample(samples.get(1), "temperature_celsius", -35, Long.MIN_VALUE);
+        assertSample(samples.get(3), "latency_seconds_bucket{le=\"+Inf\"}", 9, Long.MIN_VALUE);
+        assertSample(samples.get(4), "latency_seconds_sum", 1.25, Long.MIN_VALUE);
+        assertSample(samples.get(6), "last_line_without_newline", 7, Long.MIN_VALUE);
+    }
+
+    @Test
+    public void testOpenMetricsTimestampsAndExemplars() throws IOException {
+        String text = "# TYPE rpc_seconds histogram\n"
+            + "rpc_seconds_bucket{le=\"1.0\"} 4 1700000000.5 # {trace_id=\"abc\"} 0.67 1700000000.1\n"
+            + "# EOF\n";
+
+        List<Object[]> samples = new ArrayList<>();
+        parse(text, true, samples);
+
+        assertEquals(1, samples.size());
+        assertSample(samples.get(0), "rpc_seconds_bucket{le=\"1.0\"}", 4, 1700000000500L);
+    }
+
+    @Test
+    public void testLinesSpanningBufferBoundaries() throws IOException {
+        StringBuilder text = new StringBuilder();
+        int count = 20_000;
+        for (int i = 0; i < count; i++) {
+            text.append("series_").append(i % 100).append("{instance=\"host-").append(i).append("\"} ").append(i).append('\n');
+        }
+
+        List<Object[]> samples = new ArrayList<>();
+        PrometheusTextParser.Result result = parse(text.toString(), false, samples);
+
+        assertEquals(count, result.getSamples());
+        assertSample(samples.get(count - 1), "series_99{instance=\"host-19999\"}", 19999, Long.MIN_VALUE);
+    }
+
+    @Test
+    public void testNumberParsingMatchesJdk() throws IOException {
+        Random random = new Random(1);
+        StringBuilder text = new StringBuilder();
+        List<Double> expected = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(40) - 20);
+            String literal = i % 2 == 0 ? Double.toString(value) : String.format("%.6f", value);
+            expected.add(Double.parseDouble(literal));
+            text.append("m ").append(literal).append('\n');
+        }
+
+        List<Object[]> samples = new ArrayList<>();
+        parse(text.toString(), false, samples);
+
+        assertEquals(expected.size(), samples.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), (Double) samples.get(i)[1], 0.0);
+        }
+    }
+
+    private static PrometheusTextParser.Result parse(String text, boolean openMetrics, List<Object[]> samples) throws IOException {
+        return new PrometheusTextParser().parse(
+            new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), openMetrics,
+            (series, value, timestampMs) -> samples.add(new Object[]{series, value, timestampMs}));
+    }
+
+    private static void assertSample(Object[] sample, String series, double value, long timestampMs) {
+        assertEquals(series, sample[0]);
+        assertEquals(value, (Double) sample[1], 1e-9);
+        assertEquals(timestampMs, ((Long) sample[2]).longValue());
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.monitor;
+
+import com.example.monitor.model.MetricSample;
+import com.example.monitor.model.ServerInfo;
+import com.example.monitor.model.ServerResource;
+import com.example.monitor.replication.ReplicationService;
+import com.example.monitor.storage.AiAgentFileRepository;
+import com.example.monitor.storage.AnomalyEventFileRepository;
+import com.example.monitor.storage.ApiAuthKeyFileRepository;
+import com.example.monitor.storage.MetricSampleFileRepository;
+import com.example.monitor.storage.ProcessInfoFileRepository;
+import com.example.monitor.storage.ProcessResourceFileRepository;
+import com.example.monitor.storage.ServerInfoFileRepository;
+import com.example.monitor.storage.ServerResourceFileRepository;
+import com.example.monitor.storage.ServiceInfoFileRepository;
+import com.example.monitor.storage.ThreadInfoFileRepository;
+import com.example.monitor.storage.ThreadStackFileRepository;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * 主从复制测试：从节点先收到全量快照再跟上增量写入，追加文件只补新增部分、时序文件只读入新增的记录、与主节点不一致时重新全量同步，提升后接着主节点的 ID 发号
+ */
+public class ReplicationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<ReplicationService> services = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        services.forEach(ReplicationService::shutdown);
+    }
+
+    @Test
+    public void testFollowerReplicatesAndPromotes() throws Exception {
+        Node leader = new Node("leader");
+        ServerInfo server = new ServerInfo();
+        server.setName("web-1");
+        leader.servers.save(server);
+        for (int i = 0; i < 3; i++) {
+            leader.resources.save(resource(server.getId(), 10.0 + i));
+        }
+        Path segment = Paths.get(leader.dir, "api-calls", "20240101-00.jsonl");
+        Files.createDirectories(segment.getParent());
+        Files.write(segment, "{\"id\":1}\n".getBytes(StandardCharsets.UTF_8));
+        leader.start("leader", "");
+
+        Node follower = new Node("follower");
+        follower.start("follower", "127.0.0.1:" + leader.replication.getStatus().get("port"));
+        assertTrue(follower.replication.isReadOnly());
+        await(() -> !follower.replication.isStale());
+        // 全量快照
+        assertEquals("web-1", follower.servers.findById(server.getId()).getName());
+        assertEquals(3, follower.resources.findByServerId(server.getId()).size());
+
+        // 增量：整体重写的文件和只追加的分段
+        leader.resources.save(resource(server.getId(), 99.0));
+        Files.write(segment, "{\"id\":2}\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Path replica = Paths.get(follower.dir, "api-calls", "20240101-00.jsonl");
+        await(() -> follower.resources.findByServerId(server.getId()).size() == 4);
+        await(() -> Arrays.equals(read(segment), read(replica)));
+        assertEquals(99.0, last(follower.resources.findByServerIdAfter(server.getId(), 0)).getCpuUsage(), 0.0);
+
+        // 主节点不可用后提升从节点，新数据的 ID 不与主节点已发出的重复
+        long lastLeaderId = last(leader.resources.findByServerIdAfter(server.getId(), 0)).getId();
+        leader.replication.shutdown();
+        follower.replication.promote();
+        assertFalse(follower.replication.isReadOnly());
+        assertEquals(ReplicationService.ROLE_LEADER, follower.replication.getRole());
+        ServerResource written = follower.resources.save(resource(server.getId(), 50.0));
+        assertTrue(written.getId() > lastLeaderId);
+        assertEquals(5, follower.resources.findByServerId(server.getId()).size());
+    }
+
+    @Test
+    public void testFollowerRemovesFilesMissingOnLeader() throws Exception {
+        Node leader = new Node("leader");
+        leader.start("leader", "");
+        Node follower = new Node("follower");
+        Path stale = Paths.get(follower.dir, "api-calls", "20230101-00.jsonl");
+        Files.createDirectories(stale.getParent());
+        Files.write(stale, "{}\n".getBytes(StandardCharsets.UTF_8));
+        Path local = Paths.get(follower.dir, "api-latency.json");
+        Files.write(local, "{}".getBytes(StandardCharsets.UTF_8));
+
+        follower.start("follower", "127.0.0.1:" + leader.replication.getStatus().get("port"));
+        await(() -> !follower.replication.isStale());
+        assertFalse("主节点上没有的文件在同步后删除", Files.exists(stale));
+        assertTrue("不参与复制的本地文件保留", Files.exists(local));
+    }
+
+    @Test
+    public void testFollowerResyncsDivergedAppendFile() throws Exception {
+        Node leader = new Node("leader");
+        Path segment = Paths.get(leader.dir, "api-calls", "20240101-00.jsonl");
+        Files.createDirectories(segment.getParent());
+        Files.write(segment, "{\"id\":1}\n".getBytes(StandardCharsets.UTF_8));
+        leader.start("leader", "");
+        Node follower = new Node("follower");
+        follower.start("follower", "127.0.0.1:" + leader.replication.getStatus().get("port"));
+        Path replica = Paths.get(follower.dir, "api-calls", "20240101-00.jsonl");
+        await(() -> Arrays.equals(read(segment), read(replica)));
+
+        // 副本被本地写入改动过，主节点的下一次追加与本地已有的字节对不上
+        Files.write(replica, "{\"id\":9}\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Files.write(segment, "{\"id\":2}\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        await(() -> Arrays.equals(read(segment), read(replica)));
+    }
+
+    @Test
+    public void testFollowerLoadsOnlyAppendedSamples() throws Exception {
+        Node leader = new Node("leader");
+        leader.metrics.save(sample(1L, 1.0, 0));
+        leader.start("leader", "");
+        Node follower = new Node("follower");
+        AtomicInteger resets = new AtomicInteger();
+        List<MetricSample> appended = new CopyOnWriteArrayList<>();
+        follower.metrics.addListener(new MetricSampleFileRepository.Listener() {
+            @Override
+            public void reset(List<MetricSampleFileRepository.SeriesData> series) {
+                resets.incrementAndGet();
+            }
+
+            @Override
+            public void appended(List<MetricSample> samples) {
+                appended.addAll(samples);
+            }
+        });
+        follower.start("follower", "127.0.0.1:" + leader.replication.getStatus().get("port"));
+        await(() -> !follower.replication.isStale());
+        assertEquals(1, follower.metrics.findAll().size());
+        int resetsAfterSnapshot = resets.get();
+
+        // 追加帧只读入新增的样本，不整体重新加载
+        for (int i = 0; i < 3; i++) {
+            leader.metrics.saveAll(Arrays.asList(sample(1L, 10.0 + i, i + 1), sample(2L, 20.0 + i, i + 1)));
+        }
+        await(() -> follower.metrics.findAll().size() == 7);
+        assertEquals(resetsAfterSnapshot, resets.get());
+        assertEquals(6, appended.size());
+        assertEquals(22.0, follower.metrics.findRecentByServiceAndMetric(2L, "cpu", 1).get(0).getValue(), 0.0);
+    }
+
+    private static MetricSample sample(Long serviceId, double value, int second) {
+        MetricSample sample = new MetricSample();
+        sample.setServiceId(serviceId);
+        sample.setMetricName("cpu");
+        sample.setTimestamp(new Date(1_700_000_000_000L + second * 1000L));
+        sample.setValue(value);
+        return sample;
+    }
+
+    private static ServerResource last(List<ServerResource> resources) {
+        return resources.get(resources.size() - 1);
+    }
+
+    private static byte[] read(Path path) {
+        try {
+            return Files.exists(path) ? Files.readAllBytes(path) : new byte[0];
+        } catch (IOException e) {
+            return new byte[0];
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("等待复制超时", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private static ServerResource resource(Long serverId, double cpu) {
+        ServerResource resource = new ServerResource();
+        resource.setServerId(serverId);
+        resource.setCpuUsage(cpu);
+        resource.setTimestamp(new Date());
+        return resource;
+    }
+
+    /**
+     * 一个节点的数据目录、仓储和复制服务
+     */
+    private class Node {
+        final String dir;
+        final ServerInfoFileRepository servers = new ServerInfoFileRepository();
+        final ServerResourceFileRepository resources = new ServerResourceFileRepository();
+        final MetricSampleFileRepository metrics;
+        ReplicationService replication;
+
+        Node(String name) throws IOException {
+            dir = folder.newFolder(name).getAbsolutePath();
+            ReflectionTestUtils.setField(servers, "storageDir", dir);
+            servers.init();
+            ReflectionTestUtils.setField(resources, "storageDir", dir);
+            resources.init();
+            metrics = new MetricSampleFileRepository(dir);
+        }
+
+        void start(String role, String leaderAddress) throws IOException {
+            ProcessInfoFileRepository processes = new ProcessInfoFileRepository();
+            ProcessResourceFileRepository processResources = new ProcessResourceFileRepository();
+            ThreadInfoFileRepository threads = new ThreadInfoFileRepository();
+            ThreadStackFileRepository stacks = new ThreadStackFileRepository();
+            ApiAuthKeyFileRepository keys = new ApiAuthKeyFileRepository();
+            AiAgentFileRepository agents = new AiAgentFileRepository();
+            for (Object repository : Arrays.asList(processes, processResources, threads, stacks, keys, agents)) {
+                ReflectionTestUtils.setField(repository, "storageDir", dir);
+            }
+            processes.init();
+            processResources.init();
+            threads.init();
+            stacks.init();
+            keys.init();
+            agents.init();
+            replication = new ReplicationService(new ServiceInfoFileRepository(dir), servers, resources, processes,
+                    processResources, threads, stacks, metrics, new AnomalyEventFileRepository(dir), keys, agents);
+            ReflectionTestUtils.setField(replication, "storageDir", dir);
+            ReflectionTestUtils.setField(replication, "role", role);
+            ReflectionTestUtils.setField(replication, "nodeId", role);
+            ReflectionTestUtils.setField(replication, "bindAddress", "127.0.0.1");
+            ReflectionTestUtils.setField(replication, "port", 0);
+            ReflectionTestUtils.setField(replication, "leaderSpec", leaderAddress);
+            ReflectionTestUtils.setField(replication, "heartbeatMs", 200L);
+            ReflectionTestUtils.setField(replication, "maxLagMs", 2000L);
+            ReflectionTestUtils.setField(replication, "timeoutMs", 2000);
+            ReflectionTestUtils.setField(replication, "retryMs", 100L);
+            ReflectionTestUtils.setField(replication, "batchDelayMs", 10L);
+            ReflectionTestUtils.setField(replication, "maxQueueMb", 16L);
+            replication.init();
+            services.add(replication);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.monitor;
+
+import com.example.monitor.model.MetricSample;
+import com.example.monitor.model.ServerInfo;
+import com.example.monitor.storage.MetricSampleFileRepository;
+import com.example.monitor.storage.RepositoryMetrics;
+import com.example.monitor.storage.ServerInfoFileRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 仓储指标测试：写入、读取和查询的计时与行数，以及每个仓储实例的 gauge 注册在自己的注册表中
+ */
+public class RepositoryMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndReadRecorded() throws Exception {
+        String dir = folder.getRoot().getAbsolutePath();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MetricSampleFileRepository repository = new MetricSampleFileRepository(dir, registry);
+        repository.saveAll(samples(1L, 3));
+        repository.save(samples(2L, 1).get(0));
+
+        assertEquals(2, registry.get(RepositoryMetrics.WRITE).tag("repository", "metrics").timer().count());
+        assertEquals(4.0, registry.get(RepositoryMetrics.ROWS).tags("repository", "metrics", "operation", "write")
+                .summary().totalAmount(), 0.0);
+        assertTrue(registry.get(RepositoryMetrics.BYTES).tags("repository", "metrics", "operation", "write")
+                .summary().totalAmount() > 0);
+        assertEquals(4.0, registry.get(RepositoryMetrics.SIZE).tag("repository", "metrics").gauge().value(), 0.0);
+
+        SimpleMeterRegistry restartedRegistry = new SimpleMeterRegistry();
+        new MetricSampleFileRepository(dir, restartedRegistry);
+        assertEquals(1, restartedRegistry.get(RepositoryMetrics.READ).tag("repository", "metrics").timer().count());
+        assertEquals(4.0, restartedRegistry.get(RepositoryMetrics.ROWS).tags("repository", "metrics", "operation", "read")
+                .summary().totalAmount(), 0.0);
+    }
+
+    @Test
+    public void testQueryScanRecorded() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ServerInfoFileRepository repository = new ServerInfoFileRepository();
+        ReflectionTestUtils.setField(repository, "storageDir", folder.getRoot().getAbsolutePath());
+        ReflectionTestUtils.setField(repository, "meterRegistry", registry);
+        repository.init();
+        for (String status : new String[]{"online", "online", "offline"}) {
+            ServerInfo server = new ServerInfo();
+            server.setStatus(status);
+            repository.save(server);
+        }
+
+        assertEquals(2, repository.findByStatus("online").size());
+        repository.findByType("db");
+
+        assertEquals(2, registry.get(RepositoryMetrics.QUERY).tag("repository", "servers").timer().count());
+        assertEquals(6.0, registry.get(RepositoryMetrics.ROWS).tags("repository", "servers", "operation", "scan")
+                .summary().totalAmount(), 0.0);
+        assertEquals(3, registry.get(RepositoryMetrics.WRITE).tag("repository", "servers").timer().count());
+        assertEquals(3.0, registry.get(RepositoryMetrics.SIZE).tag("repository", "servers").gauge().value(), 0.0);
+    }
+
+    @Test
+    public void testEachInstanceReportsItsOwnGauges() throws Exception {
+        SimpleMeterRegistry firstRegistry = new SimpleMeterRegistry();
+        SimpleMeterRegistry secondRegistry = new SimpleMeterRegistry();
+        MetricSampleFileRepository first = new MetricSampleFileRepository(folder.newFolder("first").getAbsolutePath(), firstRegistry);
+        MetricSampleFileRepository second = new MetricSampleFileRepository(folder.newFolder("second").getAbsolutePath(), secondRegistry);
+        first.saveAll(samples(1L, 2));
+        second.saveAll(samples(1L, 5));
+
+        assertEquals(2.0, firstRegistry.get(RepositoryMetrics.SIZE).tag("repository", "metrics").gauge().value(), 0.0);
+        assertEquals(5.0, secondRegistry.get(RepositoryMetrics.SIZE).tag("repository", "metrics").gauge().value(), 0.0);
+        assertEquals(1, firstRegistry.get(RepositoryMetrics.WRITE).tag("repository", "metrics").timer().count());
+        assertEquals(1, secondRegistry.get(RepositoryMetrics.WRITE).tag("repository", "metrics").timer().count());
+    }
+
+    private static List<MetricSample> samples(Long serviceId, int count) {
+        long base = System.currentTimeMillis() - 60_000;
+        List<MetricSample> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MetricSample sample = new MetricSample();
+            sample.setServiceId(serviceId);
+            sample.setMetricName("latency");
+            sample.setTimestamp(new Date(base + i * 1000L));
+            sample.setValue(10.0 + i);
+            list.add(sample);
+        }
+        return list;
+    }
+}
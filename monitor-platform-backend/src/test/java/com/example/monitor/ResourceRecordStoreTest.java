@@ -0,0 +1,134 @@
+package com.example.monitor;
+
+import com.example.monitor.model.ProcessResource;
+import com.example.monitor.model.ServerResource;
+import com.example.monitor.storage.ProcessResourceFileRepository;
+import com.example.monitor.storage.ServerResourceFileRepository;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * 堆外资源记录测试：空值和状态往返、按目标增量读取、乱序时间戳、超过上限后淘汰最早的记录、重启和旧文件迁移
+ */
+public class ResourceRecordStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testProcessResourcesRoundTripAndRestart() throws Exception {
+        File dir = folder.getRoot();
+        Files.write(new File(dir, "process-resources.json").toPath(), ("[{\"id\":5,\"processId\":7,\"cpuUsage\":1.5,"
+                + "\"threadCount\":12,\"status\":\"stopped\",\"timestamp\":\"2024-01-01 00:00:00\"}]").getBytes(StandardCharsets.UTF_8));
+        ProcessResourceFileRepository repository = processRepository(dir, 1_000_000);
+
+        List<ProcessResource> batch = new ArrayList<>();
+        batch.add(process(7L, 2.5, "running", null));
+        batch.add(process(8L, null, null, 3_000_000_000L));
+        repository.saveAll(batch);
+
+        ProcessResourceFileRepository restarted = processRepository(dir, 1_000_000);
+        List<ProcessResource> seven = restarted.findByProcessIdAfter(7L, 0);
+        assertEquals(2, seven.size());
+        assertEquals(Long.valueOf(5), seven.get(0).getId());
+        assertEquals("stopped", seven.get(0).getStatus());
+        assertEquals(Integer.valueOf(12), seven.get(0).getThreadCount());
+        assertNull(seven.get(0).getUptime());
+        assertEquals("running", seven.get(1).getStatus());
+        assertEquals(2.5, seven.get(1).getCpuUsage(), 0.0);
+        assertEquals(1, restarted.findByProcessIdAfter(7L, 5).size());
+
+        ProcessResource eight = restarted.findRecentByProcessId(8L, 1).get(0);
+        assertNull(eight.getCpuUsage());
+        assertNull(eight.getStatus());
+        assertEquals(Long.valueOf(3_000_000_000L), eight.getUptime());
+        assertTrue(eight.getId() > 5);
+        assertEquals(3, restarted.findRecent(10).size());
+    }
+
+    @Test
+    public void testOldestSegmentsAreEvicted() {
+        File dir = folder.getRoot();
+        ProcessResourceFileRepository repository = processRepository(dir, 20_000);
+        long start = 1_700_000_000_000L;
+        for (int b = 0; b < 50; b++) {
+            List<ProcessResource> batch = new ArrayList<>();
+            for (int p = 0; p < 1000; p++) {
+                ProcessResource resource = process((long) p, (double) b, "running", (long) b);
+                resource.setTimestamp(new Date(start + b * 1000L));
+                batch.add(resource);
+            }
+            repository.saveAll(batch);
+        }
+        List<ProcessResource> history = repository.findByProcessId(3L);
+        assertTrue("保留的行数不少于上限", history.size() * 1000 >= 20_000);
+        assertTrue("超过上限的最早记录被淘汰", history.size() < 50);
+        assertEquals(49, history.get(0).getUptime().longValue());
+        assertEquals(history.size(), processRepository(dir, 20_000).findByProcessId(3L).size());
+    }
+
+    @Test
+    public void testServerResourcesNewestByTimestamp() {
+        File dir = folder.getRoot();
+        ServerResourceFileRepository repository = serverRepository(dir);
+        long now = System.currentTimeMillis();
+        repository.save(server(1L, 10.0, now));
+        repository.save(server(1L, 30.0, now + 2000));
+        // 补录的旧数据不影响“最新”的判断
+        repository.save(server(1L, 20.0, now - 60_000));
+        repository.save(server(2L, 50.0, now + 1000));
+
+        List<ServerResource> recent = repository.findRecentByServerId(1L, 2);
+        assertEquals(30.0, recent.get(0).getCpuUsage(), 0.0);
+        assertEquals(10.0, recent.get(1).getCpuUsage(), 0.0);
+        Map<Long, ServerResource> latest = repository.findLatestByServer();
+        assertEquals(30.0, latest.get(1L).getCpuUsage(), 0.0);
+        assertEquals(50.0, latest.get(2L).getCpuUsage(), 0.0);
+        assertEquals(30.0, repository.findRecent(1).get(0).getCpuUsage(), 0.0);
+        assertEquals(3, serverRepository(dir).findByServerIdAfter(1L, 0).size());
+    }
+
+    private static ProcessResourceFileRepository processRepository(File dir, int maxRows) {
+        ProcessResourceFileRepository repository = new ProcessResourceFileRepository();
+        ReflectionTestUtils.setField(repository, "storageDir", dir.getAbsolutePath());
+        ReflectionTestUtils.setField(repository, "maxRows", maxRows);
+        repository.init();
+        return repository;
+    }
+
+    private static ServerResourceFileRepository serverRepository(File dir) {
+        ServerResourceFileRepository repository = new ServerResourceFileRepository();
+        ReflectionTestUtils.setField(repository, "storageDir", dir.getAbsolutePath());
+        repository.init();
+        return repository;
+    }
+
+    private static ProcessResource process(Long processId, Double cpu, String status, Long uptime) {
+        ProcessResource resource = new ProcessResource();
+        resource.setProcessId(processId);
+        resource.setCpuUsage(cpu);
+        resource.setStatus(status);
+        resource.setUptime(uptime);
+        return resource;
+    }
+
+    private static ServerResource server(Long serverId, double cpu, long timestamp) {
+        ServerResource resource = new ServerResource();
+        resource.setServerId(serverId);
+        resource.setCpuUsage(cpu);
+        resource.setTimestamp(new Date(timestamp));
+        return resource;
+    }
+}
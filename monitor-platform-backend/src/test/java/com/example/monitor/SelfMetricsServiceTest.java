@@ -0,0 +1,105 @@
+package com.example.monitor;
+
+import com.example.monitor.model.SelfMetric;
+import com.example.monitor.service.SelfMetricsService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * /api/self-metrics 汇总测试：只保留平台指标和 HTTP 接口指标，按类型换算，并由直方图桶估算 P99
+ */
+public class SelfMetricsServiceTest {
+
+    private SimpleMeterRegistry registry;
+    private SelfMetricsService service;
+
+    @Before
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        service = new SelfMetricsService(registry);
+    }
+
+    @Test
+    public void testOnlyPlatformAndHttpMetricsSortedByNameAndTags() {
+        Counter.builder("monitor.job.runs").tag("job", "scrape").register(registry).increment(3);
+        Counter.builder("monitor.job.runs").tag("job", "collect").register(registry).increment();
+        Timer.builder("http.server.requests").tag("uri", "/api/metrics").register(registry).record(5, TimeUnit.MILLISECONDS);
+        Gauge.builder("jvm.threads.live", () -> 42).register(registry);
+
+        List<SelfMetric> metrics = service.getSelfMetrics();
+        assertEquals(3, metrics.size());
+        assertEquals("http.server.requests", metrics.get(0).getName());
+        assertEquals("job=collect", metrics.get(1).getTags());
+        assertEquals("job=scrape", metrics.get(2).getTags());
+        assertEquals(3.0, metrics.get(2).getValue(), 0.0);
+        assertEquals("counter", metrics.get(2).getType());
+    }
+
+    @Test
+    public void testTimerInMillisecondsWithHistogramPercentile() {
+        // SimpleMeterRegistry 不生成 Prometheus 的百分位直方图桶，用固定的 SLO 边界代替
+        Timer timer = Timer.builder("monitor.repository.write").tag("repository", "metrics")
+                .serviceLevelObjectives(Duration.ofMillis(5), Duration.ofMillis(20), Duration.ofMillis(100), Duration.ofSeconds(1))
+                .register(registry);
+        for (int i = 0; i < 100; i++) {
+            timer.record(10, TimeUnit.MILLISECONDS);
+        }
+        timer.record(500, TimeUnit.MILLISECONDS);
+        Timer.builder("monitor.repository.read").tag("repository", "metrics").register(registry)
+                .record(20, TimeUnit.MILLISECONDS);
+
+        SelfMetric write = find("monitor.repository.write");
+        assertEquals("timer", write.getType());
+        assertEquals("ms", write.getBaseUnit());
+        assertEquals(Long.valueOf(101), write.getCount());
+        assertEquals(500.0, write.getMax(), 0.001);
+        assertEquals((100 * 10 + 500) / 101.0, write.getMean(), 0.001);
+        assertEquals("P99 取 10ms 所在桶的上界", 20.0, write.getP99(), 0.001);
+
+        SelfMetric read = find("monitor.repository.read");
+        assertEquals(Long.valueOf(1), read.getCount());
+        assertNull("未开启直方图时不估算 P99", read.getP99());
+    }
+
+    @Test
+    public void testSummaryAndGauge() {
+        DistributionSummary summary = DistributionSummary.builder("monitor.repository.rows")
+                .tag("operation", "write").baseUnit("rows").register(registry);
+        summary.record(3);
+        summary.record(7);
+        Gauge.builder("monitor.repository.size", () -> 12).tag("repository", "metrics").baseUnit("rows").register(registry);
+
+        SelfMetric rows = find("monitor.repository.rows");
+        assertEquals("summary", rows.getType());
+        assertEquals(Long.valueOf(2), rows.getCount());
+        assertEquals(10.0, rows.getValue(), 0.0);
+        assertEquals(5.0, rows.getMean(), 0.0);
+        assertEquals(7.0, rows.getMax(), 0.0);
+        assertEquals("rows", rows.getBaseUnit());
+
+        SelfMetric size = find("monitor.repository.size");
+        assertEquals("gauge", size.getType());
+        assertEquals(12.0, size.getValue(), 0.0);
+        assertEquals("repository=metrics", size.getTags());
+    }
+
+    private SelfMetric find(String name) {
+        List<SelfMetric> matches = service.getSelfMetrics().stream()
+                .filter(m -> m.getName().equals(name))
+                .collect(Collectors.toList());
+        assertEquals(1, matches.size());
+        return matches.get(0);
+    }
+}
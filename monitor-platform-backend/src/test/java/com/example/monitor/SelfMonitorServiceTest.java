@@ -0,0 +1,148 @@
+package com.example.monitor;
+
+import com.example.monitor.model.MetricSample;
+import com.example.monitor.model.ProcessInfo;
+import com.example.monitor.model.ProcessResource;
+import com.example.monitor.model.ServiceInfo;
+import com.example.monitor.service.SelfMonitorService;
+import com.example.monitor.service.ServerInfoService;
+import com.example.monitor.storage.*;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * 自监控测试：首次采集登记保留服务和自身进程，区间类指标从第二轮开始写入，
+ * 所有样本都写在保留服务下
+ */
+public class SelfMonitorServiceTest {
+
+    private static final double MB = 1024.0 * 1024.0;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ServiceInfoFileRepository serviceRepository;
+    private ProcessInfoFileRepository processRepository;
+    private MetricSampleFileRepository sampleRepository;
+    private ProcessResourceFileRepository resourceRepository;
+    private ThreadInfoFileRepository threadRepository;
+    private SimpleMeterRegistry registry;
+    private SelfMonitorService service;
+
+    @Before
+    public void setUp() throws Exception {
+        String dir = folder.getRoot().getAbsolutePath();
+        serviceRepository = new ServiceInfoFileRepository(dir);
+        sampleRepository = new MetricSampleFileRepository(dir);
+        ServerInfoFileRepository serverRepository = new ServerInfoFileRepository();
+        ServerResourceFileRepository serverResourceRepository = new ServerResourceFileRepository();
+        processRepository = new ProcessInfoFileRepository();
+        resourceRepository = new ProcessResourceFileRepository();
+        threadRepository = new ThreadInfoFileRepository();
+        ThreadStackFileRepository stackRepository = new ThreadStackFileRepository();
+        for (Object repository : Arrays.asList(serverRepository, serverResourceRepository, processRepository,
+                resourceRepository, threadRepository, stackRepository)) {
+            ReflectionTestUtils.setField(repository, "storageDir", dir);
+        }
+        serverRepository.init();
+        serverResourceRepository.init();
+        processRepository.init();
+        resourceRepository.init();
+        threadRepository.init();
+        stackRepository.init();
+
+        registry = new SimpleMeterRegistry();
+        service = new SelfMonitorService(serviceRepository,
+                new ServerInfoService(serverRepository, serverResourceRepository),
+                processRepository, sampleRepository, resourceRepository, threadRepository, stackRepository,
+                registry, null);
+        ReflectionTestUtils.setField(service, "serviceName", "monitor-platform");
+        ReflectionTestUtils.setField(service, "threadSnapshotIntervalSeconds", 300L);
+        ReflectionTestUtils.setField(service, "threadStackDepth", 8);
+        ReflectionTestUtils.setField(service, "serverPort", "8080");
+    }
+
+    @Test
+    public void testCollectRecordsMetricsUnderReservedService() {
+        Gauge.builder(RepositoryMetrics.FILE_SIZE, () -> 2 * MB).tag("repository", "test").register(registry);
+        Timer requests = registry.timer("http.server.requests", "uri", "/api/test");
+        requests.record(100, TimeUnit.MILLISECONDS);
+
+        service.collect();
+
+        List<ServiceInfo> services = serviceRepository.findAll();
+        assertEquals(1, services.size());
+        ServiceInfo self = services.get(0);
+        assertEquals("monitor-platform", self.getName());
+        assertEquals("self", self.getEnv());
+        assertNotNull(self.getProcessId());
+
+        Map<String, List<MetricSample>> first = samplesByMetric(self.getId());
+        assertEquals(new HashSet<>(Arrays.asList("heapUsed", "heapCommitted", "nonHeapUsed", "threadCount",
+                "daemonThreadCount", "repositoryFileSize.test")), first.keySet());
+        assertEquals(2.0, first.get("repositoryFileSize.test").get(0).getValue(), 1e-9);
+        assertTrue(first.get("threadCount").get(0).getValue() > 0);
+        assertEquals("所有样本都写在保留服务下", first.values().stream().mapToInt(List::size).sum(),
+                sampleRepository.findAll().size());
+
+        ProcessInfo process = processRepository.findById(self.getProcessId());
+        assertNotNull(process);
+        assertEquals("monitor-platform", process.getName());
+        assertEquals("8080", process.getPorts());
+        List<ProcessResource> resources = resourceRepository.findByProcessId(process.getId());
+        assertEquals(1, resources.size());
+        assertTrue(resources.get(0).getMemoryUsage() > 0);
+        assertFalse("首次采集即抓取线程快照", threadRepository.findByProcessId(process.getId()).isEmpty());
+
+        // 第二轮开始写入 GC 差值和区间内的接口平均耗时
+        requests.record(200, TimeUnit.MILLISECONDS);
+        requests.record(400, TimeUnit.MILLISECONDS);
+        service.collect();
+
+        assertEquals("已登记的服务被复用", 1, serviceRepository.findAll().size());
+        Map<String, List<MetricSample>> second = samplesByMetric(self.getId());
+        assertTrue(second.keySet().containsAll(Arrays.asList("gcCount", "gcPauseTime", "responseTime")));
+        assertEquals(1, second.get("responseTime").size());
+        assertEquals(300.0, second.get("responseTime").get(0).getValue(), 1e-6);
+        assertEquals(2, second.get("heapUsed").size());
+        assertTrue(second.get("gcCount").get(0).getValue() >= 0);
+        assertEquals(2, resourceRepository.findByProcessId(process.getId()).size());
+    }
+
+    @Test
+    public void testExistingServiceReused() {
+        ServiceInfo existing = new ServiceInfo();
+        existing.setName("monitor-platform");
+        existing.setEnv("prod");
+        Long id = serviceRepository.save(existing).getId();
+
+        service.collect();
+
+        List<ServiceInfo> services = serviceRepository.findAll();
+        assertEquals(1, services.size());
+        assertEquals(id, services.get(0).getId());
+        assertEquals("prod", services.get(0).getEnv());
+        assertNotNull(services.get(0).getServerId());
+        assertFalse(samplesByMetric(id).isEmpty());
+        assertEquals(samplesByMetric(id).values().stream().mapToInt(List::size).sum(),
+                sampleRepository.findAll().size());
+    }
+
+    private Map<String, List<MetricSample>> samplesByMetric(Long serviceId) {
+        return sampleRepository.findAll().stream()
+                .filter(s -> serviceId.equals(s.getServiceId()))
+                .collect(Collectors.groupingBy(MetricSample::getMetricName));
+    }
+}
@@ -4,19 +4,49 @@ import com.example.monitor.model.ThreadHotspotAnalysis;
 import com.example.monitor.service.ThreadHotspotAnalysisService;
 import com.example.monitor.service.ThreadInfoService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
 /**
  * 线程热点AI分析功能测试
  */
 @RunWith(SpringRunner.class)
 @SpringBootTest
+@DirtiesContext
 public class ThreadHotspotAnalysisTest {
 
+    /**
+     * 上下文使用 data/ 的副本，测试和后台任务的写入、旧数据文件的迁移都不改动仓库中的文件
+     */
+    @ClassRule
+    public static TemporaryFolder storage = new TemporaryFolder();
+
+    @BeforeClass
+    public static void copyStorage() throws IOException {
+        File dir = storage.newFolder("data");
+        for (File file : new File("data").listFiles(File::isFile)) {
+            Files.copy(file.toPath(), new File(dir, file.getName()).toPath());
+        }
+        System.setProperty("monitor.storage-dir", dir.getAbsolutePath());
+    }
+
+    @AfterClass
+    public static void clearStorage() {
+        System.clearProperty("monitor.storage-dir");
+    }
+
     @Autowired
     private ThreadInfoService threadInfoService;
 
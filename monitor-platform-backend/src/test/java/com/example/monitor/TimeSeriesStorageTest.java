@@ -0,0 +1,264 @@
+package com.example.monitor;
+
+import com.example.monitor.model.MetricSample;
+import com.example.monitor.model.ServerResource;
+import com.example.monitor.storage.MetricSampleFileRepository;
+import com.example.monitor.storage.RepositoryMetrics;
+import com.example.monitor.storage.ServerResourceFileRepository;
+import com.example.monitor.storage.TimeSeriesChunk;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 压缩时序存储测试：编码往返（含空值、NaN、乱序时间戳）、压缩率、重启加载、不完整的文件末尾和文件头、写入失败、增量加载追加的记录、乱序资源数据的有界查询和旧文件迁移
+ */
+public class TimeSeriesStorageTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testChunkRoundTripsEdgeValues() {
+        long[] timestamps = {1_700_000_000_000L, 1_700_000_015_000L, 1_700_000_030_000L, 1_700_000_029_000L,
+                1_700_000_029_000L, 1_800_000_000_000L, Long.MIN_VALUE, Long.MAX_VALUE};
+        long[] values = {TimeSeriesChunk.bitsOf(1.5), TimeSeriesChunk.bitsOf(1.5), TimeSeriesChunk.NULL_BITS,
+                Double.doubleToLongBits(Double.NaN), Double.doubleToLongBits(-0.0), Double.doubleToLongBits(Double.MAX_VALUE),
+                Double.doubleToLongBits(Double.MIN_VALUE), Double.doubleToLongBits(Double.NEGATIVE_INFINITY)};
+        TimeSeriesChunk chunk = new TimeSeriesChunk(2, 1);
+        for (int i = 0; i < timestamps.length; i++) {
+            chunk.appendBits(new long[]{timestamps[i], i * 1000L - 3}, new long[]{values[i]});
+        }
+        chunk.seal();
+
+        TimeSeriesChunk.Cursor cursor = chunk.cursor();
+        for (int i = 0; i < timestamps.length; i++) {
+            assertTrue(cursor.next());
+            assertEquals(timestamps[i], cursor.getTimestamp());
+            assertEquals(i * 1000L - 3, cursor.getLong(1));
+            assertEquals(values[i], Double.doubleToRawLongBits(cursor.getDouble(0)));
+        }
+        assertFalse(cursor.next());
+        assertNull(valueAt(chunk, 2));
+        assertEquals(Long.MIN_VALUE, chunk.minTime());
+        assertEquals(Long.MAX_VALUE, chunk.maxTime());
+    }
+
+    @Test
+    public void testRegularSamplesCompress() {
+        TimeSeriesChunk chunk = new TimeSeriesChunk(2, 1);
+        for (int i = 0; i < TimeSeriesChunk.MAX_ROWS; i++) {
+            chunk.append(new long[]{1_700_000_000_000L + i * 15_000L, i + 1}, new double[]{20 + (i % 4) * 0.5});
+        }
+        assertTrue(chunk.isFull());
+        // 原始为每行 24 字节
+        assertTrue("bytes=" + chunk.sizeInBytes(), chunk.sizeInBytes() < TimeSeriesChunk.MAX_ROWS * 4);
+    }
+
+    @Test
+    public void testMetricsSurviveRestartAndTornTail() throws Exception {
+        String dir = folder.getRoot().getAbsolutePath();
+        MetricSampleFileRepository repository = new MetricSampleFileRepository(dir);
+        List<MetricSample> batch = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            batch.add(sample(1L, "cpu", 1_700_000_000_000L + i * 1000L, i * 0.25));
+            batch.add(sample(2L, "mem", 1_700_000_000_000L + i * 1000L, 512));
+        }
+        repository.saveAll(batch);
+        repository.save(sample(1L, "cpu", 1_700_000_000_000L + 5_000_000L, -1));
+
+        File data = new File(dir, "metrics.tsdb");
+        long length = data.length();
+        try (RandomAccessFile file = new RandomAccessFile(data, "rw")) {
+            file.setLength(length + 5);
+        }
+        MetricSampleFileRepository restarted = new MetricSampleFileRepository(dir);
+        assertEquals(2401, restarted.findAll().size());
+        List<MetricSample> recent = restarted.findRecentByServiceAndMetric(1L, "cpu", 3);
+        assertEquals(3, recent.size());
+        assertEquals(-1, recent.get(2).getValue(), 0.0);
+        assertEquals(299.75, recent.get(1).getValue(), 0.0);
+
+        // 下一次追加截掉不完整的末尾，新 ID 不与已有的重复
+        MetricSample next = restarted.save(sample(2L, "mem", 1_700_000_000_000L + 6_000_000L, 1024));
+        assertTrue(next.getId() > batch.get(batch.size() - 1).getId());
+        assertEquals(2402, new MetricSampleFileRepository(dir).findAll().size());
+    }
+
+    @Test
+    public void testTornHeaderIsRewritten() throws Exception {
+        String dir = folder.getRoot().getAbsolutePath();
+        // 写入文件头时异常退出，只留下 magic 的前 3 个字节
+        Files.write(new File(dir, "metrics.tsdb").toPath(), new byte[]{0x54, 0x53, 0x43});
+
+        MetricSampleFileRepository repository = new MetricSampleFileRepository(dir);
+        assertTrue(repository.findAll().isEmpty());
+        repository.save(sample(1L, "cpu", 1_700_000_000_000L, 1));
+        assertEquals(1, new MetricSampleFileRepository(dir).findAll().size());
+    }
+
+    @Test
+    public void testFailedAppendLeavesMemoryUnchanged() throws Exception {
+        String dir = folder.getRoot().getAbsolutePath();
+        MetricSampleFileRepository repository = new MetricSampleFileRepository(dir);
+        repository.save(sample(1L, "cpu", 1_700_000_000_000L, 1));
+        long version = repository.getVersion();
+
+        // 数据文件位置被目录占用，追加失败
+        File data = new File(dir, "metrics.tsdb");
+        assertTrue(data.delete());
+        assertTrue(data.mkdir());
+        try {
+            repository.save(sample(1L, "cpu", 1_700_000_001_000L, 2));
+            fail("append should fail");
+        } catch (RuntimeException expected) {
+            // 写入失败
+        }
+        assertEquals(1, repository.findAll().size());
+        assertEquals(version, repository.getVersion());
+    }
+
+    @Test
+    public void testLegacyFilesAreMigrated() throws Exception {
+        File dir = folder.getRoot();
+        Files.write(new File(dir, "metrics.json").toPath(), ("[{\"id\":7,\"serviceId\":1,\"metricName\":\"qps\","
+                + "\"value\":3.5,\"timestamp\":\"2024-01-01 00:00:00\"}]").getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(dir, "server-resources.json").toPath(), ("[{\"id\":9,\"serverId\":3,\"cpuUsage\":12.5,"
+                + "\"timestamp\":\"2024-01-01 00:00:00\"}]").getBytes(StandardCharsets.UTF_8));
+
+        MetricSampleFileRepository metrics = new MetricSampleFileRepository(dir.getAbsolutePath());
+        assertEquals(1, metrics.findAll().size());
+        assertEquals(3.5, metrics.findAll().get(0).getValue(), 0.0);
+        assertTrue(new File(dir, "metrics.json.migrated").exists());
+
+        ServerResourceFileRepository resources = newResourceRepository(dir);
+        ServerResource migrated = resources.findByServerId(3L).get(0);
+        assertEquals(Long.valueOf(9), migrated.getId());
+        assertEquals(12.5, migrated.getCpuUsage(), 0.0);
+        assertNull("空值保持为 null", migrated.getMemoryUsage());
+        assertFalse(new File(dir, "server-resources.json").exists());
+
+        ServerResource resource = new ServerResource();
+        resource.setServerId(3L);
+        resource.setLoadAverage(0.75);
+        resources.save(resource);
+        List<ServerResource> reloaded = newResourceRepository(dir).findByServerIdAfter(3L, 9);
+        assertEquals(1, reloaded.size());
+        assertEquals(0.75, reloaded.get(0).getLoadAverage(), 0.0);
+        assertNull(reloaded.get(0).getCpuUsage());
+    }
+
+    @Test
+    public void testResourcesLoadOnlyAppendedRows() {
+        File dir = folder.getRoot();
+        ServerResourceFileRepository writer = newResourceRepository(dir);
+        writer.save(serverResource(1L, 10));
+        ServerResourceFileRepository reader = newResourceRepository(dir);
+        long version = reader.getVersion();
+
+        writer.save(serverResource(1L, 11));
+        writer.save(serverResource(2L, 20));
+        reader.loadAppended();
+        assertEquals(2, reader.findByServerId(1L).size());
+        assertEquals(20.0, reader.findByServerId(2L).get(0).getCpuUsage(), 0.0);
+        assertEquals(version + 1, reader.getVersion());
+
+        // 文件被整体重写后比已读取的部分短，改为重新加载
+        writer.clear();
+        reader.loadAppended();
+        assertTrue(reader.findRecent(10).isEmpty());
+    }
+
+    @Test
+    public void testOutOfOrderResourcesQueryStaysBounded() throws Exception {
+        File dir = folder.getRoot();
+        long base = 1_700_000_000_000L;
+        List<ServerResource> rows = new ArrayList<>();
+        for (int i = 1; i <= 40_000; i++) {
+            // 第 100～199 行是补写的历史数据，写入顺序与时间戳不一致
+            long time = i >= 100 && i < 200 ? base - 1_000_000_000L + i * 1000L : base + i * 1000L;
+            rows.add(serverResource((long) i, (long) (i % 4 + 1), time, i));
+        }
+        rows.add(serverResource(40_001L, 5L, base + 50_000_000L, 1));
+        rows.add(serverResource(40_002L, 5L, base + 1000L, 2));
+        new ObjectMapper().writeValue(new File(dir, "server-resources.json"), rows);
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ServerResourceFileRepository repository = new ServerResourceFileRepository();
+        ReflectionTestUtils.setField(repository, "storageDir", dir.getAbsolutePath());
+        ReflectionTestUtils.setField(repository, "meterRegistry", registry);
+        repository.init();
+        DistributionSummary scanned = registry.get(RepositoryMetrics.ROWS).tags("repository", "server-resources", "operation", "scan").summary();
+
+        List<ServerResource> recent = repository.findRecent(10);
+        assertEquals(10, recent.size());
+        assertEquals(Long.valueOf(40_001), recent.get(0).getId());
+        assertEquals(Long.valueOf(40_000), recent.get(1).getId());
+        assertEquals(Long.valueOf(39_992), recent.get(9).getId());
+        // 只访问最后一段，不扫描全部 4 万行
+        assertTrue("scanned " + scanned.totalAmount(), scanned.totalAmount() < 16_384);
+
+        double before = scanned.totalAmount();
+        List<ServerResource> byServer = repository.findRecentByServerId(1L, 20);
+        assertEquals(20, byServer.size());
+        assertEquals(Long.valueOf(40_000), byServer.get(0).getId());
+        assertEquals(Long.valueOf(39_924), byServer.get(19).getId());
+        assertTrue(scanned.totalAmount() - before < 16_384 / 4 + 20);
+
+        // 最后写入的一行时间更早，最新一行仍按时间取
+        assertEquals(Long.valueOf(40_001), repository.findLatestByServer().get(5L).getId());
+        assertEquals(Long.valueOf(40_000), repository.findLatestByServer().get(1L).getId());
+    }
+
+    private static Double valueAt(TimeSeriesChunk chunk, int row) {
+        TimeSeriesChunk.Cursor cursor = chunk.cursor();
+        for (int i = 0; i <= row; i++) {
+            cursor.next();
+        }
+        return cursor.getNullableDouble(0);
+    }
+
+    private static ServerResourceFileRepository newResourceRepository(File dir) {
+        ServerResourceFileRepository repository = new ServerResourceFileRepository();
+        ReflectionTestUtils.setField(repository, "storageDir", dir.getAbsolutePath());
+        repository.init();
+        return repository;
+    }
+
+    private static ServerResource serverResource(Long serverId, double cpu) {
+        ServerResource resource = new ServerResource();
+        resource.setServerId(serverId);
+        resource.setCpuUsage(cpu);
+        return resource;
+    }
+
+    private static ServerResource serverResource(Long id, Long serverId, long timestamp, double cpu) {
+        ServerResource resource = serverResource(serverId, cpu);
+        resource.setId(id);
+        resource.setTimestamp(new Date(timestamp));
+        return resource;
+    }
+
+    private static MetricSample sample(Long serviceId, String name, long timestamp, double value) {
+        MetricSample sample = new MetricSample();
+        sample.setServiceId(serviceId);
+        sample.setMetricName(name);
+        sample.setTimestamp(new Date(timestamp));
+        sample.setValue(value);
+        return sample;
+    }
+}